@@ -22,7 +22,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import org.apache.fontbox.type1.Type1CharStringReader;
 import org.apache.awt.geom.GeneralPath;
 
@@ -42,8 +41,8 @@ public class CFFCIDFont extends CFFFont
     private List<Map<String, Object>> privateDictionaries = Collections.emptyList();
     private FDSelect fdSelect;
 
-    private final Map<Integer, CIDKeyedType2CharString> charStringCache =
-            new ConcurrentHashMap<>();
+    private final CharStringCache<Integer, CIDKeyedType2CharString> charStringCache =
+            new CharStringCache<>();
     private Type2CharStringParser charStringParser = null;
 
     private final PrivateType1CharStringReader reader = new PrivateType1CharStringReader();
@@ -230,12 +229,7 @@ public class CFFCIDFont extends CFFFont
         {
             int gid = getCharset().getGIDForCID(cid);
 
-            byte[] bytes = charStrings[gid];
-            if (bytes == null)
-            {
-                bytes = charStrings[0]; // .notdef
-            }
-            List<Object> type2seq = getParser().parse(bytes, globalSubrIndex,
+            List<Object> type2seq = getParser().parse(getCharString(gid), globalSubrIndex,
                     getLocalSubrIndex(gid), String.format(Locale.US, "%04x", cid));
             type2 = new CIDKeyedType2CharString(reader, getName(), cid, gid, type2seq,
                                                 getDefaultWidthX(gid), getNominalWidthX(gid));
@@ -244,6 +238,25 @@ public class CFFCIDFont extends CFFFont
         return type2;
     }
 
+    @Override
+    public int getAdvanceWidth(int cid) throws IOException
+    {
+        int gid = getCharset().getGIDForCID(cid);
+        int width = Type2CharStringParser.readWidth(getCharString(gid), getDefaultWidthX(gid),
+                getNominalWidthX(gid));
+        return width != Integer.MIN_VALUE ? width : getType2CharString(cid).getWidth();
+    }
+
+    private byte[] getCharString(int gid)
+    {
+        byte[] bytes = charStrings[gid];
+        if (bytes == null)
+        {
+            bytes = charStrings[0]; // .notdef
+        }
+        return bytes;
+    }
+
     private Type2CharStringParser getParser()
     {
         if (charStringParser == null)
@@ -264,7 +277,7 @@ public class CFFCIDFont extends CFFFont
     public float getWidth(String selector) throws IOException
     {
         int cid = selectorToCID(selector);
-        return getType2CharString(cid).getWidth();
+        return getAdvanceWidth(cid);
     }
 
     @Override
@@ -201,6 +201,18 @@ public abstract class CFFFont implements FontBoxFont
      */
     public abstract Type2CharString getType2CharString(int cidOrGid) throws IOException;
 
+    /**
+     * Returns the advance width for the given CID. Unlike {@link #getType2CharString(int)}, this
+     * usually doesn't parse the charstring, which makes it much cheaper for text measuring.
+     *
+     * @param cidOrGid CID for CIFFont, or GID for Type 1 font
+     * 
+     * @return the advance width of the given cid/gid
+     * 
+     * @throws IOException if the charstring could not be read
+     */
+    public abstract int getAdvanceWidth(int cidOrGid) throws IOException;
+
     @Override
     public String toString()
     {
@@ -237,7 +237,14 @@ public class CFFParser
         return offsets;
     }
 
-    private static byte[][] readIndexData(DataInput input) throws IOException
+    /**
+     * Reads an INDEX at the current position of the given input.
+     *
+     * @param input the input
+     * @return the data of all elements
+     * @throws IOException if the INDEX is malformed
+     */
+    static byte[][] readIndexData(DataInput input) throws IOException
     {
         int[] offsets = readIndexDataOffsets(input);
         if (offsets.length == 0)
@@ -0,0 +1,1324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.cff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+
+/**
+ * Subsetter for CFF fonts, as embedded in PDF files or contained in OpenType fonts.
+ *
+ * <p>The subset contains the selected glyphs with their original charstrings, together with a new charset, the
+ * encoding of name-keyed fonts and the FDSelect of CID-keyed fonts. Subroutines which aren't called by any of the
+ * selected glyphs are replaced by an empty subroutine, which keeps the numbering of the remaining subroutines and
+ * therefore the charstrings intact. Accented glyphs built with the seac form of endchar pull in their components.</p>
+ *
+ * <p>The subset may be written as CID-keyed font whose CIDs are the glyph ids of the original font, see
+ * {@link #setGlyphIdsAsCIDs(boolean)}. This allows embedding a subset of an OpenType font, which is addressed by
+ * glyph ids, as CIDFontType0. If a selected glyph of a name-keyed font is an accented glyph built with seac, whose
+ * components are looked up by glyph name, the subset stays name-keyed instead and keeps the glyph ids of the original
+ * font, with empty charstrings for the glyphs which aren't selected. A CIDFontType0 uses the glyph ids of such a font
+ * as CIDs as well.</p>
+ */
+public final class CFFSubsetter
+{
+    private static final Log LOG = LogFactory.getLog(CFFSubsetter.class);
+
+    // DICT operators, escaped operators are 1200 + the second byte
+    private static final int UNIQUE_ID = 13;
+    private static final int XUID = 14;
+    private static final int CHARSET = 15;
+    private static final int ENCODING = 16;
+    private static final int CHAR_STRINGS = 17;
+    private static final int PRIVATE = 18;
+    private static final int SUBRS = 19;
+    private static final int ROS = 1230;
+    private static final int CID_COUNT = 1234;
+    private static final int FD_ARRAY = 1236;
+    private static final int FD_SELECT = 1237;
+
+    // replaces unused subroutines, consists of the "return" operator only
+    private static final byte[] EMPTY_SUBR = { 11 };
+    // replaces glyphs which aren't selected, consists of the "endchar" operator only
+    private static final byte[] EMPTY_GLYPH = { 14 };
+
+    private static final int STANDARD_STRING_COUNT = 391;
+    // the maximum nesting of subroutine calls allowed by the Type 2 charstring format
+    private static final int MAX_SUBR_NESTING = 10;
+    private static final int MAX_STACK = 48;
+
+    private final String fontName;
+    private final List<DictEntry> topDict;
+    private final byte[][] strings;
+    private final byte[][] globalSubrs;
+    private final byte[][] charStrings;
+    // SID of each glyph for name-keyed fonts, CID for CID-keyed fonts
+    private final int[] charset;
+    private final boolean cidKeyedFont;
+    // font DICT index of each glyph of CID-keyed fonts, null for name-keyed fonts
+    private final int[] fdSelect;
+    // the FDArray, or the Private DICT of a name-keyed font
+    private final List<FontDict> fontDicts = new ArrayList<>();
+    // glyph of each code of a custom encoding, null for predefined encodings
+    private final int[] encoding;
+
+    private final SortedSet<Integer> glyphIds = new TreeSet<>();
+    private String prefix;
+    private boolean glyphIdsAsCIDs;
+    // true if the subset keeps the glyph ids instead of using them as CIDs, because of seac
+    private boolean keepGlyphIds;
+
+    // state of the charstring scanner
+    private boolean prepared;
+    private boolean[] usedGlobalSubrs;
+    private final double[] stack = new double[MAX_STACK];
+    private int stackSize;
+    private int stemCount;
+    private final List<Integer> seacComponents = new ArrayList<>();
+
+    /**
+     * A DICT entry with its operands kept as encoded.
+     */
+    private static final class DictEntry
+    {
+        private final int operator;
+        private final byte[] operands;
+
+        private DictEntry(int operator, byte[] operands)
+        {
+            this.operator = operator;
+            this.operands = operands;
+        }
+    }
+
+    /**
+     * A font DICT of a CID-keyed font, or the top DICT of a name-keyed font, with its Private DICT.
+     */
+    private static final class FontDict
+    {
+        private final List<DictEntry> fontDict;
+        private final List<DictEntry> privateDict;
+        private final byte[][] localSubrs;
+        private final boolean hasSubrs;
+        private final boolean[] usedLocalSubrs;
+
+        private FontDict(List<DictEntry> fontDict, List<DictEntry> privateDict, byte[][] localSubrs,
+                boolean hasSubrs)
+        {
+            this.fontDict = fontDict;
+            this.privateDict = privateDict;
+            this.localSubrs = localSubrs;
+            this.hasSubrs = hasSubrs;
+            this.usedLocalSubrs = new boolean[localSubrs.length];
+        }
+    }
+
+    /**
+     * Thrown if a charstring can't be followed, in which case all subroutines are kept.
+     */
+    private static final class UnsupportedCharStringException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        private UnsupportedCharStringException(String message)
+        {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * Creates a subsetter for the given font.
+     *
+     * @param font the font to be subset
+     * @throws IOException if the font data could not be read or is malformed
+     */
+    public CFFSubsetter(CFFFont font) throws IOException
+    {
+        this(font.getData(), font.getName());
+    }
+
+    /**
+     * Creates a subsetter for the first font of the given CFF data.
+     *
+     * @param cffData the CFF data, e.g. the "CFF " table of an OpenType font
+     * @throws IOException if the font data is malformed
+     */
+    public CFFSubsetter(byte[] cffData) throws IOException
+    {
+        this(cffData, null);
+    }
+
+    private CFFSubsetter(byte[] data, String name) throws IOException
+    {
+        if (data.length < 4 || data[0] != 1)
+        {
+            throw new IOException("Data is not a CFF font");
+        }
+        DataInputByteArray input = new DataInputByteArray(data);
+        input.setPosition(data[2] & 0xff);
+        byte[][] names = CFFParser.readIndexData(input);
+        byte[][] topDicts = CFFParser.readIndexData(input);
+        if (names.length == 0 || topDicts.length != names.length)
+        {
+            throw new IOException("CFF data contains no font");
+        }
+        int fontIndex = 0;
+        for (int i = 0; name != null && i < names.length; i++)
+        {
+            if (name.equals(new String(names[i], StandardCharsets.ISO_8859_1)))
+            {
+                fontIndex = i;
+                break;
+            }
+        }
+        fontName = new String(names[fontIndex], StandardCharsets.ISO_8859_1);
+        topDict = readDict(topDicts[fontIndex], 0, topDicts[fontIndex].length);
+        strings = CFFParser.readIndexData(input);
+        globalSubrs = CFFParser.readIndexData(input);
+
+        input.setPosition(getRequiredInt(topDict, CHAR_STRINGS, 0));
+        charStrings = CFFParser.readIndexData(input);
+        if (charStrings.length == 0)
+        {
+            throw new IOException("CFF font has no glyphs");
+        }
+        cidKeyedFont = find(topDict, ROS) != null;
+        charset = readCharset(input, getInt(topDict, CHARSET, 0, 0), charStrings.length, cidKeyedFont);
+
+        if (cidKeyedFont)
+        {
+            input.setPosition(getRequiredInt(topDict, FD_ARRAY, 0));
+            for (byte[] fontDictData : CFFParser.readIndexData(input))
+            {
+                List<DictEntry> fontDict = readDict(fontDictData, 0, fontDictData.length);
+                fontDicts.add(readPrivateDict(data, input, fontDict));
+            }
+            fdSelect = readFDSelect(input, getRequiredInt(topDict, FD_SELECT, 0), charStrings.length,
+                    fontDicts.size());
+            encoding = null;
+        }
+        else
+        {
+            fontDicts.add(readPrivateDict(data, input, null));
+            fdSelect = null;
+            int encodingOffset = getInt(topDict, ENCODING, 0, 0);
+            encoding = encodingOffset > 1 ? readEncoding(input, encodingOffset) : null;
+        }
+        usedGlobalSubrs = new boolean[globalSubrs.length];
+
+        // always copy GID 0
+        glyphIds.add(0);
+    }
+
+    /**
+     * Sets the prefix to add to the font's name.
+     *
+     * @param prefix to be used as prefix for the name of the font
+     */
+    public void setPrefix(String prefix)
+    {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Sets whether the subset shall be written as CID-keyed font using the Adobe-Identity-0 ordering, with the glyph
+     * ids of the original font as CIDs. Name-keyed fonts are converted, CID-keyed fonts are keyed anew. Otherwise
+     * name-keyed fonts stay name-keyed and CID-keyed fonts keep their CIDs. A name-keyed font with accented glyphs
+     * built with seac stays name-keyed and keeps its glyph ids, see {@link #getGIDMap()}.
+     *
+     * @param glyphIdsAsCIDs true if the glyph ids of the original font shall be the CIDs of the subset
+     */
+    public void setGlyphIdsAsCIDs(boolean glyphIdsAsCIDs)
+    {
+        this.glyphIdsAsCIDs = glyphIdsAsCIDs;
+        prepared = false;
+    }
+
+    /**
+     * Adds the given glyph id to the subset.
+     *
+     * @param gid the glyph id of the original font
+     */
+    public void addGlyphId(int gid)
+    {
+        if (gid >= 0 && gid < charStrings.length && glyphIds.add(gid))
+        {
+            prepared = false;
+        }
+    }
+
+    /**
+     * Adds the given glyph ids to the subset.
+     *
+     * @param allGlyphIds the glyph ids of the original font
+     */
+    public void addGlyphIds(Set<Integer> allGlyphIds)
+    {
+        allGlyphIds.forEach(this::addGlyphId);
+    }
+
+    /**
+     * Returns the map of new -&gt; old GIDs, including the components of accented glyphs. Both are the same if the
+     * subset keeps the glyph ids of the original font.
+     *
+     * @return the GID map
+     */
+    public Map<Integer, Integer> getGIDMap()
+    {
+        prepare();
+        Map<Integer, Integer> newToOld = new HashMap<>();
+        int newGID = 0;
+        for (int oldGID : glyphIds)
+        {
+            newToOld.put(keepGlyphIds ? oldGID : newGID, oldGID);
+            newGID++;
+        }
+        return newToOld;
+    }
+
+    /**
+     * Writes the subset.
+     *
+     * @param os the stream to write the CFF data to
+     * @throws IOException if the subset could not be written
+     */
+    public void writeToStream(OutputStream os) throws IOException
+    {
+        prepare();
+        int[] oldGIDs = glyphIds.stream().mapToInt(Integer::intValue).toArray();
+        if (keepGlyphIds)
+        {
+            // all glyphs up to the last selected one, the others are replaced by an empty glyph
+            oldGIDs = new int[glyphIds.last() + 1];
+            Arrays.setAll(oldGIDs, gid -> gid);
+        }
+        boolean writeCIDKeyed = isKeyedByGlyphIds() || cidKeyedFont;
+
+        byte[][] outStrings = strings;
+        int registrySID = 0;
+        if (isKeyedByGlyphIds())
+        {
+            outStrings = Arrays.copyOf(strings, strings.length + 2);
+            outStrings[strings.length] = "Adobe".getBytes(StandardCharsets.US_ASCII);
+            outStrings[strings.length + 1] = "Identity".getBytes(StandardCharsets.US_ASCII);
+            registrySID = STANDARD_STRING_COUNT + strings.length;
+        }
+        String subsetName = prefix != null ? prefix + fontName : fontName;
+        byte[][] outNames = { subsetName.getBytes(StandardCharsets.ISO_8859_1) };
+        byte[][] outGlobalSubrs = prune(globalSubrs, usedGlobalSubrs);
+        byte[][] outCharStrings = new byte[oldGIDs.length][];
+        int[] outCharset = new int[oldGIDs.length];
+        for (int i = 0; i < oldGIDs.length; i++)
+        {
+            outCharStrings[i] = !keepGlyphIds || glyphIds.contains(i) ? charStrings[oldGIDs[i]] : EMPTY_GLYPH;
+            outCharset[i] = isKeyedByGlyphIds() ? oldGIDs[i] : charset[oldGIDs[i]];
+        }
+        byte[] charsetData = writeCharset(outCharset);
+        byte[] encodingData = !writeCIDKeyed && encoding != null ? writeEncoding(oldGIDs) : null;
+        byte[] fdSelectData = writeCIDKeyed ? writeFDSelect(oldGIDs) : null;
+
+        // the Private DICTs, each followed by its local subroutines
+        List<byte[]> privateDicts = new ArrayList<>();
+        List<byte[][]> localSubrs = new ArrayList<>();
+        for (FontDict fontDict : fontDicts)
+        {
+            privateDicts.add(writePrivateDict(fontDict));
+            localSubrs.add(fontDict.hasSubrs ? prune(fontDict.localSubrs, fontDict.usedLocalSubrs) : null);
+        }
+
+        // all offsets are written with 5 bytes, so that the size of the DICTs doesn't depend on them
+        int topDictSize = writeTopDict(writeCIDKeyed, registrySID, encodingData != null,
+                new int[7]).length;
+        int offset = 4 + indexSize(outNames) + indexSize(new byte[][] { new byte[topDictSize] })
+                + indexSize(outStrings) + indexSize(outGlobalSubrs);
+        int[] offsets = new int[7];
+        offsets[0] = offset;
+        offset += charsetData.length;
+        if (encodingData != null)
+        {
+            offsets[1] = offset;
+            offset += encodingData.length;
+        }
+        if (fdSelectData != null)
+        {
+            offsets[2] = offset;
+            offset += fdSelectData.length;
+        }
+        offsets[3] = offset;
+        offset += indexSize(outCharStrings);
+
+        byte[][] outFontDicts = null;
+        int[] privateOffsets = new int[fontDicts.size()];
+        if (writeCIDKeyed)
+        {
+            // the size of the font DICTs doesn't depend on the offsets either
+            outFontDicts = new byte[fontDicts.size()][];
+            for (int i = 0; i < outFontDicts.length; i++)
+            {
+                outFontDicts[i] = writeFontDict(fontDicts.get(i).fontDict, 0, 0);
+            }
+            offsets[4] = offset;
+            offset += indexSize(outFontDicts);
+        }
+        for (int i = 0; i < privateDicts.size(); i++)
+        {
+            privateOffsets[i] = offset;
+            offset += privateDicts.get(i).length;
+            if (localSubrs.get(i) != null)
+            {
+                offset += indexSize(localSubrs.get(i));
+            }
+        }
+        if (writeCIDKeyed)
+        {
+            for (int i = 0; i < outFontDicts.length; i++)
+            {
+                outFontDicts[i] = writeFontDict(fontDicts.get(i).fontDict, privateDicts.get(i).length,
+                        privateOffsets[i]);
+            }
+        }
+        else
+        {
+            offsets[5] = privateDicts.get(0).length;
+            offsets[6] = privateOffsets[0];
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(offset);
+        // header: version 1.0, header size, absolute offset size
+        out.write(1);
+        out.write(0);
+        out.write(4);
+        out.write(4);
+        writeIndex(out, outNames);
+        writeIndex(out, new byte[][] {
+                writeTopDict(writeCIDKeyed, registrySID, encodingData != null, offsets) });
+        writeIndex(out, outStrings);
+        writeIndex(out, outGlobalSubrs);
+        out.write(charsetData);
+        if (encodingData != null)
+        {
+            out.write(encodingData);
+        }
+        if (fdSelectData != null)
+        {
+            out.write(fdSelectData);
+        }
+        writeIndex(out, outCharStrings);
+        if (outFontDicts != null)
+        {
+            writeIndex(out, outFontDicts);
+        }
+        for (int i = 0; i < privateDicts.size(); i++)
+        {
+            out.write(privateDicts.get(i));
+            if (localSubrs.get(i) != null)
+            {
+                writeIndex(out, localSubrs.get(i));
+            }
+        }
+        if (out.size() != offset)
+        {
+            throw new IllegalStateException("CFF subset size " + out.size() + " differs from layout " + offset);
+        }
+        out.writeTo(os);
+    }
+
+    /**
+     * Adds the components of accented glyphs and determines the used subroutines.
+     */
+    private void prepare()
+    {
+        if (prepared)
+        {
+            return;
+        }
+        Arrays.fill(usedGlobalSubrs, false);
+        for (FontDict fontDict : fontDicts)
+        {
+            Arrays.fill(fontDict.usedLocalSubrs, false);
+        }
+        keepGlyphIds = false;
+        try
+        {
+            List<Integer> pending = new ArrayList<>(glyphIds);
+            while (!pending.isEmpty())
+            {
+                int gid = pending.remove(pending.size() - 1);
+                FontDict fontDict = fontDicts.get(fdSelect != null ? fdSelect[gid] : 0);
+                stackSize = 0;
+                stemCount = 0;
+                seacComponents.clear();
+                scan(charStrings[gid], fontDict, 0);
+                if (glyphIdsAsCIDs && !cidKeyedFont && !seacComponents.isEmpty())
+                {
+                    // the components are looked up by glyph name, which a CID-keyed font doesn't have
+                    LOG.debug("Glyph " + gid + " is an accented glyph built with seac, the subset " +
+                            "keeps the glyph ids");
+                    keepGlyphIds = true;
+                }
+                for (int component : seacComponents)
+                {
+                    if (glyphIds.add(component))
+                    {
+                        pending.add(component);
+                    }
+                }
+            }
+        }
+        catch (UnsupportedCharStringException e)
+        {
+            LOG.debug("Subroutines are kept, " + e.getMessage());
+            Arrays.fill(usedGlobalSubrs, true);
+            for (FontDict fontDict : fontDicts)
+            {
+                Arrays.fill(fontDict.usedLocalSubrs, true);
+            }
+        }
+        prepared = true;
+    }
+
+    /**
+     * Tells whether the subset is written as CID-keyed font with the glyph ids of the original font as CIDs.
+     */
+    private boolean isKeyedByGlyphIds()
+    {
+        return glyphIdsAsCIDs && !keepGlyphIds;
+    }
+
+    /**
+     * Follows the given charstring to find the subroutines it calls. Only the number of operands is tracked, apart
+     * from the subroutine numbers and the arguments of seac, which are always literal numbers.
+     *
+     * @return true if the end of the glyph has been reached
+     */
+    private boolean scan(byte[] charString, FontDict fontDict, int depth) throws UnsupportedCharStringException
+    {
+        int i = 0;
+        try
+        {
+            while (i < charString.length)
+            {
+                int b0 = charString[i] & 0xff;
+                if (b0 == 28)
+                {
+                    push((short) ((charString[i + 1] & 0xff) << 8 | charString[i + 2] & 0xff));
+                    i += 3;
+                }
+                else if (b0 >= 32 && b0 <= 246)
+                {
+                    push(b0 - 139);
+                    i++;
+                }
+                else if (b0 >= 247 && b0 <= 250)
+                {
+                    push((b0 - 247) * 256 + (charString[i + 1] & 0xff) + 108);
+                    i += 2;
+                }
+                else if (b0 >= 251 && b0 <= 254)
+                {
+                    push(-(b0 - 251) * 256 - (charString[i + 1] & 0xff) - 108);
+                    i += 2;
+                }
+                else if (b0 == 255)
+                {
+                    int fixed = (charString[i + 1] & 0xff) << 24 | (charString[i + 2] & 0xff) << 16
+                            | (charString[i + 3] & 0xff) << 8 | charString[i + 4] & 0xff;
+                    push(fixed / 65536.0);
+                    i += 5;
+                }
+                else
+                {
+                    i++;
+                    switch (b0)
+                    {
+                        case 1: // hstem
+                        case 3: // vstem
+                        case 18: // hstemhm
+                        case 23: // vstemhm
+                            stemCount += stackSize / 2;
+                            stackSize = 0;
+                            break;
+                        case 19: // hintmask
+                        case 20: // cntrmask
+                            // operands are an implicit vstem
+                            stemCount += stackSize / 2;
+                            stackSize = 0;
+                            i += (stemCount + 7) / 8;
+                            break;
+                        case 10: // callsubr
+                        case 29: // callgsubr
+                        {
+                            byte[][] subrs = b0 == 10 ? fontDict.localSubrs : globalSubrs;
+                            boolean[] used = b0 == 10 ? fontDict.usedLocalSubrs : usedGlobalSubrs;
+                            if (stackSize == 0 || depth >= MAX_SUBR_NESTING)
+                            {
+                                throw new UnsupportedCharStringException("invalid subroutine call");
+                            }
+                            int index = (int) stack[--stackSize] + getBias(subrs.length);
+                            if (index < 0 || index >= subrs.length)
+                            {
+                                throw new UnsupportedCharStringException("subroutine " + index + " doesn't exist");
+                            }
+                            used[index] = true;
+                            if (scan(subrs[index], fontDict, depth + 1))
+                            {
+                                return true;
+                            }
+                            break;
+                        }
+                        case 11: // return
+                            return false;
+                        case 14: // endchar
+                            if (stackSize >= 4 && !cidKeyedFont)
+                            {
+                                // seac: adx ady bchar achar
+                                addSeacComponent((int) stack[stackSize - 2]);
+                                addSeacComponent((int) stack[stackSize - 1]);
+                            }
+                            return true;
+                        case 12:
+                        {
+                            int b1 = charString[i++] & 0xff;
+                            // dotsection and the flex operators, everything else operates on the stack
+                            if (b1 != 0 && (b1 < 34 || b1 > 37))
+                            {
+                                throw new UnsupportedCharStringException("operator 12 " + b1 + " is used");
+                            }
+                            stackSize = 0;
+                            break;
+                        }
+                        default:
+                            stackSize = 0;
+                            break;
+                    }
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException e)
+        {
+            throw new UnsupportedCharStringException("charstring is truncated");
+        }
+        return false;
+    }
+
+    private void push(double value) throws UnsupportedCharStringException
+    {
+        if (stackSize == MAX_STACK)
+        {
+            throw new UnsupportedCharStringException("argument stack overflows");
+        }
+        stack[stackSize++] = value;
+    }
+
+    private void addSeacComponent(int code)
+    {
+        String name = CFFStandardEncoding.getInstance().getName(code);
+        if (name == null)
+        {
+            return;
+        }
+        for (int sid = 0; sid < STANDARD_STRING_COUNT; sid++)
+        {
+            if (name.equals(CFFStandardString.getName(sid)))
+            {
+                int gid = getGIDForSID(sid);
+                if (gid > 0)
+                {
+                    seacComponents.add(gid);
+                }
+                return;
+            }
+        }
+    }
+
+    private int getGIDForSID(int sid)
+    {
+        for (int gid = 0; gid < charset.length; gid++)
+        {
+            if (charset[gid] == sid)
+            {
+                return gid;
+            }
+        }
+        return -1;
+    }
+
+    private static int getBias(int count)
+    {
+        if (count < 1240)
+        {
+            return 107;
+        }
+        return count < 33900 ? 1131 : 32768;
+    }
+
+    private static byte[][] prune(byte[][] subrs, boolean[] used)
+    {
+        byte[][] pruned = new byte[subrs.length][];
+        for (int i = 0; i < subrs.length; i++)
+        {
+            pruned[i] = used[i] ? subrs[i] : EMPTY_SUBR;
+        }
+        return pruned;
+    }
+
+    private byte[] writeTopDict(boolean writeCIDKeyed, int registrySID,
+            boolean writeEncoding, int[] offsets)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (isKeyedByGlyphIds())
+        {
+            // ROS must be the first entry
+            writeFixedInt(out, registrySID);
+            writeFixedInt(out, registrySID + 1);
+            writeFixedInt(out, 0);
+            writeOperator(out, ROS);
+        }
+        for (DictEntry entry : topDict)
+        {
+            switch (entry.operator)
+            {
+                case UNIQUE_ID:
+                case XUID:
+                case CHARSET:
+                case ENCODING:
+                case CHAR_STRINGS:
+                case PRIVATE:
+                case FD_ARRAY:
+                case FD_SELECT:
+                    break;
+                case ROS:
+                case CID_COUNT:
+                    if (!isKeyedByGlyphIds())
+                    {
+                        writeEntry(out, entry);
+                    }
+                    break;
+                default:
+                    writeEntry(out, entry);
+                    break;
+            }
+        }
+        writeFixedInt(out, offsets[0]);
+        writeOperator(out, CHARSET);
+        if (writeEncoding)
+        {
+            writeFixedInt(out, offsets[1]);
+            writeOperator(out, ENCODING);
+        }
+        writeFixedInt(out, offsets[3]);
+        writeOperator(out, CHAR_STRINGS);
+        if (writeCIDKeyed)
+        {
+            if (isKeyedByGlyphIds())
+            {
+                writeFixedInt(out, charStrings.length);
+                writeOperator(out, CID_COUNT);
+            }
+            writeFixedInt(out, offsets[4]);
+            writeOperator(out, FD_ARRAY);
+            writeFixedInt(out, offsets[2]);
+            writeOperator(out, FD_SELECT);
+        }
+        else
+        {
+            writeFixedInt(out, offsets[5]);
+            writeFixedInt(out, offsets[6]);
+            writeOperator(out, PRIVATE);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] writeFontDict(List<DictEntry> fontDict, int privateSize, int privateOffset)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (fontDict != null)
+        {
+            for (DictEntry entry : fontDict)
+            {
+                if (entry.operator != PRIVATE)
+                {
+                    writeEntry(out, entry);
+                }
+            }
+        }
+        writeFixedInt(out, privateSize);
+        writeFixedInt(out, privateOffset);
+        writeOperator(out, PRIVATE);
+        return out.toByteArray();
+    }
+
+    private static byte[] writePrivateDict(FontDict fontDict)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (DictEntry entry : fontDict.privateDict)
+        {
+            if (entry.operator != SUBRS)
+            {
+                writeEntry(out, entry);
+            }
+        }
+        if (fontDict.hasSubrs)
+        {
+            // the local subroutines follow the Private DICT immediately
+            writeFixedInt(out, out.size() + 6);
+            writeOperator(out, SUBRS);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] writeCharset(int[] values)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // count the ranges of consecutive values, .notdef isn't part of the charset
+        int ranges = 0;
+        for (int i = 1; i < values.length; i++)
+        {
+            if (i == 1 || values[i] != values[i - 1] + 1)
+            {
+                ranges++;
+            }
+        }
+        if (ranges * 4 < (values.length - 1) * 2)
+        {
+            out.write(2);
+            int i = 1;
+            while (i < values.length)
+            {
+                int first = i;
+                while (i + 1 < values.length && values[i + 1] == values[i] + 1 && i - first < 0xffff)
+                {
+                    i++;
+                }
+                writeCard16(out, values[first]);
+                writeCard16(out, i - first);
+                i++;
+            }
+        }
+        else
+        {
+            out.write(0);
+            for (int i = 1; i < values.length; i++)
+            {
+                writeCard16(out, values[i]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] writeFDSelect(int[] oldGIDs)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> firsts = new ArrayList<>();
+        List<Integer> fds = new ArrayList<>();
+        for (int i = 0; i < oldGIDs.length; i++)
+        {
+            int fd = fdSelect != null ? fdSelect[oldGIDs[i]] : 0;
+            if (fds.isEmpty() || fds.get(fds.size() - 1) != fd)
+            {
+                firsts.add(i);
+                fds.add(fd);
+            }
+        }
+        out.write(3);
+        writeCard16(out, firsts.size());
+        for (int i = 0; i < firsts.size(); i++)
+        {
+            writeCard16(out, firsts.get(i));
+            out.write(fds.get(i));
+        }
+        writeCard16(out, oldGIDs.length);
+        return out.toByteArray();
+    }
+
+    private byte[] writeEncoding(int[] oldGIDs)
+    {
+        // codes of the new glyphs, the first code of a glyph goes into the code array, if possible
+        int[] newGIDByCode = new int[encoding.length];
+        Arrays.fill(newGIDByCode, -1);
+        for (int code = 0; code < encoding.length; code++)
+        {
+            if (encoding[code] > 0)
+            {
+                newGIDByCode[code] = Arrays.binarySearch(oldGIDs, encoding[code]);
+            }
+        }
+        List<Integer> codes = new ArrayList<>();
+        boolean[] inCodeArray = new boolean[encoding.length];
+        for (int gid = 1; gid < oldGIDs.length; gid++)
+        {
+            int code = indexOf(newGIDByCode, gid);
+            if (code < 0)
+            {
+                break;
+            }
+            codes.add(code);
+            inCodeArray[code] = true;
+        }
+        List<Integer> supplements = new ArrayList<>();
+        for (int code = 0; code < newGIDByCode.length; code++)
+        {
+            if (newGIDByCode[code] > 0 && !inCodeArray[code])
+            {
+                supplements.add(code);
+            }
+        }
+        if (supplements.size() > 255)
+        {
+            LOG.warn("Encoding of CFF subset is truncated to 255 supplements");
+            supplements = supplements.subList(0, 255);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(supplements.isEmpty() ? 0 : 0x80);
+        out.write(codes.size());
+        codes.forEach(out::write);
+        if (!supplements.isEmpty())
+        {
+            out.write(supplements.size());
+            for (int code : supplements)
+            {
+                out.write(code);
+                writeCard16(out, charset[oldGIDs[newGIDByCode[code]]]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOf(int[] values, int value)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] == value)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexSize(byte[][] items)
+    {
+        if (items.length == 0)
+        {
+            return 2;
+        }
+        int dataSize = 0;
+        for (byte[] item : items)
+        {
+            dataSize += item.length;
+        }
+        return 3 + (items.length + 1) * getOffSize(dataSize + 1) + dataSize;
+    }
+
+    private static int getOffSize(int maxOffset)
+    {
+        if (maxOffset < 0x100)
+        {
+            return 1;
+        }
+        if (maxOffset < 0x10000)
+        {
+            return 2;
+        }
+        return maxOffset < 0x1000000 ? 3 : 4;
+    }
+
+    private static void writeIndex(ByteArrayOutputStream out, byte[][] items)
+    {
+        writeCard16(out, items.length);
+        if (items.length == 0)
+        {
+            return;
+        }
+        int dataSize = 0;
+        for (byte[] item : items)
+        {
+            dataSize += item.length;
+        }
+        int offSize = getOffSize(dataSize + 1);
+        out.write(offSize);
+        int offset = 1;
+        for (int i = 0; i <= items.length; i++)
+        {
+            for (int shift = (offSize - 1) * 8; shift >= 0; shift -= 8)
+            {
+                out.write(offset >>> shift);
+            }
+            if (i < items.length)
+            {
+                offset += items[i].length;
+            }
+        }
+        for (byte[] item : items)
+        {
+            out.write(item, 0, item.length);
+        }
+    }
+
+    private static void writeCard16(ByteArrayOutputStream out, int value)
+    {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeFixedInt(ByteArrayOutputStream out, int value)
+    {
+        out.write(29);
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeOperator(ByteArrayOutputStream out, int operator)
+    {
+        if (operator >= 1200)
+        {
+            out.write(12);
+            out.write(operator - 1200);
+        }
+        else
+        {
+            out.write(operator);
+        }
+    }
+
+    private static void writeEntry(ByteArrayOutputStream out, DictEntry entry)
+    {
+        out.write(entry.operands, 0, entry.operands.length);
+        writeOperator(out, entry.operator);
+    }
+
+    private static List<DictEntry> readDict(byte[] data, int offset, int length) throws IOException
+    {
+        List<DictEntry> entries = new ArrayList<>();
+        int end = offset + length;
+        if (offset < 0 || end > data.length)
+        {
+            throw new IOException("DICT exceeds the CFF data");
+        }
+        int operandsStart = offset;
+        int i = offset;
+        while (i < end)
+        {
+            int b0 = data[i] & 0xff;
+            if (b0 <= 21)
+            {
+                int operator = b0;
+                byte[] operands = Arrays.copyOfRange(data, operandsStart, i);
+                i++;
+                if (b0 == 12)
+                {
+                    if (i >= end)
+                    {
+                        throw new IOException("DICT ends within an operator");
+                    }
+                    operator = 1200 + (data[i++] & 0xff);
+                }
+                entries.add(new DictEntry(operator, operands));
+                operandsStart = i;
+            }
+            else if (b0 == 28)
+            {
+                i += 3;
+            }
+            else if (b0 == 29)
+            {
+                i += 5;
+            }
+            else if (b0 == 30)
+            {
+                // real number, ends with a 0xf nibble
+                i++;
+                while (i < end && (data[i] & 0x0f) != 0x0f && (data[i] & 0xf0) != 0xf0)
+                {
+                    i++;
+                }
+                i++;
+            }
+            else if (b0 >= 32 && b0 <= 246)
+            {
+                i++;
+            }
+            else if (b0 >= 247 && b0 <= 254)
+            {
+                i += 2;
+            }
+            else
+            {
+                throw new IOException("Invalid DICT data " + b0);
+            }
+        }
+        return entries;
+    }
+
+    private static DictEntry find(List<DictEntry> dict, int operator)
+    {
+        for (DictEntry entry : dict)
+        {
+            if (entry.operator == operator)
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns an integer operand of the given DICT entry.
+     */
+    private static int getInt(List<DictEntry> dict, int operator, int index, int defaultValue)
+            throws IOException
+    {
+        DictEntry entry = find(dict, operator);
+        if (entry == null)
+        {
+            return defaultValue;
+        }
+        byte[] operands = entry.operands;
+        int i = 0;
+        for (int n = 0; i < operands.length; n++)
+        {
+            int b0 = operands[i] & 0xff;
+            int value;
+            int size;
+            if (b0 == 28)
+            {
+                value = (short) ((operands[i + 1] & 0xff) << 8 | operands[i + 2] & 0xff);
+                size = 3;
+            }
+            else if (b0 == 29)
+            {
+                value = (operands[i + 1] & 0xff) << 24 | (operands[i + 2] & 0xff) << 16
+                        | (operands[i + 3] & 0xff) << 8 | operands[i + 4] & 0xff;
+                size = 5;
+            }
+            else if (b0 >= 32 && b0 <= 246)
+            {
+                value = b0 - 139;
+                size = 1;
+            }
+            else if (b0 >= 247 && b0 <= 250)
+            {
+                value = (b0 - 247) * 256 + (operands[i + 1] & 0xff) + 108;
+                size = 2;
+            }
+            else if (b0 >= 251 && b0 <= 254)
+            {
+                value = -(b0 - 251) * 256 - (operands[i + 1] & 0xff) - 108;
+                size = 2;
+            }
+            else
+            {
+                throw new IOException("Operand " + n + " of DICT operator " + operator + " isn't an integer");
+            }
+            if (n == index)
+            {
+                return value;
+            }
+            i += size;
+        }
+        throw new IOException("DICT operator " + operator + " has no operand " + index);
+    }
+
+    private static int getRequiredInt(List<DictEntry> dict, int operator, int index) throws IOException
+    {
+        if (find(dict, operator) == null)
+        {
+            throw new IOException("Required DICT operator " + operator + " is missing");
+        }
+        return getInt(dict, operator, index, 0);
+    }
+
+    private FontDict readPrivateDict(byte[] data, DataInputByteArray input, List<DictEntry> fontDict)
+            throws IOException
+    {
+        List<DictEntry> dict = fontDict != null ? fontDict : topDict;
+        if (find(dict, PRIVATE) == null)
+        {
+            return new FontDict(fontDict, new ArrayList<>(), new byte[0][], false);
+        }
+        int privateSize = getInt(dict, PRIVATE, 0, 0);
+        int privateOffset = getInt(dict, PRIVATE, 1, 0);
+        List<DictEntry> privateDict = readDict(data, privateOffset, privateSize);
+        if (find(privateDict, SUBRS) == null)
+        {
+            return new FontDict(fontDict, privateDict, new byte[0][], false);
+        }
+        input.setPosition(privateOffset + getInt(privateDict, SUBRS, 0, 0));
+        return new FontDict(fontDict, privateDict, CFFParser.readIndexData(input), true);
+    }
+
+    private static int[] readCharset(DataInputByteArray input, int offset, int glyphCount, boolean cidKeyed)
+            throws IOException
+    {
+        int[] values = new int[glyphCount];
+        if (offset <= 2 && !cidKeyed)
+        {
+            CFFCharset predefined;
+            switch (offset)
+            {
+                case 0:
+                    predefined = CFFISOAdobeCharset.getInstance();
+                    break;
+                case 1:
+                    predefined = CFFExpertCharset.getInstance();
+                    break;
+                default:
+                    predefined = CFFExpertSubsetCharset.getInstance();
+                    break;
+            }
+            for (int gid = 1; gid < glyphCount; gid++)
+            {
+                values[gid] = predefined.getSIDForGID(gid);
+            }
+            return values;
+        }
+        input.setPosition(offset);
+        int format = input.readUnsignedByte();
+        int gid = 1;
+        switch (format)
+        {
+            case 0:
+                for (; gid < glyphCount; gid++)
+                {
+                    values[gid] = input.readUnsignedShort();
+                }
+                break;
+            case 1:
+            case 2:
+                while (gid < glyphCount)
+                {
+                    int first = input.readUnsignedShort();
+                    int left = format == 1 ? input.readUnsignedByte() : input.readUnsignedShort();
+                    for (int j = 0; j <= left && gid < glyphCount; j++)
+                    {
+                        values[gid++] = first + j;
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unknown charset format " + format);
+        }
+        return values;
+    }
+
+    private static int[] readFDSelect(DataInputByteArray input, int offset, int glyphCount, int fdCount)
+            throws IOException
+    {
+        int[] fds = new int[glyphCount];
+        input.setPosition(offset);
+        int format = input.readUnsignedByte();
+        if (format == 0)
+        {
+            for (int gid = 0; gid < glyphCount; gid++)
+            {
+                fds[gid] = input.readUnsignedByte();
+            }
+        }
+        else if (format == 3)
+        {
+            int rangeCount = input.readUnsignedShort();
+            int first = input.readUnsignedShort();
+            for (int i = 0; i < rangeCount; i++)
+            {
+                int fd = input.readUnsignedByte();
+                int next = input.readUnsignedShort();
+                for (int gid = first; gid < next && gid < glyphCount; gid++)
+                {
+                    fds[gid] = fd;
+                }
+                first = next;
+            }
+        }
+        else
+        {
+            throw new IOException("Unknown FDSelect format " + format);
+        }
+        for (int fd : fds)
+        {
+            if (fd >= fdCount)
+            {
+                throw new IOException("FDSelect refers to missing font DICT " + fd);
+            }
+        }
+        return fds;
+    }
+
+    private int[] readEncoding(DataInputByteArray input, int offset) throws IOException
+    {
+        int[] gids = new int[256];
+        input.setPosition(offset);
+        int format = input.readUnsignedByte();
+        switch (format & 0x7f)
+        {
+            case 0:
+            {
+                int codeCount = input.readUnsignedByte();
+                for (int gid = 1; gid <= codeCount; gid++)
+                {
+                    gids[input.readUnsignedByte()] = gid;
+                }
+                break;
+            }
+            case 1:
+            {
+                int rangeCount = input.readUnsignedByte();
+                int gid = 1;
+                for (int i = 0; i < rangeCount; i++)
+                {
+                    int first = input.readUnsignedByte();
+                    int left = input.readUnsignedByte();
+                    for (int j = 0; j <= left && first + j < 256; j++)
+                    {
+                        gids[first + j] = gid++;
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown encoding format " + format);
+        }
+        if ((format & 0x80) != 0)
+        {
+            int supplementCount = input.readUnsignedByte();
+            for (int i = 0; i < supplementCount; i++)
+            {
+                int code = input.readUnsignedByte();
+                int gid = getGIDForSID(input.readUnsignedShort());
+                if (gid > 0)
+                {
+                    gids[code] = gid;
+                }
+            }
+        }
+        return gids;
+    }
+}
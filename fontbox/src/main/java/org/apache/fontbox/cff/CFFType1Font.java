@@ -20,7 +20,6 @@ import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import org.apache.fontbox.EncodedFont;
 import org.apache.fontbox.type1.Type1CharStringReader;
 import org.apache.awt.geom.GeneralPath;
@@ -36,8 +35,8 @@ public class CFFType1Font extends CFFFont implements EncodedFont
     private final Map<String, Object> privateDict = new LinkedHashMap<>();
     private CFFEncoding encoding;
 
-    private final Map<Integer, Type2CharString> charStringCache =
-            new ConcurrentHashMap<>();
+    private final CharStringCache<Integer, Type2CharString> charStringCache =
+            new CharStringCache<>();
 
     private final PrivateType1CharStringReader reader = new PrivateType1CharStringReader();
     private Type2CharStringParser charStringParser = null;
@@ -68,7 +67,7 @@ public class CFFType1Font extends CFFFont implements EncodedFont
     @Override
     public float getWidth(String name) throws IOException
     {
-        return getType1CharString(name).getWidth();
+        return getAdvanceWidth(nameToGID(name));
     }
 
     @Override
@@ -128,18 +127,8 @@ public class CFFType1Font extends CFFFont implements EncodedFont
         Type2CharString type2 = charStringCache.get(gid);
         if (type2 == null)
         {
-            byte[] bytes = null;
-            if (gid < charStrings.length)
-            {
-                bytes = charStrings[gid];
-            }
-            if (bytes == null)
-            {
-                // .notdef
-                bytes = charStrings[0];
-            }
-            List<Object> type2seq = getParser().parse(bytes, globalSubrIndex, getLocalSubrIndex(),
-                    name);
+            List<Object> type2seq = getParser().parse(getCharString(gid), globalSubrIndex,
+                    getLocalSubrIndex(), name);
             type2 = new Type2CharString(reader, getName(), name, gid, type2seq, getDefaultWidthX(),
                     getNominalWidthX());
             charStringCache.put(gid, type2);
@@ -147,6 +136,29 @@ public class CFFType1Font extends CFFFont implements EncodedFont
         return type2;
     }
 
+    @Override
+    public int getAdvanceWidth(int gid) throws IOException
+    {
+        int width = Type2CharStringParser.readWidth(getCharString(gid), getDefaultWidthX(),
+                getNominalWidthX());
+        return width != Integer.MIN_VALUE ? width : getType2CharString(gid).getWidth();
+    }
+
+    private byte[] getCharString(int gid)
+    {
+        byte[] bytes = null;
+        if (gid < charStrings.length)
+        {
+            bytes = charStrings[gid];
+        }
+        if (bytes == null)
+        {
+            // .notdef
+            bytes = charStrings[0];
+        }
+        return bytes;
+    }
+
     private Type2CharStringParser getParser()
     {
         if (charStringParser == null)
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.cff;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+
+/**
+ * A size-bounded cache for the parsed charstrings of a font. Thread safe.
+ *
+ * <p>Each cache holds at most {@link #SYSPROP_MAXSIZE} charstrings and evicts the least recently
+ * used one when it is full. In addition, all caches share a global budget of
+ * {@link #SYSPROP_GLOBALMAXSIZE} charstrings: when it is exceeded, the least recently used
+ * charstrings of all fonts are evicted. This keeps the memory bounded in long-running processes,
+ * where fonts like the standard 14 fonts live as long as the JVM.</p>
+ *
+ * @param <K> the type of the key, e.g. a GID or a glyph name
+ * @param <V> the type of the charstring
+ */
+public final class CharStringCache<K, V>
+{
+    private static final Log LOG = LogFactory.getLog(CharStringCache.class);
+
+    /**
+     * Maximum number of charstrings cached per font. The default value is 2048.
+     */
+    public static final String SYSPROP_MAXSIZE = "org.apache.fontbox.cff.charstringcache.maxsize";
+
+    /**
+     * Maximum number of charstrings cached for all fonts together. The default value is 16384.
+     */
+    public static final String SYSPROP_GLOBALMAXSIZE =
+            "org.apache.fontbox.cff.charstringcache.globalmaxsize";
+
+    private static final int MAX_SIZE = readSize(SYSPROP_MAXSIZE, 2048);
+    private static final int GLOBAL_MAX_SIZE = readSize(SYSPROP_GLOBALMAXSIZE, 16384);
+
+    // the global eviction frees some headroom, so that it doesn't run on every put
+    private static final int GLOBAL_TRIM_SIZE = GLOBAL_MAX_SIZE - GLOBAL_MAX_SIZE / 16;
+
+    // a logical clock for the least recently used order across all caches
+    private static final AtomicLong CLOCK = new AtomicLong();
+    private static final AtomicInteger GLOBAL_SIZE = new AtomicInteger();
+
+    // all caches which may still be alive, guarded by itself
+    private static final Set<Registration> REGISTRY =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+    private static final ReferenceQueue<CharStringCache<?, ?>> COLLECTED = new ReferenceQueue<>();
+
+    // access ordered, guarded by itself
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicInteger size;
+
+    /**
+     * A cached charstring with the time of its last use.
+     */
+    private static final class Entry<V>
+    {
+        private final V value;
+        private long lastUse;
+
+        private Entry(V value, long lastUse)
+        {
+            this.value = value;
+            this.lastUse = lastUse;
+        }
+    }
+
+    /**
+     * Keeps the size of a cache, which is needed to update the global size after the cache has
+     * been garbage collected.
+     */
+    private static final class Registration extends WeakReference<CharStringCache<?, ?>>
+    {
+        private final AtomicInteger size;
+
+        private Registration(CharStringCache<?, ?> cache)
+        {
+            super(cache, COLLECTED);
+            this.size = cache.size;
+        }
+    }
+
+    /**
+     * Creates an empty cache.
+     */
+    public CharStringCache()
+    {
+        size = new AtomicInteger();
+        synchronized (REGISTRY)
+        {
+            expungeCollected();
+            REGISTRY.add(new Registration(this));
+        }
+    }
+
+    /**
+     * Returns the cached charstring for the given key.
+     *
+     * @param key the key
+     * @return the charstring or null if it isn't cached
+     */
+    public V get(K key)
+    {
+        synchronized (map)
+        {
+            Entry<V> entry = map.get(key);
+            if (entry == null)
+            {
+                return null;
+            }
+            // reads don't advance the clock, it only needs to order them relative to the puts
+            entry.lastUse = CLOCK.get();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Adds a charstring to the cache, evicting the least recently used ones if the cache or the
+     * global budget is full.
+     *
+     * @param key the key
+     * @param value the charstring
+     */
+    public void put(K key, V value)
+    {
+        synchronized (map)
+        {
+            if (map.put(key, new Entry<>(value, CLOCK.incrementAndGet())) == null)
+            {
+                size.incrementAndGet();
+                GLOBAL_SIZE.incrementAndGet();
+                if (map.size() > MAX_SIZE)
+                {
+                    removeEldest();
+                }
+            }
+        }
+        if (GLOBAL_SIZE.get() > GLOBAL_MAX_SIZE)
+        {
+            trimGlobal();
+        }
+    }
+
+    // must be called while holding the lock of the map
+    private void removeEldest()
+    {
+        Iterator<Entry<V>> iterator = map.values().iterator();
+        iterator.next();
+        iterator.remove();
+        size.decrementAndGet();
+        GLOBAL_SIZE.decrementAndGet();
+    }
+
+    // returns the time of the last use of the least recently used entry
+    private long eldestUse()
+    {
+        synchronized (map)
+        {
+            return map.isEmpty() ? Long.MAX_VALUE : map.values().iterator().next().lastUse;
+        }
+    }
+
+    /**
+     * Evicts the least recently used charstrings of all caches until the global size is below the
+     * budget.
+     */
+    private static void trimGlobal()
+    {
+        synchronized (REGISTRY)
+        {
+            expungeCollected();
+            while (GLOBAL_SIZE.get() > GLOBAL_TRIM_SIZE)
+            {
+                // find the cache with the oldest entry, and the runner-up to know how many
+                // entries can be evicted from that cache in one go
+                CharStringCache<?, ?> oldest = null;
+                long oldestUse = Long.MAX_VALUE;
+                long nextUse = Long.MAX_VALUE;
+                for (Registration registration : REGISTRY)
+                {
+                    CharStringCache<?, ?> cache = registration.get();
+                    if (cache == null)
+                    {
+                        continue;
+                    }
+                    long use = cache.eldestUse();
+                    if (use < oldestUse)
+                    {
+                        nextUse = oldestUse;
+                        oldestUse = use;
+                        oldest = cache;
+                    }
+                    else if (use < nextUse)
+                    {
+                        nextUse = use;
+                    }
+                }
+                if (oldest == null)
+                {
+                    return;
+                }
+                oldest.evictUntil(nextUse);
+            }
+        }
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Charstring caches trimmed to " + GLOBAL_SIZE.get() + " entries");
+        }
+    }
+
+    // evicts the least recently used entries which were used before the given time, but at least one
+    private void evictUntil(long use)
+    {
+        synchronized (map)
+        {
+            do
+            {
+                removeEldest();
+            }
+            while (!map.isEmpty() && GLOBAL_SIZE.get() > GLOBAL_TRIM_SIZE
+                    && map.values().iterator().next().lastUse <= use);
+        }
+    }
+
+    // must be called while holding the lock of the registry
+    private static void expungeCollected()
+    {
+        Registration registration;
+        while ((registration = (Registration) COLLECTED.poll()) != null)
+        {
+            REGISTRY.remove(registration);
+            GLOBAL_SIZE.addAndGet(-registration.size.get());
+        }
+    }
+
+    private static int readSize(String property, int defaultValue)
+    {
+        try
+        {
+            int value = Integer.parseInt(System.getProperty(property, Integer.toString(defaultValue)));
+            if (value > 0)
+            {
+                return value;
+            }
+        }
+        catch (NumberFormatException | SecurityException ex)
+        {
+            LOG.warn("Illegal value for " + property + ", using " + defaultValue, ex);
+        }
+        return defaultValue;
+    }
+}
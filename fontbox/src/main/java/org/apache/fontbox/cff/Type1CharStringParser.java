@@ -105,6 +105,59 @@ public class Type1CharStringParser
         return sequence;
     }
 
+    /**
+     * Reads the advance width of a charstring without parsing it completely. The width is given by
+     * the hsbw or sbw command at the start of the charstring.
+     *
+     * @param bytes the charstring
+     * @return the width, or {@link Integer#MIN_VALUE} if it can't be read without executing the
+     * charstring, e.g. because it is given in a subroutine
+     */
+    public static int readWidth(byte[] bytes)
+    {
+        int[] numbers = new int[4];
+        int count = 0;
+        int i = 0;
+        while (i < bytes.length)
+        {
+            int b0 = bytes[i++] & 0xff;
+            int value;
+            if (b0 >= 32 && b0 <= 246)
+            {
+                value = b0 - 139;
+            }
+            else if (b0 >= 247 && b0 <= 254 && i < bytes.length)
+            {
+                int b1 = bytes[i++] & 0xff;
+                value = b0 <= 250 ? (b0 - 247) * 256 + b1 + 108 : -(b0 - 251) * 256 - b1 - 108;
+            }
+            else if (b0 == 255 && i + 3 < bytes.length)
+            {
+                value = (bytes[i] & 0xff) << 24 | (bytes[i + 1] & 0xff) << 16
+                        | (bytes[i + 2] & 0xff) << 8 | bytes[i + 3] & 0xff;
+                i += 4;
+            }
+            else if (b0 == 13 && count == 2) // hsbw
+            {
+                return numbers[1];
+            }
+            else if (b0 == TWO_BYTE && i < bytes.length && bytes[i] == 7 && count == 4) // sbw
+            {
+                return numbers[2];
+            }
+            else
+            {
+                return Integer.MIN_VALUE;
+            }
+            if (count == numbers.length)
+            {
+                return Integer.MIN_VALUE;
+            }
+            numbers[count++] = value;
+        }
+        return Integer.MIN_VALUE;
+    }
+
     private void processCallSubr(List<byte[]> subrs, List<Object> sequence) throws IOException
     {
         // callsubr command
@@ -105,6 +105,84 @@ public class Type2CharStringParser
         return sequence;
     }
 
+    /**
+     * Reads the advance width of a charstring without parsing it completely. The width is the
+     * optional first argument of the first stack clearing operator.
+     *
+     * @param bytes the charstring
+     * @param defaultWidthX the default width of the private DICT
+     * @param nominalWidthX the nominal width of the private DICT
+     * @return the width, or {@link Integer#MIN_VALUE} if it can't be read without executing the
+     * charstring, e.g. because it is given in a subroutine
+     */
+    static int readWidth(byte[] bytes, int defaultWidthX, int nominalWidthX)
+    {
+        int count = 0;
+        float first = 0;
+        int i = 0;
+        while (i < bytes.length)
+        {
+            int b0 = bytes[i++] & 0xff;
+            float value;
+            if (b0 >= 32 && b0 <= 246)
+            {
+                value = b0 - 139;
+            }
+            else if (b0 >= 247 && b0 <= 254 && i < bytes.length)
+            {
+                int b1 = bytes[i++] & 0xff;
+                value = b0 <= 250 ? (b0 - 247) * 256 + b1 + 108 : -(b0 - 251) * 256 - b1 - 108;
+            }
+            else if (b0 == 28 && i + 1 < bytes.length)
+            {
+                value = (short) ((bytes[i] & 0xff) << 8 | bytes[i + 1] & 0xff);
+                i += 2;
+            }
+            else if (b0 == 255 && i + 3 < bytes.length)
+            {
+                short integer = (short) ((bytes[i] & 0xff) << 8 | bytes[i + 1] & 0xff);
+                double fraction = ((bytes[i + 2] & 0xff) << 8 | bytes[i + 3] & 0xff) / 65535d;
+                value = (float) (integer + fraction);
+                i += 4;
+            }
+            else
+            {
+                boolean hasWidth;
+                switch (b0)
+                {
+                    case 1: // hstem
+                    case 3: // vstem
+                    case 18: // hstemhm
+                    case 19: // hintmask
+                    case 20: // cntrmask
+                    case 23: // vstemhm
+                        hasWidth = count % 2 != 0;
+                        break;
+                    case 4: // vmoveto
+                    case 22: // hmoveto
+                        hasWidth = count > 1;
+                        break;
+                    case 21: // rmoveto
+                        hasWidth = count > 2;
+                        break;
+                    case 14: // endchar
+                        hasWidth = count == 5 || count == 1;
+                        break;
+                    default:
+                        return Integer.MIN_VALUE;
+                }
+                // same arithmetic as Type2CharString
+                return hasWidth ? (int) (first + (float) nominalWidthX) : defaultWidthX;
+            }
+            if (count == 0)
+            {
+                first = value;
+            }
+            count++;
+        }
+        return Integer.MIN_VALUE;
+    }
+
     private void processCallSubr(byte[][] globalSubrIndex, byte[][] localSubrIndex)
             throws IOException
     {
@@ -20,15 +20,17 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.logging.Log;
 import org.apache.logging.LogFactory;
 
 /**
  * A "cmap" subtable.
+ *
+ * <p>The mappings are kept as segments of consecutive character codes, as they are stored in the
+ * font, so that they don't need to be expanded when the font is parsed. The reverse mapping from
+ * glyph ids to character codes is built when it is used for the first time.</p>
  * 
  * @author Ben Litchfield
  */
@@ -39,12 +41,47 @@ public class CmapSubtable implements CmapLookup
     private static final long LEAD_OFFSET = 0xD800l - (0x10000 >> 10);
     private static final long SURROGATE_OFFSET = 0x10000l - (0xD800 << 10) - 0xDC00;
 
+    // glyphId = (characterCode + value) & 0xFFFF
+    private static final byte SEGMENT_DELTA = 0;
+    // glyphId = value
+    private static final byte SEGMENT_CONSTANT = 1;
+    // glyphId = glyphIdArray[value + characterCode - start], -1 for unmapped character codes
+    private static final byte SEGMENT_ARRAY = 2;
+
     private int platformId;
     private int platformEncodingId;
     private long subTableOffset;
-    private int[] glyphIdToCharacterCode;
-    private final Map<Integer, List<Integer>> glyphIdToCharacterCodeMultiple = new HashMap<>();
-    private Map<Integer, Integer> characterCodeToGlyphId = Collections.emptyMap();
+
+    // the segments, sorted by character code unless they overlap
+    private int segmentCount;
+    private int[] segmentStart = new int[0];
+    private int[] segmentEnd = new int[0];
+    private byte[] segmentType = new byte[0];
+    private int[] segmentValue = new int[0];
+    private int[] glyphIdArray = new int[0];
+    private int glyphIdArrayLength;
+    // if segments overlap they are kept in file order and the last one wins
+    private boolean overlapping;
+    // formats 0, 2, 8 and 13 only map a glyph to the last of its character codes
+    private boolean lastCharacterCodeOnly;
+
+    private volatile ReverseMapping reverseMapping;
+
+    /**
+     * The character codes of all glyphs, grouped by glyph id and sorted.
+     */
+    private static final class ReverseMapping
+    {
+        // the character codes of glyph id g are codes[offsets[g]] to codes[offsets[g + 1] - 1]
+        private final int[] offsets;
+        private final int[] codes;
+
+        private ReverseMapping(int[] offsets, int[] codes)
+        {
+            this.offsets = offsets;
+            this.codes = codes;
+        }
+    }
 
     /**
      * This will read the required data from the stream.
@@ -139,8 +176,7 @@ public class CmapSubtable implements CmapLookup
             throw new IOException("CMap ( Subtype8 ) is invalid");
         }
 
-        glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<>(numGlyphs);
+        lastCharacterCodeOnly = true;
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -197,10 +233,10 @@ public class CmapSubtable implements CmapLookup
                     throw new IOException("CMap contains an invalid glyph index");
                 }
 
-                glyphIdToCharacterCode[(int) glyphIndex] = currentCharCode;
-                characterCodeToGlyphId.put(currentCharCode, (int) glyphIndex);
+                addSegment(currentCharCode, currentCharCode, SEGMENT_CONSTANT, (int) glyphIndex);
             }
         }
+        finishSegments();
     }
 
     /**
@@ -237,10 +273,7 @@ public class CmapSubtable implements CmapLookup
      */
     void processSubtype12(TTFDataStream data, int numGlyphs) throws IOException
     {
-        int maxGlyphId = 0;
         long nbGroups = data.readUnsignedInt();
-        glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<>(numGlyphs);
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -265,25 +298,25 @@ public class CmapSubtable implements CmapLookup
                 throw new IOException("Invalid character code " + String.format("0x%X", endCode));
             }
 
-            for (long j = 0; j <= endCode - firstCode; ++j)
+            if (endCode < firstCode)
             {
-                long glyphIndex = startGlyph + j;
-                if (glyphIndex >= numGlyphs)
-                {
-                    LOG.warn("Format 12 cmap contains an invalid glyph index");
-                    break;
-                }
-
-                if (firstCode + j > 0x10FFFF)
+                continue;
+            }
+            // the group ends at the first invalid glyph index
+            long lastCode = endCode;
+            if (startGlyph + endCode - firstCode >= numGlyphs)
+            {
+                LOG.warn("Format 12 cmap contains an invalid glyph index");
+                if (startGlyph >= numGlyphs)
                 {
-                    LOG.warn("Format 12 cmap contains character beyond UCS-4");
+                    continue;
                 }
-
-                maxGlyphId = Math.max(maxGlyphId, (int) glyphIndex);
-                characterCodeToGlyphId.put((int) (firstCode + j), (int) glyphIndex);
+                lastCode = firstCode + numGlyphs - 1 - startGlyph;
             }
+            addSegment((int) firstCode, (int) lastCode, SEGMENT_DELTA,
+                    (int) (startGlyph - firstCode));
         }
-        buildGlyphIdToCharacterCodeLookup(maxGlyphId);
+        finishSegments();
     }
 
     /**
@@ -296,8 +329,7 @@ public class CmapSubtable implements CmapLookup
     void processSubtype13(TTFDataStream data, int numGlyphs) throws IOException
     {
         long nbGroups = data.readUnsignedInt();
-        glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<>(numGlyphs);
+        lastCharacterCodeOnly = true;
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -326,22 +358,12 @@ public class CmapSubtable implements CmapLookup
                 throw new IOException("Invalid character code " + String.format("0x%X", endCode));
             }
 
-            for (long j = 0; j <= endCode - firstCode; ++j)
+            if (endCode >= firstCode)
             {
-                if (firstCode + j > Integer.MAX_VALUE)
-                {
-                    throw new IOException("Character Code greater than Integer.MAX_VALUE");
-                }
-
-                if (firstCode + j > 0x10FFFF)
-                {
-                    LOG.warn("Format 13 cmap contains character beyond UCS-4");
-                }
-
-                glyphIdToCharacterCode[(int) glyphId] = (int) (firstCode + j);
-                characterCodeToGlyphId.put((int) (firstCode + j), (int) glyphId);
+                addSegment((int) firstCode, (int) endCode, SEGMENT_CONSTANT, (int) glyphId);
             }
         }
+        finishSegments();
     }
 
     /**
@@ -374,15 +396,10 @@ public class CmapSubtable implements CmapLookup
         {
             return;
         }
-        characterCodeToGlyphId = new HashMap<>(numGlyphs);
-        int[] glyphIdArray = data.readUnsignedShortArray(entryCount);
-        int maxGlyphId = 0;
-        for (int i = 0; i < entryCount; i++)
-        {
-            maxGlyphId = Math.max(maxGlyphId, glyphIdArray[i]);
-            characterCodeToGlyphId.put(firstCode + i, glyphIdArray[i]);
-        }
-        buildGlyphIdToCharacterCodeLookup(maxGlyphId);
+        int[] glyphIds = data.readUnsignedShortArray(entryCount);
+        addSegment(firstCode, firstCode + entryCount - 1, SEGMENT_ARRAY,
+                addGlyphIds(glyphIds, entryCount));
+        finishSegments();
     }
 
     /**
@@ -406,9 +423,6 @@ public class CmapSubtable implements CmapLookup
         long idRangeOffsetPosition = data.getCurrentPosition();
         int[] idRangeOffset = data.readUnsignedShortArray(segCount);
 
-        characterCodeToGlyphId = new HashMap<>(numGlyphs);
-        int maxGlyphId = 0;
-
         for (int i = 0; i < segCount; i++)
         {
             int start = startCount[i];
@@ -416,69 +430,32 @@ public class CmapSubtable implements CmapLookup
             int delta = idDelta[i];
             int rangeOffset = idRangeOffset[i];
             long segmentRangeOffset = idRangeOffsetPosition + (i * 2L) + rangeOffset;
-            if (start != 65535 && end != 65535)
+            if (start != 65535 && end != 65535 && start <= end)
             {
-                for (int j = start; j <= end; j++)
+                if (rangeOffset == 0)
                 {
-                    if (rangeOffset == 0)
-                    {
-                        int glyphid = (j + delta) & 0xFFFF;
-                        maxGlyphId = Math.max(glyphid, maxGlyphId);
-                        characterCodeToGlyphId.put(j, glyphid);
-                    }
-                    else
+                    addSegment(start, end, SEGMENT_DELTA, delta);
+                }
+                else
+                {
+                    data.seek(segmentRangeOffset);
+                    int[] glyphIds = data.readUnsignedShortArray(end - start + 1);
+                    for (int j = 0; j < glyphIds.length; j++)
                     {
-                        long glyphOffset = segmentRangeOffset + ((j - start) * 2L);
-                        data.seek(glyphOffset);
-                        int glyphIndex = data.readUnsignedShort();
-                        if (glyphIndex != 0)
-                        {
-                            glyphIndex = (glyphIndex + delta) & 0xFFFF;
-                            maxGlyphId = Math.max(glyphIndex, maxGlyphId);
-                            characterCodeToGlyphId.put(j, glyphIndex);
-                        }
+                        // glyph index 0 means that the character code isn't mapped
+                        glyphIds[j] = glyphIds[j] != 0 ? (glyphIds[j] + delta) & 0xFFFF : -1;
                     }
+                    addSegment(start, end, SEGMENT_ARRAY, addGlyphIds(glyphIds, glyphIds.length));
                 }
             }
         }
 
-        /*
-         * this is the final result key=glyphId, value is character codes Create an array that contains MAX(GlyphIds)
-         * element, or -1
-         */
-        if (characterCodeToGlyphId.isEmpty())
+        if (segmentCount == 0)
         {
             LOG.warn("cmap format 4 subtable is empty");
             return;
         }
-        buildGlyphIdToCharacterCodeLookup(maxGlyphId);
-    }
-
-    private void buildGlyphIdToCharacterCodeLookup(int maxGlyphId)
-    {
-        glyphIdToCharacterCode = newGlyphIdToCharacterCode(maxGlyphId + 1);
-        characterCodeToGlyphId.forEach((key, value) ->
-        {
-            if (glyphIdToCharacterCode[value] == -1)
-            {
-                // add new value to the array
-                glyphIdToCharacterCode[value] = key;
-            }
-            else
-            {
-                // there is already a mapping for the given glyphId
-                List<Integer> mappedValues = glyphIdToCharacterCodeMultiple.get(value);
-                if (mappedValues == null)
-                {
-                    mappedValues = new ArrayList<>(2);
-                    glyphIdToCharacterCodeMultiple.put(value, mappedValues);
-                    mappedValues.add(glyphIdToCharacterCode[value]);
-                    // mark value as multiple mapping
-                    glyphIdToCharacterCode[value] = Integer.MIN_VALUE;
-                }
-                mappedValues.add(key);
-            }
-        });
+        finishSegments();
     }
 
     /**
@@ -510,8 +487,7 @@ public class CmapSubtable implements CmapLookup
             subHeaders[i] = new SubHeader(firstCode, entryCount, idDelta, idRangeOffset);
         }
         long startGlyphIndexOffset = data.getCurrentPosition();
-        glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<>(numGlyphs);
+        lastCharacterCodeOnly = true;
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -525,6 +501,7 @@ public class CmapSubtable implements CmapLookup
             int idDelta = sh.getIdDelta();
             int entryCount = sh.getEntryCount();
             data.seek(startGlyphIndexOffset + idRangeOffset);
+            int[] glyphIds = new int[entryCount];
             for (int j = 0; j < entryCount; ++j)
             {
                 // ---- compute the Character Code
@@ -549,13 +526,19 @@ public class CmapSubtable implements CmapLookup
                 if (p >= numGlyphs)
                 {
                     LOG.warn("glyphId " + p + " for charcode " + charCode + " ignored, numGlyphs is " + numGlyphs);
-                    continue;
+                    p = -1;
                 }
                 
-                glyphIdToCharacterCode[p] = charCode;
-                characterCodeToGlyphId.put(charCode, p);
+                glyphIds[j] = p;
+            }
+            if (entryCount > 0)
+            {
+                int charCode = (i << 8) + firstCode;
+                addSegment(charCode, charCode + entryCount - 1, SEGMENT_ARRAY,
+                        addGlyphIds(glyphIds, entryCount));
             }
         }
+        finishSegments();
     }
 
     /**
@@ -567,25 +550,160 @@ public class CmapSubtable implements CmapLookup
     void processSubtype0(TTFDataStream data) throws IOException
     {
         byte[] glyphMapping = data.read(256);
-        glyphIdToCharacterCode = newGlyphIdToCharacterCode(256);
-        characterCodeToGlyphId = new HashMap<>(glyphMapping.length);
+        int[] glyphIds = new int[glyphMapping.length];
         for (int i = 0; i < glyphMapping.length; i++)
         {
-            int glyphIndex = glyphMapping[i] & 0xFF;
-            glyphIdToCharacterCode[glyphIndex] = i;
-            characterCodeToGlyphId.put(i, glyphIndex);
+            glyphIds[i] = glyphMapping[i] & 0xFF;
         }
+        lastCharacterCodeOnly = true;
+        addSegment(0, glyphIds.length - 1, SEGMENT_ARRAY, addGlyphIds(glyphIds, glyphIds.length));
+        finishSegments();
     }
 
     /**
-     * Workaround for the fact that glyphIdToCharacterCode doesn't distinguish between
-     * missing character codes and code 0.
+     * Appends a segment of consecutive character codes.
      */
-    private int[] newGlyphIdToCharacterCode(int size)
+    private void addSegment(int start, int end, byte type, int value)
     {
-        int[] gidToCode = new int[size];
-        Arrays.fill(gidToCode, -1);
-        return gidToCode;
+        if (segmentCount == segmentStart.length)
+        {
+            int capacity = Math.max(16, segmentCount * 2);
+            segmentStart = Arrays.copyOf(segmentStart, capacity);
+            segmentEnd = Arrays.copyOf(segmentEnd, capacity);
+            segmentType = Arrays.copyOf(segmentType, capacity);
+            segmentValue = Arrays.copyOf(segmentValue, capacity);
+        }
+        segmentStart[segmentCount] = start;
+        segmentEnd[segmentCount] = end;
+        segmentType[segmentCount] = type;
+        segmentValue[segmentCount] = value;
+        segmentCount++;
+    }
+
+    /**
+     * Appends glyph ids to the glyph id array of the segments.
+     *
+     * @return the index of the first glyph id within the array
+     */
+    private int addGlyphIds(int[] glyphIds, int length)
+    {
+        int index = glyphIdArrayLength;
+        if (index + length > glyphIdArray.length)
+        {
+            glyphIdArray = Arrays.copyOf(glyphIdArray,
+                    Math.max(index + length, glyphIdArray.length * 2));
+        }
+        System.arraycopy(glyphIds, 0, glyphIdArray, index, length);
+        glyphIdArrayLength += length;
+        return index;
+    }
+
+    /**
+     * Sorts the segments by character code, so that they can be searched, unless they overlap.
+     */
+    private void finishSegments()
+    {
+        boolean sorted = true;
+        for (int i = 1; i < segmentCount && sorted; i++)
+        {
+            sorted = segmentStart[i] > segmentEnd[i - 1];
+        }
+        if (!sorted)
+        {
+            long[] order = new long[segmentCount];
+            for (int i = 0; i < segmentCount; i++)
+            {
+                order[i] = (long) segmentStart[i] << 32 | i;
+            }
+            Arrays.sort(order);
+            overlapping = false;
+            for (int i = 1; i < segmentCount && !overlapping; i++)
+            {
+                overlapping = segmentStart[(int) order[i]] <= segmentEnd[(int) order[i - 1]];
+            }
+            if (!overlapping)
+            {
+                segmentStart = reorder(segmentStart, order);
+                segmentEnd = reorder(segmentEnd, order);
+                segmentValue = reorder(segmentValue, order);
+                byte[] types = new byte[segmentCount];
+                for (int i = 0; i < segmentCount; i++)
+                {
+                    types[i] = segmentType[(int) order[i]];
+                }
+                segmentType = types;
+            }
+        }
+        if (glyphIdArrayLength < glyphIdArray.length)
+        {
+            glyphIdArray = Arrays.copyOf(glyphIdArray, glyphIdArrayLength);
+        }
+    }
+
+    private int[] reorder(int[] values, long[] order)
+    {
+        int[] reordered = new int[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            reordered[i] = values[(int) order[i]];
+        }
+        return reordered;
+    }
+
+    /**
+     * Returns the segment for the given character code, or -1 if there is none.
+     */
+    private int findSegment(int characterCode)
+    {
+        if (overlapping)
+        {
+            for (int i = segmentCount - 1; i >= 0; i--)
+            {
+                // an unmapped character code doesn't hide the mapping of an earlier segment
+                if (characterCode >= segmentStart[i] && characterCode <= segmentEnd[i]
+                        && getGlyphId(i, characterCode) >= 0)
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int low = 0;
+        int high = segmentCount - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            if (segmentEnd[mid] < characterCode)
+            {
+                low = mid + 1;
+            }
+            else if (segmentStart[mid] > characterCode)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the glyph id of a character code within the given segment, or -1 if the character
+     * code isn't mapped.
+     */
+    private int getGlyphId(int segment, int characterCode)
+    {
+        switch (segmentType[segment])
+        {
+            case SEGMENT_DELTA:
+                return (characterCode + segmentValue[segment]) & 0xFFFF;
+            case SEGMENT_CONSTANT:
+                return segmentValue[segment];
+            default:
+                return glyphIdArray[segmentValue[segment] + characterCode - segmentStart[segment]];
+        }
     }
 
     /**
@@ -629,17 +747,87 @@ public class CmapSubtable implements CmapLookup
     @Override
     public int getGlyphId(int characterCode)
     {
-        Integer glyphId = characterCodeToGlyphId.get(characterCode);
-        return glyphId == null ? 0 : glyphId;
+        int segment = findSegment(characterCode);
+        if (segment < 0)
+        {
+            return 0;
+        }
+        return Math.max(getGlyphId(segment, characterCode), 0);
     }
 
-    private int getCharCode(int gid)
+    private ReverseMapping getReverseMapping()
     {
-        if (gid < 0 || glyphIdToCharacterCode == null || gid >= glyphIdToCharacterCode.length)
+        ReverseMapping mapping = reverseMapping;
+        if (mapping == null)
+        {
+            mapping = buildReverseMapping();
+            reverseMapping = mapping;
+        }
+        return mapping;
+    }
+
+    private ReverseMapping buildReverseMapping()
+    {
+        // count the character codes of each glyph, then fill them in, in ascending order if the
+        // segments are sorted
+        int maxGlyphId = -1;
+        int[] counts = new int[1];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            for (int code = segmentStart[i]; code <= segmentEnd[i] && code >= segmentStart[i]; code++)
+            {
+                int gid = getReverseGlyphId(i, code);
+                if (gid >= 0)
+                {
+                    if (gid >= counts.length - 1)
+                    {
+                        counts = Arrays.copyOf(counts, Math.max(gid + 2, counts.length * 2));
+                    }
+                    counts[gid + 1]++;
+                    maxGlyphId = Math.max(maxGlyphId, gid);
+                }
+            }
+        }
+        int[] offsets = Arrays.copyOf(counts, maxGlyphId + 2);
+        for (int gid = 1; gid < offsets.length; gid++)
+        {
+            offsets[gid] += offsets[gid - 1];
+        }
+        int[] codes = new int[offsets[offsets.length - 1]];
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int i = 0; i < segmentCount; i++)
+        {
+            for (int code = segmentStart[i]; code <= segmentEnd[i] && code >= segmentStart[i]; code++)
+            {
+                int gid = getReverseGlyphId(i, code);
+                if (gid >= 0)
+                {
+                    codes[next[gid]++] = code;
+                }
+            }
+        }
+        if (overlapping)
+        {
+            // segments in file order
+            for (int gid = 0; gid <= maxGlyphId; gid++)
+            {
+                Arrays.sort(codes, offsets[gid], offsets[gid + 1]);
+            }
+        }
+        return new ReverseMapping(offsets, codes);
+    }
+
+    /**
+     * Returns the glyph id of a character code within the given segment, or -1 if the character
+     * code isn't mapped or is mapped by a later overlapping segment.
+     */
+    private int getReverseGlyphId(int segment, int characterCode)
+    {
+        if (overlapping && findSegment(characterCode) != segment)
         {
             return -1;
         }
-        return glyphIdToCharacterCode[gid];
+        return getGlyphId(segment, characterCode);
     }
 
     /**
@@ -652,25 +840,26 @@ public class CmapSubtable implements CmapLookup
     @Override
     public List<Integer> getCharCodes(int gid)
     {
-        int code = getCharCode(gid);
-        if (code == -1)
+        ReverseMapping mapping = getReverseMapping();
+        if (gid < 0 || gid >= mapping.offsets.length - 1)
         {
             return null;
         }
-        List<Integer> codes = null;
-        if (code == Integer.MIN_VALUE)
+        int start = mapping.offsets[gid];
+        int end = mapping.offsets[gid + 1];
+        if (start == end)
         {
-            List<Integer> mappedValues = glyphIdToCharacterCodeMultiple.get(gid);
-            if (mappedValues != null)
-            {
-                codes = new ArrayList<>(mappedValues);
-                // sort the list to provide a reliable order
-                Collections.sort(codes);
-            }
+            return null;
         }
-        else
+        if (end - start == 1 || lastCharacterCodeOnly)
+        {
+            return Collections.singletonList(mapping.codes[end - 1]);
+        }
+        // the codes are sorted to provide a reliable order
+        List<Integer> codes = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++)
         {
-            codes = Collections.singletonList(code);
+            codes.add(mapping.codes[i]);
         }
         return codes;
     }
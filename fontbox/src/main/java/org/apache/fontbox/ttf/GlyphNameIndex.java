@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.ttf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable map from glyph names to GIDs, implemented as a perfect hash. A lookup
+ * computes one slot from the cached hash code of the name and compares a single name, without
+ * boxing the GID.
+ *
+ * <p>The names are distributed to buckets, and each bucket gets a seed which maps its names to
+ * free slots of a table with at most twice as many slots as names. Buckets with a single name
+ * simply store the slot. Names whose hash codes collide can't be separated by any seed and are
+ * kept in a small overflow map.</p>
+ */
+final class GlyphNameIndex
+{
+    // give up on a bucket after this many seeds, which only happens for colliding hash codes
+    private static final int MAX_SEED = 1 << 12;
+
+    private final String[] names;
+    private final int[] gids;
+    private final int[] seeds;
+    private final Map<String, Integer> overflow;
+
+    /**
+     * Creates the index for the given glyph names. If a name is used for several glyphs, the
+     * last GID wins.
+     *
+     * @param glyphNames the glyph names, indexed by GID
+     */
+    GlyphNameIndex(String[] glyphNames)
+    {
+        Map<String, Integer> unique = new HashMap<>(glyphNames.length);
+        for (int gid = 0; gid < glyphNames.length; gid++)
+        {
+            if (glyphNames[gid] != null)
+            {
+                unique.put(glyphNames[gid], gid);
+            }
+        }
+        int size = unique.size();
+        // power of two sizes allow masking instead of a division
+        names = new String[Integer.highestOneBit(Math.max(size, 1) * 2 - 1)];
+        gids = new int[names.length];
+        seeds = new int[Math.max(names.length / 2, 1)];
+
+        List<List<String>> buckets = new ArrayList<>(seeds.length);
+        for (int i = 0; i < seeds.length; i++)
+        {
+            buckets.add(new ArrayList<>(2));
+        }
+        for (String name : unique.keySet())
+        {
+            buckets.get(bucket(name.hashCode())).add(name);
+        }
+        Integer[] order = new Integer[seeds.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+        }
+        // place the largest buckets first, while there are many free slots
+        Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+
+        Map<String, Integer> overflowNames = null;
+        int freeSlot = 0;
+        int[] slots = new int[0];
+        for (int b : order)
+        {
+            List<String> bucket = buckets.get(b);
+            if (bucket.isEmpty())
+            {
+                break;
+            }
+            if (bucket.size() == 1)
+            {
+                while (names[freeSlot] != null)
+                {
+                    freeSlot++;
+                }
+                seeds[b] = -freeSlot - 1;
+                names[freeSlot] = bucket.get(0);
+                gids[freeSlot] = unique.get(bucket.get(0));
+                continue;
+            }
+            if (slots.length < bucket.size())
+            {
+                slots = new int[bucket.size()];
+            }
+            int seed = findSeed(bucket, slots);
+            if (seed == 0)
+            {
+                if (overflowNames == null)
+                {
+                    overflowNames = new HashMap<>();
+                }
+                for (String name : bucket)
+                {
+                    overflowNames.put(name, unique.get(name));
+                }
+                continue;
+            }
+            seeds[b] = seed;
+            for (int i = 0; i < bucket.size(); i++)
+            {
+                names[slots[i]] = bucket.get(i);
+                gids[slots[i]] = unique.get(bucket.get(i));
+            }
+        }
+        overflow = overflowNames != null ? overflowNames : Collections.emptyMap();
+    }
+
+    /**
+     * Returns the GID for the given glyph name.
+     *
+     * @param name the glyph name
+     * @return the GID or -1 if there is no glyph with that name
+     */
+    int getGID(String name)
+    {
+        int hash = name.hashCode();
+        int seed = seeds[bucket(hash)];
+        int slot = seed < 0 ? -seed - 1 : slot(hash, seed);
+        if (name.equals(names[slot]))
+        {
+            return gids[slot];
+        }
+        Integer gid = overflow.get(name);
+        return gid != null ? gid : -1;
+    }
+
+    private int findSeed(List<String> bucket, int[] slots)
+    {
+        for (int seed = 1; seed < MAX_SEED; seed++)
+        {
+            boolean free = true;
+            for (int i = 0; i < bucket.size() && free; i++)
+            {
+                int slot = slot(bucket.get(i).hashCode(), seed);
+                free = names[slot] == null;
+                for (int j = 0; j < i && free; j++)
+                {
+                    free = slots[j] != slot;
+                }
+                slots[i] = slot;
+            }
+            if (free)
+            {
+                return seed;
+            }
+        }
+        return 0;
+    }
+
+    private int bucket(int hash)
+    {
+        return mix(hash) & (seeds.length - 1);
+    }
+
+    private int slot(int hash, int seed)
+    {
+        return mix(hash ^ seed * 0x9E3779B9) & (names.length - 1);
+    }
+
+    // finalization mix of MurmurHash3
+    private static int mix(int hash)
+    {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
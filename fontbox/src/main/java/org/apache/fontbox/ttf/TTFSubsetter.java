@@ -16,33 +16,35 @@
  */
 package org.apache.fontbox.ttf;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.DataOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.SortedSet;
 import java.util.TimeZone;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import org.apache.logging.Log;
 import org.apache.logging.LogFactory;
 
 /**
  * Subsetter for TrueType (TTF) fonts.
  *
+ * <p>The size and the checksum of every table are computed before anything is written, so that
+ * the glyphs can be copied from the original font straight into the output, without building the
+ * 'glyf' table in memory. Glyph ids are kept in bit sets.</p>
+ *
  * <p>Originally developed by Wolfgang Glas for
  * <a href="https://clazzes.org/display/SKETCH/Clazzes.org+Sketch+Home">Sketch</a>.
  *
@@ -58,13 +60,43 @@ public final class TTFSubsetter
 
     private final TrueTypeFont ttf;
     private final CmapLookup unicodeCmap;
-    private final SortedMap<Integer, Integer> uniToGID;
+
+    // code point << 32 | GID, in the order of addition
+    private long[] uniToGID = new long[64];
+    private int uniToGIDCount;
 
     private final List<String> keepTables;
-    private final SortedSet<Integer> glyphIds; // new glyph ids
+    private final BitSet glyphIds = new BitSet(); // old glyph ids
     private String prefix;
     private boolean hasAddedCompoundReferences;
 
+    // the compound glyphs of the subset by old GID, without trailing padding
+    private final Map<Integer, byte[]> compoundGlyphs = new HashMap<>();
+    // copies of the compound glyphs using the new GIDs, rebuilt for every write
+    private final Map<Integer, byte[]> newCompoundGlyphs = new HashMap<>();
+
+    /**
+     * A table of the subset, with its data or, for the 'glyf' table, only its size.
+     */
+    private static final class Table
+    {
+        private final byte[] data;
+        private final long length;
+        private final long checksum;
+
+        private Table(byte[] data)
+        {
+            this(data, data.length, checksum(data, data.length));
+        }
+
+        private Table(byte[] data, long length, long checksum)
+        {
+            this.data = data;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
     /**
      * Creates a subsetter for the given font.
      *
@@ -90,14 +122,11 @@ public final class TTFSubsetter
         this.ttf = ttf;
         this.keepTables = tables;
 
-        uniToGID = new TreeMap<>();
-        glyphIds = new TreeSet<>();
-
         // find the best Unicode cmap
         this.unicodeCmap = ttf.getUnicodeCmapLookup();
 
         // always copy GID 0
-        glyphIds.add(0);
+        glyphIds.set(0);
     }
 
     /**
@@ -120,8 +149,12 @@ public final class TTFSubsetter
         int gid = unicodeCmap.getGlyphId(unicode);
         if (gid != 0)
         {
-            uniToGID.put(unicode, gid);
-            glyphIds.add(gid);
+            if (uniToGIDCount == uniToGID.length)
+            {
+                uniToGID = Arrays.copyOf(uniToGID, uniToGIDCount * 2);
+            }
+            uniToGID[uniToGIDCount++] = (long) unicode << 32 | gid;
+            glyphIds.set(gid);
         }
     }
 
@@ -135,6 +168,16 @@ public final class TTFSubsetter
         unicodeSet.forEach(this::add);
     }
 
+    /**
+     * Add the given glyph ids to the subset.
+     *
+     * @param allGlyphIds glyph id set
+     */
+    public void addGlyphIds(Set<Integer> allGlyphIds)
+    {
+        allGlyphIds.forEach(glyphIds::set);
+    }
+
     /**
      * Returns the map of new -&gt; old GIDs.
      * 
@@ -148,7 +191,8 @@ public final class TTFSubsetter
 
         Map<Integer, Integer> newToOld = new HashMap<>();
         int newGID = 0;
-        for (int oldGID : glyphIds)
+        for (int oldGID = glyphIds.nextSetBit(0); oldGID >= 0;
+                oldGID = glyphIds.nextSetBit(oldGID + 1))
         {
             newToOld.put(newGID, oldGID);
             newGID++;
@@ -182,25 +226,18 @@ public final class TTFSubsetter
         return 0x00010000L + toUInt32(nTables, searchRange) + toUInt32(entrySelector, last);
     }
         
-    private long writeTableHeader(DataOutputStream out, String tag, long offset, byte[] bytes)
+    private long writeTableHeader(DataOutputStream out, String tag, long offset, Table table)
             throws IOException 
     {
-        long checksum = 0;
-        for (int nup = 0, n = bytes.length; nup < n; nup++)
-        {
-            checksum += (bytes[nup] & 0xffL) << 24 - nup % 4 * 8;
-        }
-        checksum &= 0xffffffffL;
-
         byte[] tagbytes = tag.getBytes(StandardCharsets.US_ASCII);
 
         out.write(tagbytes, 0, 4);
-        out.writeInt((int)checksum);
-        out.writeInt((int)offset);
-        out.writeInt(bytes.length);
+        out.writeInt((int) table.checksum);
+        out.writeInt((int) offset);
+        out.writeInt((int) table.length);
 
         // account for the checksum twice, once for the header field, once for the content itself
-        return toUInt32(tagbytes) + checksum + checksum + offset + bytes.length;
+        return toUInt32(tagbytes) + table.checksum + table.checksum + offset + table.length;
     }
 
     private void writeTableBody(OutputStream os, byte[] bytes) throws IOException
@@ -213,10 +250,22 @@ public final class TTFSubsetter
         }
     }
 
+    /**
+     * Returns the checksum of table data starting at a 4 byte boundary.
+     */
+    private static long checksum(byte[] bytes, int length)
+    {
+        long checksum = 0;
+        for (int nup = 0; nup < length; nup++)
+        {
+            checksum += (bytes[nup] & 0xffL) << 24 - nup % 4 * 8;
+        }
+        return checksum & 0xffffffffL;
+    }
+
     private byte[] buildHeadTable() throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
+        ByteBuffer out = ByteBuffer.allocate(54);
 
         HeaderTable h = ttf.getHeader();
         writeFixed(out, h.getVersion());
@@ -237,15 +286,13 @@ public final class TTFSubsetter
         // force long format of 'loca' table
         writeSInt16(out, (short)1); // h.getIndexToLocFormat()
         writeSInt16(out, h.getGlyphDataFormat());
-        out.flush();
 
-        return bos.toByteArray();
+        return out.array();
     }
 
     private byte[] buildHheaTable() throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
+        ByteBuffer out = ByteBuffer.allocate(36);
 
         HorizontalHeaderTable h = ttf.getHorizontalHeader();
         writeFixed(out, h.getVersion());
@@ -267,15 +314,15 @@ public final class TTFSubsetter
 
         // is there a GID >= numberOfHMetrics ? Then keep the last entry of original hmtx table,
         // (add if it isn't in our set of GIDs), see also in buildHmtxTable()
-        int hmetrics = glyphIds.subSet(0, h.getNumberOfHMetrics()).size();
-        if (glyphIds.last() >= h.getNumberOfHMetrics() && !glyphIds.contains(h.getNumberOfHMetrics()-1))
+        int numberOfHMetrics = h.getNumberOfHMetrics();
+        int hmetrics = glyphIds.get(0, numberOfHMetrics).cardinality();
+        if (glyphIds.length() - 1 >= numberOfHMetrics && !glyphIds.get(numberOfHMetrics - 1))
         {
             ++hmetrics;
         }
         writeUint16(out, hmetrics);
 
-        out.flush();
-        return bos.toByteArray();
+        return out.array();
     }
 
     private boolean shouldCopyNameRecord(NameRecord nr)
@@ -288,9 +335,6 @@ public final class TTFSubsetter
 
     private byte[] buildNameTable() throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         NamingTable name = ttf.getNaming();
         if (name == null || keepTables != null && !keepTables.contains(NamingTable.TAG))
         {
@@ -299,16 +343,13 @@ public final class TTFSubsetter
 
         List<NameRecord> nameRecords = name.getNameRecords();
         int numRecords = (int) nameRecords.stream().filter(this::shouldCopyNameRecord).count();
-        writeUint16(out, 0);
-        writeUint16(out, numRecords);
-        writeUint16(out, 2*3 + 2*6 * numRecords);
-
         if (numRecords == 0)
         {
             return null;
         }
 
         byte[][] names = new byte[numRecords][];
+        int size = 2 * 3 + 2 * 6 * numRecords;
         int j = 0;
         for (NameRecord nameRecord : nameRecords)
         {
@@ -341,10 +382,16 @@ public final class TTFSubsetter
                     value = prefix + value;
                 }
                 names[j] = value.getBytes(charset);
+                size += names[j].length;
                 j++;
             }
         }
 
+        ByteBuffer out = ByteBuffer.allocate(size);
+        writeUint16(out, 0);
+        writeUint16(out, numRecords);
+        writeUint16(out, 2*3 + 2*6 * numRecords);
+
         int offset = 0;
         j = 0;
         for (NameRecord nr : nameRecords)
@@ -364,21 +411,19 @@ public final class TTFSubsetter
 
         for (int i = 0; i < numRecords; i++)
         {
-            out.write(names[i]);
+            out.put(names[i]);
         }
 
-        out.flush();
-        return bos.toByteArray();
+        return out.array();
     }
 
     private byte[] buildMaxpTable() throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         MaximumProfileTable p = ttf.getMaximumProfile();
+        ByteBuffer out = ByteBuffer.allocate(p.getVersion() >= 1.0f ? 32 : 6);
+
         writeFixed(out, p.getVersion());
-        writeUint16(out, glyphIds.size());
+        writeUint16(out, glyphIds.cardinality());
         if (p.getVersion() >= 1.0f)
         {
             writeUint16(out, p.getMaxPoints());
@@ -395,21 +440,21 @@ public final class TTFSubsetter
             writeUint16(out, p.getMaxComponentElements());
             writeUint16(out, p.getMaxComponentDepth());
         }
-        out.flush();
-        return bos.toByteArray();
+        return out.array();
     }
 
-    private byte[] buildOS2Table() throws IOException
+    private byte[] buildOS2Table(long[] mappings) throws IOException
     {
         OS2WindowsMetricsTable os2 = ttf.getOS2Windows();
-        if (os2 == null || uniToGID.isEmpty()
+        if (os2 == null || mappings.length == 0
                 || keepTables != null && !keepTables.contains(OS2WindowsMetricsTable.TAG))
         {
             return null;
         }
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
+        byte[] panose = os2.getPanose();
+        byte[] achVendId = os2.getAchVendId().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer out = ByteBuffer.allocate(64 + panose.length + achVendId.length);
 
         writeUint16(out, os2.getVersion());
         writeSInt16(out, os2.getAverageCharWidth());
@@ -431,45 +476,44 @@ public final class TTFSubsetter
         writeSInt16(out, os2.getStrikeoutSize());
         writeSInt16(out, os2.getStrikeoutPosition());
         writeSInt16(out, (short)os2.getFamilyClass());
-        out.write(os2.getPanose());
+        out.put(panose);
 
         writeUint32(out, 0);
         writeUint32(out, 0);
         writeUint32(out, 0);
         writeUint32(out, 0);
 
-        out.write(os2.getAchVendId().getBytes(StandardCharsets.US_ASCII));
+        out.put(achVendId);
 
         writeUint16(out, os2.getFsSelection());
-        writeUint16(out, uniToGID.firstKey());
-        writeUint16(out, uniToGID.lastKey());
+        writeUint16(out, unicode(mappings[0]));
+        writeUint16(out, unicode(mappings[mappings.length - 1]));
         writeUint16(out, os2.getTypoAscender());
         writeUint16(out, os2.getTypoDescender());
         writeUint16(out, os2.getTypoLineGap());
         writeUint16(out, os2.getWinAscent());
         writeUint16(out, os2.getWinDescent());
 
-        out.flush();
-        return bos.toByteArray();
+        return out.array();
     }
 
     // never returns null
-    private byte[] buildLocaTable(long[] newOffsets) throws IOException
+    private byte[] buildLocaTable(long[] newOffsets)
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
+        ByteBuffer out = ByteBuffer.allocate(newOffsets.length * 4);
 
         for (long offset : newOffsets)
         {
             writeUint32(out, offset);
         }
 
-        out.flush();
-        return bos.toByteArray();
+        return out.array();
     }
 
     /**
-     * Resolve compound glyph references.
+     * Resolve compound glyph references. The glyphs are read in the order of the original font,
+     * components with a higher GID are picked up by the same pass, only components with a lower
+     * GID need another one.
      */
     private void addCompoundReferences() throws IOException
     {
@@ -479,309 +523,305 @@ public final class TTFSubsetter
         }
         hasAddedCompoundReferences = true;
 
+        BitSet scanned = new BitSet();
+        byte[] header = new byte[2];
         boolean hasNested;
-        GlyphTable g = ttf.getGlyph();
-        long[] offsets = ttf.getIndexToLocation().getOffsets();
         do
         {
-            Set<Integer> glyphIdsToAdd = null;
-            try (InputStream is = ttf.getOriginalData())
+            hasNested = false;
+            try (GlyphReader reader = new GlyphReader())
             {
-                long isResult = is.skip(g.getOffset());
-
-                if (Long.compare(isResult, g.getOffset()) != 0)
-                {
-                    LOG.debug("Tried skipping " + g.getOffset() + " bytes but skipped only " + isResult + " bytes");
-                }
-
-                long lastOff = 0L;
-                for (Integer glyphId : glyphIds)
+                for (int glyphId = glyphIds.nextSetBit(0); glyphId >= 0;
+                        glyphId = glyphIds.nextSetBit(glyphId + 1))
                 {
-                    long offset = offsets[glyphId];
-                    long len = offsets[glyphId + 1] - offset;
-                    isResult = is.skip(offset - lastOff);
-                    
-                    if (Long.compare(isResult, offset - lastOff) != 0)
+                    if (scanned.get(glyphId))
                     {
-                        LOG.debug("Tried skipping " + (offset - lastOff) + " bytes but skipped only " + isResult + " bytes");
+                        continue;
                     }
-
-                    byte[] buf = new byte[(int)len];
-                    isResult = is.read(buf);
-
-                    if (Long.compare(isResult, len) != 0)
+                    scanned.set(glyphId);
+                    int length = reader.getLength(glyphId);
+                    if (length < 2)
+                    {
+                        continue;
+                    }
+                    reader.read(glyphId, header, 2);
+                    if (header[0] != -1 || header[1] != -1)
                     {
-                        LOG.debug("Tried reading " + len + " bytes but only " + isResult + " bytes read");
+                        continue;
                     }
-                    
-                    // rewrite glyphIds for compound glyphs
-                    if (buf.length >= 2 && buf[0] == -1 && buf[1] == -1)
+                    byte[] buf = new byte[length];
+                    reader.read(glyphId, buf, length);
+                    int end = readCompoundGlyph(buf, false);
+                    compoundGlyphs.put(glyphId, end < length ? Arrays.copyOf(buf, end) : buf);
+
+                    int off = 2 * 5;
+                    int flags;
+                    do
                     {
-                        int off = 2*5;
-                        int flags;
-                        do
+                        flags = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+                        int componentGid = (buf[off + 2] & 0xff) << 8 | buf[off + 3] & 0xff;
+                        if (!glyphIds.get(componentGid))
                         {
-                            flags = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                            off +=2;
-                            int ogid = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                            if (!glyphIds.contains(ogid))
-                            {
-                                if (glyphIdsToAdd == null)
-                                {
-                                    glyphIdsToAdd = new TreeSet<>();
-                                }
-                                glyphIdsToAdd.add(ogid);
-                            }
-                            off += 2;
-                            // ARG_1_AND_2_ARE_WORDS
-                            if ((flags & 1 << 0) != 0)
-                            {
-                                off += 2 * 2;
-                            }
-                            else
-                            {
-                                off += 2;
-                            }
-                            // WE_HAVE_A_TWO_BY_TWO
-                            if ((flags & 1 << 7) != 0)
-                            {
-                                off += 2 * 4;
-                            }
-                            // WE_HAVE_AN_X_AND_Y_SCALE
-                            else if ((flags & 1 << 6) != 0)
-                            {
-                                off += 2 * 2;
-                            }
-                            // WE_HAVE_A_SCALE
-                            else if ((flags & 1 << 3) != 0)
-                            {
-                                off += 2;
-                            }
+                            glyphIds.set(componentGid);
+                            hasNested |= componentGid < glyphId;
                         }
-                        while ((flags & 1 << 5) != 0); // MORE_COMPONENTS
-
+                        off = nextComponent(off, flags);
                     }
-                    lastOff = offsets[glyphId + 1];
+                    while ((flags & 1 << 5) != 0); // MORE_COMPONENTS
                 }
             }
-            hasNested = glyphIdsToAdd != null;
-            if (hasNested)
-            {
-                glyphIds.addAll(glyphIdsToAdd);
-            }
         }
         while (hasNested);
     }
 
-    // never returns null
-    private byte[] buildGlyfTable(long[] newOffsets) throws IOException
+    /**
+     * Walks through the components of a compound glyph, optionally replacing the old GIDs of the
+     * components by the new ones.
+     *
+     * @return the length of the glyph without trailing padding
+     */
+    private int readCompoundGlyph(byte[] buf, boolean rewrite)
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-        GlyphTable g = ttf.getGlyph();
-        long[] offsets = ttf.getIndexToLocation().getOffsets();
-        try (InputStream is = ttf.getOriginalData())
+        int off = 2*5;
+        int flags;
+        do
         {
-            long isResult = is.skip(g.getOffset());
-
-            if (Long.compare(isResult, g.getOffset()) != 0)
+            flags = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+            if (rewrite)
             {
-                LOG.debug("Tried skipping " + g.getOffset() + " bytes but skipped only " + isResult + " bytes");
+                int componentGid = (buf[off + 2] & 0xff) << 8 | buf[off + 3] & 0xff;
+                int newComponentGid = getNewGlyphId(componentGid);
+                buf[off + 2] = (byte)(newComponentGid >>> 8);
+                buf[off + 3] = (byte)newComponentGid;
             }
+            off = nextComponent(off, flags);
+        }
+        while ((flags & 1 << 5) != 0); // MORE_COMPONENTS
 
-            long prevEnd = 0;    // previously read glyph offset
-            long newOffset = 0;  // new offset for the glyph in the subset font
-            int newGid = 0;      // new GID in subset font
+        // WE_HAVE_INSTRUCTIONS
+        if ((flags & 0x0100) == 0x0100)
+        {
+            // USHORT numInstr
+            int numInstr = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+            off += 2;
 
-            // for each glyph in the subset
-            for (Integer gid : glyphIds)
-            {
-                long offset = offsets[gid];
-                long length = offsets[gid + 1] - offset;
+            // BYTE instr[numInstr]
+            off += numInstr;
+        }
+        return off;
+    }
 
-                newOffsets[newGid++] = newOffset;
-                isResult = is.skip(offset - prevEnd);
+    // returns the offset of the component following the one at the given offset
+    private static int nextComponent(int offset, int flags)
+    {
+        // flags and glyphIndex
+        int off = offset + 2 * 2;
+        // ARG_1_AND_2_ARE_WORDS
+        if ((flags & 1 << 0) != 0)
+        {
+            off += 2 * 2;
+        }
+        else
+        {
+            off += 2;
+        }
+        // WE_HAVE_A_TWO_BY_TWO
+        if ((flags & 1 << 7) != 0)
+        {
+            off += 2 * 4;
+        }
+        // WE_HAVE_AN_X_AND_Y_SCALE
+        else if ((flags & 1 << 6) != 0)
+        {
+            off += 2 * 2;
+        }
+        // WE_HAVE_A_SCALE
+        else if ((flags & 1 << 3) != 0)
+        {
+            off += 2;
+        }
+        return off;
+    }
 
-                if (Long.compare(isResult, offset - prevEnd) != 0)
-                {
-                    LOG.debug("Tried skipping " + (offset - prevEnd) + " bytes but skipped only " + isResult + " bytes");
-                }
+    /**
+     * Computes the new offsets and the checksum of the 'glyf' table, reading every glyph of the
+     * subset once. Copies of the compound glyphs are rewritten to use the new GIDs, the cached
+     * originals are left untouched so that the subset can be written again.
+     *
+     * @param newOffsets receives the 'loca' offsets of the subset
+     * @return the 'glyf' table, without data
+     */
+    private Table prepareGlyfTable(long[] newOffsets) throws IOException
+    {
+        newCompoundGlyphs.clear();
+        for (Map.Entry<Integer, byte[]> entry : compoundGlyphs.entrySet())
+        {
+            byte[] compound = entry.getValue().clone();
+            readCompoundGlyph(compound, true);
+            newCompoundGlyphs.put(entry.getKey(), compound);
+        }
 
-                byte[] buf = new byte[(int)length];
-                isResult = is.read(buf);
+        long newOffset = 0;  // new offset for the glyph in the subset font
+        int newGid = 0;      // new GID in subset font
+        long checksum = 0;
+        byte[] buf = new byte[0];
+        try (GlyphReader reader = new GlyphReader())
+        {
+            for (int gid = glyphIds.nextSetBit(0); gid >= 0; gid = glyphIds.nextSetBit(gid + 1))
+            {
+                newOffsets[newGid++] = newOffset;
 
-                if (Long.compare(isResult, length) != 0)
+                byte[] compound = newCompoundGlyphs.get(gid);
+                int length;
+                if (compound != null)
                 {
-                    LOG.debug("Tried reading " + length + " bytes but only " + isResult + " bytes read");
+                    length = compound.length;
+                    checksum += checksum(compound, length);
                 }
-
-                // detect glyph type
-                if (buf.length >= 2 && buf[0] == -1 && buf[1] == -1)
+                else
                 {
-                    // compound glyph
-                    int off = 2*5;
-                    int flags;
-                    do
-                    {
-                        // flags
-                        flags = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                        off += 2;
-
-                        // glyphIndex
-                        int componentGid = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                        glyphIds.add(componentGid);
-
-                        int newComponentGid = getNewGlyphId(componentGid);
-                        buf[off]   = (byte)(newComponentGid >>> 8);
-                        buf[off + 1] = (byte)newComponentGid;
-                        off += 2;
-
-                        // ARG_1_AND_2_ARE_WORDS
-                        if ((flags & 1 << 0) != 0)
-                        {
-                            off += 2 * 2;
-                        }
-                        else
-                        {
-                            off += 2;
-                        }
-                        // WE_HAVE_A_TWO_BY_TWO
-                        if ((flags & 1 << 7) != 0)
-                        {
-                            off += 2 * 4;
-                        }
-                        // WE_HAVE_AN_X_AND_Y_SCALE
-                        else if ((flags & 1 << 6) != 0)
-                        {
-                            off += 2 * 2;
-                        }
-                        // WE_HAVE_A_SCALE
-                        else if ((flags & 1 << 3) != 0)
-                        {
-                            off += 2;
-                        }
-                    }
-                    while ((flags & 1 << 5) != 0); // MORE_COMPONENTS
-
-                    // WE_HAVE_INSTRUCTIONS
-                    if ((flags & 0x0100) == 0x0100)
+                    length = reader.getLength(gid);
+                    if (buf.length < length)
                     {
-                        // USHORT numInstr
-                        int numInstr = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                        off += 2;
-
-                        // BYTE instr[numInstr]
-                        off += numInstr;
+                        buf = new byte[Math.max(length, buf.length * 2)];
                     }
+                    reader.read(gid, buf, length);
+                    checksum += checksum(buf, length);
+                }
 
-                    // write the compound glyph
-                    bos.write(buf, 0, off);
+                // each glyph starts at a 4-byte boundary, so that its checksum can be computed
+                // on its own
+                newOffset += (length + 3) / 4 * 4;
+            }
+            newOffsets[newGid] = newOffset;
+        }
+        return new Table(null, newOffset, checksum & 0xffffffffL);
+    }
 
-                    // offset to start next glyph
-                    newOffset += off;
+    /**
+     * Copies the glyphs of the subset from the original font to the output.
+     */
+    private void writeGlyfTable(OutputStream os) throws IOException
+    {
+        byte[] buf = new byte[0];
+        try (GlyphReader reader = new GlyphReader())
+        {
+            for (int gid = glyphIds.nextSetBit(0); gid >= 0; gid = glyphIds.nextSetBit(gid + 1))
+            {
+                byte[] compound = newCompoundGlyphs.get(gid);
+                if (compound != null)
+                {
+                    writeTableBody(os, compound);
+                    continue;
                 }
-                else if (buf.length > 0)
+                int length = reader.getLength(gid);
+                if (buf.length < length)
                 {
-                    // copy the entire glyph
-                    bos.write(buf, 0, buf.length);
-
-                    // offset to start next glyph
-                    newOffset += buf.length;
+                    buf = new byte[Math.max(length, buf.length * 2)];
                 }
+                reader.read(gid, buf, length);
+                os.write(buf, 0, length);
 
                 // 4-byte alignment
-                if (newOffset % 4 != 0)
+                if (length % 4 != 0)
                 {
-                    int len = 4 - (int)(newOffset % 4);
-                    bos.write(PAD_BUF, 0, len);
-                    newOffset += len;
+                    os.write(PAD_BUF, 0, 4 - length % 4);
                 }
-
-                prevEnd = offset + length;
             }
-            newOffsets[newGid++] = newOffset;
         }
+    }
 
-        return bos.toByteArray();
+    private int getNewGlyphId(int oldGid)
+    {
+        return glyphIds.get(0, oldGid).cardinality();
+    }
+
+    /**
+     * Returns the mappings of the subset from code points to old GIDs, sorted by code point.
+     */
+    private long[] getSortedMappings()
+    {
+        long[] sorted = Arrays.copyOf(uniToGID, uniToGIDCount);
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++)
+        {
+            if (count > 0 && unicode(sorted[count - 1]) == unicode(sorted[i]))
+            {
+                // a code point which was added twice
+                sorted[count - 1] = sorted[i];
+            }
+            else
+            {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
     }
 
-    private int getNewGlyphId(Integer oldGid)
+    private static int unicode(long mapping)
     {
-        return glyphIds.headSet(oldGid).size();
+        return (int) (mapping >>> 32);
     }
 
-    private byte[] buildCmapTable() throws IOException
+    private byte[] buildCmapTable(long[] mappings, int[] oldToNew) throws IOException
     {
-        if (ttf.getCmap() == null || uniToGID.isEmpty()
+        if (ttf.getCmap() == null || mappings.length == 0
                 || keepTables != null && !keepTables.contains(CmapTable.TAG))
         {
             return null;
         }
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
-        // cmap header
-        writeUint16(out, 0); // version
-        writeUint16(out, 1); // numberSubtables
-
-        // encoding record
-        writeUint16(out, CmapTable.PLATFORM_WINDOWS); // platformID
-        writeUint16(out, CmapTable.ENCODING_WIN_UNICODE_BMP); // platformSpecificID
-        writeUint32(out, 12); // offset 4 * 2 + 4
-
         // build Format 4 subtable (Unicode BMP)
-        Iterator<Entry<Integer, Integer>> it = uniToGID.entrySet().iterator();
-        Entry<Integer, Integer> lastChar = it.next();
-        Entry<Integer, Integer> prevChar = lastChar;
-        int lastGid = getNewGlyphId(lastChar.getValue());
+        int lastChar = unicode(mappings[0]);
+        int prevChar = lastChar;
+        int lastGid = oldToNew[(int) mappings[0]];
 
         // +1 because .notdef is missing in uniToGID
-        int[] startCode = new int[uniToGID.size()+1];
+        int[] startCode = new int[mappings.length + 1];
         int[] endCode = new int[startCode.length];
         int[] idDelta = new int[startCode.length];
         int segCount = 0;
-        while(it.hasNext())
+        for (int i = 1; i < mappings.length; i++)
         {
-            Entry<Integer, Integer> curChar2Gid = it.next();
-            int curGid = getNewGlyphId(curChar2Gid.getValue());
+            int curChar = unicode(mappings[i]);
+            int curGid = oldToNew[(int) mappings[i]];
 
             // todo: need format Format 12 for non-BMP
-            if (curChar2Gid.getKey() > 0xFFFF)
+            if (curChar > 0xFFFF)
             {
                 throw new UnsupportedOperationException("non-BMP Unicode character");
             }
 
-            if (curChar2Gid.getKey() != prevChar.getKey()+1 ||
-                curGid - lastGid != curChar2Gid.getKey() - lastChar.getKey())
+            if (curChar != prevChar + 1 || curGid - lastGid != curChar - lastChar)
             {
                 if (lastGid != 0)
                 {
                     // don't emit ranges, which map to GID 0, the
                     // undef glyph is emitted a the very last segment
-                    startCode[segCount] = lastChar.getKey();
-                    endCode[segCount] = prevChar.getKey();
-                    idDelta[segCount] = lastGid - lastChar.getKey();
+                    startCode[segCount] = lastChar;
+                    endCode[segCount] = prevChar;
+                    idDelta[segCount] = lastGid - lastChar;
                     segCount++;
                 }
-                else if (!lastChar.getKey().equals(prevChar.getKey()))
+                else if (lastChar != prevChar)
                 {
                     // shorten ranges which start with GID 0 by one
-                    startCode[segCount] = lastChar.getKey() + 1;
-                    endCode[segCount] = prevChar.getKey();
-                    idDelta[segCount] = lastGid - lastChar.getKey();
+                    startCode[segCount] = lastChar + 1;
+                    endCode[segCount] = prevChar;
+                    idDelta[segCount] = lastGid - lastChar;
                     segCount++;
                 }
                 lastGid = curGid;
-                lastChar = curChar2Gid;
+                lastChar = curChar;
             }
-            prevChar = curChar2Gid;
+            prevChar = curChar;
         }
 
         // trailing segment
-        startCode[segCount] = lastChar.getKey();
-        endCode[segCount] = prevChar.getKey();
-        idDelta[segCount] = lastGid -lastChar.getKey();
+        startCode[segCount] = lastChar;
+        endCode[segCount] = prevChar;
+        idDelta[segCount] = lastGid - lastChar;
         segCount++;
 
         // GID 0
@@ -790,6 +830,17 @@ public final class TTFSubsetter
         idDelta[segCount] = 1;
         segCount++;
 
+        ByteBuffer out = ByteBuffer.allocate(12 + 8 * 2 + segCount * 4 * 2);
+
+        // cmap header
+        writeUint16(out, 0); // version
+        writeUint16(out, 1); // numberSubtables
+
+        // encoding record
+        writeUint16(out, CmapTable.PLATFORM_WINDOWS); // platformID
+        writeUint16(out, CmapTable.ENCODING_WIN_UNICODE_BMP); // platformSpecificID
+        writeUint32(out, 12); // offset 4 * 2 + 4
+
         // write format 4 subtable
         int searchRange = 2 * (int)Math.pow(2, log2(segCount));
         writeUint16(out, 4); // format
@@ -826,7 +877,7 @@ public final class TTFSubsetter
             writeUint16(out, 0);
         }
 
-        return bos.toByteArray();
+        return out.array();
     }
 
     private byte[] buildPostTable() throws IOException
@@ -837,8 +888,35 @@ public final class TTFSubsetter
             return null;
         }
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
+        int numGlyphs = glyphIds.cardinality();
+        int[] glyphNameIndex = new int[numGlyphs];
+        Map<String, Integer> names = new LinkedHashMap<>();
+        int size = 32 + 2 + 2 * numGlyphs;
+        int i = 0;
+        for (int gid = glyphIds.nextSetBit(0); gid >= 0; gid = glyphIds.nextSetBit(gid + 1))
+        {
+            String name = post.getName(gid);
+            Integer macId = WGL4Names.getGlyphIndex(name);
+            if (macId != null)
+            {
+                // the name is implicit, as it's from MacRoman
+                glyphNameIndex[i++] = macId;
+            }
+            else
+            {
+                // the name will be written explicitly
+                Integer ordinal = names.get(name);
+                if (ordinal == null)
+                {
+                    ordinal = names.size();
+                    names.put(name, ordinal);
+                    size += 1 + name.getBytes(StandardCharsets.US_ASCII).length;
+                }
+                glyphNameIndex[i++] = 258 + ordinal;
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
 
         writeFixed(out, 2.0); // version
         writeFixed(out, post.getItalicAngle());
@@ -853,25 +931,12 @@ public final class TTFSubsetter
         // version 2.0
 
         // numberOfGlyphs
-        writeUint16(out, glyphIds.size());
+        writeUint16(out, numGlyphs);
 
         // glyphNameIndex[numGlyphs]
-        Map<String, Integer> names = new LinkedHashMap<>();
-        for (int gid : glyphIds)
+        for (int index : glyphNameIndex)
         {
-            String name = post.getName(gid);
-            Integer macId = WGL4Names.getGlyphIndex(name);
-            if (macId != null)
-            {
-                // the name is implicit, as it's from MacRoman
-                writeUint16(out, macId);
-            }
-            else
-            {
-                // the name will be written explicitly
-                Integer ordinal = names.computeIfAbsent(name, dummy -> names.size());
-                writeUint16(out, 258 + ordinal);
-            }
+            writeUint16(out, index);
         }
 
         // names[numberNewGlyphs]
@@ -879,89 +944,53 @@ public final class TTFSubsetter
         {
             byte[] buf = name.getBytes(StandardCharsets.US_ASCII);
             writeUint8(out, buf.length);
-            out.write(buf);
+            out.put(buf);
         }
 
-        out.flush();
-        return bos.toByteArray();
+        return out.array();
     }
 
     private byte[] buildHmtxTable() throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
         HorizontalHeaderTable h = ttf.getHorizontalHeader();
         HorizontalMetricsTable hm = ttf.getHorizontalMetrics();
-        InputStream is = ttf.getOriginalData();
         
         // more info: https://developer.apple.com/fonts/TrueType-Reference-Manual/RM06/Chap6hmtx.html
         int lastgid = h.getNumberOfHMetrics() - 1;
         // true if lastgid is not in the set: we'll need its width (but not its left side bearing) later
-        boolean needLastGidWidth = glyphIds.last() > lastgid && !glyphIds.contains(lastgid);
+        boolean needLastGidWidth = glyphIds.length() - 1 > lastgid && !glyphIds.get(lastgid);
 
-        try
-        {
-            long isResult = is.skip(hm.getOffset());
+        int longMetrics = glyphIds.get(0, lastgid + 1).cardinality();
+        int size = longMetrics * 4 + (glyphIds.cardinality() - longMetrics) * 2
+                + (needLastGidWidth ? 2 : 0);
+        ByteBuffer out = ByteBuffer.allocate(size);
 
-            if (Long.compare(isResult, hm.getOffset()) != 0)
+        for (int glyphId = glyphIds.nextSetBit(0); glyphId >= 0;
+                glyphId = glyphIds.nextSetBit(glyphId + 1))
+        {
+            if (glyphId <= lastgid)
             {
-                LOG.debug("Tried skipping " + hm.getOffset() + " bytes but only " + isResult + " bytes skipped");
+                // copy width and lsb
+                writeUint16(out, hm.getAdvanceWidth(glyphId));
+                writeSInt16(out, (short) hm.getLeftSideBearing(glyphId));
             }
-
-            long lastOffset = 0;
-            for (Integer glyphId : glyphIds)
+            else 
             {
-                // offset in original file
-                long offset;
-                if (glyphId <= lastgid)
+                if (needLastGidWidth)
                 {
-                    // copy width and lsb
-                    offset = glyphId * 4l;
-                    lastOffset = copyBytes(is, bos, offset, lastOffset, 4);
-                }
-                else 
-                {
-                    if (needLastGidWidth)
-                    {
-                        // one time only: copy width from lastgid, whose width applies
-                        // to all later glyphs
-                        needLastGidWidth = false;
-                        offset = lastgid * 4l;
-                        lastOffset = copyBytes(is, bos, offset, lastOffset, 2);
-
-                        // then go on with lsb from actual glyph (lsb are individual even in monotype fonts)
-                    }
+                    // one time only: copy width from lastgid, whose width applies
+                    // to all later glyphs
+                    needLastGidWidth = false;
+                    writeUint16(out, hm.getAdvanceWidth(lastgid));
 
-                    // copy lsb only, as we are beyond numOfHMetrics
-                    offset = h.getNumberOfHMetrics() * 4l + (glyphId - h.getNumberOfHMetrics()) * 2l;
-                    lastOffset = copyBytes(is, bos, offset, lastOffset, 2);
+                    // then go on with lsb from actual glyph (lsb are individual even in monotype fonts)
                 }
-            }
-
-            return bos.toByteArray();
-        }
-        finally
-        {
-            is.close();
-        }
-    }
 
-    private long copyBytes(InputStream is, OutputStream os, long newOffset, long lastOffset, int count)
-            throws IOException
-    {
-        // skip over from last original offset
-        long nskip = newOffset - lastOffset;
-        if (nskip != is.skip(nskip))
-        {
-            throw new EOFException("Unexpected EOF exception parsing glyphId of hmtx table.");
-        }
-        byte[] buf = new byte[count];
-        if (count != is.read(buf, 0, count))
-        {
-            throw new EOFException("Unexpected EOF exception parsing glyphId of hmtx table.");
+                // copy lsb only, as we are beyond numOfHMetrics
+                writeSInt16(out, (short) hm.getLeftSideBearing(glyphId));
+            }
         }
-        os.write(buf, 0, count);
-        return newOffset + count; 
+        return out.array();
     }
 
     /**
@@ -973,52 +1002,59 @@ public final class TTFSubsetter
      */
     public void writeToStream(OutputStream os) throws IOException
     {
-        if (glyphIds.isEmpty() && uniToGID.isEmpty())
+        if (glyphIds.isEmpty() && uniToGIDCount == 0)
         {
             LOG.info("font subset is empty");
         }
         
         addCompoundReferences();
 
-        try (DataOutputStream out = new DataOutputStream(os))
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os)))
         {
-            long[] newLoca = new long[glyphIds.size() + 1];
+            long[] newLoca = new long[glyphIds.cardinality() + 1];
+            long[] mappings = getSortedMappings();
+            int[] oldToNew = new int[glyphIds.length()];
+            int newGid = 0;
+            for (int gid = glyphIds.nextSetBit(0); gid >= 0; gid = glyphIds.nextSetBit(gid + 1))
+            {
+                oldToNew[gid] = newGid++;
+            }
 
             // generate tables in dependency order
             byte[] head = buildHeadTable();
             byte[] hhea = buildHheaTable();
             byte[] maxp = buildMaxpTable();
             byte[] name = buildNameTable();
-            byte[] os2  = buildOS2Table();
-            byte[] glyf = buildGlyfTable(newLoca);
+            byte[] os2  = buildOS2Table(mappings);
+            Table glyf = prepareGlyfTable(newLoca);
             byte[] loca = buildLocaTable(newLoca);
-            byte[] cmap = buildCmapTable();
+            byte[] cmap = buildCmapTable(mappings, oldToNew);
             byte[] hmtx = buildHmtxTable();
             byte[] post = buildPostTable();
 
             // save to TTF in optimized order
-            Map<String, byte[]> tables = new TreeMap<>();
+            Map<String, Table> tables = new TreeMap<>();
             if (os2 != null)
             {
-                tables.put(OS2WindowsMetricsTable.TAG, os2);
+                tables.put(OS2WindowsMetricsTable.TAG, new Table(os2));
             }
             if (cmap != null)
             {
-                tables.put(CmapTable.TAG, cmap);
+                tables.put(CmapTable.TAG, new Table(cmap));
             }
             tables.put(GlyphTable.TAG, glyf);
-            tables.put(HeaderTable.TAG, head);
-            tables.put(HorizontalHeaderTable.TAG, hhea);
-            tables.put(HorizontalMetricsTable.TAG, hmtx);
-            tables.put(IndexToLocationTable.TAG, loca);
-            tables.put(MaximumProfileTable.TAG, maxp);
+            tables.put(HeaderTable.TAG, new Table(head));
+            tables.put(HorizontalHeaderTable.TAG, new Table(hhea));
+            tables.put(HorizontalMetricsTable.TAG, new Table(hmtx));
+            tables.put(IndexToLocationTable.TAG, new Table(loca));
+            tables.put(MaximumProfileTable.TAG, new Table(maxp));
             if (name != null)
             {
-                tables.put(NamingTable.TAG, name);
+                tables.put(NamingTable.TAG, new Table(name));
             }
             if (post != null)
             {
-                tables.put(PostScriptTable.TAG, post);
+                tables.put(PostScriptTable.TAG, new Table(post));
             }
 
             // copy all other tables
@@ -1029,14 +1065,14 @@ public final class TTFSubsetter
 
                 if (!tables.containsKey(tag) && (keepTables == null || keepTables.contains(tag)))
                 {
-                    tables.put(tag, ttf.getTableBytes(table));
+                    tables.put(tag, new Table(ttf.getTableBytes(table)));
                 }
             }
 
             // calculate checksum
             long checksum = writeFileHeader(out, tables.size());
             long offset = 12L + 16L * tables.size();
-            for (Map.Entry<String, byte[]> entry : tables.entrySet())
+            for (Map.Entry<String, Table> entry : tables.entrySet())
             {
                 checksum += writeTableHeader(out, entry.getKey(), offset, entry.getValue());
                 offset += (entry.getValue().length + 3L) / 4 * 4;
@@ -1048,42 +1084,121 @@ public final class TTFSubsetter
             head[9] = (byte)(checksum >>> 16);
             head[10] = (byte)(checksum >>> 8);
             head[11] = (byte)checksum;
-            for (byte[] bytes : tables.values())
+            for (Table table : tables.values())
+            {
+                if (table == glyf)
+                {
+                    writeGlyfTable(out);
+                }
+                else
+                {
+                    writeTableBody(out, table.data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads glyphs from the 'glyf' table of the original font, which works best in the order of
+     * the font.
+     */
+    private final class GlyphReader implements Closeable
+    {
+        private final long glyfOffset;
+        private final long[] offsets;
+        private InputStream input;
+        private long position;
+
+        private GlyphReader() throws IOException
+        {
+            glyfOffset = ttf.getGlyph().getOffset();
+            offsets = ttf.getIndexToLocation().getOffsets();
+        }
+
+        private int getLength(int gid)
+        {
+            return (int) (offsets[gid + 1] - offsets[gid]);
+        }
+
+        /**
+         * Reads the first bytes of a glyph, bytes beyond the end of the font are left unchanged.
+         */
+        private void read(int gid, byte[] buf, int length) throws IOException
+        {
+            long start = glyfOffset + offsets[gid];
+            if (input == null || start < position)
+            {
+                // glyphs are usually stored in GID order, but that's not required
+                close();
+                input = ttf.getOriginalData();
+                position = 0;
+            }
+            while (position < start)
             {
-                writeTableBody(out, bytes);
+                long skipped = input.skip(start - position);
+                if (skipped <= 0)
+                {
+                    LOG.debug("Tried skipping " + (start - position) + " bytes but skipped only " +
+                            Math.max(skipped, 0) + " bytes");
+                    break;
+                }
+                position += skipped;
+            }
+            int read = 0;
+            while (read < length)
+            {
+                int n = input.read(buf, read, length - read);
+                if (n < 0)
+                {
+                    LOG.debug("Tried reading " + length + " bytes but only " + read +
+                            " bytes read");
+                    break;
+                }
+                read += n;
+            }
+            position += read;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (input != null)
+            {
+                input.close();
+                input = null;
             }
         }
     }
 
-    private void writeFixed(DataOutputStream out, double f) throws IOException
+    private void writeFixed(ByteBuffer out, double f)
     {
         double ip = Math.floor(f);
         double fp = (f-ip) * 65536.0;
-        out.writeShort((int)ip);
-        out.writeShort((int)fp);
+        out.putShort((short) (int) ip);
+        out.putShort((short) (int) fp);
     }
 
-    private void writeUint32(DataOutputStream out, long l) throws IOException
+    private void writeUint32(ByteBuffer out, long l)
     {
-        out.writeInt((int)l);
+        out.putInt((int)l);
     }
 
-    private void writeUint16(DataOutputStream out, int i) throws IOException
+    private void writeUint16(ByteBuffer out, int i)
     {
-        out.writeShort(i);
+        out.putShort((short) i);
     }
 
-    private void writeSInt16(DataOutputStream out, short i) throws IOException
+    private void writeSInt16(ByteBuffer out, short i)
     {
-        out.writeShort(i);
+        out.putShort(i);
     }
 
-    private void writeUint8(DataOutputStream out, int i) throws IOException
+    private void writeUint8(ByteBuffer out, int i)
     {
-        out.writeByte(i);
+        out.put((byte) i);
     }
 
-    private void writeLongDateTime(DataOutputStream out, Calendar calendar) throws IOException
+    private void writeLongDateTime(ByteBuffer out, Calendar calendar)
     {
         // inverse operation of TTFDataStream.readInternationalDate()
         Calendar cal = Calendar.getInstance((TimeZone) TIMEZONE_UTC.clone());
@@ -1091,7 +1206,7 @@ public final class TTFSubsetter
         cal.set(Calendar.MILLISECOND, 0);
         long millisFor1904 = cal.getTimeInMillis();
         long secondsSince1904 = (calendar.getTimeInMillis() - millisFor1904) / 1000L;
-        out.writeLong(secondsSince1904);
+        out.putLong(secondsSince1904);
     }
 
     private long toUInt32(int high, int low)
@@ -1111,10 +1226,4 @@ public final class TTFSubsetter
     {
         return (int) Math.floor(Math.log(num) / Math.log(2));
     }
-
-    public void addGlyphIds(Set<Integer> allGlyphIds)
-    {
-        glyphIds.addAll(allGlyphIds);
-    }
-
 }
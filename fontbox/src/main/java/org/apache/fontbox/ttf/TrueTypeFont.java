@@ -49,7 +49,10 @@ public class TrueTypeFont implements FontBoxFont, Closeable
     private int unitsPerEm = -1;
     protected final Map<String,TTFTable> tables = new HashMap<>();
     private final TTFDataStream data;
-    private volatile Map<String, Integer> postScriptNames;
+    private volatile GlyphNameIndex postScriptNames;
+    // advance widths and heights by GID, as unsigned 16 bit values
+    private volatile short[] advanceWidths;
+    private volatile short[] advanceHeights;
     
     private final Object lockReadtable = new Object();
     private final Object lockPSNames = new Object();
@@ -424,6 +427,15 @@ public class TrueTypeFont implements FontBoxFont, Closeable
      */
     public int getAdvanceWidth(int gid) throws IOException
     {
+        short[] widths = advanceWidths;
+        if (widths == null)
+        {
+            widths = readAdvanceWidths();
+        }
+        if (gid >= 0 && gid < widths.length)
+        {
+            return widths[gid] & 0xffff;
+        }
         HorizontalMetricsTable hmtx = getHorizontalMetrics();
         if (hmtx != null)
         {
@@ -445,6 +457,15 @@ public class TrueTypeFont implements FontBoxFont, Closeable
      */
     public int getAdvanceHeight(int gid) throws IOException
     {
+        short[] heights = advanceHeights;
+        if (heights == null)
+        {
+            heights = readAdvanceHeights();
+        }
+        if (gid >= 0 && gid < heights.length)
+        {
+            return heights[gid] & 0xffff;
+        }
         VerticalMetricsTable vmtx = getVerticalMetrics();
         if (vmtx != null)
         {
@@ -457,6 +478,37 @@ public class TrueTypeFont implements FontBoxFont, Closeable
         }
     }
 
+    /**
+     * Expands the horizontal metrics to one advance width per glyph, so that the widths, which are
+     * needed for every measured character, can be read without going through the table.
+     */
+    private short[] readAdvanceWidths() throws IOException
+    {
+        HorizontalMetricsTable hmtx = getHorizontalMetrics();
+        short[] widths = new short[hmtx != null ? getNumberOfGlyphs() : 0];
+        for (int gid = 0; gid < widths.length; gid++)
+        {
+            widths[gid] = (short) hmtx.getAdvanceWidth(gid);
+        }
+        advanceWidths = widths;
+        return widths;
+    }
+
+    /**
+     * Expands the vertical metrics to one advance height per glyph.
+     */
+    private short[] readAdvanceHeights() throws IOException
+    {
+        VerticalMetricsTable vmtx = getVerticalMetrics();
+        short[] heights = new short[vmtx != null ? getNumberOfGlyphs() : 0];
+        for (int gid = 0; gid < heights.length; gid++)
+        {
+            heights[gid] = (short) vmtx.getAdvanceHeight(gid);
+        }
+        advanceHeights = heights;
+        return heights;
+    }
+
     @Override
     public String getName() throws IOException
     {
@@ -471,9 +523,9 @@ public class TrueTypeFont implements FontBoxFont, Closeable
         }
     }
 
-    private void readPostScriptNames() throws IOException
+    private GlyphNameIndex readPostScriptNames() throws IOException
     {
-        Map<String, Integer> psnames = postScriptNames;
+        GlyphNameIndex psnames = postScriptNames;
         if (psnames == null)
         {
             // the getter is already synchronized
@@ -484,22 +536,12 @@ public class TrueTypeFont implements FontBoxFont, Closeable
                 if (psnames == null)
                 {
                     String[] names = post != null ? post.getGlyphNames() : null;
-                    if (names != null)
-                    {
-                        psnames = new HashMap<>(names.length);
-                        for (int i = 0; i < names.length; i++)
-                        {
-                            psnames.put(names[i], i);
-                        }
-                    }
-                    else
-                    {
-                        psnames = new HashMap<>();
-                    }
+                    psnames = new GlyphNameIndex(names != null ? names : new String[0]);
                     postScriptNames = psnames;
                 }
             }
         }
+        return psnames;
     }
 
     /**
@@ -608,14 +650,10 @@ public class TrueTypeFont implements FontBoxFont, Closeable
     public int nameToGID(String name) throws IOException
     {
         // look up in 'post' table
-        readPostScriptNames();
-        if (postScriptNames != null)
+        int gid = readPostScriptNames().getGID(name);
+        if (gid > 0 && gid < getNumberOfGlyphs())
         {
-            Integer gid = postScriptNames.get(name);
-            if (gid != null && gid > 0 && gid < getMaximumProfile().getNumGlyphs())
-            {
-                return gid;
-            }
+            return gid;
         }
 
         // look up in 'cmap'
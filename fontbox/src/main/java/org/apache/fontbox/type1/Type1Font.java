@@ -24,9 +24,9 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import org.apache.fontbox.FontBoxFont;
 import org.apache.fontbox.EncodedFont;
+import org.apache.fontbox.cff.CharStringCache;
 import org.apache.fontbox.cff.Type1CharString;
 import org.apache.fontbox.cff.Type1CharStringParser;
 import org.apache.fontbox.encoding.Encoding;
@@ -127,7 +127,7 @@ public final class Type1Font implements Type1CharStringReader, EncodedFont, Font
     final Map<String, byte[]> charstrings = new LinkedHashMap<>();
 
     // private caches
-    private final Map<String, Type1CharString> charStringCache = new ConcurrentHashMap<>();
+    private final CharStringCache<String, Type1CharString> charStringCache = new CharStringCache<>();
 
     private Type1CharStringParser charStringParser = null;
 
@@ -179,7 +179,13 @@ public final class Type1Font implements Type1CharStringReader, EncodedFont, Font
     @Override
     public float getWidth(String name) throws IOException
     {
-        return getType1CharString(name).getWidth();
+        byte[] bytes = charstrings.get(name);
+        if (bytes == null)
+        {
+            bytes = charstrings.get(".notdef");
+        }
+        int width = bytes != null ? Type1CharStringParser.readWidth(bytes) : Integer.MIN_VALUE;
+        return width != Integer.MIN_VALUE ? width : getType1CharString(name).getWidth();
     }
 
     @Override
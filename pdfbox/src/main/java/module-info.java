@@ -10,6 +10,7 @@ module pdfbox {
     exports org.apache.pdfbox.contentstream;
     exports org.apache.pdfbox.contentstream.operator;
     exports org.apache.pdfbox.contentstream.operator.state;
+    exports org.apache.pdfbox.contentstream.operator.text;
     exports org.apache.pdfbox.cos;
     exports org.apache.pdfbox.filter;
     exports org.apache.pdfbox.multipdf;
@@ -0,0 +1,733 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.contentstream.operator.state.EmptyGraphicsStackException;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.ContentStreamHandler;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.MissingResourceException;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts.FontName;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.pdmodel.graphics.state.PDTextState;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+/**
+ * Processes a PDF content stream and executes certain operations.
+ * Provides a callback interface for clients that want to do things with the stream.
+ *
+ * <p>Operators are dispatched to the {@link OperatorProcessor} registered for their name with
+ * {@link #addOperator(OperatorProcessor)}. The engine keeps track of the graphics state, the text
+ * matrices and the current resources while the stream is parsed in a single pass.</p>
+ *
+ * <p>The graphics states on the stack are pooled: "q" copies the current state into an instance
+ * which is kept from an earlier "q" of the same depth. The objects returned by
+ * {@link #getGraphicsState()}, {@link #getTextMatrix()} and {@link #getTextLineMatrix()} are
+ * therefore modified in place and must be cloned if they are needed later on.</p>
+ *
+ * @author Ben Litchfield
+ */
+public abstract class PDFStreamEngine
+{
+    private static final Log LOG = LogFactory.getLog(PDFStreamEngine.class);
+
+    private final Map<String, OperatorProcessor> operators = new HashMap<>(80);
+    private final ContentStreamHandler handler = this::processOperator;
+
+    // pooled graphics states, the states above graphicsStackSize are kept for reuse
+    private PDGraphicsState[] graphicsStack = new PDGraphicsState[8];
+    private int graphicsStackSize;
+    // index of the first state which belongs to the stream currently processed
+    private int graphicsStackBase;
+
+    private final Matrix textMatrix = new Matrix();
+    private final Matrix textLineMatrix = new Matrix();
+    private final Matrix textRenderingMatrix = new Matrix();
+    private final TextStringInputStream textString = new TextStringInputStream();
+    // number of showText calls in progress, only the outermost one uses the instances above
+    private int showTextDepth;
+
+    private PDResources resources;
+    private PDPage currentPage;
+    private boolean isProcessingPage;
+    private Matrix initialMatrix;
+    private PDFont defaultFont;
+
+    // form XObjects which are currently processed, to detect cyclic references
+    private final Set<COSStream> formsInProgress =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Creates a new PDFStreamEngine.
+     */
+    protected PDFStreamEngine()
+    {
+    }
+
+    /**
+     * Adds an operator processor to the engine, replacing the processor which was registered for
+     * the same operator before.
+     *
+     * @param op operator processor
+     */
+    public final void addOperator(OperatorProcessor op)
+    {
+        operators.put(op.getName(), op);
+    }
+
+    /**
+     * Initialises the stream engine for the given page.
+     */
+    private void initPage(PDPage page)
+    {
+        if (page == null)
+        {
+            throw new IllegalArgumentException("Page cannot be null");
+        }
+        currentPage = page;
+        graphicsStackSize = 0;
+        graphicsStackBase = 0;
+        pushGraphicsState().reset();
+        textMatrix.setValues(1, 0, 0, 1, 0, 0);
+        textLineMatrix.setValues(1, 0, 0, 1, 0, 0);
+        resources = null;
+        initialMatrix = page.getMatrix();
+    }
+
+    /**
+     * This will initialise and process the contents of the stream.
+     *
+     * @param page the page to process
+     * @throws IOException if there is an error accessing the stream
+     */
+    public void processPage(PDPage page) throws IOException
+    {
+        initPage(page);
+        if (page.hasContents())
+        {
+            isProcessingPage = true;
+            try
+            {
+                processStream(page);
+            }
+            finally
+            {
+                isProcessingPage = false;
+            }
+        }
+    }
+
+    /**
+     * Processes a form XObject as a child stream of the current page, e.g. for the "Do" operator.
+     * Cyclic references between forms are detected and skipped.
+     *
+     * @param form the form to process
+     * @throws IOException if there is an error processing the form
+     */
+    public void showForm(PDFormXObject form) throws IOException
+    {
+        if (currentPage == null)
+        {
+            throw new IllegalStateException("No current page, call processPage(PDPage) instead");
+        }
+        COSStream stream = form.getCOSObject();
+        if (!formsInProgress.add(stream))
+        {
+            LOG.warn("Form XObject is referenced recursively, skipped");
+            return;
+        }
+        try
+        {
+            processChildStream(form);
+        }
+        finally
+        {
+            formsInProgress.remove(stream);
+        }
+    }
+
+    /**
+     * Processes a child stream of the current page. The graphics state and the text matrices of
+     * the parent stream are restored afterwards.
+     *
+     * @param contentStream the child content stream
+     * @throws IOException if there is an exception while processing the stream
+     */
+    protected void processChildStream(PDContentStream contentStream) throws IOException
+    {
+        if (isProcessingPage)
+        {
+            Matrix parentTextMatrix = textMatrix.clone();
+            Matrix parentTextLineMatrix = textLineMatrix.clone();
+            try
+            {
+                processStream(contentStream);
+            }
+            finally
+            {
+                textMatrix.copyFrom(parentTextMatrix);
+                textLineMatrix.copyFrom(parentTextLineMatrix);
+            }
+        }
+        else
+        {
+            isProcessingPage = true;
+            try
+            {
+                processStream(contentStream);
+            }
+            finally
+            {
+                isProcessingPage = false;
+            }
+        }
+    }
+
+    /**
+     * Process a content stream with its own graphics stack, so that unbalanced "Q" operators
+     * can't pop the states of the parent stream.
+     *
+     * @param contentStream the content stream
+     * @throws IOException if there is an exception while processing the stream
+     */
+    private void processStream(PDContentStream contentStream) throws IOException
+    {
+        PDResources parentResources = pushResources(contentStream);
+        Matrix parentMatrix = initialMatrix;
+        int parentStackBase = graphicsStackBase;
+        int parentStackSize = graphicsStackSize;
+        saveGraphicsState();
+        graphicsStackBase = graphicsStackSize - 1;
+        try
+        {
+            // transform the CTM using the stream's matrix
+            Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+            ctm.concatenate(contentStream.getMatrix());
+
+            // the stream's initial matrix includes the parent CTM, e.g. this allows a scaled form
+            initialMatrix = ctm.clone();
+
+            processStreamOperators(contentStream);
+        }
+        finally
+        {
+            initialMatrix = parentMatrix;
+            graphicsStackSize = parentStackSize;
+            graphicsStackBase = parentStackBase;
+            resources = parentResources;
+        }
+    }
+
+    /**
+     * Parses the content stream in a single pass and dispatches every operator.
+     *
+     * @param contentStream the content stream
+     * @throws IOException if there is an exception while processing the stream
+     */
+    private void processStreamOperators(PDContentStream contentStream) throws IOException
+    {
+        PDFStreamParser parser = new PDFStreamParser(contentStream);
+        try
+        {
+            parser.parse(handler);
+        }
+        finally
+        {
+            parser.close();
+        }
+    }
+
+    /**
+     * Pushes the given stream's resources, returning the previous resources.
+     */
+    private PDResources pushResources(PDContentStream contentStream)
+    {
+        // resource lookup: first look for stream resources, then fallback to the current page
+        PDResources parentResources = resources;
+        PDResources streamResources = contentStream.getResources();
+        if (streamResources != null)
+        {
+            resources = streamResources;
+        }
+        else if (resources != null)
+        {
+            // inherit directly from parent stream, this is not in the PDF spec, but the file from
+            // PDFBOX-1359 does this and works in Acrobat
+        }
+        else
+        {
+            resources = currentPage.getResources();
+        }
+
+        // resources are required in PDF
+        if (resources == null)
+        {
+            resources = new PDResources();
+        }
+        return parentResources;
+    }
+
+    /**
+     * Called when the BT operator is encountered. This method is for overriding in subclasses, the
+     * default implementation does nothing.
+     *
+     * @throws IOException if there was an error processing the text
+     */
+    public void beginText() throws IOException
+    {
+        // overridden in subclasses
+    }
+
+    /**
+     * Called when the ET operator is encountered. This method is for overriding in subclasses, the
+     * default implementation does nothing.
+     *
+     * @throws IOException if there was an error processing the text
+     */
+    public void endText() throws IOException
+    {
+        // overridden in subclasses
+    }
+
+    /**
+     * Called when a string of text is to be shown.
+     *
+     * @param string the encoded text
+     * @throws IOException if there was an error showing the text
+     */
+    public void showTextString(byte[] string) throws IOException
+    {
+        showText(string);
+    }
+
+    /**
+     * Called when a string of text with spacing adjustments is to be shown.
+     *
+     * @param array array of encoded text strings and adjustments
+     * @throws IOException if there was an error showing the text
+     */
+    public void showTextStrings(COSArray array) throws IOException
+    {
+        PDTextState textState = getGraphicsState().getTextState();
+        float fontSize = textState.getFontSize();
+        float horizontalScaling = textState.getHorizontalScaling() / 100f;
+        PDFont font = textState.getFont();
+        boolean isVertical = font != null && font.isVertical();
+
+        for (int i = 0; i < array.size(); i++)
+        {
+            COSBase obj = array.getObject(i);
+            if (obj instanceof COSNumber)
+            {
+                float tj = ((COSNumber) obj).floatValue();
+
+                // calculate the combined displacements
+                float tx;
+                float ty;
+                if (isVertical)
+                {
+                    tx = 0;
+                    ty = -tj / 1000 * fontSize;
+                }
+                else
+                {
+                    tx = -tj / 1000 * fontSize * horizontalScaling;
+                    ty = 0;
+                }
+
+                applyTextAdjustment(tx, ty);
+            }
+            else if (obj instanceof COSString)
+            {
+                showText(((COSString) obj).getBytes());
+            }
+            else if (obj instanceof COSArray)
+            {
+                LOG.error("Nested arrays are not allowed in an array for TJ operation: " + obj);
+            }
+            else
+            {
+                LOG.error("Unknown type " + (obj == null ? "null" : obj.getClass().getSimpleName())
+                        + " in array for TJ operation: " + obj);
+            }
+        }
+    }
+
+    /**
+     * Applies a text position adjustment from the TJ operator. May be overridden in subclasses.
+     *
+     * @param tx x-translation
+     * @param ty y-translation
+     * @throws IOException if something went wrong
+     */
+    protected void applyTextAdjustment(float tx, float ty) throws IOException
+    {
+        // update the text matrix
+        textMatrix.translate(tx, ty);
+    }
+
+    /**
+     * Process text from the PDF Stream. You should override this method if you want to
+     * perform an action when encoded text is being processed.
+     *
+     * @param string the encoded text
+     * @throws IOException if there is an error processing the string
+     */
+    protected void showText(byte[] string) throws IOException
+    {
+        PDGraphicsState state = getGraphicsState();
+        PDTextState textState = state.getTextState();
+
+        // get the current font
+        PDFont font = textState.getFont();
+        if (font == null)
+        {
+            LOG.warn("No current font, will use default");
+            font = getDefaultFont();
+        }
+
+        float fontSize = textState.getFontSize();
+        float horizontalScaling = textState.getHorizontalScaling() / 100f;
+        float charSpacing = textState.getCharacterSpacing();
+        float wordSpacing = textState.getWordSpacing();
+        float rise = textState.getRise();
+        boolean isVertical = font.isVertical();
+        Matrix ctm = state.getCurrentTransformationMatrix();
+
+        // the pooled instances are in use if showGlyph shows text itself, e.g. in a Type 3 glyph
+        boolean nested = showTextDepth > 0;
+        TextStringInputStream in = nested ? new TextStringInputStream() : textString;
+        Matrix trm = nested ? new Matrix() : textRenderingMatrix;
+        in.reset(string);
+        showTextDepth++;
+        try
+        {
+            // read the stream until it is empty
+            while (in.available() > 0)
+            {
+                // decode a character
+                int before = in.available();
+                int code = font.readCode(in);
+                int codeLength = before - in.available();
+
+                // Word spacing shall be applied to every occurrence of the single-byte character
+                // code 32 in a string when using a simple font or a composite font that defines
+                // code 32 as a single-byte code.
+                float wordSpacingForCode = codeLength == 1 && code == 32 ? wordSpacing : 0;
+
+                // text rendering matrix (text space -> device space)
+                trm.copyFrom(textMatrix);
+                trm.concatenate(fontSize * horizontalScaling, 0, 0, fontSize, 0, rise);
+                trm.multiply(ctm, trm);
+
+                // get glyph's position vector if this is vertical text
+                if (isVertical)
+                {
+                    // position vector, in text space
+                    Vector v = font.getPositionVector(code);
+
+                    // apply the position vector to the horizontal origin to get the vertical origin
+                    trm.translate(v);
+                }
+
+                // get glyph's horizontal and vertical displacements, in text space
+                Vector w = font.getDisplacement(code);
+
+                // process the decoded glyph
+                showGlyph(trm, font, code, w);
+
+                // calculate the combined displacements
+                float tx;
+                float ty;
+                if (isVertical)
+                {
+                    tx = 0;
+                    ty = w.getY() * fontSize + charSpacing + wordSpacingForCode;
+                }
+                else
+                {
+                    tx = (w.getX() * fontSize + charSpacing + wordSpacingForCode)
+                            * horizontalScaling;
+                    ty = 0;
+                }
+
+                // update the text matrix
+                textMatrix.translate(tx, ty);
+            }
+        }
+        finally
+        {
+            showTextDepth--;
+        }
+    }
+
+    /**
+     * Called when a glyph is to be processed. This method is intended for overriding in
+     * subclasses, the default implementation does nothing.
+     *
+     * @param textRenderingMatrix the current text rendering matrix, T<sub>rm</sub>. The instance
+     * is reused for every glyph and must be cloned if it is needed later on.
+     * @param font the current font
+     * @param code internal PDF character code for the glyph
+     * @param displacement the displacement (i.e. advance) of the glyph in text space
+     * @throws IOException if the glyph cannot be processed
+     */
+    protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code,
+            Vector displacement) throws IOException
+    {
+        // overridden in subclasses
+    }
+
+    private PDFont getDefaultFont()
+    {
+        if (defaultFont == null)
+        {
+            defaultFont = new PDType1Font(FontName.HELVETICA);
+        }
+        return defaultFont;
+    }
+
+    /**
+     * This is used to handle an operation.
+     *
+     * @param operator The operation to perform.
+     * @param operands The list of arguments.
+     * @throws IOException If there is an error processing the operation.
+     */
+    protected void processOperator(Operator operator, ContentStreamOperands operands)
+            throws IOException
+    {
+        OperatorProcessor processor = operators.get(operator.getName());
+        if (processor != null)
+        {
+            try
+            {
+                processor.process(operator, operands);
+            }
+            catch (IOException e)
+            {
+                operatorException(operator, operands, e);
+            }
+        }
+        else
+        {
+            unsupportedOperator(operator, operands);
+        }
+    }
+
+    /**
+     * Called when an unsupported operator is encountered.
+     *
+     * @param operator The unknown operator.
+     * @param operands The list of operands.
+     * @throws IOException if something went wrong
+     */
+    protected void unsupportedOperator(Operator operator, ContentStreamOperands operands)
+            throws IOException
+    {
+        // overridden in subclasses
+    }
+
+    /**
+     * Called when an exception is thrown by an operator.
+     *
+     * @param operator The unknown operator.
+     * @param operands The list of operands.
+     * @param e the thrown exception
+     * @throws IOException if the exception is to be rethrown
+     */
+    protected void operatorException(Operator operator, ContentStreamOperands operands,
+            IOException e) throws IOException
+    {
+        if (e instanceof MissingOperandException || e instanceof MissingResourceException)
+        {
+            LOG.error(e.getMessage());
+        }
+        else if (e instanceof EmptyGraphicsStackException)
+        {
+            LOG.warn(e.getMessage());
+        }
+        else
+        {
+            throw e;
+        }
+    }
+
+    /**
+     * Pushes the current graphics state to the stack.
+     */
+    public void saveGraphicsState()
+    {
+        PDGraphicsState current = graphicsStack[graphicsStackSize - 1];
+        pushGraphicsState().copyFrom(current);
+    }
+
+    /**
+     * Pops the current graphics state from the stack.
+     */
+    public void restoreGraphicsState()
+    {
+        if (graphicsStackSize - graphicsStackBase > 1)
+        {
+            graphicsStackSize--;
+        }
+    }
+
+    /**
+     * Returns a new or pooled instance on top of the stack, the state of a pooled instance is
+     * undefined.
+     */
+    private PDGraphicsState pushGraphicsState()
+    {
+        if (graphicsStackSize == graphicsStack.length)
+        {
+            graphicsStack = Arrays.copyOf(graphicsStack, graphicsStackSize * 2);
+        }
+        PDGraphicsState state = graphicsStack[graphicsStackSize];
+        if (state == null)
+        {
+            state = new PDGraphicsState();
+            graphicsStack[graphicsStackSize] = state;
+        }
+        graphicsStackSize++;
+        return state;
+    }
+
+    /**
+     * @return Returns the size of the graphicsStack of the stream currently processed.
+     */
+    public int getGraphicsStackSize()
+    {
+        return graphicsStackSize - graphicsStackBase;
+    }
+
+    /**
+     * @return Returns the graphicsState.
+     */
+    public PDGraphicsState getGraphicsState()
+    {
+        return graphicsStack[graphicsStackSize - 1];
+    }
+
+    /**
+     * @return Returns the textLineMatrix.
+     */
+    public Matrix getTextLineMatrix()
+    {
+        return textLineMatrix;
+    }
+
+    /**
+     * @param value The textLineMatrix to set.
+     */
+    public void setTextLineMatrix(Matrix value)
+    {
+        textLineMatrix.copyFrom(value);
+    }
+
+    /**
+     * @return Returns the textMatrix.
+     */
+    public Matrix getTextMatrix()
+    {
+        return textMatrix;
+    }
+
+    /**
+     * @param value The textMatrix to set.
+     */
+    public void setTextMatrix(Matrix value)
+    {
+        textMatrix.copyFrom(value);
+    }
+
+    /**
+     * Returns the stream' resources.
+     *
+     * @return the resources of the stream currently processed
+     */
+    public PDResources getResources()
+    {
+        return resources;
+    }
+
+    /**
+     * Returns the current page.
+     *
+     * @return the current page
+     */
+    public PDPage getCurrentPage()
+    {
+        return currentPage;
+    }
+
+    /**
+     * Gets the stream's initial matrix.
+     *
+     * @return the initial matrix of the stream currently processed
+     */
+    public Matrix getInitialMatrix()
+    {
+        return initialMatrix;
+    }
+
+    /**
+     * An input stream over the current text string, reused for all strings.
+     */
+    private static final class TextStringInputStream extends ByteArrayInputStream
+    {
+        private static final byte[] EMPTY = new byte[0];
+
+        private TextStringInputStream()
+        {
+            super(EMPTY);
+        }
+
+        private void reset(byte[] string)
+        {
+            buf = string;
+            pos = 0;
+            mark = 0;
+            count = string.length;
+        }
+    }
+}
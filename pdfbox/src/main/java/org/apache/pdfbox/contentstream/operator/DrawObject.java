@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+import org.apache.pdfbox.pdmodel.MissingResourceException;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+
+/**
+ * Do: Draws an XObject. Form XObjects are processed as child streams, image XObjects are
+ * ignored unless a subclass overrides {@link #drawImage(COSName)}.
+ */
+public class DrawObject extends OperatorProcessor
+{
+    public DrawObject(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.isEmpty())
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        COSName name = operands.getName(0);
+        if (name == null)
+        {
+            return;
+        }
+        PDResources resources = getContext().getResources();
+        if (resources.isImageXObject(name))
+        {
+            // don't load the image unless it is needed
+            drawImage(name);
+            return;
+        }
+        PDXObject xobject = resources.getXObject(name);
+        if (xobject == null)
+        {
+            throw new MissingResourceException("Missing XObject: " + name.getName());
+        }
+        if (xobject instanceof PDFormXObject)
+        {
+            getContext().showForm((PDFormXObject) xobject);
+        }
+    }
+
+    /**
+     * Called for an image XObject, the default implementation does nothing.
+     *
+     * @param name the name of the image in the current resources
+     * @throws IOException if the image cannot be processed
+     */
+    protected void drawImage(COSName name) throws IOException
+    {
+        // overridden in subclasses
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.DRAW_OBJECT;
+    }
+}
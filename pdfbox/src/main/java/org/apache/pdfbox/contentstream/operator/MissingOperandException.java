@@ -20,6 +20,7 @@ package org.apache.pdfbox.contentstream.operator;
 import java.io.IOException;
 import java.util.List;
 import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
 
 /**
  * Throw when a PDF operator is missing required operands.
@@ -30,4 +31,9 @@ public final class MissingOperandException extends IOException
     {
         super("Operator " + operator.getName() + " has too few operands: " + operands);
     }
+
+    public MissingOperandException(Operator operator, ContentStreamOperands operands)
+    {
+        super("Operator " + operator.getName() + " has too few operands: " + operands);
+    }
 }
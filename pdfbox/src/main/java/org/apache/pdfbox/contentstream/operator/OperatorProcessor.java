@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+
+/**
+ * Processes a PDF operator.
+ *
+ * @author Laurent Huault
+ */
+public abstract class OperatorProcessor
+{
+    /** The processing context. */
+    private final PDFStreamEngine context;
+
+    /**
+     * Creates a new OperatorProcessor.
+     *
+     * @param context the processing context.
+     */
+    protected OperatorProcessor(PDFStreamEngine context)
+    {
+        this.context = context;
+    }
+
+    /**
+     * Returns the processing context.
+     *
+     * @return the processing context
+     */
+    protected final PDFStreamEngine getContext()
+    {
+        return context;
+    }
+
+    /**
+     * Process the operator.
+     *
+     * @param operator the operator to process
+     * @param operands the operands to use when processing. The instance is reused for all
+     * operators and is only valid during this call.
+     * @throws IOException if the operator cannot be processed
+     */
+    public abstract void process(Operator operator, ContentStreamOperands operands)
+            throws IOException;
+
+    /**
+     * Returns the name of this operator, e.g. "BI".
+     *
+     * @return the name of the operator
+     */
+    public abstract String getName();
+
+    /**
+     * Checks whether the first operands are all numbers.
+     *
+     * @param operands the operands to check
+     * @param count the number of operands which must be numbers
+     * @return true if there are at least <code>count</code> operands and all of them are numbers
+     */
+    protected static boolean checkNumbers(ContentStreamOperands operands, int count)
+    {
+        if (operands.size() < count)
+        {
+            return false;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            if (!operands.isNumber(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
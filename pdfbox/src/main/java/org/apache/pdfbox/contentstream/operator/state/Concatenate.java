@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.state;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+
+/**
+ * cm: Concatenate matrix to current transformation matrix.
+ */
+public class Concatenate extends OperatorProcessor
+{
+    public Concatenate(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.size() < 6)
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        if (!checkNumbers(operands, 6))
+        {
+            return;
+        }
+        getContext().getGraphicsState().getCurrentTransformationMatrix().concatenate(
+                operands.getFloat(0), operands.getFloat(1), operands.getFloat(2),
+                operands.getFloat(3), operands.getFloat(4), operands.getFloat(5));
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.CONCAT;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.state;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+
+/**
+ * Q: Restore the graphics state.
+ */
+public class Restore extends OperatorProcessor
+{
+    public Restore(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        PDFStreamEngine context = getContext();
+        if (context.getGraphicsStackSize() > 1)
+        {
+            context.restoreGraphicsState();
+        }
+        else
+        {
+            // this shouldn't happen but it does, see PDFBOX-161
+            throw new EmptyGraphicsStackException();
+        }
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.RESTORE;
+    }
+}
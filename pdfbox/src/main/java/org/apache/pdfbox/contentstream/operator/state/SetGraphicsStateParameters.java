@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.state;
+
+import java.io.IOException;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+
+/**
+ * gs: Set parameters from graphics state parameter dictionary.
+ */
+public class SetGraphicsStateParameters extends OperatorProcessor
+{
+    private static final Log LOG = LogFactory.getLog(SetGraphicsStateParameters.class);
+
+    public SetGraphicsStateParameters(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.isEmpty())
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        COSName graphicsName = operands.getName(0);
+        if (graphicsName == null)
+        {
+            return;
+        }
+        PDFStreamEngine context = getContext();
+        // set parameters from graphics state parameter dictionary
+        PDExtendedGraphicsState gs = context.getResources().getExtGState(graphicsName);
+        if (gs == null)
+        {
+            LOG.error("name for 'gs' operator not found in resources: /" + graphicsName.getName());
+            return;
+        }
+        gs.copyIntoGraphicsState(context.getGraphicsState());
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.SET_GRAPHICS_STATE_PARAMS;
+    }
+}
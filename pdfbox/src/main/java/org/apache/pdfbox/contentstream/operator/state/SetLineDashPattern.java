@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.state;
+
+import java.io.IOException;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+import org.apache.pdfbox.pdmodel.graphics.PDLineDashPattern;
+
+/**
+ * d: Set the line dash pattern.
+ */
+public class SetLineDashPattern extends OperatorProcessor
+{
+    private static final Log LOG = LogFactory.getLog(SetLineDashPattern.class);
+
+    public SetLineDashPattern(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.size() < 2)
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        COSBase base0 = operands.get(0);
+        if (!(base0 instanceof COSArray) || !operands.isNumber(1))
+        {
+            return;
+        }
+        COSArray dashArray = (COSArray) base0;
+        int dashPhase = operands.getInt(1);
+
+        boolean allZero = true;
+        for (int i = 0; i < dashArray.size(); i++)
+        {
+            COSBase base = dashArray.getObject(i);
+            if (base instanceof COSNumber)
+            {
+                if (((COSNumber) base).floatValue() != 0)
+                {
+                    allZero = false;
+                }
+            }
+            else
+            {
+                LOG.warn("dash array has non number element " + base + ", ignored");
+                dashArray = new COSArray();
+                break;
+            }
+        }
+        if (dashArray.size() > 0 && allZero)
+        {
+            LOG.warn("dash lengths all zero, ignored");
+            dashArray = new COSArray();
+        }
+        getContext().getGraphicsState().setLineDashPattern(
+                new PDLineDashPattern(dashArray, dashPhase));
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.SET_LINE_DASHPATTERN;
+    }
+}
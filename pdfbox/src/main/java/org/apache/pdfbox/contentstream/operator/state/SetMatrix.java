@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.state;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+
+/**
+ * Tm: Set text matrix and text line matrix.
+ */
+public class SetMatrix extends OperatorProcessor
+{
+    public SetMatrix(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.size() < 6)
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        if (!checkNumbers(operands, 6))
+        {
+            return;
+        }
+        float a = operands.getFloat(0);
+        float b = operands.getFloat(1);
+        float c = operands.getFloat(2);
+        float d = operands.getFloat(3);
+        float e = operands.getFloat(4);
+        float f = operands.getFloat(5);
+        PDFStreamEngine context = getContext();
+        context.getTextMatrix().setValues(a, b, c, d, e, f);
+        context.getTextLineMatrix().setValues(a, b, c, d, e, f);
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.SET_MATRIX;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.text;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+
+/**
+ * Td: Move text position.
+ */
+public class MoveText extends OperatorProcessor
+{
+    public MoveText(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.size() < 2)
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        if (!checkNumbers(operands, 2))
+        {
+            return;
+        }
+        moveText(getContext(), operands.getFloat(0), operands.getFloat(1));
+    }
+
+    /**
+     * Moves to the start of the next line, offset from the start of the current line.
+     *
+     * @param context the processing context
+     * @param tx x-offset
+     * @param ty y-offset
+     */
+    static void moveText(PDFStreamEngine context, float tx, float ty)
+    {
+        context.getTextLineMatrix().translate(tx, ty);
+        context.getTextMatrix().copyFrom(context.getTextLineMatrix());
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.MOVE_TEXT;
+    }
+}
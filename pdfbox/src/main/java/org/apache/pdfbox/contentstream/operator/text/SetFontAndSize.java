@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.text;
+
+import java.io.IOException;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.state.PDTextState;
+
+/**
+ * Tf: Set text font and size.
+ */
+public class SetFontAndSize extends OperatorProcessor
+{
+    private static final Log LOG = LogFactory.getLog(SetFontAndSize.class);
+
+    public SetFontAndSize(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.size() < 2)
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        COSName fontName = operands.getName(0);
+        if (fontName == null || !operands.isNumber(1))
+        {
+            return;
+        }
+        PDFStreamEngine context = getContext();
+        PDTextState textState = context.getGraphicsState().getTextState();
+        textState.setFontSize(operands.getFloat(1));
+        PDFont font = context.getResources().getFont(fontName);
+        if (font == null)
+        {
+            LOG.warn("font '" + fontName.getName() + "' not found in resources");
+        }
+        textState.setFont(font);
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.SET_FONT_AND_SIZE;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.contentstream.operator.text;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.MissingOperandException;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.ContentStreamOperands;
+import org.apache.pdfbox.pdmodel.graphics.state.PDTextState;
+
+/**
+ * ": Set word and character spacing, move to next line, and show text.
+ */
+public class ShowTextLineAndSpace extends OperatorProcessor
+{
+    public ShowTextLineAndSpace(PDFStreamEngine context)
+    {
+        super(context);
+    }
+
+    @Override
+    public void process(Operator operator, ContentStreamOperands operands) throws IOException
+    {
+        if (operands.size() < 3)
+        {
+            throw new MissingOperandException(operator, operands);
+        }
+        if (!checkNumbers(operands, 2))
+        {
+            return;
+        }
+        COSBase base = operands.get(2);
+        if (!(base instanceof COSString))
+        {
+            return;
+        }
+        PDFStreamEngine context = getContext();
+        PDTextState textState = context.getGraphicsState().getTextState();
+        textState.setWordSpacing(operands.getFloat(0));
+        textState.setCharacterSpacing(operands.getFloat(1));
+        NextLine.nextLine(context);
+        context.showTextString(((COSString) base).getBytes());
+    }
+
+    @Override
+    public String getName()
+    {
+        return OperatorName.SHOW_TEXT_LINE_AND_SPACE;
+    }
+}
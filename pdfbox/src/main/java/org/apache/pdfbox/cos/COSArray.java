@@ -33,7 +33,7 @@ import org.apache.pdfbox.pdmodel.common.COSObjectable;
  */
 public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInfo
 {
-    private final List<COSBase> objects = new ArrayList<>();
+    private final COSElementList objects = new COSElementList();
     private final COSUpdateState updateState;
 
     /**
@@ -274,6 +274,11 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
         int retval = defaultValue;
         if ( index < size() )
         {
+            if (objects.isNumbers())
+            {
+                return objects.isInteger(index) ? (int) objects.getLong(index)
+                        : (int) objects.getReal(index);
+            }
             Object obj = objects.get( index );
             if( obj instanceof COSNumber )
             {
@@ -283,6 +288,78 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
         return retval;
     }
 
+    /**
+     * Get the value of the array as a long, return the default if it does not exist. Real numbers
+     * are truncated.
+     *
+     * @param index The index into the list.
+     * @param defaultValue The value to return if the value is not a number.
+     * @return The value at the index or the defaultValue.
+     */
+    public long getLong( int index, long defaultValue )
+    {
+        if (index < 0 || index >= size())
+        {
+            return defaultValue;
+        }
+        if (objects.isNumbers())
+        {
+            return objects.isInteger(index) ? objects.getLong(index)
+                    : (long) objects.getReal(index);
+        }
+        Object obj = objects.get(index);
+        return obj instanceof COSNumber ? ((COSNumber) obj).longValue() : defaultValue;
+    }
+
+    /**
+     * Get the value of the array as a float, return the default if it does not exist.
+     *
+     * @param index The index into the list.
+     * @param defaultValue The value to return if the value is not a number.
+     * @return The value at the index or the defaultValue.
+     */
+    public float getFloat( int index, float defaultValue )
+    {
+        if (index < 0 || index >= size())
+        {
+            return defaultValue;
+        }
+        if (objects.isNumbers())
+        {
+            return objects.isInteger(index) ? objects.getLong(index) : objects.getReal(index);
+        }
+        Object obj = objects.get(index);
+        return obj instanceof COSNumber ? ((COSNumber) obj).floatValue() : defaultValue;
+    }
+
+    /**
+     * Tells whether the element at the given index is an integer number.
+     *
+     * @param index The index into the list.
+     * @return true if the element is a {@link COSInteger}.
+     */
+    public boolean isInteger( int index )
+    {
+        if (objects.isNumbers())
+        {
+            return objects.isInteger(index);
+        }
+        return objects.get(index) instanceof COSInteger;
+    }
+
+    /**
+     * Tells whether all elements of this array are numbers which are kept as primitive values. The
+     * elements of such an array can be read with {@link #isInteger(int)},
+     * {@link #getLong(int, long)} and {@link #getFloat(int, float)} without creating a
+     * {@link COSNumber} for each of them.
+     *
+     * @return true if this array only holds numbers stored as primitive values.
+     */
+    public boolean isNumberArray()
+    {
+        return objects.isNumbers();
+    }
+
     /**
      * Set the value in the array as an integer.
      *
@@ -578,6 +655,14 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public float[] toFloatArray()
     {
         float[] retval = new float[size()];
+        if (objects.isNumbers())
+        {
+            for (int i = 0; i < retval.length; i++)
+            {
+                retval[i] = objects.isInteger(i) ? objects.getLong(i) : objects.getReal(i);
+            }
+            return retval;
+        }
         for (int i = 0; i < retval.length; i++)
         {
             COSBase base = getObject(i);
@@ -596,7 +681,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
         this.clear();
         for (float aValue : value)
         {
-            add(new COSFloat(aValue));
+            objects.addReal(aValue);
         }
     }
 
@@ -763,6 +848,11 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
             }
         }
 
+        if (objects.isNumbers())
+        {
+            // plain numbers don't refer to any other objects
+            return;
+        }
         for (COSBase cosBase : objects)
         {
             COSObjectKey cosBaseKey = cosBase.getKey();
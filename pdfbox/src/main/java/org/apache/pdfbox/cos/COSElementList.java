@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.cos;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.RandomAccess;
+
+/**
+ * The list holding the elements of a {@link COSArray}.
+ *
+ * <p>As long as all elements are plain integer and real numbers, they are kept as primitive values
+ * and {@link COSNumber} objects are only created when an element is accessed. Integers are stored
+ * as longs, reals as the bits of their float value. Once an element is added which isn't a plain
+ * number, all elements are converted to objects for good. Numbers which are indirect objects are
+ * never stored as primitive values, as their key would be lost. Neither are reals which keep the
+ * original text they were parsed from, so that they are written unchanged.</p>
+ */
+final class COSElementList extends AbstractList<COSBase> implements RandomAccess
+{
+    private static final long[] EMPTY_NUMBERS = {};
+
+    // the numbers, null if the elements are stored as objects
+    private long[] numbers = EMPTY_NUMBERS;
+    // the indexes of the numbers which are reals, null if there are none
+    private BitSet reals;
+    // the elements, null as long as they are stored as numbers
+    private COSBase[] objects;
+    private int size;
+
+    /**
+     * Tells whether the elements are stored as primitive numbers.
+     *
+     * @return true if all elements are plain numbers
+     */
+    boolean isNumbers()
+    {
+        return numbers != null;
+    }
+
+    /**
+     * Tells whether the number at the given index is an integer, only for lists holding numbers.
+     *
+     * @param index the index of the element
+     * @return true if it is an integer, false if it is a real
+     */
+    boolean isInteger(int index)
+    {
+        checkIndex(index);
+        return reals == null || !reals.get(index);
+    }
+
+    /**
+     * Returns the value of the integer at the given index, only for lists holding numbers.
+     *
+     * @param index the index of an integer element
+     * @return the value of the integer
+     */
+    long getLong(int index)
+    {
+        checkIndex(index);
+        return numbers[index];
+    }
+
+    /**
+     * Returns the value of the real at the given index, only for lists holding numbers.
+     *
+     * @param index the index of a real element
+     * @return the value of the real
+     */
+    float getReal(int index)
+    {
+        checkIndex(index);
+        return Float.intBitsToFloat((int) numbers[index]);
+    }
+
+    /**
+     * Appends a real number.
+     *
+     * @param value the value to add
+     */
+    void addReal(float value)
+    {
+        if (numbers == null)
+        {
+            add(new COSFloat(value));
+            return;
+        }
+        ensureCapacity(size + 1);
+        setReal(size, value);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public COSBase get(int index)
+    {
+        checkIndex(index);
+        if (numbers == null)
+        {
+            return objects[index];
+        }
+        if (reals != null && reals.get(index))
+        {
+            return new COSFloat(Float.intBitsToFloat((int) numbers[index]));
+        }
+        return COSInteger.get(numbers[index]);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public COSBase set(int index, COSBase element)
+    {
+        COSBase old = get(index);
+        if (numbers != null && !store(index, element))
+        {
+            toObjects();
+        }
+        if (numbers == null)
+        {
+            objects[index] = element;
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, COSBase element)
+    {
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (numbers != null && !isPlainNumber(element))
+        {
+            toObjects();
+        }
+        ensureCapacity(size + 1);
+        if (numbers != null)
+        {
+            System.arraycopy(numbers, index, numbers, index + 1, size - index);
+            shiftReals(index, 1);
+            store(index, element);
+        }
+        else
+        {
+            System.arraycopy(objects, index, objects, index + 1, size - index);
+            objects[index] = element;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public COSBase remove(int index)
+    {
+        COSBase old = get(index);
+        int moved = size - index - 1;
+        if (numbers != null)
+        {
+            System.arraycopy(numbers, index + 1, numbers, index, moved);
+            shiftReals(index + 1, -1);
+        }
+        else
+        {
+            System.arraycopy(objects, index + 1, objects, index, moved);
+            objects[size - 1] = null;
+        }
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear()
+    {
+        numbers = EMPTY_NUMBERS;
+        reals = null;
+        objects = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Tells whether the given element can be stored as a primitive number.
+     */
+    private static boolean isPlainNumber(COSBase element)
+    {
+        if (element instanceof COSInteger)
+        {
+            return ((COSInteger) element).isValid() && element.getKey() == null;
+        }
+        return element instanceof COSFloat && element.getKey() == null
+                && !((COSFloat) element).hasOriginalText();
+    }
+
+    /**
+     * Stores a number at the given index, returns false if it isn't a plain number.
+     */
+    private boolean store(int index, COSBase element)
+    {
+        if (!isPlainNumber(element))
+        {
+            return false;
+        }
+        if (element instanceof COSInteger)
+        {
+            numbers[index] = ((COSInteger) element).longValue();
+            if (reals != null)
+            {
+                reals.clear(index);
+            }
+        }
+        else
+        {
+            setReal(index, ((COSFloat) element).floatValue());
+        }
+        return true;
+    }
+
+    private void setReal(int index, float value)
+    {
+        numbers[index] = Float.floatToIntBits(value);
+        if (reals == null)
+        {
+            reals = new BitSet();
+        }
+        reals.set(index);
+    }
+
+    /**
+     * Moves the real flags starting at the given index by the given distance.
+     */
+    private void shiftReals(int from, int distance)
+    {
+        if (reals == null)
+        {
+            return;
+        }
+        BitSet shifted = reals.get(0, from);
+        if (distance < 0)
+        {
+            // the flag of the removed element is dropped
+            shifted.clear(from + distance, from);
+        }
+        for (int i = reals.nextSetBit(from); i >= 0; i = reals.nextSetBit(i + 1))
+        {
+            shifted.set(i + distance);
+        }
+        reals = shifted.isEmpty() ? null : shifted;
+    }
+
+    /**
+     * Converts all elements to objects.
+     */
+    private void toObjects()
+    {
+        COSBase[] elements = new COSBase[Math.max(numbers.length, 4)];
+        for (int i = 0; i < size; i++)
+        {
+            elements[i] = get(i);
+        }
+        numbers = null;
+        reals = null;
+        objects = elements;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        int length = numbers != null ? numbers.length : objects.length;
+        if (capacity <= length)
+        {
+            return;
+        }
+        int newLength = Math.max(capacity, Math.max(4, length + (length >> 1)));
+        if (numbers != null)
+        {
+            numbers = Arrays.copyOf(numbers, newLength);
+        }
+        else
+        {
+            objects = Arrays.copyOf(objects, newLength);
+        }
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
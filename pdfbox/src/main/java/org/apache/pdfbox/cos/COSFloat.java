@@ -18,9 +18,10 @@ package org.apache.pdfbox.cos;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 
+import org.apache.pdfbox.util.NumberFormatUtil;
+
 /**
  * This class represents a floating point number in a PDF document.
  *
@@ -30,7 +31,8 @@ import java.nio.charset.StandardCharsets;
 public class COSFloat extends COSNumber
 {
     private final float value;
-    private String valueAsString;
+    // the original string of a parsed value, other values are formatted when they are written
+    private final String valueAsString;
 
     /**
      * Constructor.
@@ -40,6 +42,19 @@ public class COSFloat extends COSNumber
     public COSFloat( float aFloat )
     {
         value = aFloat;
+        valueAsString = null;
+    }
+
+    /**
+     * Constructor for a value which has already been parsed from the given text.
+     *
+     * @param aFloat The primitive float object that this object wraps.
+     * @param valueAsString The text of the value, which is written instead of the value.
+     */
+    COSFloat( float aFloat, String valueAsString )
+    {
+        value = aFloat;
+        this.valueAsString = valueAsString;
     }
 
     /**
@@ -91,6 +106,18 @@ public class COSFloat extends COSNumber
         valueAsString = stringValue;
     }
 
+    /**
+     * Tells whether this real keeps the text it was parsed from, which is written instead of the
+     * shortest form of the value. A real without it can be written by formatting
+     * {@link #floatValue()} alone.
+     *
+     * @return true if the original text is kept
+     */
+    public boolean hasOriginalText()
+    {
+        return valueAsString != null;
+    }
+
     /**
      * Check and coerce the value field to be between MIN_NORMAL and MAX_VALUE.
      * 
@@ -178,19 +205,20 @@ public class COSFloat extends COSNumber
     }
 
     /**
-     * Builds, if needed, and returns the string representation of the current value.
+     * Returns the original string of a parsed value, or builds the string representation of the
+     * current value.
      * @return current value as string.
      */
     private String formatString()
     {
-        if (valueAsString == null)
+        if (valueAsString != null)
         {
-            String s = String.valueOf(value);
-            boolean simpleFormat = s.indexOf('E') < 0;
-            valueAsString = simpleFormat ? s
-                    : new BigDecimal(s).stripTrailingZeros().toPlainString();
+            return valueAsString;
         }
-        return valueAsString;
+        byte[] buffer = new byte[NumberFormatUtil.MAX_FLOAT_LENGTH];
+        int length = NumberFormatUtil.formatFloatShortest(value, buffer, 0);
+        return length < 0 ? String.valueOf(value)
+                : new String(buffer, 0, length, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -213,6 +241,37 @@ public class COSFloat extends COSNumber
      */
     public void writePDF( OutputStream output ) throws IOException
     {
-        output.write(formatString().getBytes(StandardCharsets.ISO_8859_1));
+        if (valueAsString != null)
+        {
+            output.write(valueAsString.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        else
+        {
+            writePDF(value, output);
+        }
+    }
+
+    /**
+     * This will output the given value as a PDF real number, formatted like a COSFloat created for
+     * that value. The shortest decimal which parses back to the same value is written, without
+     * creating any strings.
+     *
+     * @param value The value to write.
+     * @param output The stream to write to.
+     * @throws IOException If there is an error writing to the stream.
+     */
+    public static void writePDF( float value, OutputStream output ) throws IOException
+    {
+        byte[] buffer = new byte[NumberFormatUtil.MAX_FLOAT_LENGTH];
+        int length = NumberFormatUtil.formatFloatShortest(value, buffer, 0);
+        if (length < 0)
+        {
+            // NaN or infinite, there is no valid representation
+            output.write(String.valueOf(value).getBytes(StandardCharsets.ISO_8859_1));
+        }
+        else
+        {
+            output.write(buffer, 0, length);
+        }
     }
 }
@@ -212,6 +212,18 @@ public final class COSInteger extends COSNumber
      * @throws IOException If there is an error writing to the stream.
      */
     public void writePDF( OutputStream output ) throws IOException
+    {
+        writePDF(value, output);
+    }
+
+    /**
+     * This will output the given value as a PDF integer.
+     *
+     * @param value The value to write.
+     * @param output The stream to write to.
+     * @throws IOException If there is an error writing to the stream.
+     */
+    public static void writePDF( long value, OutputStream output ) throws IOException
     {
         output.write(String.valueOf(value).getBytes(StandardCharsets.ISO_8859_1));
     }
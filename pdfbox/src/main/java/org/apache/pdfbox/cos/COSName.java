@@ -18,22 +18,39 @@ package org.apache.pdfbox.cos;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
 import org.apache.pdfbox.util.Hex;
 
 /**
  * A PDF Name object.
  *
+ * <p>There is exactly one instance for each name, so names can be compared by identity. The
+ * common names are held by the static constants, all other names are only held weakly and are
+ * released when they are no longer used.</p>
+ *
  * @author Ben Litchfield
  */
 public final class COSName extends COSBase implements Comparable<COSName>
 {
+    private static final Log LOG = LogFactory.getLog(COSName.class);
+
     // using ConcurrentHashMap because this can be accessed by multiple threads
-    private static final Map<String, COSName> nameMap = new ConcurrentHashMap<>(8192);
+    private static final Map<String, NameReference> nameMap = new ConcurrentHashMap<>(8192);
+
+    // names which are no longer used, their entries are removed from nameMap
+    private static final ReferenceQueue<COSName> releasedNames = new ReferenceQueue<>();
 
     // all common COSName values are stored in this HashMap
     // they are already defined as static constants and don't need to be synchronized
@@ -137,6 +154,7 @@ public final class COSName extends COSBase implements Comparable<COSName>
     public static final COSName CICI_SIGNIT = new COSName("CICI.SignIt");
     public static final COSName CID_FONT_TYPE0 = new COSName("CIDFontType0");
     public static final COSName CID_FONT_TYPE2 = new COSName("CIDFontType2");
+    public static final COSName CID_FONT_TYPE0C = new COSName("CIDFontType0C");
     public static final COSName CID_TO_GID_MAP = new COSName("CIDToGIDMap");
     public static final COSName CID_SET = new COSName("CIDSet");
     public static final COSName CIDSYSTEMINFO = new COSName("CIDSystemInfo");
@@ -156,6 +174,7 @@ public final class COSName extends COSBase implements Comparable<COSName>
     public static final COSName COLLECTION_SUBITEM = new COSName("CollectionSubitem");
     public static final COSName COLOR_BURN = new COSName("ColorBurn");
     public static final COSName COLOR_DODGE = new COSName("ColorDodge");
+    public static final COSName COLOR_TRANSFORM = new COSName("ColorTransform");
     public static final COSName COLORANTS = new COSName("Colorants");
     public static final COSName COLORS = new COSName("Colors");
     public static final COSName COLORSPACE = new COSName("ColorSpace");
@@ -654,6 +673,11 @@ public final class COSName extends COSBase implements Comparable<COSName>
     // Z
     public static final COSName ZA_DB = new COSName("ZaDb");
 
+    // open addressing table of all common names, keyed by their bytes, see getPDFName(byte[])
+    // must be initialized after all common names have been created
+    private static final COSName[] commonNameTable = createCommonNameTable();
+    private static final byte[][] commonNameTableBytes = createCommonNameTableBytes();
+
     // fields
     private final String name;
     private final int hashCode;
@@ -667,23 +691,170 @@ public final class COSName extends COSBase implements Comparable<COSName>
      */
     public static COSName getPDFName(String aName)
     {
-        COSName name = null;
-        if (aName != null)
+        if (aName == null)
+        {
+            return null;
+        }
+        // Is it a common COSName ??
+        COSName name = commonNameMap.get(aName);
+        if (name != null)
+        {
+            return name;
+        }
+        // It seems to be a document specific COSName
+        NameReference reference = nameMap.get(aName);
+        name = reference != null ? reference.get() : null;
+        return name != null ? name : createPDFName(aName);
+    }
+
+    /**
+     * Creates the canonical instance of a document specific name, unless another thread did so in
+     * the meantime.
+     */
+    private static COSName createPDFName(String aName)
+    {
+        removeReleasedNames();
+        // the new name must be held strongly until it is returned
+        COSName[] name = new COSName[1];
+        nameMap.compute(aName, (key, reference) ->
+        {
+            name[0] = reference != null ? reference.get() : null;
+            if (name[0] != null)
+            {
+                return reference;
+            }
+            name[0] = new COSName(key, false);
+            return new NameReference(name[0]);
+        });
+        return name[0];
+    }
+
+    private static void removeReleasedNames()
+    {
+        Reference<? extends COSName> reference;
+        while ((reference = releasedNames.poll()) != null)
+        {
+            NameReference released = (NameReference) reference;
+            // the entry may already have been replaced by a new instance of the name
+            nameMap.remove(released.name, released);
+        }
+    }
+
+    /**
+     * The weak reference to a document specific name, which remembers the name so that the entry
+     * can be removed from the map after the COSName was released.
+     */
+    private static final class NameReference extends WeakReference<COSName>
+    {
+        private final String name;
+
+        private NameReference(COSName referent)
+        {
+            super(referent, releasedNames);
+            name = referent.name;
+        }
+    }
+
+    /**
+     * This will get a COSName object for the given bytes of a name, as found in a PDF after
+     * resolving any "#" escapes. Names which are one of the common names are found without
+     * creating a String. The bytes are expected to be UTF-8, but as some malformed PDFs don't use
+     * UTF-8, see PDFBOX-3347, Windows-1252 is used if they are not valid UTF-8.
+     *
+     * @param bytes the buffer holding the name
+     * @param offset the offset of the name within the buffer
+     * @param length the length of the name in bytes
+     * @return A COSName with the specified name.
+     */
+    public static COSName getPDFName(byte[] bytes, int offset, int length)
+    {
+        int hash = 0;
+        boolean ascii = true;
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            hash = 31 * hash + (bytes[i] & 0xFF);
+            ascii &= bytes[i] >= 0;
+        }
+        if (ascii)
         {
-            // Is it a common COSName ??
-            name = commonNameMap.get(aName);
-            if (name == null)
+            // for ASCII names this is the same as String.hashCode()
+            int mask = commonNameTable.length - 1;
+            for (int slot = hash & mask; commonNameTable[slot] != null; slot = (slot + 1) & mask)
             {
-                // It seems to be a document specific COSName
-                name = nameMap.get(aName);
-                if (name == null)
+                if (commonNameTable[slot].hashCode == hash && equalBytes(
+                        commonNameTableBytes[slot], bytes, offset, length))
                 {
-                    // name is added to the synchronized map in the constructor
-                    name = new COSName(aName, false);
+                    return commonNameTable[slot];
                 }
             }
+            return getPDFName(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
         }
-        return name;
+        Charset charset = isValidUTF8(bytes, offset, length) ? StandardCharsets.UTF_8
+                : Charset.forName("Windows-1252");
+        return getPDFName(new String(bytes, offset, length, charset));
+    }
+
+    private static boolean equalBytes(byte[] name, byte[] bytes, int offset, int length)
+    {
+        if (name.length != length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (name[i] != bytes[offset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a byte sequence is valid UTF-8.
+     */
+    private static boolean isValidUTF8(byte[] bytes, int offset, int length)
+    {
+        try
+        {
+            StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes, offset, length));
+            return true;
+        }
+        catch (CharacterCodingException e)
+        {
+            LOG.debug("Character could not be decoded using StandardCharsets.UTF_8 - returning false", e);
+            return false;
+        }
+    }
+
+    private static COSName[] createCommonNameTable()
+    {
+        // load factor below 0.5 to keep the probe sequences short
+        int size = Integer.highestOneBit(commonNameMap.size() * 4 - 1);
+        COSName[] table = new COSName[size];
+        for (COSName name : commonNameMap.values())
+        {
+            int slot = name.hashCode & (size - 1);
+            while (table[slot] != null)
+            {
+                slot = (slot + 1) & (size - 1);
+            }
+            table[slot] = name;
+        }
+        return table;
+    }
+
+    private static byte[][] createCommonNameTableBytes()
+    {
+        byte[][] bytes = new byte[commonNameTable.length][];
+        for (int i = 0; i < commonNameTable.length; i++)
+        {
+            if (commonNameTable[i] != null)
+            {
+                bytes[i] = commonNameTable[i].name.getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+        return bytes;
     }
 
     /**
@@ -691,7 +862,7 @@ public final class COSName extends COSBase implements Comparable<COSName>
      * 
      * @param aName The name of the COSName object.
      * @param staticValue Indicates if the COSName object is static so that it can be stored in the HashMap without
-     * synchronizing.
+     * synchronizing. Other names are registered by {@link #createPDFName(String)}.
      */
     private COSName(String aName, boolean staticValue)
     {
@@ -701,10 +872,6 @@ public final class COSName extends COSBase implements Comparable<COSName>
         {
             commonNameMap.put(aName, this);
         }
-        else
-        {
-            nameMap.put(aName, this);
-        }
     }
 
     /**
@@ -736,7 +903,8 @@ public final class COSName extends COSBase implements Comparable<COSName>
     @Override
     public boolean equals(Object object)
     {
-        return object instanceof COSName && name.equals(((COSName) object).name);
+        // there is only one instance for each name
+        return this == object;
     }
 
     @Override
@@ -804,11 +972,13 @@ public final class COSName extends COSBase implements Comparable<COSName>
     }
 
     /**
-     * Not usually needed except if resources need to be reclaimed in a long running process.
+     * Removes the map entries of document specific names which are no longer used. This isn't
+     * needed anymore, as this happens whenever a new name is created and the names themselves are
+     * released by the garbage collector. Names which are still in use are kept, so that there
+     * remains only one instance for each name.
      */
     public static void clearResources()
     {
-        // Clear them all
-        nameMap.clear();
+        removeReleasedNames();
     }
 }
@@ -0,0 +1,428 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.cos;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The map holding the items of a {@link COSDictionary}, the entries are kept in the order they were
+ * added.
+ *
+ * <p>Small maps are searched linearly. Once a map has more than {@link #HASH_THRESHOLD} entries an
+ * open addressing hash table is added to find keys in constant time, it is dropped again when the
+ * map shrinks to less than half that size. As there is only one instance for each name, keys are
+ * compared by identity.</p>
+ *
+ * <p><code>null</code> is not supported for keys or values. The collections returned by
+ * {@link #keySet()}, {@link #values()} and {@link #entrySet()} are unmodifiable copies, so that the
+ * map may be changed while iterating over them.</p>
+ */
+final class COSNameMap implements Map<COSName, COSBase>
+{
+    /**
+     * Maps with more entries than this are hashed.
+     */
+    static final int HASH_THRESHOLD = 8;
+
+    private static final COSName[] EMPTY_KEYS = {};
+    private static final COSBase[] EMPTY_VALUES = {};
+
+    private COSName[] keys = EMPTY_KEYS;
+    private COSBase[] values = EMPTY_VALUES;
+    private int size;
+
+    // index of the entry + 1 for each slot, 0 for empty slots, null if the map isn't hashed
+    private int[] table;
+
+    // number of structural changes, to detect changes within forEach()
+    private int modCount;
+
+    /**
+     * Creates an empty map.
+     */
+    COSNameMap()
+    {
+    }
+
+    /**
+     * Creates a map with the entries of the given map.
+     *
+     * @param map the entries to be copied
+     */
+    COSNameMap(Map<? extends COSName, ? extends COSBase> map)
+    {
+        putAll(map);
+    }
+
+    /**
+     * Tells whether a hash table is used to find the keys.
+     *
+     * @return true if the map is hashed
+     */
+    boolean isHashed()
+    {
+        return table != null;
+    }
+
+    private static int hash(int hashCode)
+    {
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+    private int indexOf(Object key)
+    {
+        if (!(key instanceof COSName))
+        {
+            return -1;
+        }
+        if (table == null)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                if (keys[i] == key)
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int mask = table.length - 1;
+        for (int slot = hash(key.hashCode()) & mask;; slot = (slot + 1) & mask)
+        {
+            int entry = table[slot];
+            if (entry == 0 || keys[entry - 1] == key)
+            {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void insert(int index)
+    {
+        int mask = table.length - 1;
+        int slot = hash(keys[index].hashCode()) & mask;
+        while (table[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    /**
+     * Builds the hash table with a load factor of at most 1/2, or drops it for small maps.
+     */
+    private void rehash()
+    {
+        if (size <= HASH_THRESHOLD / 2)
+        {
+            table = null;
+            return;
+        }
+        int capacity = Integer.highestOneBit(size * 4 - 1);
+        if (table == null || table.length != capacity)
+        {
+            table = new int[capacity];
+        }
+        else
+        {
+            Arrays.fill(table, 0);
+        }
+        for (int i = 0; i < size; i++)
+        {
+            insert(i);
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > keys.length)
+        {
+            int newCapacity = Math.max(capacity, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        if (value == null)
+        {
+            return false;
+        }
+        for (int i = 0; i < size; i++)
+        {
+            if (value.equals(values[i]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public COSBase get(Object key)
+    {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public COSBase put(COSName key, COSBase value)
+    {
+        if (key == null || value == null)
+        {
+            throw new NullPointerException("Key or value must not be null.");
+        }
+        int index = indexOf(key);
+        if (index >= 0)
+        {
+            COSBase oldValue = values[index];
+            values[index] = value;
+            return oldValue;
+        }
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        modCount++;
+        if (table == null ? size > HASH_THRESHOLD : size * 2 > table.length)
+        {
+            rehash();
+        }
+        else if (table != null)
+        {
+            insert(size - 1);
+        }
+        return null;
+    }
+
+    @Override
+    public COSBase remove(Object key)
+    {
+        int index = indexOf(key);
+        if (index < 0)
+        {
+            return null;
+        }
+        COSBase oldValue = values[index];
+        int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        modCount++;
+        if (table != null)
+        {
+            // the indexes of all following entries have changed
+            rehash();
+        }
+        return oldValue;
+    }
+
+    @Override
+    public void putAll(Map<? extends COSName, ? extends COSBase> map)
+    {
+        ensureCapacity(size + map.size());
+        for (Map.Entry<? extends COSName, ? extends COSBase> entry : map.entrySet())
+        {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        keys = EMPTY_KEYS;
+        values = EMPTY_VALUES;
+        size = 0;
+        table = null;
+        modCount++;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super COSName, ? super COSBase> action)
+    {
+        int expectedModCount = modCount;
+        for (int i = 0; i < size; i++)
+        {
+            action.accept(keys[i], values[i]);
+            if (modCount != expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    @Override
+    public Set<COSName> keySet()
+    {
+        if (size == 0)
+        {
+            return Collections.emptySet();
+        }
+        return new ArraySet<>(Arrays.asList(Arrays.copyOf(keys, size)));
+    }
+
+    @Override
+    public Collection<COSBase> values()
+    {
+        if (size == 0)
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(values, size)));
+    }
+
+    @Override
+    public Set<Map.Entry<COSName, COSBase>> entrySet()
+    {
+        if (size == 0)
+        {
+            return Collections.emptySet();
+        }
+        List<Map.Entry<COSName, COSBase>> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            entries.add(new MapEntry(keys[i], values[i]));
+        }
+        return new ArraySet<>(entries);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+        if (!(obj instanceof Map) || ((Map<?, ?>) obj).size() != size)
+        {
+            return false;
+        }
+        Map<?, ?> other = (Map<?, ?>) obj;
+        for (int i = 0; i < size; i++)
+        {
+            if (!values[i].equals(other.get(keys[i])))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hashCode = 0;
+        for (int i = 0; i < size; i++)
+        {
+            hashCode += keys[i].hashCode() ^ values[i].hashCode();
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(keys[i]).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * An entry of an entry set, setting its value changes the map.
+     */
+    private final class MapEntry extends AbstractMap.SimpleEntry<COSName, COSBase>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private MapEntry(COSName key, COSBase value)
+        {
+            super(key, value);
+        }
+
+        @Override
+        public COSBase setValue(COSBase value)
+        {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * An unmodifiable set backed by a list of distinct elements.
+     */
+    private static final class ArraySet<E> extends AbstractSet<E>
+    {
+        private final List<E> elements;
+
+        private ArraySet(List<E> elements)
+        {
+            this.elements = Collections.unmodifiableList(elements);
+        }
+
+        @Override
+        public Iterator<E> iterator()
+        {
+            return elements.iterator();
+        }
+
+        @Override
+        public int size()
+        {
+            return elements.size();
+        }
+    }
+}
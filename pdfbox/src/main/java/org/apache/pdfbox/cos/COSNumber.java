@@ -17,6 +17,9 @@
 package org.apache.pdfbox.cos;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.pdfbox.util.NumberFormatUtil;
 
 /**
  * This class represents an abstract number in a PDF document.
@@ -94,6 +97,42 @@ public abstract class COSNumber extends COSBase
         }
     }
 
+    /**
+     * This factory method will get the appropriate number object from the bytes of a number as
+     * found in a PDF. Plain integers and reals without exponent are converted directly from the
+     * bytes, anything else is handled by {@link #get(String)}. Like {@link COSFloat#COSFloat(String)},
+     * a real keeps its original text, unless the text is known to be the shortest form of its value.
+     *
+     * @param bytes the buffer holding the number
+     * @param offset the offset of the number within the buffer
+     * @param length the length of the number in bytes
+     *
+     * @return A number object, either float or int.
+     *
+     * @throws IOException If the bytes are not a number.
+     */
+    public static COSNumber get(byte[] bytes, int offset, int length) throws IOException
+    {
+        long longValue = NumberFormatUtil.parseLongFast(bytes, offset, length);
+        if (longValue != Long.MIN_VALUE)
+        {
+            return COSInteger.get(longValue);
+        }
+        float floatValue = NumberFormatUtil.parseFloatFast(bytes, offset, length);
+        if (!Float.isNaN(floatValue))
+        {
+            // -0.0 is coerced to 0 like in COSFloat(String)
+            float value = floatValue == 0 ? 0f : floatValue;
+            if (NumberFormatUtil.isFormattedShortest(value, bytes, offset, length))
+            {
+                return new COSFloat(value);
+            }
+            return new COSFloat(value, new String(bytes, offset, length,
+                    StandardCharsets.ISO_8859_1));
+        }
+        return get(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+    }
+
     private static boolean isFloat( String number )
     {
         int length = number.length();
@@ -274,6 +274,12 @@ public class COSUpdateState
      */
     void update(COSArray children)
     {
+        if (children != null && children.isNumberArray())
+        {
+            // numbers don't have an update state
+            update();
+            return;
+        }
         update((Iterable<COSBase>) children);
     }
     
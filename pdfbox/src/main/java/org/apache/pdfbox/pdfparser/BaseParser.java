@@ -18,11 +18,8 @@ package org.apache.pdfbox.pdfparser;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -55,8 +52,6 @@ public abstract class BaseParser
 
     static final int MAX_LENGTH_LONG = Long.toString(Long.MAX_VALUE).length();
 
-    private final CharsetDecoder utf8Decoder = StandardCharsets.UTF_8.newDecoder();
-
     private final Map<Integer, COSObjectKey> keyCache = new HashMap<>();
 
     /**
@@ -129,6 +124,12 @@ public abstract class BaseParser
      */
     protected COSDocument document;
 
+    /**
+     * Reusable buffer holding the bytes of the current name or number token.
+     */
+    private byte[] tokenBuffer = new byte[32];
+    private int tokenLength;
+
     /**
      * Default constructor.
      */
@@ -144,6 +145,111 @@ public abstract class BaseParser
         (ch >= 'A' && ch <= 'F');
     }
 
+    private static int hexValue(int ch)
+    {
+        if (ch >= '0' && ch <= '9')
+        {
+            return ch - '0';
+        }
+        if (ch >= 'a' && ch <= 'f')
+        {
+            return ch - 'a' + 10;
+        }
+        if (ch >= 'A' && ch <= 'F')
+        {
+            return ch - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Discards the bytes of the current token.
+     */
+    final void resetToken()
+    {
+        tokenLength = 0;
+    }
+
+    /**
+     * Appends a byte to the current token.
+     *
+     * @param b the byte to append
+     */
+    final void appendToken(int b)
+    {
+        if (tokenLength == tokenBuffer.length)
+        {
+            tokenBuffer = Arrays.copyOf(tokenBuffer, tokenLength * 2);
+        }
+        tokenBuffer[tokenLength++] = (byte) b;
+    }
+
+    /**
+     * Returns the buffer holding the current token, starting at index 0. The buffer may be
+     * replaced when the token grows.
+     *
+     * @return the token buffer
+     */
+    final byte[] tokenBuffer()
+    {
+        return tokenBuffer;
+    }
+
+    /**
+     * Returns the length of the current token.
+     *
+     * @return the number of bytes of the current token
+     */
+    final int tokenLength()
+    {
+        return tokenLength;
+    }
+
+    /**
+     * Converts the current token to a number.
+     *
+     * @return the number
+     * @throws IOException if the token is not a number
+     */
+    final COSNumber tokenToNumber() throws IOException
+    {
+        return COSNumber.get(tokenBuffer, 0, tokenLength);
+    }
+
+    /**
+     * Returns the current token as string, each byte being one character.
+     *
+     * @return the current token
+     */
+    final String tokenToString()
+    {
+        return new String(tokenBuffer, 0, tokenLength, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Converts the current token, which consists of digits only, to a long.
+     *
+     * @return the value or -1 if the token is empty or the value doesn't fit into a long
+     */
+    private long tokenToLong()
+    {
+        if (tokenLength == 0)
+        {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < tokenLength; i++)
+        {
+            int digit = tokenBuffer[i] - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10)
+            {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
     /**
      * Returns the object key for the given combination of object and generation number. The object key from the cross
      * reference table/stream will be reused if available. Otherwise a newly created object will be returned.
@@ -772,7 +878,7 @@ public abstract class BaseParser
     protected COSName parseCOSName() throws IOException
     {
         readExpectedChar('/');
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        resetToken();
         int c = source.read();
         while (c != -1)
         {
@@ -787,17 +893,11 @@ public abstract class BaseParser
                 // PDF versions of 1.2 or later.  The solution here is that we
                 // interpret the # as an escape only when it is followed by two
                 // valid hex digits.
-                if (isHexDigit((char)ch1) && isHexDigit((char)ch2))
+                int hex1 = hexValue(ch1);
+                int hex2 = hexValue(ch2);
+                if (hex1 >= 0 && hex2 >= 0)
                 {
-                    String hex = Character.toString((char) ch1) + (char) ch2;
-                    try
-                    {
-                        buffer.write(Integer.parseInt(hex, 16));
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        throw new IOException("Error: expected hex digit, actual='" + hex + "'", e);
-                    }
+                    appendToken((hex1 << 4) | hex2);
                     c = source.read();
                 }
                 else
@@ -811,7 +911,7 @@ public abstract class BaseParser
                     }
                     source.rewind(1);
                     c = ch1;
-                    buffer.write(ch);
+                    appendToken(ch);
                 }
             }
             else if (isEndOfName(ch))
@@ -820,7 +920,7 @@ public abstract class BaseParser
             }
             else
             {
-                buffer.write(ch);
+                appendToken(ch);
                 c = source.read();
             }
         }
@@ -828,38 +928,9 @@ public abstract class BaseParser
         {
             source.rewind(1);
         }
-        
-        byte[] bytes = buffer.toByteArray();
-        String string;
-        if (isValidUTF8(bytes))
-        {
-            string = new String(bytes, StandardCharsets.UTF_8);
-        }
-        else
-        {
-            // some malformed PDFs don't use UTF-8 see PDFBOX-3347
-            string = new String(bytes, Charset.forName("Windows-1252"));
-        }
-        return COSName.getPDFName(string);
+        return COSName.getPDFName(tokenBuffer, 0, tokenLength);
     }
 
-    /**
-     * Returns true if a byte sequence is valid UTF-8.
-     */
-    private boolean isValidUTF8(byte[] input)
-    {
-        try
-        {
-            utf8Decoder.decode(ByteBuffer.wrap(input));
-            return true;
-        }
-        catch (CharacterCodingException e)
-        {
-            LOG.debug("Character could not be decoded using StandardCharsets.UTF_8 - returning false", e);
-            return false;
-        }
-    }
-    
     /**
      * This will parse a directory object from the stream.
      *
@@ -939,20 +1010,18 @@ public abstract class BaseParser
 
     private COSNumber parseCOSNumber() throws IOException
     {
-        StringBuilder buf = new StringBuilder();
-        int ic = source.read();
-        char c = (char) ic;
-        while (Character.isDigit(c) || c == '-' || c == '+' || c == '.' || c == 'E' || c == 'e')
+        resetToken();
+        int c = source.read();
+        while (isDigit(c) || c == '-' || c == '+' || c == '.' || c == 'E' || c == 'e')
         {
-            buf.append(c);
-            ic = source.read();
-            c = (char) ic;
+            appendToken(c);
+            c = source.read();
         }
-        if (ic != -1)
+        if (c != -1)
         {
             source.rewind(1);
         }
-        return COSNumber.get(buf.toString());
+        return tokenToNumber();
     }
 
     /**
@@ -1301,22 +1370,15 @@ public abstract class BaseParser
     protected int readInt() throws IOException
     {
         skipSpaces();
-        int retval = 0;
-
-        StringBuilder intBuffer = readStringNumber();
-
-        try
-        {
-            retval = Integer.parseInt( intBuffer.toString() );
-        }
-        catch( NumberFormatException e )
+        readDigits();
+        long value = tokenToLong();
+        if (value < 0 || value > Integer.MAX_VALUE)
         {
-            source.rewind(intBuffer.toString().getBytes(StandardCharsets.ISO_8859_1).length);
+            source.rewind(tokenLength);
             throw new IOException("Error: Expected an integer type at offset " +
-                    source.getPosition() +
-                                  ", instead got '" + intBuffer + "'", e);
+                    source.getPosition() + ", instead got '" + tokenToString() + "'");
         }
-        return retval;
+        return (int) value;
     }
     
 
@@ -1330,40 +1392,33 @@ public abstract class BaseParser
     protected long readLong() throws IOException
     {
         skipSpaces();
-        long retval = 0;
-
-        StringBuilder longBuffer = readStringNumber();
-
-        try
-        {
-            retval = Long.parseLong( longBuffer.toString() );
-        }
-        catch( NumberFormatException e )
+        readDigits();
+        long value = tokenToLong();
+        if (value < 0)
         {
-            source.rewind(longBuffer.toString().getBytes(StandardCharsets.ISO_8859_1).length);
+            source.rewind(tokenLength);
             throw new IOException( "Error: Expected a long type at offset "
-                    + source.getPosition() + ", instead got '" + longBuffer + "'", e);
+                    + source.getPosition() + ", instead got '" + tokenToString() + "'");
         }
-        return retval;
+        return value;
     }
 
     /**
      * This method is used to read a token by the {@linkplain #readInt()} and the {@linkplain #readLong()} method. Valid
-     * delimiters are any non digit values.
+     * delimiters are any non digit values. The digits are collected as the current token.
      *
-     * @return the token to parse as integer or long by the calling method.
      * @throws IOException throws by the {@link #source} methods.
      */
-    protected final StringBuilder readStringNumber() throws IOException
+    private void readDigits() throws IOException
     {
+        resetToken();
         int lastByte;
-        StringBuilder buffer = new StringBuilder();
         while ((lastByte = source.read()) >= '0' && lastByte <= '9')
         {
-            buffer.append( (char)lastByte );
-            if (buffer.length() > MAX_LENGTH_LONG)
+            appendToken(lastByte);
+            if (tokenLength > MAX_LENGTH_LONG)
             {
-                throw new IOException("Number '" + buffer + 
+                throw new IOException("Number '" + tokenToString() +
                         "' is getting too long, stop reading at offset " + source.getPosition());
             }
         }
@@ -1371,6 +1426,5 @@ public abstract class BaseParser
         {
             source.rewind(1);
         }
-        return buffer;
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdfparser;
+
+import java.io.IOException;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+
+/**
+ * Receives the operators of a content stream, together with their operands, from
+ * {@link PDFStreamParser#parse(ContentStreamHandler)}.
+ */
+@FunctionalInterface
+public interface ContentStreamHandler
+{
+    /**
+     * Called for every operator of the content stream, in order.
+     *
+     * @param operator the operator
+     * @param operands the operands preceding the operator. The instance is reused for all
+     * operators of the stream and is only valid during this call.
+     * @throws IOException if the operator could not be processed, which stops the parsing
+     */
+    void processOperator(Operator operator, ContentStreamOperands operands) throws IOException;
+}
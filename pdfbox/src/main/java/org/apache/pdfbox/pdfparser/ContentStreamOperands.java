@@ -0,0 +1,292 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdfparser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.util.NumberFormatUtil;
+
+/**
+ * The operands of a content stream operator, as delivered to a {@link ContentStreamHandler}.
+ *
+ * <p>Numeric operands are kept as primitives and can be read with {@link #getFloat(int)},
+ * {@link #getInt(int)} and {@link #getLong(int)} without creating any objects. All other operands
+ * are kept as the parsed COS objects. {@link #get(int)} creates a {@link COSNumber} for numeric
+ * operands on demand.</p>
+ */
+public final class ContentStreamOperands
+{
+    private static final byte INTEGER = 1;
+    private static final byte REAL = 2;
+    private static final byte OBJECT = 3;
+
+    private byte[] kinds = new byte[8];
+    // long values of integers, float bits of reals
+    private long[] values = new long[8];
+    private COSBase[] objects = new COSBase[8];
+    private int size;
+
+    /**
+     * Returns the number of operands.
+     *
+     * @return the number of operands
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Tells whether there are no operands.
+     *
+     * @return true if there are no operands
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Tells whether the given operand is a number.
+     *
+     * @param index the index of the operand
+     * @return true if the operand is a number
+     */
+    public boolean isNumber(int index)
+    {
+        checkIndex(index);
+        return kinds[index] != OBJECT || objects[index] instanceof COSNumber;
+    }
+
+    /**
+     * Tells whether the given operand is an integer number.
+     *
+     * @param index the index of the operand
+     * @return true if the operand is an integer number
+     */
+    public boolean isInteger(int index)
+    {
+        checkIndex(index);
+        return kinds[index] == INTEGER || objects[index] instanceof COSInteger;
+    }
+
+    /**
+     * Returns the float value of a numeric operand.
+     *
+     * @param index the index of the operand
+     * @return the float value
+     * @throws IllegalArgumentException if the operand is not a number
+     */
+    public float getFloat(int index)
+    {
+        checkIndex(index);
+        switch (kinds[index])
+        {
+            case INTEGER:
+                return values[index];
+            case REAL:
+                return Float.intBitsToFloat((int) values[index]);
+            default:
+                return getNumberObject(index).floatValue();
+        }
+    }
+
+    /**
+     * Returns the int value of a numeric operand, real numbers are truncated.
+     *
+     * @param index the index of the operand
+     * @return the int value
+     * @throws IllegalArgumentException if the operand is not a number
+     */
+    public int getInt(int index)
+    {
+        checkIndex(index);
+        switch (kinds[index])
+        {
+            case INTEGER:
+                return (int) values[index];
+            case REAL:
+                return (int) Float.intBitsToFloat((int) values[index]);
+            default:
+                return getNumberObject(index).intValue();
+        }
+    }
+
+    /**
+     * Returns the long value of a numeric operand, real numbers are truncated.
+     *
+     * @param index the index of the operand
+     * @return the long value
+     * @throws IllegalArgumentException if the operand is not a number
+     */
+    public long getLong(int index)
+    {
+        checkIndex(index);
+        switch (kinds[index])
+        {
+            case INTEGER:
+                return values[index];
+            case REAL:
+                return (long) Float.intBitsToFloat((int) values[index]);
+            default:
+                return getNumberObject(index).longValue();
+        }
+    }
+
+    /**
+     * Returns the given operand if it is a name.
+     *
+     * @param index the index of the operand
+     * @return the name or null if the operand is not a name
+     */
+    public COSName getName(int index)
+    {
+        checkIndex(index);
+        return objects[index] instanceof COSName ? (COSName) objects[index] : null;
+    }
+
+    /**
+     * Returns the given operand as COS object. A new {@link COSNumber} is created for numeric
+     * operands.
+     *
+     * @param index the index of the operand
+     * @return the operand
+     */
+    public COSBase get(int index)
+    {
+        checkIndex(index);
+        switch (kinds[index])
+        {
+            case INTEGER:
+                return COSInteger.get(values[index]);
+            case REAL:
+                return new COSFloat(Float.intBitsToFloat((int) values[index]));
+            default:
+                return objects[index];
+        }
+    }
+
+    /**
+     * Returns all operands as a new list of COS objects.
+     *
+     * @return the list of operands
+     */
+    public List<COSBase> toList()
+    {
+        List<COSBase> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            list.add(get(i));
+        }
+        return list;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toList().toString();
+    }
+
+    /**
+     * Adds a number operand given by its ASCII representation.
+     *
+     * @param ascii the buffer holding the number
+     * @param offset the offset of the number within the buffer
+     * @param length the length of the number
+     * @throws IOException if the bytes are not a number
+     */
+    void addNumber(byte[] ascii, int offset, int length) throws IOException
+    {
+        long longValue = NumberFormatUtil.parseLongFast(ascii, offset, length);
+        if (longValue != Long.MIN_VALUE)
+        {
+            add(INTEGER, longValue, null);
+            return;
+        }
+        float floatValue = NumberFormatUtil.parseFloatFast(ascii, offset, length);
+        if (!Float.isNaN(floatValue))
+        {
+            // -0.0 is coerced to 0 like in COSFloat
+            add(REAL, Float.floatToIntBits(floatValue == 0 ? 0f : floatValue), null);
+            return;
+        }
+        add(OBJECT, 0, COSNumber.get(new String(ascii, offset, length,
+                StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Adds an operand.
+     *
+     * @param object the operand
+     */
+    void add(COSBase object)
+    {
+        add(OBJECT, 0, object);
+    }
+
+    /**
+     * Removes all operands.
+     */
+    void clear()
+    {
+        // don't keep strings, arrays and dictionaries alive
+        Arrays.fill(objects, 0, size, null);
+        size = 0;
+    }
+
+    private void add(byte kind, long value, COSBase object)
+    {
+        if (size == kinds.length)
+        {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+        kinds[size] = kind;
+        values[size] = value;
+        objects[size] = object;
+        size++;
+    }
+
+    private COSNumber getNumberObject(int index)
+    {
+        if (objects[index] instanceof COSNumber)
+        {
+            return (COSNumber) objects[index];
+        }
+        throw new IllegalArgumentException("Operand " + index + " is not a number: " +
+                objects[index]);
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.pdfbox.pdfparser;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.logging.Log;
@@ -30,7 +31,6 @@ import org.apache.pdfbox.cos.COSBoolean;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNull;
-import org.apache.pdfbox.cos.COSNumber;
 import org.apache.pdfbox.io.RandomAccessReadBuffer;
 
 /**
@@ -47,6 +47,22 @@ public class PDFStreamParser extends BaseParser
 
     private static final int MAX_BIN_CHAR_TEST_LENGTH = 10;
     private final byte[] binCharTestArr = new byte[MAX_BIN_CHAR_TEST_LENGTH];
+
+    // kinds of tokens returned by readToken()
+    private static final int TOKEN_END = 0;
+    private static final int TOKEN_NUMBER = 1;
+    private static final int TOKEN_OPERATOR = 2;
+    private static final int TOKEN_OBJECT = 3;
+
+    // operators by the bytes of their name, standard operators have at most 3 bytes
+    private static final int MAX_CACHED_OPERATOR_LENGTH = 3;
+    private static final int OPERATOR_CACHE_BITS = 6;
+    private final Operator[] operatorCache = new Operator[1 << OPERATOR_CACHE_BITS];
+    private final int[] operatorCacheKeys = new int[1 << OPERATOR_CACHE_BITS];
+
+    // the last token read by readToken()
+    private Operator tokenOperator;
+    private COSBase tokenObject;
     
     /**
      * Constructor.
@@ -86,6 +102,38 @@ public class PDFStreamParser extends BaseParser
         return streamObjects;
     }
 
+    /**
+     * This will parse all the tokens in the stream and pass each operator together with its
+     * operands to the given handler. Unlike {@link #parse()}, the tokens are not collected and
+     * numeric operands are not turned into objects, the operands are passed in a buffer which is
+     * reused for all operators. Operands which are not followed by an operator are dropped. This
+     * will close the stream when it is finished parsing.
+     *
+     * @param handler the handler which receives the operators
+     * @throws IOException If there is an error while parsing the stream or the handler failed.
+     */
+    public void parse(ContentStreamHandler handler) throws IOException
+    {
+        ContentStreamOperands operands = new ContentStreamOperands();
+        int token;
+        while ((token = readToken()) != TOKEN_END)
+        {
+            switch (token)
+            {
+                case TOKEN_NUMBER:
+                    operands.addNumber(tokenBuffer(), 0, tokenLength());
+                    break;
+                case TOKEN_OPERATOR:
+                    handler.processOperator(tokenOperator, operands);
+                    operands.clear();
+                    break;
+                default:
+                    operands.add(tokenObject);
+                    break;
+            }
+        }
+    }
+
     /**
      * This will parse the next token in the stream.
      *
@@ -94,16 +142,39 @@ public class PDFStreamParser extends BaseParser
      * @throws IOException If an io error occurs while parsing the stream.
      */
     public Object parseNextToken() throws IOException
+    {
+        switch (readToken())
+        {
+            case TOKEN_NUMBER:
+                return tokenToNumber();
+            case TOKEN_OPERATOR:
+                return tokenOperator;
+            case TOKEN_OBJECT:
+                return tokenObject;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * This will read the next token in the stream. Numbers are left in the token buffer,
+     * operators and other objects are stored in {@link #tokenOperator} and {@link #tokenObject}.
+     *
+     * @return the kind of the token, {@link #TOKEN_END} if there are no more tokens in the stream.
+     *
+     * @throws IOException If an io error occurs while parsing the stream.
+     */
+    private int readToken() throws IOException
     {
         if (source.isClosed())
         {
-            return null;
+            return TOKEN_END;
         }
         skipSpaces();
         if (source.isEOF())
         {
             close();
-            return null;
+            return TOKEN_END;
         }
         char c = (char) source.peek();
         switch (c)
@@ -122,64 +193,64 @@ public class PDFStreamParser extends BaseParser
                 {
                     try
                     {
-                        return parseCOSDictionary(true);
+                        return object(parseCOSDictionary(true));
                     }
                     catch (IOException exception)
                     {
                         LOG.warn("Stop reading invalid dictionary from content stream at offset "
                                 + source.getPosition());
                         close();
-                        return null;
+                        return TOKEN_END;
                     }
                 }
                 else
                 {
-                    return parseCOSString();
+                    return object(parseCOSString());
                 }
             case '[':
                 // array
                 try
                 {
-                    return parseCOSArray();
+                    return object(parseCOSArray());
                 }
                 catch (IOException exception)
                 {
                     LOG.warn("Stop reading invalid array from content stream at offset "
                             + source.getPosition());
                     close();
-                    return null;
+                    return TOKEN_END;
                 }
             case '(':
                 // string
-                return parseCOSString();
+                return object(parseCOSString());
             case '/':
                 // name
-                return parseCOSName();
+                return object(parseCOSName());
             case 'n':   
                 // null
-                String nullString = readString();
-                if( nullString.equals( "null") )
+                readStringToken();
+                if (tokenEquals("null"))
                 {
-                    return COSNull.NULL;
+                    return object(COSNull.NULL);
                 }
                 else
                 {
-                    return Operator.getOperator(nullString);
+                    return operator(tokenToOperator(0, tokenLength()));
                 }
             case 't':
             case 'f':
-                String next = readString();
-                if( next.equals( "true" ) )
+                readStringToken();
+                if (tokenEquals("true"))
                 {
-                    return COSBoolean.TRUE;
+                    return object(COSBoolean.TRUE);
                 }
-                else if( next.equals( "false" ) )
+                else if (tokenEquals("false"))
                 {
-                    return COSBoolean.FALSE;
+                    return object(COSBoolean.FALSE);
                 }
                 else
                 {
-                    return Operator.getOperator(next);
+                    return operator(tokenToOperator(0, tokenLength()));
                 }
             case '0':
             case '1':
@@ -194,10 +265,10 @@ public class PDFStreamParser extends BaseParser
             case '-':
             case '+':
             case '.':
-                /* We will be filling buf with the rest of the number.  Only
+                /* We will be filling the token with the rest of the number.  Only
                  * allow 1 "." and "-" and "+" at start of number. */
-                StringBuilder buf = new StringBuilder();
-                buf.append( c );
+                resetToken();
+                appendToken(c);
                 source.read();
                 
                 // Ignore double negative (this is consistent with Adobe Reader)
@@ -207,53 +278,54 @@ public class PDFStreamParser extends BaseParser
                 }
 
                 boolean dotNotRead = c != '.';
-                while (Character.isDigit(c = (char) source.peek()) || dotNotRead && c == '.'
-                        || c == '-')
+                int ic;
+                while (isDigit(ic = source.peek()) || dotNotRead && ic == '.' || ic == '-')
                 {
-                    if (c != '-')
+                    if (ic != '-')
                     {
                         // PDFBOX-4064: ignore "-" in the middle of a number
-                        buf.append(c);
+                        appendToken(ic);
                     }
                     source.read();
 
-                    if (dotNotRead && c == '.')
+                    if (dotNotRead && ic == '.')
                     {
                         dotNotRead = false;
                     }
                 }
-                return COSNumber.get(buf.toString());
+                return TOKEN_NUMBER;
             case 'B':
-                String nextOperator = readString();
-                Operator beginImageOP = Operator.getOperator(nextOperator);
-                if (nextOperator.equals(OperatorName.BEGIN_INLINE_IMAGE))
+                readStringToken();
+                if (!tokenEquals(OperatorName.BEGIN_INLINE_IMAGE))
                 {
-                    COSDictionary imageParams = new COSDictionary();
-                    beginImageOP.setImageParameters( imageParams );
-                    Object nextToken = null;
-                    while( (nextToken = parseNextToken()) instanceof COSName )
+                    return operator(tokenToOperator(0, tokenLength()));
+                }
+                Operator beginImageOP = Operator.getOperator(OperatorName.BEGIN_INLINE_IMAGE);
+                COSDictionary imageParams = new COSDictionary();
+                beginImageOP.setImageParameters( imageParams );
+                Object nextToken = null;
+                while( (nextToken = parseNextToken()) instanceof COSName )
+                {
+                    Object value = parseNextToken();
+                    if (!(value instanceof COSBase))
                     {
-                        Object value = parseNextToken();
-                        if (!(value instanceof COSBase))
-                        {
-                            LOG.warn("Unexpected token in inline image dictionary at offset " +
-                                    (source.isClosed() ? "EOF" : source.getPosition()));
-                            break;
-                        }
-                        imageParams.setItem( (COSName)nextToken, (COSBase)value );
+                        LOG.warn("Unexpected token in inline image dictionary at offset " +
+                                (source.isClosed() ? "EOF" : source.getPosition()));
+                        break;
                     }
-                    //final token will be the image data, maybe??
-                    if (nextToken instanceof Operator)
+                    imageParams.setItem( (COSName)nextToken, (COSBase)value );
+                }
+                //final token will be the image data, maybe??
+                if (nextToken instanceof Operator)
+                {
+                    Operator imageData = (Operator) nextToken;
+                    if (imageData.getImageData() == null || imageData.getImageData().length == 0)
                     {
-                        Operator imageData = (Operator) nextToken;
-                        if (imageData.getImageData() == null || imageData.getImageData().length == 0)
-                        {
-                            LOG.warn("empty inline image at stream offset " + source.getPosition());
-                        }
-                        beginImageOP.setImageData(imageData.getImageData());
+                        LOG.warn("empty inline image at stream offset " + source.getPosition());
                     }
+                    beginImageOP.setImageData(imageData.getImageData());
                 }
-                return beginImageOP;
+                return operator(beginImageOP);
             case 'I':
                 //Special case for ID operator
                 String id = Character.toString((char) source.read()) + (char) source.read();
@@ -291,23 +363,123 @@ public class PDFStreamParser extends BaseParser
                         .getOperator(OperatorName.BEGIN_INLINE_IMAGE_DATA);
                 // save the image data to the operator, so that it can be accessed later
                 beginImageDataOP.setImageData(imageData.toByteArray());
-                return beginImageDataOP;
+                return operator(beginImageDataOP);
             case ']':
                 // some ']' around without its previous '['
                 // this means a PDF is somewhat corrupt but we will continue to parse.
                 source.read();
                 
                 // must be a better solution than null...
-                return COSNull.NULL;
+                return object(COSNull.NULL);
             default:
                 // we must be an operator
-                String operator = readOperator().trim();
-                if (operator.length() > 0)
+                readOperatorToken();
+                // ignore leading and trailing control characters
+                int start = 0;
+                int end = tokenLength();
+                byte[] token = tokenBuffer();
+                while (start < end && (token[start] & 0xFF) <= ' ')
+                {
+                    start++;
+                }
+                while (end > start && (token[end - 1] & 0xFF) <= ' ')
+                {
+                    end--;
+                }
+                if (end > start)
                 {
-                    return Operator.getOperator(operator);
+                    return operator(tokenToOperator(start, end));
                 }
         }
-        return null;
+        return TOKEN_END;
+    }
+
+    private int object(COSBase object)
+    {
+        tokenObject = object;
+        return TOKEN_OBJECT;
+    }
+
+    private int operator(Operator operator)
+    {
+        tokenOperator = operator;
+        return TOKEN_OPERATOR;
+    }
+
+    /**
+     * Returns the operator for a range of the current token, using the operator cache for short
+     * operators.
+     */
+    private Operator tokenToOperator(int start, int end)
+    {
+        byte[] token = tokenBuffer();
+        int length = end - start;
+        if (length > MAX_CACHED_OPERATOR_LENGTH)
+        {
+            return Operator.getOperator(
+                    new String(token, start, length, StandardCharsets.ISO_8859_1));
+        }
+        int key = length;
+        for (int i = start; i < end; i++)
+        {
+            key = key << 8 | (token[i] & 0xFF);
+        }
+        int slot = (key * 0x9E3779B9) >>> (32 - OPERATOR_CACHE_BITS);
+        Operator operator = operatorCache[slot];
+        if (operator != null && operatorCacheKeys[slot] == key)
+        {
+            return operator;
+        }
+        String name = new String(token, start, length, StandardCharsets.ISO_8859_1);
+        operator = Operator.getOperator(name);
+        if (!name.equals(OperatorName.BEGIN_INLINE_IMAGE)
+                && !name.equals(OperatorName.BEGIN_INLINE_IMAGE_DATA))
+        {
+            // BI and ID operators are not singletons as they carry the image
+            operatorCache[slot] = operator;
+            operatorCacheKeys[slot] = key;
+        }
+        return operator;
+    }
+
+    private boolean tokenEquals(String ascii)
+    {
+        int length = tokenLength();
+        if (length != ascii.length())
+        {
+            return false;
+        }
+        byte[] token = tokenBuffer();
+        for (int i = 0; i < length; i++)
+        {
+            if (token[i] != ascii.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This will read the next string from the stream into the token buffer, like
+     * {@link #readString()}.
+     *
+     * @throws IOException If there is an error reading from the stream.
+     */
+    private void readStringToken() throws IOException
+    {
+        skipSpaces();
+        resetToken();
+        int c = source.read();
+        while (c != -1 && !isEndOfName(c))
+        {
+            appendToken(c);
+            c = source.read();
+        }
+        if (c != -1)
+        {
+            source.rewind(1);
+        }
     }
 
     /**
@@ -384,19 +556,14 @@ public class PDFStreamParser extends BaseParser
     }
 
     /**
-     * This will read an operator from the stream.
-     *
-     * @return The operator that was read from the stream.
+     * This will read an operator from the stream into the token buffer.
      *
      * @throws IOException If there is an error reading from the stream.
      */
-    private String readOperator() throws IOException
+    private void readOperatorToken() throws IOException
     {
         skipSpaces();
-
-        //average string size is around 2 and the normal string buffer size is
-        //about 16 so lets save some space.
-        StringBuilder buffer = new StringBuilder(4);
+        resetToken();
         int nextChar = source.peek();
         while(
             nextChar != -1 && // EOF
@@ -409,17 +576,16 @@ public class PDFStreamParser extends BaseParser
             (nextChar < '0' ||
              nextChar > '9' ) )
         {
-            char currentChar = (char) source.read();
+            int currentChar = source.read();
             nextChar = source.peek();
-            buffer.append( currentChar );
+            appendToken(currentChar);
             // Type3 Glyph description has operators with a number in the name
             if (currentChar == 'd' && (nextChar == '0' || nextChar == '1') ) 
             {
-                buffer.append((char) source.read());
+                appendToken(source.read());
                 nextChar = source.peek();
             }
         }
-        return buffer.toString();
     }
     
     
@@ -19,10 +19,18 @@ package org.apache.pdfbox.pdfwriter;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.util.NumberFormatUtil;
 
 /**
  * simple output stream with some minor features for generating "pretty" PDF files.
  *
+ * <p>The output is collected in an internal buffer and only handed to the underlying stream when
+ * the buffer is full or when {@link #flush()} or {@link #close()} is called. Numbers, names and
+ * cross reference entries are formatted directly into the buffer.</p>
+ *
  * @author Michael Traut
  */
 public class COSStandardOutputStream extends FilterOutputStream
@@ -42,6 +50,19 @@ public class COSStandardOutputStream extends FilterOutputStream
      */
     public static final byte[] EOL = { '\n' };
 
+    private static final int BUFFER_SIZE = 65536;
+
+    // the longest output of writeLong and the fixed width fields of writeXrefEntry
+    private static final int MAX_LONG_LENGTH = 20;
+
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F' };
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    // number of bytes in the buffer which have not yet been written to the underlying stream
+    private int count = 0;
+
     // current byte position in the output stream
     private long position = 0;
 
@@ -112,7 +133,18 @@ public class COSStandardOutputStream extends FilterOutputStream
     public void write(byte[] b, int off, int len) throws IOException
     {
         setOnNewLine(false);
-        out.write(b, off, len);
+        if (len >= buffer.length)
+        {
+            // don't copy large chunks, e.g. stream data
+            flushBuffer();
+            out.write(b, off, len);
+        }
+        else
+        {
+            reserve(len);
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
         position += len;
     }
 
@@ -127,10 +159,134 @@ public class COSStandardOutputStream extends FilterOutputStream
     public void write(int b) throws IOException
     {
         setOnNewLine(false);
-        out.write(b);
+        reserve(1);
+        buffer[count++] = (byte) b;
         position++;
     }
-    
+
+    /**
+     * This will write the decimal representation of an integer number to the stream.
+     *
+     * @param value The number to write.
+     *
+     * @throws IOException If there is an error writing to the underlying stream.
+     */
+    public void writeLong(long value) throws IOException
+    {
+        setOnNewLine(false);
+        reserve(MAX_LONG_LENGTH);
+        int start = count;
+        putLong(value, 1);
+        position += count - start;
+    }
+
+    /**
+     * This will write a real number to the stream, using the shortest representation which
+     * reads back as the same float value.
+     *
+     * @param value The number to write.
+     *
+     * @throws IOException If there is an error writing to the underlying stream.
+     */
+    public void writeFloat(float value) throws IOException
+    {
+        reserve(NumberFormatUtil.MAX_FLOAT_LENGTH);
+        int length = NumberFormatUtil.formatFloatShortest(value, buffer, count);
+        if (length < 0)
+        {
+            // NaN and infinity, which are not valid in PDF anyway
+            write(String.valueOf(value).getBytes(StandardCharsets.ISO_8859_1));
+            return;
+        }
+        setOnNewLine(false);
+        count += length;
+        position += length;
+    }
+
+    /**
+     * This will write a name to the stream, including the leading slash. Characters are escaped
+     * in the same way as in {@link COSName#writePDF(OutputStream)}.
+     *
+     * @param name The name to write.
+     *
+     * @throws IOException If there is an error writing to the underlying stream.
+     */
+    public void writeName(COSName name) throws IOException
+    {
+        String value = name.getName();
+        int length = value.length();
+        // every character takes at most 3 bytes if it is ASCII
+        if (3 * length + 1 > buffer.length)
+        {
+            name.writePDF(this);
+            return;
+        }
+        reserve(3 * length + 1);
+        int start = count;
+        buffer[count++] = '/';
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (c >= 0x80)
+            {
+                // the name has to be UTF-8 encoded first
+                count = start;
+                name.writePDF(this);
+                return;
+            }
+            if (isRegularNameChar(c))
+            {
+                buffer[count++] = (byte) c;
+            }
+            else
+            {
+                buffer[count++] = '#';
+                buffer[count++] = HEX[c >> 4];
+                buffer[count++] = HEX[c & 0xF];
+            }
+        }
+        setOnNewLine(false);
+        position += count - start;
+    }
+
+    /**
+     * This will write an entry of a cross reference table to the stream, including the 2 byte
+     * end of line.
+     *
+     * @param offset The byte offset of the object, or the next free object number for a free
+     * entry. It is written with 10 digits.
+     * @param generation The generation number, it is written with 5 digits.
+     * @param free true for a free entry, false for an entry which is in use.
+     *
+     * @throws IOException If there is an error writing to the underlying stream.
+     */
+    public void writeXrefEntry(long offset, long generation, boolean free) throws IOException
+    {
+        setOnNewLine(false);
+        reserve(2 * MAX_LONG_LENGTH + 5);
+        int start = count;
+        putLong(offset, 10);
+        buffer[count++] = ' ';
+        putLong(generation, 5);
+        buffer[count++] = ' ';
+        buffer[count++] = (byte) (free ? 'f' : 'n');
+        buffer[count++] = '\r';
+        buffer[count++] = '\n';
+        position += count - start;
+    }
+
+    /**
+     * Writes the buffered data to the underlying stream and flushes it.
+     *
+     * @throws IOException If there is an error writing to the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        out.flush();
+    }
+
     /**
      * This will write a CRLF to the stream.
      *
@@ -164,4 +320,67 @@ public class COSStandardOutputStream extends FilterOutputStream
     {
         write(LF);
     }
+
+    private void flushBuffer() throws IOException
+    {
+        if (count > 0)
+        {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void reserve(int length) throws IOException
+    {
+        if (buffer.length - count < length)
+        {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Puts the decimal digits of the given number into the buffer, padded with leading zeros
+     * to the given number of digits. The caller has to reserve the space.
+     */
+    private void putLong(long value, int minDigits)
+    {
+        // use negative numbers, so that Long.MIN_VALUE needs no special treatment
+        long remaining = value;
+        if (value < 0)
+        {
+            buffer[count++] = '-';
+        }
+        else
+        {
+            remaining = -value;
+        }
+        int digits = 1;
+        for (long rest = remaining / 10; rest != 0; rest /= 10)
+        {
+            digits++;
+        }
+        int end = count + Math.max(digits, minDigits);
+        for (int i = end - 1; i >= count; i--)
+        {
+            buffer[i] = (byte) ('0' - remaining % 10);
+            remaining /= 10;
+        }
+        count = end;
+    }
+
+    // be more restrictive than the PDF spec, "Name Objects", see PDFBOX-2073
+    private static boolean isRegularNameChar(char c)
+    {
+        return c >= 'A' && c <= 'Z' ||
+                c >= 'a' && c <= 'z' ||
+                c >= '0' && c <= '9' ||
+                c == '+' ||
+                c == '-' ||
+                c == '_' ||
+                c == '@' ||
+                c == '*' ||
+                c == '$' ||
+                c == ';' ||
+                c == '.';
+    }
 }
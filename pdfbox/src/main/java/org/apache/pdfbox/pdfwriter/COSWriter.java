@@ -24,9 +24,6 @@ import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.NumberFormat;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,7 +33,6 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -164,13 +160,6 @@ public class COSWriter implements ICOSVisitor
      */
     public static final byte[] ENDSTREAM = "endstream".getBytes(StandardCharsets.US_ASCII);
     
-    private static final NumberFormat formatXrefOffset = new DecimalFormat("0000000000",
-            DecimalFormatSymbols.getInstance(Locale.US));
-
-    // the decimal format for the xref object generation number data
-    private static final NumberFormat formatXrefGeneration = new DecimalFormat("00000",
-            DecimalFormatSymbols.getInstance(Locale.US));
-
     // the stream where we create the pdf output
     private OutputStream output;
 
@@ -194,6 +183,9 @@ public class COSWriter implements ICOSVisitor
 
     private final Map<COSObjectKey,COSBase> keyObject = new HashMap<>();
 
+    // maps the keys of objects replaced by an object with identical content to the key of that object
+    private final Map<COSObjectKey,COSObjectKey> replacedKeys = new HashMap<>();
+
     // the list of x ref entries to be made so far
     private final List<XReferenceEntry> xRefEntries = new ArrayList<>();
 
@@ -487,6 +479,13 @@ public class COSWriter implements ICOSVisitor
                 objectKeys.put(object, key);
                 keyObject.put(key, object);
             }
+            // References to duplicates are written as references to the object with identical content.
+            for (Map.Entry<COSBase, COSObjectKey> duplicate : compressionPool
+                    .getDuplicateObjects().entrySet())
+            {
+                objectKeys.put(duplicate.getKey(), duplicate.getValue());
+            }
+            replacedKeys.putAll(compressionPool.getDuplicateKeys());
             number = compressionPool.getHighestXRefObjectNumber();
             for (COSObjectKey key : compressionPool.getTopLevelObjects())
             {
@@ -597,11 +596,9 @@ public class COSWriter implements ICOSVisitor
         // add a x ref entry
         addXRefEntry(new NormalXReference(getStandardOutput().getPos(), key, obj));
         // write the object
-        getStandardOutput()
-                .write(String.valueOf(key.getNumber()).getBytes(StandardCharsets.ISO_8859_1));
+        getStandardOutput().writeLong(key.getNumber());
         getStandardOutput().write(SPACE);
-        getStandardOutput()
-                .write(String.valueOf(key.getGeneration()).getBytes(StandardCharsets.ISO_8859_1));
+        getStandardOutput().writeLong(key.getGeneration());
         getStandardOutput().write(SPACE);
         getStandardOutput().write(OBJ);
         getStandardOutput().writeEOL();
@@ -980,22 +977,16 @@ public class COSWriter implements ICOSVisitor
 
     private void writeXrefRange(long x, long y) throws IOException
     {
-        getStandardOutput().write(String.valueOf(x).getBytes(StandardCharsets.ISO_8859_1));
+        getStandardOutput().writeLong(x);
         getStandardOutput().write(SPACE);
-        getStandardOutput().write(String.valueOf(y).getBytes(StandardCharsets.ISO_8859_1));
+        getStandardOutput().writeLong(y);
         getStandardOutput().writeEOL();
     }
 
     private void writeXrefEntry(XReferenceEntry entry) throws IOException
     {
-        String offset = formatXrefOffset.format(entry.getSecondColumnValue());
-        String generation = formatXrefGeneration.format(entry.getThirdColumnValue());
-        getStandardOutput().write(offset.getBytes(StandardCharsets.ISO_8859_1));
-        getStandardOutput().write(SPACE);
-        getStandardOutput().write(generation.getBytes(StandardCharsets.ISO_8859_1));
-        getStandardOutput().write(SPACE);
-        getStandardOutput().write(entry instanceof FreeXReference ? XREF_FREE : XREF_USED);
-        getStandardOutput().writeCRLF();
+        getStandardOutput().writeXrefEntry(entry.getSecondColumnValue(),
+                entry.getThirdColumnValue(), entry instanceof FreeXReference);
     }
 
     /**
@@ -1068,6 +1059,7 @@ public class COSWriter implements ICOSVisitor
                 COSObjectKey key = obj.getKey();
                 if (key != null)
                 {
+                    key = replacedKeys.getOrDefault(key, key);
                     objectKeys.put(obj, key);
                     return key;
                 }
@@ -1082,6 +1074,11 @@ public class COSWriter implements ICOSVisitor
     @Override
     public void visitFromArray(COSArray array) throws IOException
     {
+        if (array.isNumberArray())
+        {
+            writeNumberArray(array);
+            return;
+        }
         int count = 0;
         getStandardOutput().write(ARRAY_OPEN);
         for (Iterator<COSBase> i = array.iterator(); i.hasNext();)
@@ -1125,6 +1122,40 @@ public class COSWriter implements ICOSVisitor
         getStandardOutput().writeEOL();
     }
 
+    /**
+     * Writes an array of numbers directly from their primitive values, in the same format as
+     * {@link #visitFromArray(COSArray)}.
+     */
+    private void writeNumberArray(COSArray array) throws IOException
+    {
+        COSStandardOutputStream output = getStandardOutput();
+        output.write(ARRAY_OPEN);
+        for (int i = 0, size = array.size(); i < size; i++)
+        {
+            if (i > 0)
+            {
+                if (i % 10 == 0)
+                {
+                    output.writeEOL();
+                }
+                else
+                {
+                    output.write(SPACE);
+                }
+            }
+            if (array.isInteger(i))
+            {
+                output.writeLong(array.getLong(i, 0));
+            }
+            else
+            {
+                output.writeFloat(array.getFloat(i, 0));
+            }
+        }
+        output.write(ARRAY_CLOSE);
+        output.writeEOL();
+    }
+
     private void writeArray(COSArray array) throws IOException
     {
         if (array.isDirect())
@@ -1302,10 +1333,12 @@ public class COSWriter implements ICOSVisitor
         // write endof
         getStandardOutput().write(STARTXREF);
         getStandardOutput().writeEOL();
-        getStandardOutput().write(String.valueOf(getStartxref()).getBytes(StandardCharsets.ISO_8859_1));
+        getStandardOutput().writeLong(getStartxref());
         getStandardOutput().writeEOL();
         getStandardOutput().write(EOF);
         getStandardOutput().writeEOL();
+        // the incremental update and signature code below work on the underlying stream
+        getStandardOutput().flush();
 
         if (incrementalUpdate)
         {
@@ -1324,19 +1357,27 @@ public class COSWriter implements ICOSVisitor
     @Override
     public void visitFromFloat(COSFloat obj) throws IOException
     {
-        obj.writePDF( getStandardOutput() );
+        if (obj.hasOriginalText())
+        {
+            obj.writePDF(getStandardOutput());
+        }
+        else
+        {
+            // formatted directly into the buffer of the output
+            getStandardOutput().writeFloat(obj.floatValue());
+        }
     }
 
     @Override
     public void visitFromInt(COSInteger obj) throws IOException
     {
-        obj.writePDF( getStandardOutput() );
+        getStandardOutput().writeLong(obj.longValue());
     }
 
     @Override
     public void visitFromName(COSName obj) throws IOException
     {
-        obj.writePDF( getStandardOutput() );
+        getStandardOutput().writeName(obj);
     }
 
     @Override
@@ -1355,9 +1396,9 @@ public class COSWriter implements ICOSVisitor
     public void writeReference(COSBase obj) throws IOException
     {
             COSObjectKey key = getObjectKey(obj);
-            getStandardOutput().write(String.valueOf(key.getNumber()).getBytes(StandardCharsets.ISO_8859_1));
+            getStandardOutput().writeLong(key.getNumber());
             getStandardOutput().write(SPACE);
-            getStandardOutput().write(String.valueOf(key.getGeneration()).getBytes(StandardCharsets.ISO_8859_1));
+            getStandardOutput().writeLong(key.getGeneration());
             getStandardOutput().write(SPACE);
             getStandardOutput().write(REFERENCE);
     }
@@ -32,6 +32,7 @@ import org.apache.pdfbox.cos.COSInteger;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNull;
 import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.util.NumberFormatUtil;
 
 /**
  * A class that will take a list of tokens and write out a stream with them.
@@ -41,6 +42,7 @@ import org.apache.pdfbox.cos.COSString;
 public class ContentStreamWriter
 {
     private final OutputStream output;
+    private final byte[] numberBuffer = new byte[NumberFormatUtil.MAX_FLOAT_LENGTH];
     /**
      * space character.
      */
@@ -72,6 +74,36 @@ public class ContentStreamWriter
         writeObject(base);
     }
 
+    /**
+     * Writes a single real number operand, formatted like a {@link COSFloat} with that value.
+     *
+     * @param value The operand to write to the stream.
+     * @throws IOException If there is an error writing to the stream.
+     * @throws IllegalArgumentException If the value is NaN or infinite.
+     */
+    public void writeToken(float value) throws IOException
+    {
+        int length = NumberFormatUtil.formatFloatShortest(value, numberBuffer, 0);
+        if (length < 0)
+        {
+            throw new IllegalArgumentException(value + " is not a finite number");
+        }
+        output.write(numberBuffer, 0, length);
+        output.write(SPACE);
+    }
+
+    /**
+     * Writes a single integer operand.
+     *
+     * @param value The operand to write to the stream.
+     * @throws IOException If there is an error writing to the stream.
+     */
+    public void writeToken(int value) throws IOException
+    {
+        COSInteger.writePDF(value, output);
+        output.write(SPACE);
+    }
+
     /**
      *  Writes a single operator token.
      *
@@ -84,7 +116,8 @@ public class ContentStreamWriter
     }
 
     /**
-     * Writes a series of tokens followed by a new line.
+     * Writes a series of tokens followed by a new line. Besides COS objects and operators, the
+     * tokens may be {@link Float} and {@link Integer} operands.
      * 
      * @param tokens The tokens to write to the stream.
      * @throws IOException If there is an error writing to the stream.
@@ -122,6 +155,14 @@ public class ContentStreamWriter
         {
             writeObject((Operator) o);
         }
+        else if (o instanceof Float)
+        {
+            writeToken((float) o);
+        }
+        else if (o instanceof Integer)
+        {
+            writeToken((int) o);
+        }
         else
         {
             throw new IOException("Error:Unknown type in content stream:" + o);
@@ -166,8 +207,16 @@ public class ContentStreamWriter
         }
         else if( o instanceof COSFloat )
         {
-            ((COSFloat)o).writePDF( output );
-            output.write( SPACE );
+            COSFloat number = (COSFloat) o;
+            if (number.hasOriginalText())
+            {
+                number.writePDF(output);
+                output.write(SPACE);
+            }
+            else
+            {
+                writeToken(number.floatValue());
+            }
         }
         else if( o instanceof COSInteger )
         {
@@ -20,7 +20,9 @@ import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSObject;
 import org.apache.pdfbox.cos.COSObjectKey;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
@@ -33,6 +35,10 @@ public class COSObjectPool
 {
     private final Map<COSObjectKey, COSBase> keyPool = new HashMap<>();
     private final Map<COSBase, COSObjectKey> objectPool = new HashMap<>();
+    // objects, which are replaced by a registered object with the same content
+    private final Map<COSBase, COSObjectKey> duplicatePool = new IdentityHashMap<>();
+    // the keys, the duplicate objects have been referenced by
+    private final Map<COSObjectKey, COSObjectKey> duplicateKeys = new HashMap<>();
 
     private long highestXRefObjectNumber = 0;
 
@@ -82,6 +88,57 @@ public class COSObjectPool
         return actualKey;
     }
 
+    /**
+     * Registers an object, that has the same content as an already registered object. The object shall not be
+     * written itself, all references to it shall use the key of the registered object instead. This may be called
+     * several times for the same object, to register all keys it is referenced by.
+     *
+     * @param key The key the duplicate object is referenced by, may be null.
+     * @param object The duplicate object.
+     * @param originalKey The key of the registered object with the same content.
+     */
+    public void putDuplicate(COSObjectKey key, COSBase object, COSObjectKey originalKey)
+    {
+        duplicatePool.put(object, originalKey);
+        if (key != null && !keyPool.containsKey(key))
+        {
+            duplicateKeys.put(key, originalKey);
+        }
+    }
+
+    /**
+     * Returns true, if the given {@link COSBase} has been registered as duplicate of another object.
+     *
+     * @param object The {@link COSBase} that shall be checked.
+     * @return True, if the object has been registered via {@link #putDuplicate(COSObjectKey, COSBase, COSObjectKey)}.
+     */
+    public boolean isDuplicate(COSBase object)
+    {
+        return duplicatePool.containsKey(object);
+    }
+
+    /**
+     * Returns all objects, that have been registered as duplicates, together with the key of the registered object
+     * with the same content.
+     *
+     * @return An unmodifiable map of the duplicate objects.
+     */
+    public Map<COSBase, COSObjectKey> getDuplicates()
+    {
+        return Collections.unmodifiableMap(duplicatePool);
+    }
+
+    /**
+     * Returns the keys, the duplicate objects have been referenced by, mapped to the key of the registered object
+     * with the same content.
+     *
+     * @return An unmodifiable map of the keys of the duplicate objects.
+     */
+    public Map<COSObjectKey, COSObjectKey> getDuplicateKeys()
+    {
+        return Collections.unmodifiableMap(duplicateKeys);
+    }
+
     /**
      * Returns the {@link COSObjectKey} for a given registered {@link COSBase}. Returns null if such an object is not
      * registered.
@@ -99,7 +156,12 @@ public class COSObjectPool
         }
         if (key == null)
         {
-            return objectPool.get(object);
+            key = objectPool.get(object);
+        }
+        if (key == null && !duplicatePool.isEmpty())
+        {
+            COSBase actual = object instanceof COSObject ? ((COSObject) object).getObject() : object;
+            return duplicatePool.get(actual);
         }
         return key;
     }
@@ -138,7 +200,9 @@ public class COSObjectPool
     {
         return (object instanceof COSObject
                 && objectPool.containsKey(((COSObject) object).getObject()))
-                || objectPool.containsKey(object);
+                || objectPool.containsKey(object)
+                || (!duplicatePool.isEmpty() && duplicatePool.containsKey(
+                        object instanceof COSObject ? ((COSObject) object).getObject() : object));
     }
 
     /**
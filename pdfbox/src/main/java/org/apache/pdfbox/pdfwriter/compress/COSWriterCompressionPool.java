@@ -17,11 +17,18 @@
 package org.apache.pdfbox.pdfwriter.compress;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
 import org.apache.pdfbox.pdfparser.PDFXRefStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.cos.COSArray;
@@ -40,6 +47,7 @@ import org.apache.pdfbox.cos.COSStream;
  */
 public class COSWriterCompressionPool
 {
+    private static final Log LOG = LogFactory.getLog(COSWriterCompressionPool.class);
 
     public static final float MINIMUM_SUPPORTED_VERSION = 1.6f;
 
@@ -47,13 +55,18 @@ public class COSWriterCompressionPool
     private final CompressParameters parameters;
 
     private final COSObjectPool objectPool;
+    // finds objects with identical content, null if deduplication is disabled
+    private final DuplicateObjectFinder duplicateFinder;
 
     // A list containing all objects, that shall be directly appended to the document's top level container.
     private final List<COSObjectKey> topLevelObjects = new ArrayList<>();
     // A list containing all objects, that may be appended to an object stream.
     private final List<COSObjectKey> objectStreamObjects = new ArrayList<>();
-    // A list of all direct objects
-    private final List<COSBase> allDirectObjects = new ArrayList<>();
+    // All arrays and dictionaries, that have been traversed without being referenced by a COSObject.
+    private final Set<COSBase> visitedDirectObjects =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+    // The deepest nesting of arrays, dictionaries and references, that has been traversed.
+    private int maxTraversalDepth;
 
     /**
      * <p>
@@ -63,6 +76,8 @@ public class COSWriterCompressionPool
      * <ul>
      * <li>Compress the COSStructure of the document, by streaming {@link COSBase}s to compressed
      * {@link COSWriterObjectStream}s</li>
+     * <li>Write arrays, dictionaries and streams with identical content only once, if enabled via
+     * {@link CompressParameters#isDeduplicate()}</li>
      * </ul>
      *
      * @param document The document, that shall be compressed.
@@ -80,11 +95,29 @@ public class COSWriterCompressionPool
         COSDocument cosDocument = document.getDocument();
 
         COSDictionary trailer = cosDocument.getTrailer();
+        if (this.parameters.isDeduplicate())
+        {
+            duplicateFinder = new DuplicateObjectFinder(trailer.getCOSDictionary(COSName.ROOT),
+                    trailer.getCOSDictionary(COSName.INFO),
+                    document.getEncryption() != null ? document.getEncryption().getCOSObject() : null);
+        }
+        else
+        {
+            duplicateFinder = null;
+        }
         addStructure(trailer.getItem(COSName.ROOT));
         addStructure(trailer.getItem(COSName.INFO));
 
         Collections.sort(objectStreamObjects);
         Collections.sort(topLevelObjects);
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Traversed " + visitedDirectObjects.size() + " direct objects and "
+                    + (topLevelObjects.size() + objectStreamObjects.size())
+                    + " indirect objects, maximum depth " + maxTraversalDepth + ", replaced "
+                    + objectPool.getDuplicates().size() + " duplicates");
+        }
     }
 
     /**
@@ -109,6 +142,23 @@ public class COSWriterCompressionPool
         {
             return current;
         }
+        if (objectPool.isDuplicate(current))
+        {
+            objectPool.putDuplicate(key, current, objectPool.getKey(current));
+            return null;
+        }
+        if (duplicateFinder != null && !objectPool.contains(current))
+        {
+            COSBase original = duplicateFinder.findOriginal(current);
+            COSObjectKey originalKey = original != null && original != current
+                    ? objectPool.getKey(original) : null;
+            if (originalKey != null)
+            {
+                // the elements have been traversed for the original already
+                objectPool.putDuplicate(key, current, originalKey);
+                return null;
+            }
+        }
 
         // Check whether the object can not be appended to an object stream.
         // An objectStream shall only contain generation 0 objects.
@@ -144,12 +194,55 @@ public class COSWriterCompressionPool
     }
 
     /**
-     * Attempts to find yet unregistered streams and dictionaries in the given structure.
+     * Attempts to find yet unregistered streams and dictionaries in the given structure. The structure is traversed
+     * depth first using an explicit stack, so that deeply nested structures, e.g. structure trees, can't overflow the
+     * call stack.
      *
      * @param current The object to be added for compressing.
      * @throws IOException Shall be thrown, if compressing the object failed.
      */
     private void addStructure(COSBase current) throws IOException
+    {
+        Deque<Iterator<COSBase>> stack = new ArrayDeque<>();
+        pushElements(stack, addToPool(current));
+        while (!stack.isEmpty())
+        {
+            Iterator<COSBase> elements = stack.peek();
+            if (!elements.hasNext())
+            {
+                stack.pop();
+                continue;
+            }
+            COSBase value = elements.next();
+            if (value instanceof COSArray || value instanceof COSDictionary)
+            {
+                if (visitedDirectObjects.add(value))
+                {
+                    pushElements(stack, addToPool(value));
+                }
+            }
+            else if (value instanceof COSObject)
+            {
+                COSObject cosObject = (COSObject) value;
+                if (cosObject.getKey() != null && objectPool.contains(cosObject.getKey()))
+                {
+                    continue;
+                }
+                if (cosObject.getObject() != null)
+                {
+                    pushElements(stack, addToPool(value));
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the given object in the pool, if it is a stream or an indirect object.
+     *
+     * @param current The object to be added for compressing.
+     * @return The dereferenced object, whose elements shall be traversed.
+     */
+    private COSBase addToPool(COSBase current)
     {
         COSBase base = current;
         if (current instanceof COSStream
@@ -167,41 +260,24 @@ public class COSWriterCompressionPool
                 base = addObjectToPool(current.getKey(), current);
             }
         }
+        return base;
+    }
+
+    private void pushElements(Deque<Iterator<COSBase>> stack, COSBase base)
+    {
         if (base instanceof COSArray)
         {
-            addElements(((COSArray) base).iterator());
+            stack.push(((COSArray) base).iterator());
         }
         else if (base instanceof COSDictionary)
         {
-            addElements(((COSDictionary) base).getValues().iterator());
+            stack.push(((COSDictionary) base).getValues().iterator());
         }
-    }
-
-    private void addElements(Iterator<COSBase> elements) throws IOException
-    {
-        while (elements.hasNext())
+        else
         {
-            COSBase value = elements.next();
-            if (value instanceof COSArray
-                    || (value instanceof COSDictionary
-                    && !allDirectObjects.contains(value)))
-            {
-                allDirectObjects.add(value);
-                addStructure(value);
-            }
-            else if (value instanceof COSObject)
-            {
-                COSObject cosObject = (COSObject) value;
-                if (cosObject.getKey() != null && objectPool.contains(cosObject.getKey()))
-                {
-                    continue;
-                }
-                if (cosObject.getObject() != null)
-                {
-                    addStructure(value);
-                }
-            }
+            return;
         }
+        maxTraversalDepth = Math.max(maxTraversalDepth, stack.size());
     }
 
     /**
@@ -227,6 +303,50 @@ public class COSWriterCompressionPool
         return objectStreamObjects;
     }
 
+    /**
+     * Returns all objects, that won't be written because an object with identical content is registered in this
+     * pool, together with the key of that object. This is empty, unless deduplication has been enabled via
+     * {@link CompressParameters#isDeduplicate()}.
+     *
+     * @return An unmodifiable map of the replaced objects.
+     */
+    public Map<COSBase, COSObjectKey> getDuplicateObjects()
+    {
+        return objectPool.getDuplicates();
+    }
+
+    /**
+     * Returns the keys, the objects returned by {@link #getDuplicateObjects()} are referenced by, mapped to the key of
+     * the object with identical content, which shall be referenced instead.
+     *
+     * @return An unmodifiable map of the replaced keys.
+     */
+    public Map<COSObjectKey, COSObjectKey> getDuplicateKeys()
+    {
+        return objectPool.getDuplicateKeys();
+    }
+
+    /**
+     * Returns the number of arrays and dictionaries, that have been traversed without being referenced by a
+     * {@link COSObject}.
+     *
+     * @return The number of traversed direct objects.
+     */
+    public int getVisitedDirectObjectCount()
+    {
+        return visitedDirectObjects.size();
+    }
+
+    /**
+     * Returns the deepest nesting of arrays, dictionaries and references, that has been traversed.
+     *
+     * @return The maximum traversal depth.
+     */
+    public int getMaxTraversalDepth()
+    {
+        return maxTraversalDepth;
+    }
+
     /**
      * Returns true, if the given {@link COSBase} is a registered object of this compression pool.
      *
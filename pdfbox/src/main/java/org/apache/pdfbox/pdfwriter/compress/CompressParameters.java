@@ -29,6 +29,7 @@ public class CompressParameters
     public static final int DEFAULT_OBJECT_STREAM_SIZE = 200;
 
     private final int objectStreamSize;
+    private final boolean deduplicate;
 
     public CompressParameters()
     {
@@ -44,12 +45,26 @@ public class CompressParameters
      * 
      */
     public CompressParameters(int objectStreamSize)
+    {
+        this(objectStreamSize, false);
+    }
+
+    /**
+     * Sets the number of objects, that can be contained in compressed object streams, and whether arrays,
+     * dictionaries and streams with identical content shall be written as a single indirect object. Deduplication
+     * requires reading the raw data of all streams once more and is only applied if compression is enabled.
+     *
+     * @param objectStreamSize The number of objects, that can be contained in compressed object streams.
+     * @param deduplicate true if objects with identical content shall be written only once.
+     */
+    public CompressParameters(int objectStreamSize, boolean deduplicate)
     {
         if (objectStreamSize < 0)
         {
             throw new IllegalArgumentException("Object stream size can't be a negative value");
         }
         this.objectStreamSize = objectStreamSize;
+        this.deduplicate = deduplicate;
     }
 
     /**
@@ -73,4 +88,14 @@ public class CompressParameters
     {
         return objectStreamSize > 0;
     }
+
+    /**
+     * Indicates whether objects with identical content shall be written as a single indirect object.
+     *
+     * @return true if deduplication is enabled.
+     */
+    public boolean isDeduplicate()
+    {
+        return deduplicate;
+    }
 }
@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdfwriter.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+
+/**
+ * Finds arrays, dictionaries and streams with identical content, so that they can be written as a single indirect
+ * object.
+ *
+ * <p>Every object is identified by a SHA-256 digest of its content. The digest of a stream covers its dictionary and
+ * its raw, encoded data. References are replaced by the digest of the referenced object, so that two fonts whose
+ * descriptors reference two identical, but distinct font file streams are found to be equal as well. Objects which
+ * are part of a reference cycle, e.g. pages and fields having a parent, are never considered equal to any other
+ * object, neither are annotations and signatures, as their identity matters.</p>
+ */
+final class DuplicateObjectFinder
+{
+    private static final Log LOG = LogFactory.getLog(DuplicateObjectFinder.class);
+
+    // deeper structures are considered unique, which bounds the recursion
+    private static final int MAX_DEPTH = 32;
+
+    // marks objects, which must not be merged with any other object
+    private static final byte[] UNIQUE = new byte[0];
+    // marks objects, whose digest is being computed, to detect reference cycles
+    private static final byte[] IN_PROGRESS = new byte[0];
+
+    private static final byte TAG_ARRAY = 'a';
+    private static final byte TAG_DICTIONARY = 'd';
+    private static final byte TAG_STREAM = 's';
+    private static final byte TAG_NAME = 'n';
+    private static final byte TAG_STRING = 't';
+    private static final byte TAG_INTEGER = 'i';
+    private static final byte TAG_FLOAT = 'f';
+    private static final byte TAG_BOOLEAN = 'b';
+    private static final byte TAG_NULL = 'z';
+
+    private final Set<COSBase> excludedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<COSBase, byte[]> digests = new IdentityHashMap<>();
+    private final Map<ByteBuffer, COSBase> originals = new HashMap<>();
+    // one digest per nesting level, as the digest of an object is finished before the one of its container
+    private final MessageDigest[] messageDigests = new MessageDigest[MAX_DEPTH + 1];
+    private final byte[] buffer = new byte[8192];
+
+    /**
+     * Constructor.
+     *
+     * @param excludedObjects objects which must not be merged with any other object, e.g. the document catalog
+     */
+    DuplicateObjectFinder(COSBase... excludedObjects)
+    {
+        for (COSBase excluded : excludedObjects)
+        {
+            if (excluded != null)
+            {
+                this.excludedObjects.add(excluded);
+            }
+        }
+    }
+
+    /**
+     * Returns the first object passed to this method having the same content as the given one. The given object
+     * becomes that first object if there is none yet.
+     *
+     * @param object the array, dictionary or stream to look up
+     * @return the first object with the same content, which is the given object itself if there is none, or null if
+     * the object can't be merged with others
+     */
+    COSBase findOriginal(COSBase object)
+    {
+        byte[] digest = digest(object, 0);
+        if (digest == UNIQUE)
+        {
+            return null;
+        }
+        COSBase original = originals.putIfAbsent(ByteBuffer.wrap(digest), object);
+        return original != null ? original : object;
+    }
+
+    private byte[] digest(COSBase object, int depth)
+    {
+        byte[] known = digests.get(object);
+        if (known != null)
+        {
+            return known == IN_PROGRESS ? UNIQUE : known;
+        }
+        if (depth > MAX_DEPTH)
+        {
+            return UNIQUE;
+        }
+        if (!(object instanceof COSArray || object instanceof COSDictionary)
+                || excludedObjects.contains(object) || hasIdentity(object))
+        {
+            digests.put(object, UNIQUE);
+            return UNIQUE;
+        }
+        digests.put(object, IN_PROGRESS);
+        MessageDigest messageDigest = getMessageDigest(depth);
+        boolean unique;
+        if (object instanceof COSArray)
+        {
+            unique = !updateArray(messageDigest, (COSArray) object, depth);
+        }
+        else if (object instanceof COSStream)
+        {
+            unique = !updateStream(messageDigest, (COSStream) object, depth);
+        }
+        else
+        {
+            messageDigest.update(TAG_DICTIONARY);
+            unique = !updateDictionary(messageDigest, (COSDictionary) object, depth);
+        }
+        byte[] digest = messageDigest.digest();
+        if (unique)
+        {
+            digest = UNIQUE;
+        }
+        digests.put(object, digest);
+        return digest;
+    }
+
+    private boolean updateArray(MessageDigest messageDigest, COSArray array, int depth)
+    {
+        messageDigest.update(TAG_ARRAY);
+        updateLong(messageDigest, array.size());
+        for (int i = 0; i < array.size(); i++)
+        {
+            if (!update(messageDigest, array.get(i), depth))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean updateDictionary(MessageDigest messageDigest, COSDictionary dictionary, int depth)
+    {
+        // the order of the entries doesn't matter
+        List<Map.Entry<COSName, COSBase>> entries = new ArrayList<>(dictionary.entrySet());
+        entries.sort(Map.Entry.comparingByKey((a, b) -> a.getName().compareTo(b.getName())));
+        int count = 0;
+        for (Map.Entry<COSName, COSBase> entry : entries)
+        {
+            // the length of a stream is written anew and covered by its data
+            if (!(dictionary instanceof COSStream && COSName.LENGTH.equals(entry.getKey())))
+            {
+                count++;
+            }
+        }
+        updateLong(messageDigest, count);
+        for (Map.Entry<COSName, COSBase> entry : entries)
+        {
+            if (dictionary instanceof COSStream && COSName.LENGTH.equals(entry.getKey()))
+            {
+                continue;
+            }
+            update(messageDigest, entry.getKey(), depth);
+            if (!update(messageDigest, entry.getValue(), depth))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean updateStream(MessageDigest messageDigest, COSStream stream, int depth)
+    {
+        messageDigest.update(TAG_STREAM);
+        if (!updateDictionary(messageDigest, stream, depth))
+        {
+            return false;
+        }
+        long length = 0;
+        try (InputStream input = stream.createRawInputStream())
+        {
+            int read;
+            while ((read = input.read(buffer)) != -1)
+            {
+                messageDigest.update(buffer, 0, read);
+                length += read;
+            }
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            LOG.debug("Stream data couldn't be read, stream isn't deduplicated", e);
+            return false;
+        }
+        updateLong(messageDigest, length);
+        return true;
+    }
+
+    /**
+     * Adds the given value to the digest of its container.
+     *
+     * @return false if the value can't be merged with others, which makes its container unique as well
+     */
+    private boolean update(MessageDigest messageDigest, COSBase value, int depth)
+    {
+        COSBase base = value instanceof COSObject ? ((COSObject) value).getObject() : value;
+        if (base instanceof COSArray || base instanceof COSDictionary)
+        {
+            byte[] digest = digest(base, depth + 1);
+            if (digest == UNIQUE)
+            {
+                return false;
+            }
+            messageDigest.update(digest);
+        }
+        else if (base instanceof COSName)
+        {
+            byte[] bytes = ((COSName) base).getName().getBytes(StandardCharsets.UTF_8);
+            messageDigest.update(TAG_NAME);
+            updateLong(messageDigest, bytes.length);
+            messageDigest.update(bytes);
+        }
+        else if (base instanceof COSString)
+        {
+            byte[] bytes = ((COSString) base).getBytes();
+            messageDigest.update(TAG_STRING);
+            updateLong(messageDigest, bytes.length);
+            messageDigest.update(bytes);
+        }
+        else if (base instanceof COSInteger)
+        {
+            messageDigest.update(TAG_INTEGER);
+            updateLong(messageDigest, ((COSInteger) base).longValue());
+        }
+        else if (base instanceof COSFloat)
+        {
+            messageDigest.update(TAG_FLOAT);
+            updateLong(messageDigest, Float.floatToIntBits(((COSFloat) base).floatValue()));
+        }
+        else if (base instanceof COSBoolean)
+        {
+            messageDigest.update(TAG_BOOLEAN);
+            messageDigest.update((byte) (((COSBoolean) base).getValue() ? 1 : 0));
+        }
+        else if (base instanceof COSNull)
+        {
+            messageDigest.update(TAG_NULL);
+        }
+        else
+        {
+            // dangling references and unknown objects
+            return false;
+        }
+        return true;
+    }
+
+    private static void updateLong(MessageDigest messageDigest, long value)
+    {
+        for (int shift = 56; shift >= 0; shift -= 8)
+        {
+            messageDigest.update((byte) (value >>> shift));
+        }
+    }
+
+    /**
+     * Tells whether the identity of the given dictionary matters, so that it must not be merged with another one,
+     * even if the content is the same.
+     */
+    private static boolean hasIdentity(COSBase object)
+    {
+        if (!(object instanceof COSDictionary))
+        {
+            return false;
+        }
+        COSDictionary dictionary = (COSDictionary) object;
+        COSName type = dictionary.getCOSName(COSName.TYPE);
+        return COSName.CATALOG.equals(type) || COSName.PAGES.equals(type) || COSName.PAGE.equals(type)
+                || COSName.ANNOT.equals(type) || COSName.SIG.equals(type)
+                || COSName.DOC_TIME_STAMP.equals(type)
+                // optional content groups are referenced by identity, e.g. in /OCProperties
+                || COSName.OCG.equals(type) || COSName.OCMD.equals(type)
+                || dictionary.containsKey(COSName.BYTERANGE)
+                // annotations without a type
+                || (dictionary.containsKey(COSName.RECT) && dictionary.containsKey(COSName.SUBTYPE));
+    }
+
+    private MessageDigest getMessageDigest(int depth)
+    {
+        MessageDigest messageDigest = messageDigests[depth];
+        if (messageDigest == null)
+        {
+            try
+            {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException e)
+            {
+                // should never happen
+                throw new RuntimeException(e);
+            }
+            messageDigests[depth] = messageDigest;
+        }
+        return messageDigest;
+    }
+}
@@ -17,121 +17,164 @@
 
 package org.apache.pdfbox.pdmodel;
 
-import java.lang.ref.SoftReference;
-import java.util.HashMap;
-import java.util.Map;
 import org.apache.pdfbox.cos.COSObject;
 import org.apache.pdfbox.pdmodel.documentinterchange.markedcontent.PDPropertyList;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
 import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+import org.apache.pdfbox.util.WeightedCache;
 
 /**
- * A resource cached based on SoftReference, retains resources until memory pressure causes them
- * to be garbage collected.
+ * A resource cache which retains a bounded number of resources of each kind. When the limit is
+ * reached, the least recently used resources of that kind are evicted.
  *
  * @author John Hewson
  */
 public class DefaultResourceCache implements ResourceCache
 {
-    private final Map<COSObject, SoftReference<PDFont>> fonts =
-            new HashMap<>();
+    /**
+     * The default maximum number of cached resources of each kind.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final WeightedCache<COSObject, PDFont> fonts;
     
-    private final Map<COSObject, SoftReference<PDColorSpace>> colorSpaces =
-            new HashMap<>();
+    private final WeightedCache<COSObject, PDColorSpace> colorSpaces;
+
+    private final WeightedCache<COSObject, PDXObject> xobjects;
+
+    private final WeightedCache<COSObject, PDExtendedGraphicsState> extGStates;
 
-    private final Map<COSObject, SoftReference<PDXObject>> xobjects =
-            new HashMap<>();
+    private final WeightedCache<COSObject, PDPropertyList> properties;
 
-    private final Map<COSObject, SoftReference<PDExtendedGraphicsState>> extGStates =
-            new HashMap<>();
+    /**
+     * Creates a cache which retains up to {@link #DEFAULT_MAX_ENTRIES} resources of each kind.
+     */
+    public DefaultResourceCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
 
-    private final Map<COSObject, SoftReference<PDPropertyList>> properties =
-            new HashMap<>();
+    /**
+     * Creates a cache which retains up to the given number of resources of each kind.
+     *
+     * @param maxEntries the maximum number of fonts, color spaces, XObjects, extended graphics
+     * states and property lists, each
+     */
+    public DefaultResourceCache(int maxEntries)
+    {
+        fonts = new WeightedCache<>(maxEntries);
+        colorSpaces = new WeightedCache<>(maxEntries);
+        xobjects = new WeightedCache<>(maxEntries);
+        extGStates = new WeightedCache<>(maxEntries);
+        properties = new WeightedCache<>(maxEntries);
+    }
 
     @Override
     public PDFont getFont(COSObject indirect)
     {
-        SoftReference<PDFont> font = fonts.get(indirect);
-        if (font != null)
-        {
-            return font.get();
-        }
-        return null;
+        return fonts.get(indirect);
     }
 
     @Override
     public void put(COSObject indirect, PDFont font)
     {
-        fonts.put(indirect, new SoftReference<>(font));
+        fonts.put(indirect, font);
     }
 
     @Override
     public PDColorSpace getColorSpace(COSObject indirect)
     {
-        SoftReference<PDColorSpace> colorSpace = colorSpaces.get(indirect);
-        if (colorSpace != null)
-        {
-            return colorSpace.get();
-        }
-        return null;
+        return colorSpaces.get(indirect);
     }
 
     @Override
     public void put(COSObject indirect, PDColorSpace colorSpace)
     {
-        colorSpaces.put(indirect, new SoftReference<>(colorSpace));
+        colorSpaces.put(indirect, colorSpace);
     }
 
     @Override
     public PDExtendedGraphicsState getExtGState(COSObject indirect)
     {
-        SoftReference<PDExtendedGraphicsState> extGState = extGStates.get(indirect);
-        if (extGState != null)
-        {
-            return extGState.get();
-        }
-        return null;
+        return extGStates.get(indirect);
     }
 
     @Override
     public void put(COSObject indirect, PDExtendedGraphicsState extGState)
     {
-        extGStates.put(indirect, new SoftReference<>(extGState));
+        extGStates.put(indirect, extGState);
     }
 
     @Override
     public PDPropertyList getProperties(COSObject indirect)
     {
-        SoftReference<PDPropertyList> propertyList = properties.get(indirect);
-        if (propertyList != null)
-        {
-            return propertyList.get();
-        }
-        return null;
+        return properties.get(indirect);
     }
 
     @Override
     public void put(COSObject indirect, PDPropertyList propertyList)
     {
-        properties.put(indirect, new SoftReference<>(propertyList));
+        properties.put(indirect, propertyList);
     }
 
     @Override
     public PDXObject getXObject(COSObject indirect)
     {
-        SoftReference<PDXObject> xobject = xobjects.get(indirect);
-        if (xobject != null)
-        {
-            return xobject.get();
-        }
-        return null;
+        return xobjects.get(indirect);
     }
 
     @Override
     public void put(COSObject indirect, PDXObject xobject)
     {
-        xobjects.put(indirect, new SoftReference<>(xobject));
+        xobjects.put(indirect, xobject);
+    }
+
+    /**
+     * Removes all resources from the cache.
+     */
+    public void clear()
+    {
+        fonts.clear();
+        colorSpaces.clear();
+        xobjects.clear();
+        extGStates.clear();
+        properties.clear();
+    }
+
+    /**
+     * Returns the number of lookups which found a resource, for all kinds of resources.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount()
+    {
+        return fonts.getHitCount() + colorSpaces.getHitCount() + xobjects.getHitCount() +
+                extGStates.getHitCount() + properties.getHitCount();
+    }
+
+    /**
+     * Returns the number of lookups which didn't find a resource, for all kinds of resources.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount()
+    {
+        return fonts.getMissCount() + colorSpaces.getMissCount() + xobjects.getMissCount() +
+                extGStates.getMissCount() + properties.getMissCount();
+    }
+
+    /**
+     * Returns the number of resources which were evicted to stay within the limit, for all kinds
+     * of resources.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount()
+    {
+        return fonts.getEvictionCount() + colorSpaces.getEvictionCount() +
+                xobjects.getEvictionCount() + extGStates.getEvictionCount() +
+                properties.getEvictionCount();
     }
 }
@@ -26,7 +26,7 @@ import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.cos.COSInteger;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSObject;
-import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.cos.COSUpdateInfo;
 import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.io.RandomAccessRead;
@@ -55,17 +55,25 @@ import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
 import org.apache.pdfbox.pdmodel.interactive.form.PDField;
 import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
 
-import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -130,6 +138,9 @@ public class PDDocument implements Closeable
     // to make sure only one signature is added
     private boolean signatureAdded = false;
 
+    // objects of imported pages whose object numbers were already taken into account
+    private Set<COSBase> importedObjects;
+
     /**
      * Creates an empty PDF document.
      * You need to add at least one page for the document to be valid.
@@ -643,6 +654,9 @@ public class PDDocument implements Closeable
      * document's scratch file then use this method otherwise just use the {@link #addPage addPage()}
      * method.
      * <p>
+     * The content streams are copied in their encoded form, without decoding and encoding them
+     * again. Only content streams without a filter are compressed.
+     * <p>
      * Unlike {@link #addPage addPage()}, this method creates a new PDPage object. If your page has
      * annotations, and if these link to pages not in the target document, then the target document
      * might become huge. What you need to do is to delete page references of such annotations. See
@@ -665,8 +679,7 @@ public class PDDocument implements Closeable
     {
         PDPage importedPage = new PDPage(new COSDictionary(page.getCOSObject()), resourceCache);
         importedPage.getCOSObject().removeItem(COSName.PARENT);
-        PDStream dest = new PDStream(this, page.getContents(), COSName.FLATE_DECODE);
-        importedPage.setContents(dest);
+        importContents(page.getCOSObject(), importedPage.getCOSObject());
         addPage(importedPage);
         setHighestImportedObjectNumber(importedPage);
         importedPage.setCropBox(new PDRectangle(page.getCropBox().getCOSArray()));
@@ -680,17 +693,118 @@ public class PDDocument implements Closeable
         return importedPage;
     }
 
+    /**
+     * Copies the content streams of a page into this document.
+     *
+     * @param page the page dictionary of the source page
+     * @param importedPage the page dictionary of the imported page
+     */
+    private void importContents(COSDictionary page, COSDictionary importedPage) throws IOException
+    {
+        COSBase contents = page.getDictionaryObject(COSName.CONTENTS);
+        if (contents instanceof COSStream)
+        {
+            importedPage.setItem(COSName.CONTENTS, importContentStream((COSStream) contents));
+        }
+        else if (contents instanceof COSArray)
+        {
+            COSArray array = (COSArray) contents;
+            COSArray importedArray = new COSArray();
+            for (int i = 0; i < array.size(); i++)
+            {
+                COSBase element = array.getObject(i);
+                if (element instanceof COSStream)
+                {
+                    importedArray.add(importContentStream((COSStream) element));
+                }
+            }
+            importedPage.setItem(COSName.CONTENTS, importedArray);
+        }
+        else
+        {
+            importedPage.removeItem(COSName.CONTENTS);
+        }
+    }
+
+    private COSStream importContentStream(COSStream stream) throws IOException
+    {
+        if (stream.getFilters() == null)
+        {
+            try (InputStream input = stream.createInputStream())
+            {
+                return new PDStream(this, input, COSName.FLATE_DECODE).getCOSObject();
+            }
+        }
+        COSStream importedStream = getDocument().createCOSStream();
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet())
+        {
+            if (!COSName.LENGTH.equals(entry.getKey()))
+            {
+                importedStream.setItem(entry.getKey(), entry.getValue());
+            }
+        }
+        try (InputStream input = stream.createRawInputStream();
+             OutputStream output = importedStream.createRawOutputStream())
+        {
+            IOUtils.copy(input, output);
+        }
+        return importedStream;
+    }
+
     /**
      * Determine the highest object number from the imported page to avoid mixed up numbers when saving the new pdf.
+     * Objects which were reached from previously imported pages are not visited again.
      *
      * @param importedPage the imported page.
      */
     private void setHighestImportedObjectNumber(PDPage importedPage)
     {
-        List<COSObjectKey> indirectObjectKeys = new ArrayList<>();
-        importedPage.getCOSObject().getIndirectObjectKeys(indirectObjectKeys);
-        long highestImportedNumber = indirectObjectKeys.stream().map(COSObjectKey::getNumber)
-                .max(Long::compare).orElse(0L);
+        if (importedObjects == null)
+        {
+            importedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        long highestImportedNumber = 0;
+        Deque<COSBase> pending = new ArrayDeque<>();
+        pending.push(importedPage.getCOSObject());
+        while (!pending.isEmpty())
+        {
+            COSBase base = pending.pop();
+            if (base instanceof COSObject)
+            {
+                COSObject object = (COSObject) base;
+                if (object.getKey() != null)
+                {
+                    highestImportedNumber = Math.max(highestImportedNumber,
+                            object.getKey().getNumber());
+                }
+                base = object.getObject();
+            }
+            if (base == null)
+            {
+                continue;
+            }
+            if (base.getKey() != null)
+            {
+                highestImportedNumber = Math.max(highestImportedNumber, base.getKey().getNumber());
+            }
+            if (base instanceof COSDictionary && importedObjects.add(base))
+            {
+                for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) base).entrySet())
+                {
+                    if (!COSName.PARENT.equals(entry.getKey()))
+                    {
+                        pending.push(entry.getValue());
+                    }
+                }
+            }
+            else if (base instanceof COSArray && importedObjects.add(base))
+            {
+                for (COSBase element : (COSArray) base)
+                {
+                    pending.push(element);
+                }
+            }
+        }
         long highestXRefObjectNumber = getDocument().getHighestXRefObjectNumber();
         getDocument().setHighestXRefObjectNumber(
                 Math.max(highestXRefObjectNumber, highestImportedNumber));
@@ -927,8 +1041,8 @@ public class PDDocument implements Closeable
      * If encryption has been activated (with {@link #protect(org.apache.pdfbox.pdmodel.encryption.ProtectionPolicy)
      * protect(ProtectionPolicy)}), do not use the document after saving because the contents are now encrypted.
      *
-     * @param output The stream to write to. It is recommended to wrap it in a {@link java.io.BufferedOutputStream},
-     * unless it is already buffered.
+     * @param output The stream to write to. The output is buffered internally, so there is no need to
+     * wrap it in a {@link java.io.BufferedOutputStream}.
      *
      * @throws IOException if the output could not be written
      */
@@ -957,10 +1071,10 @@ public class PDDocument implements Closeable
                     "You are overwriting the existing file " + file.getName()
                             + ", this will produce a corrupted file if you're also reading from it");
         }
-        try (BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(
-                new FileOutputStream(file)))
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
         {
-            save(bufferedOutputStream, compressParameters);
+            save(channel, compressParameters);
         }
     }
 
@@ -982,6 +1096,43 @@ public class PDDocument implements Closeable
         save(new File(fileName), compressParameters);
     }
 
+    /**
+     * Save the document to a channel using default compression.
+     * <p>
+     * Don't use the input file as target as this will produce a corrupted file.
+     * <p>
+     * If encryption has been activated (with {@link #protect(org.apache.pdfbox.pdmodel.encryption.ProtectionPolicy)
+     * protect(ProtectionPolicy)}), do not use the document after saving because the contents are now encrypted.
+     *
+     * @param channel The channel to write to, e.g. a {@link FileChannel}. It is not closed.
+     *
+     * @throws IOException if the output could not be written
+     */
+    public void save(WritableByteChannel channel) throws IOException
+    {
+        save(channel, CompressParameters.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Save the document to a channel using the given compression. The data is handed to the
+     * channel in large chunks, without any stream buffering in between.
+     * <p>
+     * Don't use the input file as target as this will produce a corrupted file.
+     * <p>
+     * If encryption has been activated (with {@link #protect(org.apache.pdfbox.pdmodel.encryption.ProtectionPolicy)
+     * protect(ProtectionPolicy)}), do not use the document after saving because the contents are now encrypted.
+     *
+     * @param channel The channel to write to, e.g. a {@link FileChannel}. It is not closed.
+     * @param compressParameters The parameters for the document's compression.
+     * @throws IOException if the output could not be written
+     */
+    public void save(WritableByteChannel channel, CompressParameters compressParameters)
+            throws IOException
+    {
+        // closing the stream would close the channel, it is only flushed by the writer
+        save(Channels.newOutputStream(channel), compressParameters);
+    }
+
     /**
      * Save the document using the given compression.
      * <p>
@@ -990,8 +1141,8 @@ public class PDDocument implements Closeable
      * If encryption has been activated (with {@link #protect(org.apache.pdfbox.pdmodel.encryption.ProtectionPolicy)
      * protect(ProtectionPolicy)}), do not use the document after saving because the contents are now encrypted.
      *
-     * @param output The stream to write to. It is recommended to wrap it in a {@link java.io.BufferedOutputStream},
-     * unless it is already buffered.
+     * @param output The stream to write to. The output is buffered internally, so there is no need to
+     * wrap it in a {@link java.io.BufferedOutputStream}.
      * @param compressParameters The parameters for the document's compression.
      * @throws IOException if the output could not be written
      */
@@ -53,6 +53,29 @@ public final class PDResources implements COSObjectable
     // and this would result in huge memory footprint in text extraction
     private final Map<COSName, SoftReference<PDFont>> directFontCache;
 
+    // reverse indexes of the resource dictionaries, built on the first use of add()
+    private Map<COSName, ResourceIndex> indexes;
+
+    /**
+     * The names of the values of a resource dictionary, and the last number used for a new name.
+     * Changes made directly on the dictionary are detected when its size changes or when a name
+     * no longer refers to the indexed value, in which case the index is built again.
+     */
+    private static final class ResourceIndex
+    {
+        private final COSDictionary dict;
+        private final Map<COSBase, COSName> names;
+        private int size;
+        private int counter;
+
+        private ResourceIndex(COSDictionary dict)
+        {
+            this.dict = dict;
+            this.names = new HashMap<>(dict.size() * 2);
+            this.size = dict.size();
+        }
+    }
+
     /**
      * Constructor for embedding.
      */
@@ -547,53 +570,111 @@ public final class PDResources implements COSObjectable
      */
     private COSName add(COSName kind, String prefix, COSObjectable object)
     {
-        // return the existing key if the item exists already
+        COSBase value = object.getCOSObject();
         COSDictionary dict = resources.getCOSDictionary(kind);
-        if (dict != null && dict.containsValue(object.getCOSObject()))
+        ResourceIndex index = null;
+        if (dict != null)
         {
-            return dict.getKeyForValue(object.getCOSObject());
+            // return the existing key if the item exists already
+            index = getIndex(kind, dict);
+            COSName name = index.names.get(value);
+            if (name != null && !isResource(kind, dict.getItem(name), value))
+            {
+                // the dictionary was changed without going through this class
+                indexes.remove(kind);
+                index = getIndex(kind, dict);
+                name = index.names.get(value);
+            }
+            if (name != null)
+            {
+                return name;
+            }
         }
 
-        // PDFBOX-4509: It could exist as an indirect object, happens when a font is taken from the 
-        // AcroForm default resources of a loaded PDF.
-        if (dict != null && COSName.FONT.equals(kind))
+        // add the item with a new key
+        COSName name = createKey(index, prefix);
+        put(kind, name, object);
+        return name;
+    }
+
+    /**
+     * Returns the reverse index of the given resource dictionary, the index is (re)built if there
+     * is none yet or if the dictionary was obviously changed without going through this class.
+     */
+    private ResourceIndex getIndex(COSName kind, COSDictionary dict)
+    {
+        if (indexes == null)
+        {
+            indexes = new HashMap<>();
+        }
+        ResourceIndex index = indexes.get(kind);
+        if (index == null || index.dict != dict || index.size != dict.size())
         {
+            index = new ResourceIndex(dict);
             for (Map.Entry<COSName, COSBase> entry : dict.entrySet())
             {
-                if (entry.getValue() instanceof COSObject &&
-                    object.getCOSObject() == ((COSObject) entry.getValue()).getObject())
+                index.names.putIfAbsent(entry.getValue(), entry.getKey());
+            }
+            // PDFBOX-4509: It could exist as an indirect object, happens when a font is taken from
+            // the AcroForm default resources of a loaded PDF.
+            if (COSName.FONT.equals(kind))
+            {
+                for (Map.Entry<COSName, COSBase> entry : dict.entrySet())
                 {
-                    return entry.getKey();
+                    if (entry.getValue() instanceof COSObject)
+                    {
+                        COSBase target = ((COSObject) entry.getValue()).getObject();
+                        if (target != null)
+                        {
+                            index.names.putIfAbsent(target, entry.getKey());
+                        }
+                    }
                 }
             }
+            indexes.put(kind, index);
         }
+        return index;
+    }
 
-        // add the item with a new key
-        COSName name = createKey(kind, prefix);
-        put(kind, name, object);
-        return name;
+    /**
+     * Tells whether the given dictionary entry is the given resource.
+     */
+    private static boolean isResource(COSName kind, COSBase item, COSBase value)
+    {
+        if (item == null)
+        {
+            return false;
+        }
+        if (value.equals(item))
+        {
+            return true;
+        }
+        return COSName.FONT.equals(kind) && item instanceof COSObject &&
+                ((COSObject) item).getObject() == value;
     }
 
     /**
      * Returns a unique key for a new resource.
      */
-    private COSName createKey(COSName kind, String prefix)
+    private static COSName createKey(ResourceIndex index, String prefix)
     {
-        COSDictionary dict = resources.getCOSDictionary(kind);
-        if (dict == null)
+        if (index == null)
         {
             return COSName.getPDFName(prefix + 1);
         }
 
-        // find a unique key
+        // find a unique key, numbering continues where the last new key was found so that the
+        // keys used before aren't probed again
+        COSDictionary dict = index.dict;
         String key;
-        int n = dict.keySet().size();
+        int n = Math.max(index.counter, dict.size());
         do
         {
             ++n;
             key = prefix + n;
         }
         while (dict.containsKey(key));
+        index.counter = n;
         return COSName.getPDFName(key);
     }
 
@@ -608,7 +689,24 @@ public final class PDResources implements COSObjectable
             dict = new COSDictionary();
             resources.setItem(kind, dict);
         }
+        ResourceIndex index = indexes != null ? indexes.get(kind) : null;
+        if (index == null)
+        {
+            dict.setItem(name, object);
+            return;
+        }
+        boolean replaced = dict.containsKey(name);
         dict.setItem(name, object);
+        if (index.dict == dict && !replaced && index.size + 1 == dict.size())
+        {
+            index.names.putIfAbsent(object.getCOSObject(), name);
+            index.size++;
+        }
+        else
+        {
+            // rebuilt on the next use
+            indexes.remove(kind);
+        }
     }
 
     /**
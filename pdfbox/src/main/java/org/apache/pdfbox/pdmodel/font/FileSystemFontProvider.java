@@ -138,7 +138,7 @@ final class FileSystemFontProvider extends FontProvider
                 }
                 if (font != null)
                 {
-                    parent.cache.addFont(this, font);
+                    parent.cache.addFont(this, font, file.length());
                 }
                 return font;
             }
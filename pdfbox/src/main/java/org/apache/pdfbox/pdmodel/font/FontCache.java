@@ -17,30 +17,71 @@
 
 package org.apache.pdfbox.pdmodel.font;
 
-import java.lang.ref.SoftReference;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import org.apache.fontbox.FontBoxFont;
+import org.apache.pdfbox.util.WeightedCache;
 
 /**
  * An in-memory cache for system fonts. This allows PDFBox to manage caching for a {@link FontProvider}.
- * PDFBox is free to purge this cache at will.
+ *
+ * <p>The cache is bounded by the total size of the font files of the cached fonts. When it is
+ * exceeded, the least recently used fonts are evicted. Fonts are never closed by the cache, as
+ * they may still be in use.</p>
  *
  * @author John Hewson
  */
 public final class FontCache
 {
-    private final Map<FontInfo, SoftReference<FontBoxFont>> cache = new ConcurrentHashMap<>();
+    /**
+     * The default maximum total size of the cached fonts, 64 MB.
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
 
     /**
-     * Adds the given FontBox font to the cache.
+     * The size which is assumed for fonts which are added without a size.
+     */
+    public static final long DEFAULT_FONT_SIZE = 1024L * 1024;
+
+    private final WeightedCache<FontInfo, FontBoxFont> cache;
+
+    /**
+     * Creates a cache with the default maximum size.
+     */
+    public FontCache()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a cache with the given maximum size.
+     *
+     * @param maxSize the maximum total size of the font files of the cached fonts, in bytes
+     */
+    public FontCache(long maxSize)
+    {
+        cache = new WeightedCache<>(maxSize);
+    }
+
+    /**
+     * Adds the given FontBox font to the cache, assuming a size of {@link #DEFAULT_FONT_SIZE}.
      * 
      * @param info the FontInfo to be used as key
      * @param font the font to be cached
      */
     public void addFont(FontInfo info, FontBoxFont font)
     {
-        cache.put(info, new SoftReference<>(font));
+        addFont(info, font, DEFAULT_FONT_SIZE);
+    }
+
+    /**
+     * Adds the given FontBox font to the cache.
+     *
+     * @param info the FontInfo to be used as key
+     * @param font the font to be cached
+     * @param size the size of the font file, in bytes
+     */
+    public void addFont(FontInfo info, FontBoxFont font, long size)
+    {
+        cache.put(info, font, Math.max(size, 0));
     }
 
     /**
@@ -52,7 +93,64 @@ public final class FontCache
      */
     public FontBoxFont getFont(FontInfo info)
     {
-        SoftReference<FontBoxFont> reference = cache.get(info);
-        return reference != null ? reference.get() : null;
+        return cache.get(info);
+    }
+
+    /**
+     * Removes all fonts from the cache.
+     */
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    /**
+     * Returns the number of cached fonts.
+     *
+     * @return the number of cached fonts
+     */
+    public int size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * Returns the total size of the font files of the cached fonts.
+     *
+     * @return the total size in bytes
+     */
+    public long getSize()
+    {
+        return cache.getWeight();
+    }
+
+    /**
+     * Returns the number of lookups which found a font.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount()
+    {
+        return cache.getHitCount();
+    }
+
+    /**
+     * Returns the number of lookups which didn't find a font.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount()
+    {
+        return cache.getMissCount();
+    }
+
+    /**
+     * Returns the number of fonts which were evicted to stay within the maximum size.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount()
+    {
+        return cache.getEvictionCount();
     }
 }
@@ -48,7 +48,7 @@ final class FontMapperImpl implements FontMapper
 {
     private static final Log LOG = LogFactory.getLog(FontMapperImpl.class);
 
-    private static final FontCache fontCache = new FontCache(); // todo: static cache isn't ideal
+    private final FontCache fontCache = new FontCache();
     private FontProvider fontProvider;
     private Map<String, FontInfo> fontInfoByName;
     private final TrueTypeFont lastResortFont;
@@ -133,12 +133,6 @@ final class FontMapperImpl implements FontMapper
         }
     }
 
-    // lazy thread safe singleton
-    private static class DefaultFontProvider
-    {
-        private static final FontProvider INSTANCE = new FileSystemFontProvider(fontCache);
-    }
-
     /**
      * Sets the font service provider.
      */
@@ -155,7 +149,7 @@ final class FontMapperImpl implements FontMapper
     {
         if (fontProvider == null)
         {
-            setProvider(DefaultFontProvider.INSTANCE);
+            setProvider(new FileSystemFontProvider(fontCache));
         }
         return fontProvider;
     }
@@ -413,11 +413,11 @@ public class PDCIDFontType0 extends PDCIDFont
         float width;
         if (cidFont != null)
         {
-            width = getType2CharString(cid).getWidth();
+            width = cidFont.getAdvanceWidth(cid);
         }
         else if (isEmbedded && t1Font instanceof CFFType1Font)
         {
-            width = ((CFFType1Font)t1Font).getType2CharString(cid).getWidth();
+            width = ((CFFType1Font)t1Font).getAdvanceWidth(cid);
         }
         else
         {
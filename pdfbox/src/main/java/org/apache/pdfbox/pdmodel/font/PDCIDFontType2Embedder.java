@@ -17,14 +17,12 @@
 
 package org.apache.pdfbox.pdmodel.font;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
 
 import org.apache.logging.Log;
 import org.apache.logging.LogFactory;
@@ -58,6 +56,11 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
     private final COSDictionary dict;
     private final COSDictionary cidFont;
     private final boolean vertical;
+    private boolean hasSurrogates;
+
+    // the minimum number of equal widths written as "c_first c_last w", shorter runs compress
+    // better within "c [w1 w2 ... wn]"
+    private static final int MIN_WIDTH_RUN = 8;
 
     /**
      * Creates a new TrueType font embedder for the given TTF as a PDCIDFontType2.
@@ -91,8 +94,34 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
         if (!embedSubset)
         {
             // build GID -> Unicode map
-            buildToUnicodeCMap(null);
+            buildToUnicodeCMap(null, null);
+        }
+    }
+
+    /**
+     * Subsets the font, or copies an identical subset from the
+     * {@link SubsetCache#getDefault() subset cache}.
+     */
+    @Override
+    public void subset() throws IOException
+    {
+        SubsetCache cache = SubsetCache.getDefault();
+        if (cache == null || !needsSubset())
+        {
+            super.subset();
+            return;
+        }
+        // the key has to be created before subsetting, which replaces the font
+        SubsetCache.Key key = SubsetCache.createKey(ttf, vertical, getSubsetGlyphIds());
+        SubsetCache.Entry entry = cache.get(key);
+        if (entry != null)
+        {
+            entry.apply(document, dict, cidFont, fontDescriptor.getCOSObject());
+            return;
         }
+        super.subset();
+        cache.put(key, SubsetCache.Entry.record(dict, cidFont, fontDescriptor.getCOSObject(),
+                hasSurrogates));
     }
 
     /**
@@ -103,46 +132,101 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
             throws IOException
     {
         // build CID2GIDMap, because the content stream has been written with the old GIDs
-        TreeMap<Integer, Integer> cidToGid = new TreeMap<>();
-        gidToCid.forEach((newGID, oldGID) -> cidToGid.put(oldGID, newGID));
+        int[] cids = new int[gidToCid.size()];
+        int[] gids = new int[cids.length];
+        sortByCID(gidToCid, cids, gids);
         
         // build unicode mapping before subsetting as the subsetted font won't have a cmap
-        buildToUnicodeCMap(gidToCid);
+        buildToUnicodeCMap(cids, gids);
         // build vertical metrics before subsetting as the subsetted font won't have vhea, vmtx
         if (vertical)
         {
-            buildVerticalMetrics(cidToGid);
+            buildVerticalMetrics(cids);
         }
         // rebuild the relevant part of the font
         buildFontFile2(ttfSubset);
         addNameTag(tag);
-        buildWidths(cidToGid);
-        buildCIDToGIDMap(cidToGid);
-        buildCIDSet(cidToGid);
+        buildWidths(cids, gids);
+        buildCIDToGIDMap(cids, gids);
+        buildCIDSet(cids);
+    }
+
+    /**
+     * Fills the given arrays with the CIDs and GIDs of a subset, sorted by CID.
+     */
+    private static void sortByCID(Map<Integer, Integer> gidToCid, int[] cids, int[] gids)
+    {
+        long[] sorted = new long[cids.length];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : gidToCid.entrySet())
+        {
+            sorted[i++] = (long) entry.getValue() << 32 | entry.getKey();
+        }
+        Arrays.sort(sorted);
+        for (i = 0; i < sorted.length; i++)
+        {
+            cids[i] = (int) (sorted[i] >>> 32);
+            gids[i] = (int) sorted[i];
+        }
+    }
+
+    /**
+     * Rebuild a font subset with CFF outlines, which is embedded as CIDFontType0. The content
+     * streams have been written with the GIDs of the original font, which are the CIDs of the
+     * subset, so the original font provides all metrics.
+     */
+    @Override
+    protected void buildCFFSubset(InputStream cffSubset, String tag,
+            Map<Integer, Integer> gidToCid) throws IOException
+    {
+        int[] cids = new int[gidToCid.size()];
+        int[] gids = new int[cids.length];
+        sortByCID(gidToCid, cids, gids);
+
+        buildToUnicodeCMap(cids, gids);
+        if (vertical)
+        {
+            // there is no glyf table with the glyph bounds needed for W2
+            LOG.warn("Vertical metrics of CFF based fonts are limited to DW2");
+            buildVerticalHeader(cidFont);
+        }
+        PDStream stream = new PDStream(document, cffSubset, COSName.FLATE_DECODE);
+        stream.getCOSObject().setItem(COSName.SUBTYPE, COSName.CID_FONT_TYPE0C);
+        fontDescriptor.setFontFile3(stream);
+        cidFont.setItem(COSName.SUBTYPE, COSName.CID_FONT_TYPE0);
+        // CIDFontType0 maps CIDs to glyphs using the charset of the CFF font
+        cidFont.removeItem(COSName.CID_TO_GID_MAP);
+        addNameTag(tag);
+        // the original font is still used, its GIDs are the CIDs
+        buildWidths(cids, cids);
+        buildCIDSet(cids);
     }
 
-    private void buildToUnicodeCMap(Map<Integer, Integer> newGIDToOldCID) throws IOException
+    /**
+     * Builds the ToUnicode CMap.
+     *
+     * @param cids the sorted CIDs of a subset, or null for the full font
+     * @param gids the GIDs of the subset for the CIDs
+     */
+    private void buildToUnicodeCMap(int[] cids, int[] gids) throws IOException
     {
         ToUnicodeWriter toUniWriter = new ToUnicodeWriter();
         boolean hasSurrogates = false;
-        for (int gid = 1, max = ttf.getMaximumProfile().getNumGlyphs(); gid <= max; gid++)
+        int count = cids != null ? cids.length : ttf.getMaximumProfile().getNumGlyphs();
+        for (int i = 0; i < count; i++)
         {
-            // optional CID2GIDMap for subsetting
             int cid;
-            if (newGIDToOldCID != null)
+            if (cids != null)
             {
-                if (!newGIDToOldCID.containsKey(gid))
+                if (gids[i] == 0)
                 {
                     continue;
                 }
-                else
-                {
-                    cid = newGIDToOldCID.get(gid);
-                }
+                cid = cids[i];
             }
             else
             {
-                cid = gid;
+                cid = i + 1;
             }
 
             // skip composite glyph components that have no code point
@@ -155,15 +239,17 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
                 {
                     hasSurrogates = true;
                 }
-                toUniWriter.add(cid, new String(new int[]{ codePoint }, 0, 1));
+                toUniWriter.add(cid, codePoint);
             }
         }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        toUniWriter.writeTo(out);
-        InputStream cMapStream = new ByteArrayInputStream(out.toByteArray());
+        this.hasSurrogates = hasSurrogates;
 
-        PDStream stream = new PDStream(document, cMapStream, COSName.FLATE_DECODE);
+        PDStream stream = new PDStream(document);
+        try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE))
+        {
+            toUniWriter.writeTo(out);
+        }
 
         // surrogate code points, requires PDF 1.5
         if (hasSurrogates)
@@ -230,26 +316,35 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
         cidFont.setName(COSName.BASE_FONT, newName);
     }
 
-    private void buildCIDToGIDMap(TreeMap<Integer, Integer> cidToGid) throws IOException
+    private void buildCIDToGIDMap(int[] cids, int[] gids) throws IOException
     {
-        int cidMax = cidToGid.lastKey();
-        byte[] buffer = new byte[cidMax * 2 + 2];
-        int bi = 0;
-        for (int i = 0; i <= cidMax; i++)
+        int cidMax = cids[cids.length - 1];
+        PDStream stream = new PDStream(document);
+        try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE))
         {
-            Integer gid = cidToGid.get(i);
-            if (gid != null)
+            // written in chunks, the length is even
+            byte[] buffer = new byte[Math.min(cidMax * 2 + 2, 8192)];
+            int bi = 0;
+            int index = 0;
+            for (int cid = 0; cid <= cidMax; cid++)
             {
-                buffer[bi]   = (byte) (gid >> 8 & 0xff);
-                buffer[bi+1] = (byte) (gid & 0xff);
+                // CIDs without a GID are mapped to 0
+                int gid = 0;
+                if (cids[index] == cid)
+                {
+                    gid = gids[index++];
+                }
+                buffer[bi++] = (byte) (gid >> 8 & 0xff);
+                buffer[bi++] = (byte) (gid & 0xff);
+                if (bi == buffer.length)
+                {
+                    out.write(buffer, 0, bi);
+                    bi = 0;
+                }
             }
-            // else keep 0 initialization
-            bi += 2;
+            out.write(buffer, 0, bi);
         }
 
-        InputStream input = new ByteArrayInputStream(buffer);
-        PDStream stream = new PDStream(document, input, COSName.FLATE_DECODE);
-
         cidFont.setItem(COSName.CID_TO_GID_MAP, stream);
     }
 
@@ -257,18 +352,21 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
      * Builds the CIDSet entry, required by PDF/A. This lists all CIDs in the font, including those
      * that don't have a GID.
      */
-    private void buildCIDSet(TreeMap<Integer, Integer> cidToGid) throws IOException
+    private void buildCIDSet(int[] cids) throws IOException
     {
-        int cidMax = cidToGid.lastKey();
-        byte[] bytes = new byte[cidMax / 8 + 1];
-        for (int cid = 0; cid <= cidMax; cid++)
+        int cidCount = cids[cids.length - 1] + 1;
+        byte[] bytes = new byte[(cidCount + 7) / 8];
+        Arrays.fill(bytes, 0, cidCount / 8, (byte) 0xff);
+        if (cidCount % 8 != 0)
         {
-            int mask = 1 << 7 - cid % 8;
-            bytes[cid / 8] |= mask;
+            bytes[bytes.length - 1] = (byte) (0xff << 8 - cidCount % 8);
         }
 
-        InputStream input = new ByteArrayInputStream(bytes);
-        PDStream stream = new PDStream(document, input, COSName.FLATE_DECODE);
+        PDStream stream = new PDStream(document);
+        try (OutputStream out = stream.createOutputStream(COSName.FLATE_DECODE))
+        {
+            out.write(bytes);
+        }
 
         fontDescriptor.setCIDSet(stream);
     }
@@ -276,36 +374,15 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
     /**
      * Builds widths with a custom CIDToGIDMap (for embedding font subset).
      */
-    private void buildWidths(TreeMap<Integer, Integer> cidToGid) throws IOException
+    private void buildWidths(int[] cids, int[] gids) throws IOException
     {
-        float scaling = 1000f / ttf.getHeader().getUnitsPerEm();
-
-        COSArray widths = new COSArray();
-        COSArray ws = new COSArray();
-        int prev = Integer.MIN_VALUE;
-        // Use a sorted list to get an optimal width array  
         HorizontalMetricsTable horizontalMetricsTable = ttf.getHorizontalMetrics();
-        for (Map.Entry<Integer, Integer> entry : cidToGid.entrySet())
+        int[] widths = new int[cids.length];
+        for (int i = 0; i < cids.length; i++)
         {
-            int cid = entry.getKey();
-            int gid = entry.getValue();
-            long width = Math.round(horizontalMetricsTable.getAdvanceWidth(gid) * scaling);
-            if (width == 1000)
-            {
-                // skip default width
-                continue;
-            }
-            // c [w1 w2 ... wn]
-            if (prev != cid - 1)
-            {
-                ws = new COSArray();
-                widths.add(COSInteger.get(cid)); // c
-                widths.add(ws);
-            }
-            ws.add(COSInteger.get(width)); // wi
-            prev = cid;
+            widths[i] = horizontalMetricsTable.getAdvanceWidth(gids[i]);
         }
-        cidFont.setItem(COSName.W, widths);
+        cidFont.setItem(COSName.W, getWidths(cids, widths));
     }
 
     private boolean buildVerticalHeader(COSDictionary cidFont) throws IOException
@@ -334,7 +411,7 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
     /**
      * Builds vertical metrics with a custom CIDToGIDMap (for embedding font subset).
      */
-    private void buildVerticalMetrics(TreeMap<Integer, Integer> cidToGid) throws IOException
+    private void buildVerticalMetrics(int[] cids) throws IOException
     {
         // The "vhea" and "vmtx" tables that specify vertical metrics shall never be used by a conforming
         // reader. The only way to specify vertical metrics in PDF shall be by means of the DW2 and W2
@@ -359,8 +436,7 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
         COSArray w2 = new COSArray();
         int prev = Integer.MIN_VALUE;
         // Use a sorted list to get an optimal width array
-        Set<Integer> keys = cidToGid.keySet();
-        for (int cid : keys)
+        for (int cid : cids)
         {
             // Unlike buildWidths, we look up with cid (not gid) here because this is
             // the original TTF, not the rebuilt one.
@@ -398,15 +474,16 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
     private void buildWidths(COSDictionary cidFont) throws IOException
     {
         int cidMax = ttf.getNumberOfGlyphs();
-        int[] gidwidths = new int[cidMax * 2];
+        int[] cids = new int[cidMax];
+        int[] widths = new int[cidMax];
         HorizontalMetricsTable horizontalMetricsTable = ttf.getHorizontalMetrics();
         for (int cid = 0; cid < cidMax; cid++)
         {
-            gidwidths[cid * 2] = cid;
-            gidwidths[cid * 2 + 1] = horizontalMetricsTable.getAdvanceWidth(cid);
+            cids[cid] = cid;
+            widths[cid] = horizontalMetricsTable.getAdvanceWidth(cid);
         }
 
-        cidFont.setItem(COSName.W, getWidths(gidwidths));
+        cidFont.setItem(COSName.W, getWidths(cids, widths));
     }
     
     enum State
@@ -414,98 +491,68 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
         FIRST, BRACKET, SERIAL
     }
 
-    private COSArray getWidths(int[] widths) throws IOException
+    /**
+     * Returns the W array for the given widths. Long runs of equal widths are written as
+     * "c_first c_last w", other consecutive CIDs as "c [w1 w2 ... wn]". CIDs with the default
+     * width of 1000 are left out.
+     *
+     * @param cids the sorted CIDs
+     * @param widths the widths of the CIDs in font units
+     */
+    private COSArray getWidths(int[] cids, int[] widths) throws IOException
     {
-        if (widths.length < 2)
+        float scaling = 1000f / ttf.getHeader().getUnitsPerEm();
+        long[] values = new long[widths.length];
+        for (int i = 0; i < widths.length; i++)
         {
-            throw new IllegalArgumentException("length of widths must be >= 2");
+            values[i] = Math.round(widths[i] * scaling);
         }
 
-        float scaling = 1000f / ttf.getHeader().getUnitsPerEm();
-
-        long lastCid = widths[0];
-        long lastValue = Math.round(widths[1] * scaling);
-
-        COSArray inner = new COSArray();
         COSArray outer = new COSArray();
-        outer.add(COSInteger.get(lastCid));
-
-        State state = State.FIRST;
-
-        for (int i = 2; i < widths.length - 1; i += 2)
+        // the open "c [w1 w2 ... wn]" entry, which is extended by the following CID
+        COSArray inner = null;
+        int lastCid = Integer.MIN_VALUE;
+        int i = 0;
+        while (i < cids.length)
         {
-            long cid   = widths[i];
-            long value = Math.round(widths[i + 1] * scaling);
-
-            switch (state)
+            long value = values[i];
+            if (value == 1000)
             {
-                case FIRST:
-                    if (cid == lastCid + 1 && value == lastValue)
-                    {
-                        state = State.SERIAL;
-                    }
-                    else if (cid == lastCid + 1)
-                    {
-                        state = State.BRACKET;
-                        inner = new COSArray();
-                        inner.add(COSInteger.get(lastValue));
-                    }
-                    else
-                    {
-                        inner = new COSArray();
-                        inner.add(COSInteger.get(lastValue));
-                        outer.add(inner);
-                        outer.add(COSInteger.get(cid));
-                    }
-                    break;
-                case BRACKET:
-                    if (cid == lastCid + 1 && value == lastValue)
-                    {
-                        state = State.SERIAL;
-                        outer.add(inner);
-                        outer.add(COSInteger.get(lastCid));
-                    }
-                    else if (cid == lastCid + 1)
-                    {
-                        inner.add(COSInteger.get(lastValue));
-                    }
-                    else
-                    {
-                        state = State.FIRST;
-                        inner.add(COSInteger.get(lastValue));
-                        outer.add(inner);
-                        outer.add(COSInteger.get(cid));
-                    }
-                    break;
-                case SERIAL:
-                    if (cid != lastCid + 1 || value != lastValue)
-                    {
-                        outer.add(COSInteger.get(lastCid));
-                        outer.add(COSInteger.get(lastValue));
-                        outer.add(COSInteger.get(cid));
-                        state = State.FIRST;
-                    }
-                    break;
+                // skip default width
+                i++;
+                continue;
             }
-            lastValue = value;
-            lastCid = cid;
-        }
-
-        switch (state)
-        {
-            case FIRST:
-                inner = new COSArray();
-                inner.add(COSInteger.get(lastValue));
-                outer.add(inner);
-                break;
-            case BRACKET:
-                inner.add(COSInteger.get(lastValue));
-                outer.add(inner);
-                break;
-            case SERIAL:
-                outer.add(COSInteger.get(lastCid));
-                outer.add(COSInteger.get(lastValue));
-                break;
+            // find the run of equal widths starting at i
+            int end = i + 1;
+            while (end < cids.length && cids[end] == cids[end - 1] + 1 && values[end] == value)
+            {
+                end++;
+            }
+            boolean extendsInner = inner != null && cids[i] == lastCid + 1;
+            if (end - i >= MIN_WIDTH_RUN)
+            {
+                // c_first c_last w
+                outer.add(COSInteger.get(cids[i]));
+                outer.add(COSInteger.get(cids[end - 1]));
+                outer.add(COSInteger.get(value));
+                inner = null;
+            }
+            else
+            {
+                // c [w1 w2 ... wn]
+                if (!extendsInner)
+                {
+                    inner = new COSArray();
+                    outer.add(COSInteger.get(cids[i]));
+                    outer.add(inner);
+                }
+                for (int j = i; j < end; j++)
+                {
+                    inner.add(COSInteger.get(value));
+                }
+            }
+            lastCid = cids[end - 1];
+            i = end;
         }
         return outer;
     }
@@ -441,7 +441,7 @@ public abstract class PDSimpleFont extends PDFont
     @Override
     public void subset() throws IOException
     {
-        // only TTF subsetting via PDType0Font is currently supported
+        // only subsetting of TrueType and OpenType fonts via PDType0Font is currently supported
         throw new UnsupportedOperationException();
     }
 
@@ -424,7 +424,7 @@ public class PDType1CFont extends PDSimpleFont implements PDVectorFont
         {
             int codePoint = string.codePointAt(i);
             String name = getGlyphList().codePointToName(codePoint);
-            width += cffFont.getType1CharString(name).getWidth();
+            width += cffFont.getWidth(name);
         }
         return width;
     }
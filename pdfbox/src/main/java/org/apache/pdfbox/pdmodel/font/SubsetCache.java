@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.font;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * A cache for the subsets of embedded Type 0 fonts, which is shared by all documents. When a font
+ * is subset to the same glyphs as before, the font program, the widths, the CIDToGIDMap, the
+ * CIDSet and the ToUnicode CMap of the earlier subset are copied into the document, with the
+ * streams in their encoded form, instead of subsetting the font again.
+ *
+ * <p>Fonts are identified by their PostScript name, the size of the font data, and the checksum
+ * adjustment and modification date from the 'head' table, so that a font which is loaded anew
+ * for each document is found in the cache. The subset is identified by the glyphs of the original
+ * font it consists of, regardless of the code points they were added by.</p>
+ *
+ * <p>The cache is disabled by default, it can be enabled using {@link #setDefault(SubsetCache)}.
+ * It is safe for use by multiple threads.</p>
+ */
+public final class SubsetCache
+{
+    private static SubsetCache defaultCache;
+
+    private static final COSName[] FONT_KEYS = { COSName.BASE_FONT, COSName.TO_UNICODE };
+    private static final COSName[] CID_FONT_KEYS = { COSName.SUBTYPE, COSName.BASE_FONT,
+            COSName.W, COSName.W2, COSName.DW2, COSName.CID_TO_GID_MAP };
+    private static final COSName[] DESCRIPTOR_KEYS = { COSName.FONT_NAME, COSName.FONT_FILE2,
+            COSName.FONT_FILE3, COSName.CID_SET };
+
+    private final Map<Key, Entry> entries;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxEntries the maximum number of subsets to keep, the least recently used ones are
+     * dropped first
+     */
+    public SubsetCache(int maxEntries)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, SubsetCache.Entry> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache used when subsetting Type 0 fonts.
+     *
+     * @return the cache, or null if subsets are not cached
+     */
+    public static synchronized SubsetCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Sets the cache used when subsetting Type 0 fonts.
+     *
+     * @param cache the cache, or null to disable caching
+     */
+    public static synchronized void setDefault(SubsetCache cache)
+    {
+        defaultCache = cache;
+    }
+
+    /**
+     * Returns the number of cached subsets.
+     *
+     * @return the number of cached subsets
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Removes all subsets from the cache.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    synchronized Entry get(Key key)
+    {
+        return entries.get(key);
+    }
+
+    synchronized void put(Key key, Entry entry)
+    {
+        entries.put(key, entry);
+    }
+
+    /**
+     * Creates the key for a subset.
+     *
+     * @param ttf the original font
+     * @param vertical whether the font is embedded for vertical writing
+     * @param glyphIds the sorted GIDs of the original font which make up the subset
+     * @return the key
+     * @throws IOException if the font could not be read
+     */
+    static Key createKey(TrueTypeFont ttf, boolean vertical, int[] glyphIds) throws IOException
+    {
+        Calendar modified = ttf.getHeader().getModified();
+        String fontId = ttf.getName() + '/' + ttf.getOriginalDataSize() + '/' +
+                ttf.getHeader().getCheckSumAdjustment() + '/' +
+                (modified != null ? modified.getTimeInMillis() : 0);
+        return new Key(fontId, vertical, glyphIds);
+    }
+
+    /**
+     * Identifies a subset by the font and the glyphs.
+     */
+    static final class Key
+    {
+        private final String fontId;
+        private final boolean vertical;
+        private final int[] glyphIds;
+        private final int hash;
+
+        private Key(String fontId, boolean vertical, int[] glyphIds)
+        {
+            this.fontId = fontId;
+            this.vertical = vertical;
+            this.glyphIds = glyphIds;
+            this.hash = (fontId.hashCode() * 31 + Arrays.hashCode(glyphIds)) * 31 +
+                    Boolean.hashCode(vertical);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && vertical == other.vertical &&
+                    fontId.equals(other.fontId) && Arrays.equals(glyphIds, other.glyphIds);
+        }
+    }
+
+    /**
+     * The entries which the subset has written into the font dictionaries. Streams are kept as
+     * {@link StreamData}, arrays are copied, all other values are immutable.
+     */
+    static final class Entry
+    {
+        private final Map<COSName, Object> fontItems;
+        private final Map<COSName, Object> cidFontItems;
+        private final Map<COSName, Object> descriptorItems;
+        private final boolean hasSurrogates;
+
+        private Entry(Map<COSName, Object> fontItems, Map<COSName, Object> cidFontItems,
+                Map<COSName, Object> descriptorItems, boolean hasSurrogates)
+        {
+            this.fontItems = fontItems;
+            this.cidFontItems = cidFontItems;
+            this.descriptorItems = descriptorItems;
+            this.hasSurrogates = hasSurrogates;
+        }
+
+        /**
+         * Records the result of a subset.
+         *
+         * @param font the Type 0 font dictionary
+         * @param cidFont the descendant CIDFont dictionary
+         * @param descriptor the font descriptor dictionary
+         * @param hasSurrogates whether the ToUnicode CMap maps to code points beyond the BMP
+         * @return the entry
+         * @throws IOException if the data of a stream could not be read
+         */
+        static Entry record(COSDictionary font, COSDictionary cidFont, COSDictionary descriptor,
+                boolean hasSurrogates) throws IOException
+        {
+            return new Entry(record(font, FONT_KEYS), record(cidFont, CID_FONT_KEYS),
+                    record(descriptor, DESCRIPTOR_KEYS), hasSurrogates);
+        }
+
+        private static Map<COSName, Object> record(COSDictionary dictionary, COSName[] keys)
+                throws IOException
+        {
+            Map<COSName, Object> items = new LinkedHashMap<>(keys.length * 2);
+            for (COSName key : keys)
+            {
+                COSBase value = dictionary.getDictionaryObject(key);
+                if (value instanceof COSStream)
+                {
+                    items.put(key, new StreamData((COSStream) value));
+                }
+                else
+                {
+                    // null values are recorded as well, as the entry has to be removed
+                    items.put(key, copy(value));
+                }
+            }
+            return items;
+        }
+
+        /**
+         * Writes the recorded subset into the dictionaries of a font, which has been created for
+         * the same original font.
+         *
+         * @param document the document of the font
+         * @param font the Type 0 font dictionary
+         * @param cidFont the descendant CIDFont dictionary
+         * @param descriptor the font descriptor dictionary
+         * @throws IOException if a stream could not be created
+         */
+        void apply(PDDocument document, COSDictionary font, COSDictionary cidFont,
+                COSDictionary descriptor) throws IOException
+        {
+            apply(document, font, fontItems);
+            apply(document, cidFont, cidFontItems);
+            apply(document, descriptor, descriptorItems);
+            if (hasSurrogates && document.getVersion() < 1.5f)
+            {
+                document.setVersion(1.5f);
+            }
+        }
+
+        private static void apply(PDDocument document, COSDictionary dictionary,
+                Map<COSName, Object> items) throws IOException
+        {
+            for (Map.Entry<COSName, Object> item : items.entrySet())
+            {
+                Object value = item.getValue();
+                if (value instanceof StreamData)
+                {
+                    dictionary.setItem(item.getKey(), ((StreamData) value).toStream(document));
+                }
+                else
+                {
+                    dictionary.setItem(item.getKey(), copy((COSBase) value));
+                }
+            }
+        }
+
+        private static COSBase copy(COSBase value)
+        {
+            if (value instanceof COSArray)
+            {
+                COSArray array = (COSArray) value;
+                COSArray copy = new COSArray();
+                for (int i = 0; i < array.size(); i++)
+                {
+                    copy.add(copy(array.get(i)));
+                }
+                return copy;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * The encoded data and the parameters of a stream.
+     */
+    private static final class StreamData
+    {
+        private final byte[] data;
+        private final Map<COSName, COSBase> parameters = new LinkedHashMap<>();
+
+        private StreamData(COSStream stream) throws IOException
+        {
+            try (InputStream input = stream.createRawInputStream())
+            {
+                data = IOUtils.toByteArray(input);
+            }
+            for (Map.Entry<COSName, COSBase> entry : stream.entrySet())
+            {
+                if (!COSName.LENGTH.equals(entry.getKey()))
+                {
+                    parameters.put(entry.getKey(), Entry.copy(entry.getValue()));
+                }
+            }
+        }
+
+        private COSStream toStream(PDDocument document) throws IOException
+        {
+            COSStream stream = document.getDocument().createCOSStream();
+            parameters.forEach((key, value) -> stream.setItem(key, Entry.copy(value)));
+            try (OutputStream output = stream.createRawOutputStream())
+            {
+                output.write(data);
+            }
+            return stream;
+        }
+    }
+}
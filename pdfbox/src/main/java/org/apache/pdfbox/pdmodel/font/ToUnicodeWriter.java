@@ -22,20 +22,24 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 import org.apache.pdfbox.util.Hex;
 
 /**
  * Writes ToUnicode Mapping Files.
  *
+ * <p>The mappings are kept in arrays indexed by CID, texts consisting of a single code point are
+ * stored as int. The bfrange entries are written while the mappings are traversed in CID order.
+ * </p>
+ *
  * @author John Hewson
  */
 final class ToUnicodeWriter
 {
-    private final Map<Integer, String> cidToUnicode = new TreeMap<>();
+    // first code point of the text of each CID, -1 if the CID isn't mapped
+    private int[] codePoints = new int[0];
+    // texts with more than one code point, allocated when needed
+    private String[] texts;
     private int wMode;
 
     /**
@@ -68,18 +72,70 @@ final class ToUnicodeWriter
      * @param text Unicode text, up to 512 bytes.
      */
     public void add(int cid, String text)
+    {
+        if (text == null || text.isEmpty())
+        {
+            throw new IllegalArgumentException("Text is null or empty");
+        }
+        int codePoint = text.codePointAt(0);
+        if (Character.charCount(codePoint) == text.length())
+        {
+            add(cid, codePoint);
+            return;
+        }
+        checkCID(cid);
+        ensureCapacity(cid);
+        if (texts == null)
+        {
+            texts = new String[codePoints.length];
+        }
+        codePoints[cid] = codePoint;
+        texts[cid] = text;
+    }
+
+    /**
+     * Adds the given CID to Unicode mapping.
+     *
+     * @param cid CID
+     * @param codePoint the Unicode code point
+     */
+    public void add(int cid, int codePoint)
+    {
+        checkCID(cid);
+        if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT)
+        {
+            throw new IllegalArgumentException("Code point is not valid");
+        }
+        ensureCapacity(cid);
+        codePoints[cid] = codePoint;
+        if (texts != null)
+        {
+            texts[cid] = null;
+        }
+    }
+
+    private static void checkCID(int cid)
     {
         if (cid < 0 || cid > 0xFFFF)
         {
             throw new IllegalArgumentException("CID is not valid");
         }
+    }
 
-        if (text == null || text.isEmpty())
+    private void ensureCapacity(int cid)
+    {
+        if (cid < codePoints.length)
         {
-            throw new IllegalArgumentException("Text is null or empty");
+            return;
+        }
+        int oldLength = codePoints.length;
+        int newLength = Math.min(Math.max(cid + 1, oldLength * 2), 0x10000);
+        codePoints = Arrays.copyOf(codePoints, newLength);
+        Arrays.fill(codePoints, oldLength, newLength, -1);
+        if (texts != null)
+        {
+            texts = Arrays.copyOf(texts, newLength);
         }
-
-        cidToUnicode.put(cid, text);
     }
 
     /**
@@ -115,55 +171,40 @@ final class ToUnicodeWriter
         writeLine(writer, "<0000> <FFFF>");
         writeLine(writer, "endcodespacerange\n");
 
-        // CID -> Unicode mappings, we use ranges to generate a smaller CMap
-        List<Integer> srcFrom = new ArrayList<>();
-        List<Integer> srcTo = new ArrayList<>();
-        List<String> dstString = new ArrayList<>();
-
-        Map.Entry<Integer, String> prev = null;
-
-        for (Map.Entry<Integer, String> next : cidToUnicode.entrySet())
+        // CID -> Unicode mappings, we use ranges to generate a smaller CMap, which are written
+        // in batches to limit the entries per operator
+        int[] srcFrom = new int[MAX_ENTRIES_PER_OPERATOR];
+        int[] srcTo = new int[MAX_ENTRIES_PER_OPERATOR];
+        int count = 0;
+        int prev = -1;
+        for (int cid = 0; cid < codePoints.length; cid++)
         {
-            if (allowCIDToUnicodeRange(prev, next))
+            if (codePoints[cid] < 0)
+            {
+                continue;
+            }
+            if (prev >= 0 && allowCIDToUnicodeRange(prev, cid))
             {
                 // extend range
-                srcTo.set(srcTo.size() - 1, next.getKey());
+                srcTo[count - 1] = cid;
             }
             else
             {
+                if (count == MAX_ENTRIES_PER_OPERATOR)
+                {
+                    writeRanges(writer, srcFrom, srcTo, count);
+                    count = 0;
+                }
                 // begin range
-                srcFrom.add(next.getKey());
-                srcTo.add(next.getKey());
-                dstString.add(next.getValue());
+                srcFrom[count] = cid;
+                srcTo[count] = cid;
+                count++;
             }
-            prev = next;
+            prev = cid;
         }
-
-        // limit entries per operator
-        int batchCount = (int) Math.ceil(srcFrom.size() /
-                                         (double) MAX_ENTRIES_PER_OPERATOR);
-        for (int batch = 0; batch < batchCount; batch++)
+        if (count > 0)
         {
-            int count = batch == batchCount - 1 ?
-                            srcFrom.size() - MAX_ENTRIES_PER_OPERATOR * batch :
-                            MAX_ENTRIES_PER_OPERATOR;
-            writer.write(count + " beginbfrange\n");
-            for (int j = 0; j < count; j++)
-            {
-                int index = batch * MAX_ENTRIES_PER_OPERATOR + j;
-                writer.write('<');
-                writer.write(Hex.getChars(srcFrom.get(index).shortValue()));
-                writer.write("> ");
-
-                writer.write('<');
-                writer.write(Hex.getChars(srcTo.get(index).shortValue()));
-                writer.write("> ");
-
-                writer.write('<');
-                writer.write(Hex.getCharsUTF16BE(dstString.get(index)));
-                writer.write(">\n");
-            }
-            writeLine(writer, "endbfrange\n");
+            writeRanges(writer, srcFrom, srcTo, count);
         }
 
         // footer
@@ -175,6 +216,44 @@ final class ToUnicodeWriter
         writer.flush();
     }
 
+    private void writeRanges(BufferedWriter writer, int[] srcFrom, int[] srcTo, int count)
+            throws IOException
+    {
+        writer.write(count + " beginbfrange\n");
+        for (int j = 0; j < count; j++)
+        {
+            writer.write('<');
+            writer.write(Hex.getChars((short) srcFrom[j]));
+            writer.write("> ");
+
+            writer.write('<');
+            writer.write(Hex.getChars((short) srcTo[j]));
+            writer.write("> ");
+
+            writer.write('<');
+            String text = texts != null ? texts[srcFrom[j]] : null;
+            if (text != null)
+            {
+                writer.write(Hex.getCharsUTF16BE(text));
+            }
+            else
+            {
+                int codePoint = codePoints[srcFrom[j]];
+                if (Character.isBmpCodePoint(codePoint))
+                {
+                    writer.write(Hex.getChars((short) codePoint));
+                }
+                else
+                {
+                    writer.write(Hex.getChars((short) Character.highSurrogate(codePoint)));
+                    writer.write(Hex.getChars((short) Character.lowSurrogate(codePoint)));
+                }
+            }
+            writer.write(">\n");
+        }
+        writeLine(writer, "endbfrange\n");
+    }
+
     private void writeLine(BufferedWriter writer, String text) throws IOException
     {
         writer.write(text);
@@ -183,15 +262,13 @@ final class ToUnicodeWriter
 
     // allowCIDToUnicodeRange returns true if the CID and Unicode destination string are allowed to follow one another
     // according to the Adobe 1.7 specification as described in Section 5.9, Example 5.16.
-    static boolean allowCIDToUnicodeRange(Map.Entry<Integer, String> prev,
-            Map.Entry<Integer, String> next)
+    private boolean allowCIDToUnicodeRange(int prev, int next)
     {
-        if (prev == null || next == null)
-        {
-            return false;
-        }
-        return allowCodeRange(prev.getKey(), next.getKey())
-                && allowDestinationRange(prev.getValue(), next.getValue());
+        // the destination code points must be sequential as well and the previous text must
+        // not contain more than one code point
+        return allowCodeRange(prev, next)
+                && allowCodeRange(codePoints[prev], codePoints[next])
+                && (texts == null || texts[prev] == null);
     }
 
     // allowCodeRange returns true if the 16-bit values are sequential and differ only in the low-order byte.
@@ -208,21 +285,4 @@ final class ToUnicodeWriter
 
         return prevH == nextH && prevL < nextL;
     }
-
-    // allowDestinationRange returns true if the code points represented by the strings are sequential and differ
-    // only in the low-order byte.
-    static boolean allowDestinationRange(String prev, String next)
-    {
-        if (prev.isEmpty() || next.isEmpty())
-        {
-            return false;
-        }
-        int prevCode = prev.codePointAt(0);
-        int nextCode = next.codePointAt(0);
-
-        // Allow the new destination string if:
-        // 1. It is sequential with the previous one and differs only in the low-order byte
-        // 2. The previous string does not contain any UTF-16 surrogates
-        return allowCodeRange(prevCode, nextCode) && prev.codePointCount(0, prev.length()) == 1;
-    }
 }
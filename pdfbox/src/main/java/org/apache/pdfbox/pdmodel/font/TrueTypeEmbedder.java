@@ -23,14 +23,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import org.apache.fontbox.cff.CFFSubsetter;
 import org.apache.fontbox.ttf.CmapLookup;
 import org.apache.fontbox.ttf.HeaderTable;
 import org.apache.fontbox.ttf.HorizontalHeaderTable;
 import org.apache.fontbox.ttf.OS2WindowsMetricsTable;
+import org.apache.fontbox.ttf.OpenTypeFont;
 import org.apache.fontbox.ttf.PostScriptTable;
 import org.apache.fontbox.ttf.TTFParser;
 import org.apache.fontbox.ttf.TTFSubsetter;
@@ -296,6 +299,25 @@ abstract class TrueTypeEmbedder implements Subsetter
         allGlyphIds.addAll(glyphIds);
     }
 
+    /**
+     * Returns the GIDs of the original font which have been added to the subset, in ascending
+     * order, without the components of compound glyphs.
+     */
+    int[] getSubsetGlyphIds()
+    {
+        BitSet glyphIds = new BitSet();
+        for (int codePoint : subsetCodePoints)
+        {
+            int gid = cmapLookup.getGlyphId(codePoint);
+            if (gid != 0)
+            {
+                glyphIds.set(gid);
+            }
+        }
+        allGlyphIds.forEach(glyphIds::set);
+        return glyphIds.stream().toArray();
+    }
+
     @Override
     public void subset() throws IOException
     {
@@ -309,6 +331,12 @@ abstract class TrueTypeEmbedder implements Subsetter
             throw new IllegalStateException("Subsetting is disabled");
         }
 
+        if (ttf instanceof OpenTypeFont && ((OpenTypeFont) ttf).isPostScript())
+        {
+            subsetCFF((OpenTypeFont) ttf);
+            return;
+        }
+
         // PDF spec required tables (if present), all others will be removed
         List<String> tables = new ArrayList<>();
         tables.add("head");
@@ -346,6 +374,38 @@ abstract class TrueTypeEmbedder implements Subsetter
         ttf.close();
     }
 
+    /**
+     * Subsets the CFF outlines of an OpenType font.
+     */
+    private void subsetCFF(OpenTypeFont otf) throws IOException
+    {
+        if (!otf.isSupportedOTF())
+        {
+            throw new IOException("Subsetting of CFF2 based fonts is not supported");
+        }
+        CFFSubsetter subsetter = new CFFSubsetter(otf.getCFF().getFont());
+        // the content streams select the glyphs by the GIDs of the original font
+        subsetter.setGlyphIdsAsCIDs(true);
+        for (int codePoint : subsetCodePoints)
+        {
+            int gid = cmapLookup.getGlyphId(codePoint);
+            if (gid != 0)
+            {
+                subsetter.addGlyphId(gid);
+            }
+        }
+        subsetter.addGlyphIds(allGlyphIds);
+
+        // calculate deterministic tag based on the chosen subset
+        Map<Integer, Integer> gidToCid = subsetter.getGIDMap();
+        String tag = getTag(gidToCid);
+        subsetter.setPrefix(tag);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        subsetter.writeToStream(out);
+        buildCFFSubset(new ByteArrayInputStream(out.toByteArray()), tag, gidToCid);
+    }
+
     /**
      * Returns true if the font needs to be subset.
      */
@@ -360,6 +420,17 @@ abstract class TrueTypeEmbedder implements Subsetter
     protected abstract void buildSubset(InputStream ttfSubset, String tag,
                                      Map<Integer, Integer> gidToCid) throws IOException;
 
+    /**
+     * Rebuild a font subset of a CFF based OpenType font. The CIDs of the CFF subset are the GIDs of
+     * the original font.
+     */
+    protected void buildCFFSubset(InputStream cffSubset, String tag,
+                                  Map<Integer, Integer> gidToCid) throws IOException
+    {
+        throw new IOException("Subsetting of CFF based fonts is not supported by " +
+                getClass().getSimpleName());
+    }
+
     /**
      * Returns an uppercase 6-character unique tag for the given subset.
      */
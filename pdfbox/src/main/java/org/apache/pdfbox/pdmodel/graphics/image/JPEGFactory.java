@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.image;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+
+/**
+ * Factory for creating a PDImageXObject containing a JPEG compressed image.
+ *
+ * <p>The JPEG data is embedded as is, using the DCTDecode filter. Only the markers in front of
+ * the image data are read to find out the dimensions and the color space of the image, the image
+ * itself isn't decoded.</p>
+ */
+public final class JPEGFactory
+{
+    // JPEG markers
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int APP14 = 0xEE;
+
+    private JPEGFactory()
+    {
+    }
+
+    /**
+     * Creates a new JPEG image XObject from a byte array containing JPEG data.
+     *
+     * @param document the document where the image will be created
+     * @param byteArray bytes of a JPEG image
+     * @return a new image XObject
+     * @throws IOException if the input can't be read or is not a supported JPEG image
+     */
+    public static PDImageXObject createFromByteArray(PDDocument document, byte[] byteArray)
+            throws IOException
+    {
+        // check the image before copying it into the document
+        Dimensions dimensions = retrieveDimensions(new ByteArrayInputStream(byteArray));
+        COSStream stream = document.getDocument().createCOSStream();
+        try (OutputStream output = stream.createRawOutputStream())
+        {
+            output.write(byteArray);
+        }
+        return createImageXObject(stream, dimensions);
+    }
+
+    /**
+     * Creates a new JPEG image XObject from an input stream containing JPEG data. The data is
+     * copied into the document without being decoded. The stream is not closed.
+     *
+     * @param document the document where the image will be created
+     * @param stream a stream of JPEG data
+     * @return a new image XObject
+     * @throws IOException if the input can't be read or is not a supported JPEG image
+     */
+    public static PDImageXObject createFromStream(PDDocument document, InputStream stream)
+            throws IOException
+    {
+        COSStream cosStream = document.getDocument().createCOSStream();
+        Dimensions dimensions;
+        try
+        {
+            try (OutputStream output = cosStream.createRawOutputStream())
+            {
+                IOUtils.copy(stream, output);
+            }
+            try (InputStream input = cosStream.createRawInputStream())
+            {
+                dimensions = retrieveDimensions(new BufferedInputStream(input));
+            }
+        }
+        catch (IOException e)
+        {
+            IOUtils.closeQuietly(cosStream);
+            throw e;
+        }
+        return createImageXObject(cosStream, dimensions);
+    }
+
+    private static PDImageXObject createImageXObject(COSStream stream, Dimensions dimensions)
+            throws IOException
+    {
+        PDColorSpace colorSpace;
+        switch (dimensions.numComponents)
+        {
+            case 1:
+                colorSpace = PDDeviceGray.INSTANCE;
+                break;
+            case 3:
+                colorSpace = PDDeviceRGB.INSTANCE;
+                break;
+            case 4:
+                colorSpace = PDDeviceCMYK.INSTANCE;
+                break;
+            default:
+                throw new IOException("JPEG images with " + dimensions.numComponents +
+                        " components are not supported");
+        }
+        stream.setItem(COSName.FILTER, COSName.DCT_DECODE);
+        if (dimensions.adobeTransform < 0 && dimensions.rgbComponentIds)
+        {
+            // without an Adobe marker, 3 components are assumed to be YCbCr
+            COSDictionary decodeParms = new COSDictionary();
+            decodeParms.setInt(COSName.COLOR_TRANSFORM, 0);
+            stream.setItem(COSName.DECODE_PARMS, decodeParms);
+        }
+        PDImageXObject image = new PDImageXObject(new PDStream(stream), null);
+        image.setBitsPerComponent(8);
+        image.setWidth(dimensions.width);
+        image.setHeight(dimensions.height);
+        image.setColorSpace(colorSpace);
+        if (colorSpace == PDDeviceCMYK.INSTANCE && dimensions.adobeTransform >= 0)
+        {
+            // Adobe applications write inverted CMYK JPEGs
+            COSArray decode = new COSArray();
+            for (int i = 0; i < 4; i++)
+            {
+                decode.add(COSInteger.ONE);
+                decode.add(COSInteger.ZERO);
+            }
+            image.setDecode(decode);
+        }
+        return image;
+    }
+
+    /**
+     * Reads the markers of a JPEG image up to the start of the scan data.
+     */
+    private static Dimensions retrieveDimensions(InputStream input) throws IOException
+    {
+        if (input.read() != 0xFF || input.read() != SOI)
+        {
+            throw new IOException("Not a JPEG image, SOI marker missing");
+        }
+        Dimensions dimensions = new Dimensions();
+        boolean frameFound = false;
+        while (true)
+        {
+            int marker = readMarker(input);
+            if (marker == SOS || marker == EOI)
+            {
+                break;
+            }
+            if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7)
+            {
+                // markers without a segment
+                continue;
+            }
+            int length = readUnsignedShort(input) - 2;
+            if (length < 0)
+            {
+                throw new IOException("Invalid JPEG segment length for marker " +
+                        Integer.toHexString(marker));
+            }
+            if (isStartOfFrame(marker))
+            {
+                readFrameHeader(input, length, dimensions);
+                frameFound = true;
+            }
+            else if (marker == APP14 && length >= 12)
+            {
+                byte[] segment = readFully(input, length);
+                if (segment[0] == 'A' && segment[1] == 'd' && segment[2] == 'o' &&
+                    segment[3] == 'b' && segment[4] == 'e')
+                {
+                    dimensions.adobeTransform = segment[11] & 0xFF;
+                }
+            }
+            else
+            {
+                skipFully(input, length);
+            }
+        }
+        if (!frameFound)
+        {
+            throw new IOException("JPEG image has no SOF marker");
+        }
+        return dimensions;
+    }
+
+    private static void readFrameHeader(InputStream input, int length, Dimensions dimensions)
+            throws IOException
+    {
+        byte[] segment = readFully(input, length);
+        if (length < 6)
+        {
+            throw new IOException("JPEG SOF segment is too short");
+        }
+        int precision = segment[0] & 0xFF;
+        if (precision != 8)
+        {
+            throw new IOException("JPEG images with a precision of " + precision +
+                    " bits are not supported");
+        }
+        dimensions.height = (segment[1] & 0xFF) << 8 | segment[2] & 0xFF;
+        dimensions.width = (segment[3] & 0xFF) << 8 | segment[4] & 0xFF;
+        dimensions.numComponents = segment[5] & 0xFF;
+        if (dimensions.width == 0 || dimensions.height == 0)
+        {
+            throw new IOException("JPEG images without width or height are not supported");
+        }
+        if (dimensions.numComponents == 3 && length >= 6 + 3 * 3)
+        {
+            dimensions.rgbComponentIds = segment[6] == 'R' && segment[9] == 'G' &&
+                    segment[12] == 'B';
+        }
+    }
+
+    private static boolean isStartOfFrame(int marker)
+    {
+        // SOF0 to SOF15, except DHT, JPG and DAC
+        return marker >= 0xC0 && marker <= 0xCF &&
+                marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static int readMarker(InputStream input) throws IOException
+    {
+        int b = input.read();
+        if (b != 0xFF)
+        {
+            throw new IOException(b < 0 ? "Unexpected end of JPEG image" :
+                    "Invalid JPEG marker: " + Integer.toHexString(b));
+        }
+        // markers may be preceded by fill bytes
+        while (b == 0xFF)
+        {
+            b = input.read();
+        }
+        if (b < 0)
+        {
+            throw new EOFException("Unexpected end of JPEG image");
+        }
+        return b;
+    }
+
+    private static int readUnsignedShort(InputStream input) throws IOException
+    {
+        int b1 = input.read();
+        int b2 = input.read();
+        if ((b1 | b2) < 0)
+        {
+            throw new EOFException("Unexpected end of JPEG image");
+        }
+        return b1 << 8 | b2;
+    }
+
+    private static byte[] readFully(InputStream input, int length) throws IOException
+    {
+        byte[] bytes = new byte[length];
+        if (IOUtils.populateBuffer(input, bytes) < length)
+        {
+            throw new EOFException("Unexpected end of JPEG image");
+        }
+        return bytes;
+    }
+
+    private static void skipFully(InputStream input, long length) throws IOException
+    {
+        long remaining = length;
+        while (remaining > 0)
+        {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0)
+            {
+                if (input.read() < 0)
+                {
+                    throw new EOFException("Unexpected end of JPEG image");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * The properties of a JPEG image which are found in its markers.
+     */
+    private static final class Dimensions
+    {
+        private int width;
+        private int height;
+        private int numComponents;
+        // the transform flag of the Adobe APP14 marker, -1 if there is none
+        private int adobeTransform = -1;
+        private boolean rgbComponentIds;
+    }
+}
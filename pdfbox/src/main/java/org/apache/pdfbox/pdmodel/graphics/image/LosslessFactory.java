@@ -17,27 +17,46 @@ package org.apache.pdfbox.pdmodel.graphics.image;
 
 import org.apache.awt.Transparency;
 import org.apache.awt.image.BufferedImage;
+import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
 import org.apache.pdfbox.filter.Filter;
-import org.apache.pdfbox.filter.FilterFactory;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
-import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceColorSpace;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
 
 /**
  * Factory for creating a PDImageXObject containing a lossless compressed image.
  *
+ * <p>The image is read row by row and compressed directly into the image stream, without
+ * keeping a copy of the uncompressed image. Images with no more than 256 colors are stored as
+ * indexed images, other gray images with a single component. 8 bit images are compressed with PNG
+ * predictors, which are chosen for each row.</p>
+ *
  * @author Tilman Hausherr
  */
 public final class LosslessFactory {
 
+    // the size of the uncompressed rows which are compressed together when compressing in parallel
+    private static final int STRIP_SIZE = 256 * 1024;
+
     private LosslessFactory()
     {
     }
@@ -62,101 +81,674 @@ public final class LosslessFactory {
     public static PDImageXObject createFromImage(PDDocument document, BufferedImage image)
             throws IOException {
 
-        return createFromRGBImage(image, document);
+        return createFromImage(document, image, null);
     }
 
-    private static PDImageXObject createFromRGBImage(BufferedImage image, PDDocument document) throws IOException
+    /**
+     * Creates a new lossless encoded image XObject from a BufferedImage. Large images are split
+     * into strips of rows, which are compressed in parallel using the given executor and
+     * concatenated into a single stream.
+     *
+     * @param document the document where the image will be created
+     * @param image the BufferedImage to embed
+     * @param executor the executor for compressing the strips, or null to compress the image in
+     * the current thread
+     * @return a new image XObject
+     * @throws IOException if something goes wrong
+     */
+    public static PDImageXObject createFromImage(PDDocument document, BufferedImage image,
+            Executor executor) throws IOException
+    {
+        return createFromRGBImage(image, document, executor);
+    }
+
+    private static PDImageXObject createFromRGBImage(BufferedImage image, PDDocument document,
+            Executor executor) throws IOException
     {
         int height = image.getHeight();
         int width = image.getWidth();
-        int[] rgbLineBuffer = new int[width];
-        int bpc = 8;
-        PDDeviceColorSpace deviceColorSpace = PDDeviceRGB.INSTANCE;
-        byte[] imageData = new byte[width * height * 3];
-        int byteIdx = 0;
-        int alphaByteIdx = 0;
-        int alphaBitPos = 7;
         int transparency = image.getTransparency();
-        int apbc = transparency == Transparency.BITMASK ? 1 : 8;
-        byte[] alphaImageData;
-        if (transparency != Transparency.OPAQUE)
+        int[] rgbLineBuffer = new int[width];
+
+        // find out whether the image is gray, has few colors or is opaque after all
+        ColorTable colorTable = new ColorTable();
+        boolean gray = true;
+        boolean opaque = true;
+        int alphaMask = transparency == Transparency.BITMASK ? 0x01000000 : 0xFF000000;
+        int lastRGB = -1;
+        for (int y = 0; y < height; ++y)
+        {
+            for (int pixel : image.getRGB(0, y, width, 1, rgbLineBuffer, 0, width))
+            {
+                opaque &= (pixel & alphaMask) == alphaMask;
+                int rgb = pixel & 0xFFFFFF;
+                if (rgb == lastRGB)
+                {
+                    continue;
+                }
+                lastRGB = rgb;
+                gray &= (rgb >> 16) == (rgb & 0xFF) && ((rgb >> 8) & 0xFF) == (rgb & 0xFF);
+                if (colorTable != null && colorTable.add(rgb) < 0)
+                {
+                    colorTable = null;
+                }
+            }
+            if (colorTable == null && !gray && (!opaque || transparency == Transparency.OPAQUE))
+            {
+                break;
+            }
+        }
+        boolean hasAlpha = transparency != Transparency.OPAQUE && !opaque;
+
+        PDColorSpace colorSpace;
+        int bpc;
+        int components;
+        if (colorTable != null && colorTable.size() > 0 && (colorTable.size() <= 16 || !gray))
         {
-            alphaImageData = new byte[((width * apbc / 8) + (width * apbc % 8 != 0 ? 1 : 0)) * height];
+            int size = colorTable.size();
+            bpc = size <= 2 ? 1 : size <= 4 ? 2 : size <= 16 ? 4 : 8;
+            components = 1;
+            colorSpace = colorTable.createColorSpace();
         }
         else
         {
-            alphaImageData = new byte[0];
+            colorTable = null;
+            bpc = 8;
+            components = gray ? 1 : 3;
+            colorSpace = gray ? PDDeviceGray.INSTANCE : PDDeviceRGB.INSTANCE;
         }
-        for (int y = 0; y < height; ++y)
+        // predictors don't help indexed images
+        boolean predictor = colorTable == null;
+        int apbc = transparency == Transparency.BITMASK ? 1 : 8;
+
+        COSStream stream = document.getDocument().createCOSStream();
+        COSStream alphaStream = hasAlpha ? document.getDocument().createCOSStream() : null;
+        try (OutputStream output = stream.createRawOutputStream();
+             OutputStream alphaOutput = hasAlpha ? alphaStream.createRawOutputStream() : null)
         {
-            for (int pixel : image.getRGB(0, y, width, 1, rgbLineBuffer, 0, width))
+            byte[] row = new byte[(width * components * bpc + 7) / 8];
+            FlateImageWriter writer = new FlateImageWriter(output, row.length,
+                    predictor ? components : 0, executor);
+            byte[] alphaRow = null;
+            FlateImageWriter alphaWriter = null;
+            if (hasAlpha)
             {
-                imageData[byteIdx++] = (byte) ((pixel >> 16) & 0xFF);
-                imageData[byteIdx++] = (byte) ((pixel >> 8) & 0xFF);
-                imageData[byteIdx++] = (byte) (pixel & 0xFF);
-
-                // we have the alpha right here, so no need to do it separately
-                // as done prior April 2018
-                if (transparency == Transparency.BITMASK)
+                alphaRow = new byte[(width * apbc + 7) / 8];
+                alphaWriter = new FlateImageWriter(alphaOutput, alphaRow.length,
+                        apbc == 8 ? 1 : 0, executor);
+            }
+            for (int y = 0; y < height; ++y)
+            {
+                int[] pixels = image.getRGB(0, y, width, 1, rgbLineBuffer, 0, width);
+                if (colorTable != null)
                 {
-                    // write a bit
-                    alphaImageData[alphaByteIdx] |= ((pixel >> 24) & 1) << alphaBitPos;
-                    if (--alphaBitPos < 0)
+                    packIndices(pixels, colorTable, bpc, row);
+                }
+                else if (gray)
+                {
+                    for (int x = 0; x < width; ++x)
                     {
-                        alphaBitPos = 7;
-                        ++alphaByteIdx;
+                        row[x] = (byte) pixels[x];
                     }
                 }
-                else if (transparency != Transparency.OPAQUE)
+                else
                 {
-                    // write a byte
-                    alphaImageData[alphaByteIdx++] = (byte) ((pixel >> 24) & 0xFF);
+                    int byteIdx = 0;
+                    for (int pixel : pixels)
+                    {
+                        row[byteIdx++] = (byte) ((pixel >> 16) & 0xFF);
+                        row[byteIdx++] = (byte) ((pixel >> 8) & 0xFF);
+                        row[byteIdx++] = (byte) (pixel & 0xFF);
+                    }
+                }
+                writer.writeRow(row);
+                if (hasAlpha)
+                {
+                    if (apbc == 1)
+                    {
+                        Arrays.fill(alphaRow, (byte) 0);
+                        for (int x = 0; x < width; ++x)
+                        {
+                            alphaRow[x >> 3] |= ((pixels[x] >> 24) & 1) << (7 - (x & 7));
+                        }
+                    }
+                    else
+                    {
+                        for (int x = 0; x < width; ++x)
+                        {
+                            alphaRow[x] = (byte) (pixels[x] >>> 24);
+                        }
+                    }
+                    alphaWriter.writeRow(alphaRow);
                 }
             }
-
-            // skip boundary if needed
-            if (transparency == Transparency.BITMASK && alphaBitPos != 7)
+            writer.finish();
+            if (hasAlpha)
             {
-                alphaBitPos = 7;
-                ++alphaByteIdx;
+                alphaWriter.finish();
             }
         }
-        PDImageXObject pdImage = prepareImageXObject(document, imageData,
-                image.getWidth(), image.getHeight(), bpc, deviceColorSpace);      
-        if (transparency != Transparency.OPAQUE)
+
+        PDImageXObject pdImage = createImageXObject(stream, width, height, bpc, colorSpace,
+                predictor ? components : 0);
+        if (hasAlpha)
         {
-            PDImageXObject pdMask = prepareImageXObject(document, alphaImageData,
-                    image.getWidth(), image.getHeight(), apbc, PDDeviceGray.INSTANCE);
+            PDImageXObject pdMask = createImageXObject(alphaStream, width, height, apbc,
+                    PDDeviceGray.INSTANCE, apbc == 8 ? 1 : 0);
             pdImage.getCOSObject().setItem(COSName.SMASK, pdMask);
         }
         return pdImage;
     }
 
     /**
-     * Create a PDImageXObject using the Flate filter.
-     * 
-     * @param document The document.
-     * @param byteArray array with data.
-     * @param width the image width
-     * @param height the image height
-     * @param bitsPerComponent the bits per component
-     * @param initColorSpace the color space
-     * @return the newly created PDImageXObject with the data compressed.
-     * @throws IOException 
+     * Packs the palette indices of a row of pixels.
+     */
+    private static void packIndices(int[] pixels, ColorTable colorTable, int bpc, byte[] row)
+    {
+        if (bpc == 8)
+        {
+            for (int x = 0; x < pixels.length; ++x)
+            {
+                row[x] = (byte) colorTable.indexOf(pixels[x] & 0xFFFFFF);
+            }
+            return;
+        }
+        Arrays.fill(row, (byte) 0);
+        int pixelsPerByte = 8 / bpc;
+        for (int x = 0; x < pixels.length; ++x)
+        {
+            int shift = 8 - bpc * (x % pixelsPerByte + 1);
+            row[x / pixelsPerByte] |= colorTable.indexOf(pixels[x] & 0xFFFFFF) << shift;
+        }
+    }
+
+    /**
+     * Creates a Flate compressed image XObject for the given stream.
+     *
+     * @param colors the number of color components if PNG predictors are used, otherwise 0
      */
-    static PDImageXObject prepareImageXObject(PDDocument document,
-            byte [] byteArray, int width, int height, int bitsPerComponent, 
-            PDColorSpace initColorSpace) throws IOException
+    private static PDImageXObject createImageXObject(COSStream stream, int width, int height,
+            int bitsPerComponent, PDColorSpace colorSpace, int colors) throws IOException
     {
-        //pre-size the output stream to half of the input
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(byteArray.length/2);
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+        if (colors > 0)
+        {
+            COSDictionary decodeParms = new COSDictionary();
+            decodeParms.setInt(COSName.PREDICTOR, 15);
+            decodeParms.setInt(COSName.COLORS, colors);
+            decodeParms.setInt(COSName.BITS_PER_COMPONENT, bitsPerComponent);
+            decodeParms.setInt(COSName.COLUMNS, width);
+            stream.setItem(COSName.DECODE_PARMS, decodeParms);
+        }
+        PDImageXObject image = new PDImageXObject(new PDStream(stream), null);
+        image.setBitsPerComponent(bitsPerComponent);
+        image.setWidth(width);
+        image.setHeight(height);
+        image.setColorSpace(colorSpace);
+        return image;
+    }
 
-        Filter filter = FilterFactory.INSTANCE.getFilter(COSName.FLATE_DECODE);
-        filter.encode(new ByteArrayInputStream(byteArray), baos, new COSDictionary(), 0);
+    /**
+     * The distinct colors of an image, up to 256.
+     */
+    private static final class ColorTable
+    {
+        // open addressing, -1 marks an empty slot
+        private final int[] keys = new int[512];
+        private final int[] indices = new int[512];
+        private final int[] colors = new int[256];
+        private int size;
+        private int lastRGB = -1;
+        private int lastIndex;
+
+        private ColorTable()
+        {
+            Arrays.fill(keys, -1);
+        }
+
+        /**
+         * Adds a color.
+         *
+         * @return the index of the color, or -1 if the table is full
+         */
+        private int add(int rgb)
+        {
+            int slot = slot(rgb);
+            if (keys[slot] == rgb)
+            {
+                return indices[slot];
+            }
+            if (size == colors.length)
+            {
+                return -1;
+            }
+            keys[slot] = rgb;
+            indices[slot] = size;
+            colors[size] = rgb;
+            return size++;
+        }
+
+        private int indexOf(int rgb)
+        {
+            if (rgb != lastRGB)
+            {
+                lastRGB = rgb;
+                lastIndex = indices[slot(rgb)];
+            }
+            return lastIndex;
+        }
+
+        private int slot(int rgb)
+        {
+            int slot = (rgb * 0x9E3779B1) >>> 23;
+            while (keys[slot] != -1 && keys[slot] != rgb)
+            {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            return slot;
+        }
 
-        ByteArrayInputStream encodedByteStream = new ByteArrayInputStream(baos.toByteArray());
-        return new PDImageXObject(document, encodedByteStream, COSName.FLATE_DECODE, 
-                width, height, bitsPerComponent, initColorSpace);
+        private int size()
+        {
+            return size;
+        }
+
+        private PDColorSpace createColorSpace() throws IOException
+        {
+            byte[] lookup = new byte[size * 3];
+            for (int i = 0; i < size; i++)
+            {
+                lookup[i * 3] = (byte) (colors[i] >> 16);
+                lookup[i * 3 + 1] = (byte) (colors[i] >> 8);
+                lookup[i * 3 + 2] = (byte) colors[i];
+            }
+            COSArray array = new COSArray();
+            array.add(COSName.INDEXED);
+            array.add(COSName.DEVICERGB);
+            array.add(COSInteger.get(size - 1L));
+            array.add(new COSString(lookup));
+            return new PDIndexed(array);
+        }
     }
 
+    /**
+     * Compresses the rows of an image with the Flate filter into a stream, applying PNG
+     * predictors if requested.
+     *
+     * <p>The rows are collected in strips. Without an executor, the strips are compressed into
+     * a single deflate stream as they fill up. With an executor, each strip is compressed
+     * independently into a raw deflate block sequence ending with a sync flush, so that the
+     * strips can be concatenated into a single zlib stream, whose checksum is combined from the
+     * checksums of the strips.</p>
+     */
+    private static final class FlateImageWriter
+    {
+        private final OutputStream output;
+        private final int rowLength;
+        // bytes per pixel if PNG predictors are used, otherwise 0
+        private final int bytesPerPixel;
+        private final Executor executor;
+        private final int level = Filter.getCompressionLevel();
+        private final int rowsPerStrip;
+        private final int maxPendingStrips;
+
+        private byte[] strip;
+        private int rows;
+        // the last row of the previous strip, which the predictors of the first row refer to
+        private byte[] previousRow;
+
+        private Deflater deflater;
+        private byte[] buffer;
+        private byte[] filtered;
+
+        private final Deque<CompletableFuture<CompressedStrip>> pending = new ArrayDeque<>();
+        private long adler = 1;
+        private boolean headerWritten;
+
+        private FlateImageWriter(OutputStream output, int rowLength, int bytesPerPixel,
+                Executor executor)
+        {
+            this.output = output;
+            this.rowLength = rowLength;
+            this.bytesPerPixel = bytesPerPixel;
+            this.executor = executor;
+            this.rowsPerStrip = Math.max(1, STRIP_SIZE / Math.max(1, rowLength));
+            this.maxPendingStrips = 2 * Runtime.getRuntime().availableProcessors();
+            this.previousRow = new byte[rowLength];
+        }
+
+        private void writeRow(byte[] row) throws IOException
+        {
+            if (strip == null)
+            {
+                strip = new byte[rowsPerStrip * rowLength];
+            }
+            System.arraycopy(row, 0, strip, rows * rowLength, rowLength);
+            if (++rows == rowsPerStrip)
+            {
+                flushStrip();
+            }
+        }
+
+        private void finish() throws IOException
+        {
+            if (rows > 0)
+            {
+                flushStrip();
+            }
+            if (executor == null)
+            {
+                if (deflater == null)
+                {
+                    deflater = new Deflater(level);
+                    buffer = new byte[8192];
+                }
+                try
+                {
+                    deflater.finish();
+                    while (!deflater.finished())
+                    {
+                        output.write(buffer, 0, deflater.deflate(buffer));
+                    }
+                }
+                finally
+                {
+                    deflater.end();
+                }
+            }
+            else
+            {
+                while (!pending.isEmpty())
+                {
+                    writeStrip(pending.removeFirst());
+                }
+                writeHeader();
+                // an empty final block, then the checksum of the zlib stream
+                output.write(new byte[] { 3, 0,
+                        (byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8),
+                        (byte) adler });
+            }
+        }
+
+        private void flushStrip() throws IOException
+        {
+            byte[] rawStrip = strip;
+            int stripRows = rows;
+            byte[] stripPreviousRow = previousRow;
+            // the next strip refers to the last row of this one
+            previousRow = Arrays.copyOfRange(rawStrip, (stripRows - 1) * rowLength,
+                    stripRows * rowLength);
+            strip = null;
+            rows = 0;
+            if (executor == null)
+            {
+                if (deflater == null)
+                {
+                    deflater = new Deflater(level);
+                    buffer = new byte[8192];
+                }
+                byte[] data = filter(rawStrip, stripRows, stripPreviousRow, filtered);
+                filtered = data;
+                deflater.setInput(data, 0, filteredLength(stripRows));
+                while (!deflater.needsInput())
+                {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+                // keep the buffer for the next strip
+                strip = rawStrip;
+            }
+            else
+            {
+                if (pending.size() >= maxPendingStrips)
+                {
+                    writeStrip(pending.removeFirst());
+                }
+                pending.addLast(CompletableFuture.supplyAsync(
+                        () -> compress(rawStrip, stripRows, stripPreviousRow), executor));
+            }
+        }
+
+        private void writeStrip(CompletableFuture<CompressedStrip> future) throws IOException
+        {
+            CompressedStrip compressed;
+            try
+            {
+                compressed = future.join();
+            }
+            catch (CompletionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            writeHeader();
+            output.write(compressed.data, 0, compressed.length);
+            adler = combineAdler32(adler, compressed.adler, compressed.rawLength);
+        }
+
+        private void writeHeader() throws IOException
+        {
+            if (!headerWritten)
+            {
+                // zlib header with the compression level as hint
+                int flags;
+                if (level == Deflater.DEFAULT_COMPRESSION || level == 6)
+                {
+                    flags = 0x9C;
+                }
+                else if (level <= 1)
+                {
+                    flags = 0x01;
+                }
+                else if (level <= 5)
+                {
+                    flags = 0x5E;
+                }
+                else
+                {
+                    flags = 0xDA;
+                }
+                output.write(0x78);
+                output.write(flags);
+                headerWritten = true;
+            }
+        }
+
+        private CompressedStrip compress(byte[] rawStrip, int stripRows, byte[] stripPreviousRow)
+        {
+            byte[] data = filter(rawStrip, stripRows, stripPreviousRow, null);
+            int length = filteredLength(stripRows);
+            Adler32 checksum = new Adler32();
+            checksum.update(data, 0, length);
+            Deflater stripDeflater = new Deflater(level, true);
+            try
+            {
+                stripDeflater.setInput(data, 0, length);
+                byte[] compressed = new byte[length / 2 + 64];
+                int compressedLength = 0;
+                while (true)
+                {
+                    compressedLength += stripDeflater.deflate(compressed, compressedLength,
+                            compressed.length - compressedLength, Deflater.SYNC_FLUSH);
+                    if (compressedLength < compressed.length)
+                    {
+                        break;
+                    }
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                return new CompressedStrip(compressed, compressedLength, checksum.getValue(),
+                        length);
+            }
+            finally
+            {
+                stripDeflater.end();
+            }
+        }
+
+        private int filteredLength(int stripRows)
+        {
+            return bytesPerPixel > 0 ? stripRows * (rowLength + 1) : stripRows * rowLength;
+        }
+
+        /**
+         * Applies the PNG predictor with the smallest sum of absolute differences to each row.
+         *
+         * @param target a buffer to reuse, may be null
+         */
+        private byte[] filter(byte[] rawStrip, int stripRows, byte[] stripPreviousRow,
+                byte[] target)
+        {
+            if (bytesPerPixel == 0)
+            {
+                return rawStrip;
+            }
+            int length = filteredLength(stripRows);
+            byte[] result = target != null && target.length >= length ? target : new byte[length];
+            for (int r = 0; r < stripRows; r++)
+            {
+                byte[] up = r == 0 ? stripPreviousRow : rawStrip;
+                int upOffset = r == 0 ? 0 : (r - 1) * rowLength;
+                filterRow(rawStrip, r * rowLength, up, upOffset, result,
+                        r * (rowLength + 1));
+            }
+            return result;
+        }
+
+        private void filterRow(byte[] row, int offset, byte[] up, int upOffset, byte[] out,
+                int outOffset)
+        {
+            int bpp = bytesPerPixel;
+            long sumSub = 0;
+            long sumUp = 0;
+            long sumAverage = 0;
+            long sumPaeth = 0;
+            long sumNone = 0;
+            for (int i = 0; i < rowLength; i++)
+            {
+                int x = row[offset + i] & 0xFF;
+                int a = i >= bpp ? row[offset + i - bpp] & 0xFF : 0;
+                int b = up[upOffset + i] & 0xFF;
+                int c = i >= bpp ? up[upOffset + i - bpp] & 0xFF : 0;
+                sumNone += Math.abs((byte) x);
+                sumSub += Math.abs((byte) (x - a));
+                sumUp += Math.abs((byte) (x - b));
+                sumAverage += Math.abs((byte) (x - ((a + b) >>> 1)));
+                sumPaeth += Math.abs((byte) (x - paeth(a, b, c)));
+            }
+            int type = 0;
+            long min = sumNone;
+            if (sumSub < min)
+            {
+                type = 1;
+                min = sumSub;
+            }
+            if (sumUp < min)
+            {
+                type = 2;
+                min = sumUp;
+            }
+            if (sumAverage < min)
+            {
+                type = 3;
+                min = sumAverage;
+            }
+            if (sumPaeth < min)
+            {
+                type = 4;
+            }
+            out[outOffset] = (byte) type;
+            for (int i = 0; i < rowLength; i++)
+            {
+                int x = row[offset + i] & 0xFF;
+                int a = i >= bpp ? row[offset + i - bpp] & 0xFF : 0;
+                int b = up[upOffset + i] & 0xFF;
+                int c = i >= bpp ? up[upOffset + i - bpp] & 0xFF : 0;
+                int predicted;
+                switch (type)
+                {
+                    case 1:
+                        predicted = a;
+                        break;
+                    case 2:
+                        predicted = b;
+                        break;
+                    case 3:
+                        predicted = (a + b) >>> 1;
+                        break;
+                    case 4:
+                        predicted = paeth(a, b, c);
+                        break;
+                    default:
+                        predicted = 0;
+                        break;
+                }
+                out[outOffset + 1 + i] = (byte) (x - predicted);
+            }
+        }
+
+        private static int paeth(int a, int b, int c)
+        {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc)
+            {
+                return a;
+            }
+            return pb <= pc ? b : c;
+        }
+
+        /**
+         * Combines the Adler-32 checksums of two consecutive blocks of data, like adler32_combine
+         * of zlib.
+         */
+        private static long combineAdler32(long adler1, long adler2, long length2)
+        {
+            final long base = 65521;
+            long remainder = length2 % base;
+            long sum1 = adler1 & 0xFFFF;
+            long sum2 = (remainder * sum1) % base;
+            sum1 += (adler2 & 0xFFFF) + base - 1;
+            sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + base - remainder;
+            if (sum1 >= base)
+            {
+                sum1 -= base;
+            }
+            if (sum1 >= base)
+            {
+                sum1 -= base;
+            }
+            if (sum2 >= base << 1)
+            {
+                sum2 -= base << 1;
+            }
+            if (sum2 >= base)
+            {
+                sum2 -= base;
+            }
+            return sum1 | (sum2 << 16);
+        }
+    }
+
+    /**
+     * A strip of rows compressed by {@link FlateImageWriter}.
+     */
+    private static final class CompressedStrip
+    {
+        private final byte[] data;
+        private final int length;
+        private final long adler;
+        private final int rawLength;
+
+        private CompressedStrip(byte[] data, int length, long adler, int rawLength)
+        {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
 }
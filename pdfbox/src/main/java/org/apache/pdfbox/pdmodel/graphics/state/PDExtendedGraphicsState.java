@@ -16,9 +16,16 @@
  */
 package org.apache.pdfbox.pdmodel.graphics.state;
 
+import java.io.IOException;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
 import org.apache.pdfbox.pdmodel.common.COSObjectable;
+import org.apache.pdfbox.pdmodel.font.PDFontFactory;
+import org.apache.pdfbox.pdmodel.graphics.PDLineDashPattern;
 
 /**
  * An extended graphics state dictionary.
@@ -59,5 +66,83 @@ public class PDExtendedGraphicsState implements COSObjectable
         return dict;
     }
 
-
+    /**
+     * This will implement the gs operator.
+     *
+     * @param gs The state to copy this dictionaries values into.
+     *
+     * @throws IOException If there is an error copying font information.
+     */
+    public void copyIntoGraphicsState(PDGraphicsState gs) throws IOException
+    {
+        for (COSName key : dict.keySet())
+        {
+            if (key.equals(COSName.LW))
+            {
+                gs.setLineWidth(dict.getFloat(COSName.LW, gs.getLineWidth()));
+            }
+            else if (key.equals(COSName.LC))
+            {
+                gs.setLineCap(dict.getInt(COSName.LC, gs.getLineCap()));
+            }
+            else if (key.equals(COSName.LJ))
+            {
+                gs.setLineJoin(dict.getInt(COSName.LJ, gs.getLineJoin()));
+            }
+            else if (key.equals(COSName.ML))
+            {
+                gs.setMiterLimit(dict.getFloat(COSName.ML, gs.getMiterLimit()));
+            }
+            else if (key.equals(COSName.D))
+            {
+                COSArray dash = dict.getCOSArray(COSName.D);
+                if (dash != null && dash.size() == 2 && dash.getObject(0) instanceof COSArray
+                        && dash.getObject(1) instanceof COSNumber)
+                {
+                    gs.setLineDashPattern(new PDLineDashPattern((COSArray) dash.getObject(0),
+                            ((COSNumber) dash.getObject(1)).intValue()));
+                }
+            }
+            else if (key.equals(COSName.RI))
+            {
+                COSName intent = dict.getCOSName(COSName.RI);
+                if (intent != null)
+                {
+                    gs.setRenderingIntent(RenderingIntent.fromString(intent.getName()));
+                }
+            }
+            else if (key.equals(COSName.FL))
+            {
+                gs.setFlatness(dict.getFloat(COSName.FL, (float) gs.getFlatness()));
+            }
+            else if (key.equals(COSName.CA))
+            {
+                gs.setAlphaConstant(dict.getFloat(COSName.CA, (float) gs.getAlphaConstant()));
+            }
+            else if (key.equals(COSName.CA_NS))
+            {
+                gs.setNonStrokeAlphaConstant(
+                        dict.getFloat(COSName.CA_NS, (float) gs.getNonStrokeAlphaConstant()));
+            }
+            else if (key.equals(COSName.AIS))
+            {
+                gs.setAlphaSource(dict.getBoolean(COSName.AIS, gs.isAlphaSource()));
+            }
+            else if (key.equals(COSName.FONT))
+            {
+                COSArray font = dict.getCOSArray(COSName.FONT);
+                if (font != null && font.size() == 2)
+                {
+                    COSBase fontDictionary = font.getObject(0);
+                    COSBase fontSize = font.getObject(1);
+                    if (fontDictionary instanceof COSDictionary && fontSize instanceof COSNumber)
+                    {
+                        PDTextState textState = gs.getTextState();
+                        textState.setFont(PDFontFactory.createFont((COSDictionary) fontDictionary));
+                        textState.setFontSize(((COSNumber) fontSize).floatValue());
+                    }
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.state;
+
+import org.apache.pdfbox.pdmodel.graphics.PDLineDashPattern;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * The current state of the graphics parameters when executing a content stream.
+ *
+ * <p>Instances are reused by the {@link org.apache.pdfbox.contentstream.PDFStreamEngine}: the
+ * state saved by the "q" operator is copied into an existing instance with
+ * {@link #copyFrom(PDGraphicsState)} rather than cloned. Use {@link #clone()} to keep a state
+ * beyond the processing of the current operator.</p>
+ */
+public class PDGraphicsState implements Cloneable
+{
+    private static final PDLineDashPattern SOLID_LINE = new PDLineDashPattern();
+    private static final PDTextState INITIAL_TEXT_STATE = new PDTextState();
+
+    private Matrix currentTransformationMatrix = new Matrix();
+    private PDTextState textState = new PDTextState();
+    private float lineWidth = 1;
+    private int lineCap = 0;
+    private int lineJoin = 0;
+    private float miterLimit = 10;
+    private PDLineDashPattern lineDashPattern = SOLID_LINE;
+    private RenderingIntent renderingIntent;
+    private double flatness = 1.0;
+    private double alphaConstant = 1.0;
+    private double nonStrokingAlphaConstant = 1.0;
+    private boolean alphaSource = false;
+
+    /**
+     * Creates a graphics state with the initial values of all parameters.
+     */
+    public PDGraphicsState()
+    {
+    }
+
+    /**
+     * Resets all parameters to their initial values, the current transformation matrix becomes
+     * the identity matrix.
+     */
+    public void reset()
+    {
+        currentTransformationMatrix.setValues(1, 0, 0, 1, 0, 0);
+        textState.copyFrom(INITIAL_TEXT_STATE);
+        lineWidth = 1;
+        lineCap = 0;
+        lineJoin = 0;
+        miterLimit = 10;
+        lineDashPattern = SOLID_LINE;
+        renderingIntent = null;
+        flatness = 1.0;
+        alphaConstant = 1.0;
+        nonStrokingAlphaConstant = 1.0;
+        alphaSource = false;
+    }
+
+    /**
+     * Copies all parameters of the given graphics state into this one, reusing the matrix and
+     * text state of this instance.
+     *
+     * @param other the graphics state to copy
+     */
+    public void copyFrom(PDGraphicsState other)
+    {
+        currentTransformationMatrix.copyFrom(other.currentTransformationMatrix);
+        textState.copyFrom(other.textState);
+        lineWidth = other.lineWidth;
+        lineCap = other.lineCap;
+        lineJoin = other.lineJoin;
+        miterLimit = other.miterLimit;
+        lineDashPattern = other.lineDashPattern;
+        renderingIntent = other.renderingIntent;
+        flatness = other.flatness;
+        alphaConstant = other.alphaConstant;
+        nonStrokingAlphaConstant = other.nonStrokingAlphaConstant;
+        alphaSource = other.alphaSource;
+    }
+
+    /**
+     * Get the value of the CTM. The returned matrix is modified in place by the "cm" operator.
+     *
+     * @return The current transformation matrix.
+     */
+    public Matrix getCurrentTransformationMatrix()
+    {
+        return currentTransformationMatrix;
+    }
+
+    /**
+     * Sets the current transformation matrix.
+     *
+     * @param value The current transformation matrix.
+     */
+    public void setCurrentTransformationMatrix(Matrix value)
+    {
+        currentTransformationMatrix.copyFrom(value);
+    }
+
+    /**
+     * Get the value of the text state.
+     *
+     * @return The text state.
+     */
+    public PDTextState getTextState()
+    {
+        return textState;
+    }
+
+    /**
+     * Get the value of the line width.
+     *
+     * @return The current line width.
+     */
+    public float getLineWidth()
+    {
+        return lineWidth;
+    }
+
+    /**
+     * set the value of the line width.
+     *
+     * @param value The current line width.
+     */
+    public void setLineWidth(float value)
+    {
+        lineWidth = value;
+    }
+
+    /**
+     * Get the value of the line cap.
+     *
+     * @return The current line cap.
+     */
+    public int getLineCap()
+    {
+        return lineCap;
+    }
+
+    /**
+     * set the value of the line cap.
+     *
+     * @param value The current line cap.
+     */
+    public void setLineCap(int value)
+    {
+        lineCap = value;
+    }
+
+    /**
+     * Get the value of the line join.
+     *
+     * @return The current line join value.
+     */
+    public int getLineJoin()
+    {
+        return lineJoin;
+    }
+
+    /**
+     * Get the value of the line join.
+     *
+     * @param value The current line join
+     */
+    public void setLineJoin(int value)
+    {
+        lineJoin = value;
+    }
+
+    /**
+     * Get the value of the miter limit.
+     *
+     * @return The current miter limit.
+     */
+    public float getMiterLimit()
+    {
+        return miterLimit;
+    }
+
+    /**
+     * set the value of the miter limit.
+     *
+     * @param value The current miter limit.
+     */
+    public void setMiterLimit(float value)
+    {
+        miterLimit = value;
+    }
+
+    /**
+     * This will get the current line dash pattern.
+     *
+     * @return The line dash pattern.
+     */
+    public PDLineDashPattern getLineDashPattern()
+    {
+        return lineDashPattern;
+    }
+
+    /**
+     * This will set the current line dash pattern.
+     *
+     * @param value The new line dash pattern.
+     */
+    public void setLineDashPattern(PDLineDashPattern value)
+    {
+        lineDashPattern = value;
+    }
+
+    /**
+     * This will get the rendering intent.
+     *
+     * @return The rendering intent or null if none was set.
+     */
+    public RenderingIntent getRenderingIntent()
+    {
+        return renderingIntent;
+    }
+
+    /**
+     * This will set the rendering intent.
+     *
+     * @param value The new rendering intent.
+     */
+    public void setRenderingIntent(RenderingIntent value)
+    {
+        renderingIntent = value;
+    }
+
+    /**
+     * Get the value of the flatness.
+     *
+     * @return The current flatness.
+     */
+    public double getFlatness()
+    {
+        return flatness;
+    }
+
+    /**
+     * Get the value of the flatness.
+     *
+     * @param value The new flatness value.
+     */
+    public void setFlatness(double value)
+    {
+        flatness = value;
+    }
+
+    /**
+     * Get the value of the stroke alpha constant property.
+     *
+     * @return The current stroke alpha constant.
+     */
+    public double getAlphaConstant()
+    {
+        return alphaConstant;
+    }
+
+    /**
+     * set the value of the stroke alpha constant property.
+     *
+     * @param value The current stroke alpha constant.
+     */
+    public void setAlphaConstant(double value)
+    {
+        alphaConstant = value;
+    }
+
+    /**
+     * Get the value of the non-stroke alpha constant property.
+     *
+     * @return The current non-stroke alpha constant.
+     */
+    public double getNonStrokeAlphaConstant()
+    {
+        return nonStrokingAlphaConstant;
+    }
+
+    /**
+     * set the value of the non-stroke alpha constant property.
+     *
+     * @param value The current non-stroke alpha constant.
+     */
+    public void setNonStrokeAlphaConstant(double value)
+    {
+        nonStrokingAlphaConstant = value;
+    }
+
+    /**
+     * get the value of the stroke alpha source property.
+     *
+     * @return The current stroke alpha source.
+     */
+    public boolean isAlphaSource()
+    {
+        return alphaSource;
+    }
+
+    /**
+     * set the value of the alpha source property.
+     *
+     * @param value The current alpha source.
+     */
+    public void setAlphaSource(boolean value)
+    {
+        alphaSource = value;
+    }
+
+    @Override
+    public PDGraphicsState clone()
+    {
+        try
+        {
+            PDGraphicsState clone = (PDGraphicsState) super.clone();
+            clone.currentTransformationMatrix = currentTransformationMatrix.clone();
+            clone.textState = textState.clone();
+            return clone;
+        }
+        catch (CloneNotSupportedException e)
+        {
+            // should not happen
+            throw new RuntimeException(e);
+        }
+    }
+}
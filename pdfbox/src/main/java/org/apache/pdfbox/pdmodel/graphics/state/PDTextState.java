@@ -218,6 +218,24 @@ public class PDTextState implements Cloneable
         knockout = value;
     }
 
+    /**
+     * Copies all parameters of the given text state into this one.
+     *
+     * @param other the text state to copy
+     */
+    void copyFrom(PDTextState other)
+    {
+        characterSpacing = other.characterSpacing;
+        wordSpacing = other.wordSpacing;
+        horizontalScaling = other.horizontalScaling;
+        leading = other.leading;
+        font = other.font;
+        fontSize = other.fontSize;
+        renderingMode = other.renderingMode;
+        rise = other.rise;
+        knockout = other.knockout;
+    }
+
     @Override
     public PDTextState clone()
     {
@@ -0,0 +1,434 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.interactive.form;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+
+/**
+ * A live index of the fields of an AcroForm, keyed by fully qualified name and by the path of
+ * partial names leading to a field.
+ *
+ * <p>The index mirrors the field tree: every indexed field is a node which memoizes its fully
+ * qualified name and knows its children by partial name. Changes made through
+ * {@link PDAcroForm#setFields(List)}, {@link PDNonTerminalField#setChildren(List)} and
+ * {@link PDField#setPartialName(String)} are applied incrementally, touching only the affected
+ * subtree. Changes made directly on the underlying COS objects are not tracked.</p>
+ *
+ * <p>If several fields share the same fully qualified name, the first one in document order is
+ * returned, which matches the order of {@link PDFieldTree}, also after incremental changes.</p>
+ */
+final class FieldIndex
+{
+    private static final Log LOG = LogFactory.getLog(FieldIndex.class);
+
+    private final PDAcroForm acroForm;
+
+    // the root fields are the children of this node, it doesn't represent a field itself
+    private final Node root = new Node(null, null);
+
+    // must be keyed by COSDictionary and not PDField, because PDField is newly created each time
+    private final Map<COSDictionary, Node> nodes = new IdentityHashMap<>();
+
+    private final Map<String, Node> byQualifiedName = new HashMap<>();
+
+    // fully qualified names whose chain of nodes may no longer be in document order
+    private final Set<String> unorderedNames = new HashSet<>();
+
+    /**
+     * A field in the index.
+     */
+    private static final class Node
+    {
+        private final PDField field;
+        private final Node parent;
+        private final List<Node> children = new ArrayList<>(0);
+        private Map<String, Node> childrenByName;
+        private String partialName;
+        private String qualifiedName;
+        // next node with the same fully qualified name, in indexing order
+        private Node nextSameName;
+
+        private Node(PDField field, Node parent)
+        {
+            this.field = field;
+            this.parent = parent;
+        }
+
+        private Node child(String name)
+        {
+            return childrenByName != null ? childrenByName.get(name) : null;
+        }
+    }
+
+    /**
+     * Builds the index for all fields of the given form.
+     *
+     * @param acroForm the form to index
+     */
+    FieldIndex(PDAcroForm acroForm)
+    {
+        this.acroForm = acroForm;
+        rebuild();
+    }
+
+    /**
+     * Discards all entries and indexes the complete field tree again.
+     */
+    void rebuild()
+    {
+        nodes.clear();
+        byQualifiedName.clear();
+        root.children.clear();
+        root.childrenByName = null;
+        COSArray fields = acroForm.getCOSObject().getCOSArray(COSName.FIELDS);
+        if (fields != null)
+        {
+            for (int i = 0; i < fields.size(); i++)
+            {
+                COSBase element = fields.getObject(i);
+                if (element instanceof COSDictionary)
+                {
+                    addSubtree(root, (COSDictionary) element);
+                }
+            }
+        }
+        // all nodes were registered in document order
+        unorderedNames.clear();
+    }
+
+    /**
+     * Returns the field with the given fully qualified name.
+     *
+     * @param fullyQualifiedName the fully qualified name
+     * @return the field or null if there is none
+     */
+    PDField getField(String fullyQualifiedName)
+    {
+        Node node = byQualifiedName.get(fullyQualifiedName);
+        return node != null ? node.field : null;
+    }
+
+    /**
+     * Returns the field which is reached by following the given partial names from the root
+     * fields.
+     *
+     * @param partialNames the partial names of the field and all its ancestors, root first
+     * @return the field or null if there is none
+     */
+    PDField getField(String[] partialNames)
+    {
+        Node node = root;
+        for (int i = 0; node != null && i < partialNames.length; i++)
+        {
+            node = node.child(partialNames[i]);
+        }
+        return node != null && node != root ? node.field : null;
+    }
+
+    /**
+     * Returns the indexed field for the given dictionary.
+     *
+     * @param dictionary the field dictionary
+     * @return the field or null if the dictionary is not indexed
+     */
+    PDField getField(COSDictionary dictionary)
+    {
+        Node node = nodes.get(dictionary);
+        return node != null ? node.field : null;
+    }
+
+    /**
+     * Tells whether the given field instance is the one held by this index.
+     *
+     * @param field the field
+     * @return true if the field is the indexed instance for its dictionary
+     */
+    boolean contains(PDField field)
+    {
+        Node node = nodes.get(field.getCOSObject());
+        return node != null && node.field == field;
+    }
+
+    /**
+     * Returns the memoized fully qualified name of an indexed field.
+     *
+     * @param field a field for which {@link #contains(PDField)} returns true
+     * @return the fully qualified name, may be null if neither the field nor its ancestors have a
+     * partial name
+     */
+    String getFullyQualifiedName(PDField field)
+    {
+        return nodes.get(field.getCOSObject()).qualifiedName;
+    }
+
+    /**
+     * Updates the index after the kids of the given field dictionary have been replaced. The
+     * field itself is indexed again, as its type may have changed from terminal to non-terminal
+     * or vice versa.
+     *
+     * @param dictionary the field dictionary whose kids changed
+     */
+    void childrenChanged(COSDictionary dictionary)
+    {
+        Node node = nodes.get(dictionary);
+        if (node == null)
+        {
+            // not (yet) part of the field tree, will be indexed when it is attached
+            return;
+        }
+        Node parent = node.parent;
+        int position = parent.children.indexOf(node);
+        removeSubtree(node);
+        Node replacement = addSubtree(parent, dictionary);
+        if (replacement != null)
+        {
+            // keep the document order of the siblings
+            parent.children.remove(parent.children.size() - 1);
+            parent.children.set(position, replacement);
+        }
+        else
+        {
+            parent.children.remove(position);
+        }
+        relinkChildName(parent, node.partialName);
+        restoreDocumentOrder();
+    }
+
+    /**
+     * Updates the index after the partial name of the given field dictionary has changed. The
+     * memoized names of all its descendants are recomputed.
+     *
+     * @param dictionary the field dictionary which was renamed
+     */
+    void partialNameChanged(COSDictionary dictionary)
+    {
+        Node node = nodes.get(dictionary);
+        if (node == null)
+        {
+            return;
+        }
+        String oldName = node.partialName;
+        unregisterNames(node);
+        node.partialName = dictionary.getString(COSName.T);
+        registerNames(node);
+        relinkChildName(node.parent, oldName);
+        relinkChildName(node.parent, node.partialName);
+        restoreDocumentOrder();
+    }
+
+    private Node addSubtree(Node parent, COSDictionary dictionary)
+    {
+        if (nodes.containsKey(dictionary))
+        {
+            LOG.error("Field dictionary already exists elsewhere in the field tree, " +
+                    "ignored to avoid recursion");
+            return null;
+        }
+        PDNonTerminalField parentField = (PDNonTerminalField) parent.field;
+        PDField field = PDField.fromDictionary(acroForm, dictionary, parentField);
+        if (field == null)
+        {
+            return null;
+        }
+        Node node = new Node(field, parent);
+        node.partialName = dictionary.getString(COSName.T);
+        node.qualifiedName = qualify(parent, node.partialName);
+        nodes.put(dictionary, node);
+        registerQualifiedName(node);
+        parent.children.add(node);
+        if (node.partialName != null)
+        {
+            if (parent.childrenByName == null)
+            {
+                parent.childrenByName = new HashMap<>();
+            }
+            parent.childrenByName.putIfAbsent(node.partialName, node);
+        }
+        if (field instanceof PDNonTerminalField)
+        {
+            COSArray kids = dictionary.getCOSArray(COSName.KIDS);
+            for (int i = 0; kids != null && i < kids.size(); i++)
+            {
+                COSBase kid = kids.getObject(i);
+                if (kid instanceof COSDictionary)
+                {
+                    addSubtree(node, (COSDictionary) kid);
+                }
+            }
+        }
+        return node;
+    }
+
+    private void removeSubtree(Node node)
+    {
+        for (Node child : node.children)
+        {
+            removeSubtree(child);
+        }
+        unregisterQualifiedName(node);
+        nodes.remove(node.field.getCOSObject());
+    }
+
+    private void registerNames(Node node)
+    {
+        node.qualifiedName = qualify(node.parent, node.partialName);
+        registerQualifiedName(node);
+        for (Node child : node.children)
+        {
+            registerNames(child);
+        }
+    }
+
+    private void unregisterNames(Node node)
+    {
+        unregisterQualifiedName(node);
+        for (Node child : node.children)
+        {
+            unregisterNames(child);
+        }
+    }
+
+    private void registerQualifiedName(Node node)
+    {
+        node.nextSameName = null;
+        if (node.qualifiedName == null)
+        {
+            return;
+        }
+        Node head = byQualifiedName.putIfAbsent(node.qualifiedName, node);
+        if (head != null)
+        {
+            // appended, which is only the document order while the whole tree is indexed
+            unorderedNames.add(node.qualifiedName);
+            while (head.nextSameName != null)
+            {
+                head = head.nextSameName;
+            }
+            head.nextSameName = node;
+        }
+    }
+
+    private void unregisterQualifiedName(Node node)
+    {
+        if (node.qualifiedName == null)
+        {
+            return;
+        }
+        Node head = byQualifiedName.get(node.qualifiedName);
+        if (head == node)
+        {
+            if (node.nextSameName != null)
+            {
+                byQualifiedName.put(node.qualifiedName, node.nextSameName);
+            }
+            else
+            {
+                byQualifiedName.remove(node.qualifiedName);
+            }
+        }
+        else
+        {
+            while (head != null && head.nextSameName != node)
+            {
+                head = head.nextSameName;
+            }
+            if (head != null)
+            {
+                head.nextSameName = node.nextSameName;
+            }
+        }
+        node.nextSameName = null;
+    }
+
+    /**
+     * Relinks the nodes of all names which got an additional node in tree order, so that the
+     * first node of a fully qualified name is the same as in a {@link PDFieldTree} walk.
+     */
+    private void restoreDocumentOrder()
+    {
+        if (!unorderedNames.isEmpty())
+        {
+            relinkSameNames(root, new HashMap<>());
+            unorderedNames.clear();
+        }
+    }
+
+    private void relinkSameNames(Node parent, Map<String, Node> tails)
+    {
+        for (Node node : parent.children)
+        {
+            String name = node.qualifiedName;
+            if (name != null && unorderedNames.contains(name))
+            {
+                Node tail = tails.put(name, node);
+                if (tail == null)
+                {
+                    byQualifiedName.put(name, node);
+                }
+                else
+                {
+                    tail.nextSameName = node;
+                }
+                node.nextSameName = null;
+            }
+            relinkSameNames(node, tails);
+        }
+    }
+
+    /**
+     * Points the partial name lookup of a parent to the first child with that name.
+     */
+    private static void relinkChildName(Node parent, String name)
+    {
+        if (name == null || parent.childrenByName == null)
+        {
+            return;
+        }
+        parent.childrenByName.remove(name);
+        for (Node child : parent.children)
+        {
+            if (name.equals(child.partialName))
+            {
+                parent.childrenByName.put(name, child);
+                break;
+            }
+        }
+    }
+
+    private static String qualify(Node parent, String partialName)
+    {
+        String parentName = parent.qualifiedName;
+        if (parentName == null)
+        {
+            return partialName;
+        }
+        return partialName != null ? parentName + "." + partialName : parentName;
+    }
+}
@@ -52,7 +52,7 @@ public final class PDAcroForm implements COSObjectable
     private final PDDocument document;
     private final COSDictionary dictionary;
 
-    private Map<String, PDField> fieldCache;
+    private FieldIndex fieldIndex;
 
     private ScriptingHandler scriptingHandler;
 
@@ -143,6 +143,10 @@ public final class PDAcroForm implements COSObjectable
     public void setFields(List<PDField> fields)
     {
         dictionary.setItem(COSName.FIELDS, new COSArray(fields));
+        if (fieldIndex != null)
+        {
+            fieldIndex.rebuild();
+        }
     }
 
     /**
@@ -166,28 +170,20 @@ public final class PDAcroForm implements COSObjectable
     }
 
     /**
-     * This will tell this form to cache the fields into a Map structure
-     * for fast access via the getField method.  The default is false.  You would
-     * want this to be false if you were changing the COSDictionary behind the scenes,
-     * otherwise setting this to true is acceptable.
+     * This will tell this form to index the fields for fast access via the getField methods. The
+     * default is false.
+     * <p>
+     * The index is kept up to date when fields are changed through {@link #setFields(List)},
+     * {@link PDNonTerminalField#setChildren(List)} and {@link PDField#setPartialName(String)}.
+     * You would want this to be false if you were changing the COSDictionary behind the scenes,
+     * otherwise setting this to true is acceptable. Calling this method with true again rebuilds
+     * the index from the COS objects.
      *
      * @param cache A boolean telling if we should cache the fields.
      */
     public void setCacheFields(boolean cache)
     {
-        if (cache)
-        {
-            fieldCache = new HashMap<>();
-
-            for (PDField field : getFieldTree())
-            {
-                fieldCache.put(field.getFullyQualifiedName(), field);
-            }
-        }
-        else
-        {
-            fieldCache = null;
-        }
+        fieldIndex = cache ? new FieldIndex(this) : null;
     }
 
     /**
@@ -197,7 +193,17 @@ public final class PDAcroForm implements COSObjectable
      */
     public boolean isCachingFields()
     {
-        return fieldCache != null;
+        return fieldIndex != null;
+    }
+
+    /**
+     * Returns the field index, or null if fields are not being cached.
+     *
+     * @return the field index or null
+     */
+    FieldIndex getFieldIndex()
+    {
+        return fieldIndex;
     }
 
     /**
@@ -209,9 +215,9 @@ public final class PDAcroForm implements COSObjectable
     public PDField getField(String fullyQualifiedName)
     {
         // get the field from the cache if there is one.
-        if (fieldCache != null)
+        if (fieldIndex != null)
         {
-            return fieldCache.get(fullyQualifiedName);
+            return fieldIndex.getField(fullyQualifiedName);
         }
 
         // get the field from the field tree
@@ -226,6 +232,48 @@ public final class PDAcroForm implements COSObjectable
         return null;
     }
 
+    /**
+     * This will get a field by the partial names of the field and all its ancestors, possibly
+     * using the cache if setCache is true. Unlike {@link #getField(String)}, this also finds
+     * fields whose partial names contain a period character.
+     *
+     * @param partialNames The partial names leading to the field, starting with the root field.
+     * @return The field at the end of the path or null if one was not found.
+     */
+    public PDField getField(String... partialNames)
+    {
+        if (partialNames.length == 0)
+        {
+            return null;
+        }
+        if (fieldIndex != null)
+        {
+            return fieldIndex.getField(partialNames);
+        }
+
+        // walk down the field tree, following the first field with a matching name on each level
+        COSArray cosFields = dictionary.getCOSArray(COSName.FIELDS);
+        if (cosFields == null)
+        {
+            return null;
+        }
+        for (int i = 0; i < cosFields.size(); i++)
+        {
+            COSBase element = cosFields.getObject(i);
+            if (element instanceof COSDictionary
+                    && partialNames[0].equals(((COSDictionary) element).getString(COSName.T)))
+            {
+                PDField field = PDField.fromDictionary(this, (COSDictionary) element, null);
+                if (field != null && partialNames.length > 1)
+                {
+                    field = field.findKid(partialNames, 1);
+                }
+                return field;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get the default appearance.
      * 
@@ -435,13 +483,21 @@ public final class PDAcroForm implements COSObjectable
             return Collections.emptyList();
         }
 
-        Iterable<PDField> fields = isCachingFields() ? fieldCache.values() : getFieldTree();
-
         List<PDField> actuals = new ArrayList<>();
         for (int i = 0; i < co.size(); i++)
         {
             COSBase item = co.getObject(i);
-            for (PDField field : fields)
+            if (fieldIndex != null)
+            {
+                PDField field = item instanceof COSDictionary ?
+                        fieldIndex.getField((COSDictionary) item) : null;
+                if (field != null)
+                {
+                    actuals.add(field);
+                }
+                continue;
+            }
+            for (PDField field : getFieldTree())
             {
                 if (field.getCOSObject() == item)
                 {
@@ -285,6 +285,11 @@ public abstract class PDField implements COSObjectable
                     "A field partial name shall not contain a period character: " + name);
         }
         dictionary.setString(COSName.T, name);
+        FieldIndex index = acroForm != null ? acroForm.getFieldIndex() : null;
+        if (index != null)
+        {
+            index.partialNameChanged(dictionary);
+        }
     }
 
     /**
@@ -294,6 +299,11 @@ public abstract class PDField implements COSObjectable
      */
     public String getFullyQualifiedName()
     {
+        FieldIndex index = acroForm != null ? acroForm.getFieldIndex() : null;
+        if (index != null && index.contains(this))
+        {
+            return index.getFullyQualifiedName(this);
+        }
         String finalName = getPartialName();
         String parentName = parent != null ? parent.getFullyQualifiedName() : null;
         if (parentName != null)
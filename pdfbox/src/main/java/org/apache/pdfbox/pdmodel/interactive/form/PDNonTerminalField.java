@@ -115,6 +115,12 @@ public class PDNonTerminalField extends PDField
     {
         COSArray kidsArray = new COSArray(children);
         getCOSObject().setItem(COSName.KIDS, kidsArray);
+        PDAcroForm acroForm = getAcroForm();
+        FieldIndex index = acroForm != null ? acroForm.getFieldIndex() : null;
+        if (index != null)
+        {
+            index.childrenChanged(getCOSObject());
+        }
     }
 
     /**
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.text;
+
+/**
+ * The extracted text of a page, as produced by {@link TextExtractor}.
+ */
+public final class PageText
+{
+    private final int pageIndex;
+    private final String text;
+    // the line i is text[lineStarts[i], lineEnds[i])
+    private final int[] lineStarts;
+    private final int[] lineEnds;
+
+    PageText(int pageIndex, String text, int[] lineStarts, int[] lineEnds)
+    {
+        this.pageIndex = pageIndex;
+        this.text = text;
+        this.lineStarts = lineStarts;
+        this.lineEnds = lineEnds;
+    }
+
+    /**
+     * Returns the index of the page within the document.
+     *
+     * @return the zero based page index
+     */
+    public int getPageIndex()
+    {
+        return pageIndex;
+    }
+
+    /**
+     * Returns the text of the page, the lines are separated by the line separator of the
+     * extractor.
+     *
+     * @return the text of the page
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines
+     */
+    public int getLineCount()
+    {
+        return lineStarts.length;
+    }
+
+    /**
+     * Returns the text of a line.
+     *
+     * @param index the zero based line number
+     * @return the text of the line, without line separator
+     */
+    public String getLine(int index)
+    {
+        return text.substring(lineStarts[index], lineEnds[index]);
+    }
+
+    @Override
+    public String toString()
+    {
+        return text;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.text;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Extracts the text of the pages of a document.
+ *
+ * <p>The extraction runs in two stages. The content stream of a page is processed on the calling
+ * thread, which decodes the glyphs into {@link TextPositionColumns}. This stage reads COS objects
+ * and fonts, which aren't thread safe, so the pages of a document are always processed one after
+ * the other. Sorting the glyphs and grouping them into lines only reads the primitive columns, so
+ * if an executor is given, this stage runs on the executor while the next pages are processed.
+ * The pages are nevertheless passed to the {@link PageTextHandler} in document order.</p>
+ *
+ * <p>An instance can be used by several threads at the same time, e.g. to extract the text of
+ * several documents sharing the same executor, as long as it isn't reconfigured meanwhile.</p>
+ */
+public final class TextExtractor
+{
+    /**
+     * Receives the text of the pages.
+     */
+    @FunctionalInterface
+    public interface PageTextHandler
+    {
+        /**
+         * Called for every page, in document order.
+         *
+         * @param pageText the text of the page
+         * @throws IOException if the text can't be handled, which stops the extraction
+         */
+        void handle(PageText pageText) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private boolean sortByPosition = true;
+    private String lineSeparator = System.lineSeparator();
+    private int maxPagesInFlight = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * Creates an extractor which runs all stages on the calling thread.
+     */
+    public TextExtractor()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates an extractor which lays out the text on the given executor.
+     *
+     * @param executor the executor for the layout of the pages, or null to run all stages on the
+     * calling thread. It is not shut down by the extractor.
+     */
+    public TextExtractor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Tells whether the text is sorted by position.
+     *
+     * @return true if the text is sorted by position, which is the default
+     */
+    public boolean getSortByPosition()
+    {
+        return sortByPosition;
+    }
+
+    /**
+     * Sets whether the text is sorted by position. If not, the text is extracted in the order of
+     * the content stream and a new line is started when a glyph doesn't overlap vertically with
+     * the previous one.
+     *
+     * @param sortByPosition true to sort the text by position
+     */
+    public void setSortByPosition(boolean sortByPosition)
+    {
+        this.sortByPosition = sortByPosition;
+    }
+
+    /**
+     * Returns the line separator.
+     *
+     * @return the line separator, the system line separator by default
+     */
+    public String getLineSeparator()
+    {
+        return lineSeparator;
+    }
+
+    /**
+     * Sets the line separator.
+     *
+     * @param lineSeparator the line separator
+     */
+    public void setLineSeparator(String lineSeparator)
+    {
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     * Returns the maximum number of pages whose layout is pending at the same time.
+     *
+     * @return the maximum number of pages in flight
+     */
+    public int getMaxPagesInFlight()
+    {
+        return maxPagesInFlight;
+    }
+
+    /**
+     * Sets the maximum number of pages whose layout is pending at the same time. This bounds the
+     * memory used for the glyphs of pages which weren't passed to the handler yet.
+     *
+     * @param maxPagesInFlight the maximum number of pages in flight, at least 1
+     */
+    public void setMaxPagesInFlight(int maxPagesInFlight)
+    {
+        if (maxPagesInFlight < 1)
+        {
+            throw new IllegalArgumentException("maxPagesInFlight must be at least 1");
+        }
+        this.maxPagesInFlight = maxPagesInFlight;
+    }
+
+    /**
+     * Collects the glyphs of a page.
+     *
+     * @param page the page
+     * @return the glyphs of the page, in the order of the content stream
+     * @throws IOException if the page could not be processed
+     */
+    public TextPositionColumns collectTextPositions(PDPage page) throws IOException
+    {
+        return new TextPositionCollector().collect(page);
+    }
+
+    /**
+     * Extracts the text of a single page on the calling thread.
+     *
+     * @param page the page
+     * @param pageIndex the index of the page, which is passed to the result
+     * @return the text of the page
+     * @throws IOException if the page could not be processed
+     */
+    public PageText extract(PDPage page, int pageIndex) throws IOException
+    {
+        return TextLayout.layout(collectTextPositions(page), pageIndex, sortByPosition,
+                lineSeparator);
+    }
+
+    /**
+     * Extracts the text of all pages of a document.
+     *
+     * @param document the document
+     * @param handler the handler which receives the text of every page, in document order
+     * @throws IOException if a page could not be processed or the handler failed
+     */
+    public void extract(PDDocument document, PageTextHandler handler) throws IOException
+    {
+        TextPositionCollector collector = new TextPositionCollector();
+        boolean sort = sortByPosition;
+        String separator = lineSeparator;
+        int maxPending = maxPagesInFlight;
+        Deque<Future<PageText>> pending = new ArrayDeque<>();
+        try
+        {
+            int pageIndex = 0;
+            for (PDPage page : document.getPages())
+            {
+                TextPositionColumns columns = collector.collect(page);
+                int index = pageIndex++;
+                if (executor == null)
+                {
+                    handler.handle(TextLayout.layout(columns, index, sort, separator));
+                    continue;
+                }
+                pending.add(executor.submit(() -> TextLayout.layout(columns, index, sort,
+                        separator)));
+                // pass the finished pages on in order, wait if too many pages are pending
+                while (!pending.isEmpty() &&
+                        (pending.size() >= maxPending || pending.peek().isDone()))
+                {
+                    handler.handle(await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty())
+            {
+                handler.handle(await(pending.poll()));
+            }
+        }
+        finally
+        {
+            for (Future<PageText> future : pending)
+            {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Extracts the text of all pages of a document, the pages are separated by the line
+     * separator.
+     *
+     * @param document the document
+     * @return the text of the document
+     * @throws IOException if a page could not be processed
+     */
+    public String getText(PDDocument document) throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        String separator = lineSeparator;
+        extract(document, pageText ->
+        {
+            if (pageText.getPageIndex() > 0)
+            {
+                text.append(separator);
+            }
+            text.append(pageText.getText());
+        });
+        return text.toString();
+    }
+
+    private static PageText await(Future<PageText> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception =
+                    new InterruptedIOException("Interrupted while waiting for the text layout");
+            exception.initCause(e);
+            throw exception;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.text;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Turns the glyphs of a page into lines of text. Only the primitive columns of
+ * {@link TextPositionColumns} are read, so that the layout of different pages can run on
+ * different threads.
+ */
+final class TextLayout
+{
+    private static final float SPACING_TOLERANCE = .5f;
+    private static final float AVERAGE_CHAR_TOLERANCE = .3f;
+
+    private TextLayout()
+    {
+    }
+
+    /**
+     * Sorts the glyphs, groups them into lines and inserts spaces between words. Glyphs which
+     * are drawn twice at the same position, e.g. to simulate bold text, are only added once and
+     * diacritics are merged with the character they overlap.
+     *
+     * @param columns the glyphs of the page
+     * @param pageIndex the index of the page
+     * @param sortByPosition true to sort the glyphs by position, false to keep the order of the
+     * content stream
+     * @param lineSeparator the line separator
+     * @return the text of the page
+     */
+    static PageText layout(TextPositionColumns columns, int pageIndex, boolean sortByPosition,
+            String lineSeparator)
+    {
+        int size = columns.size();
+        int[] order = sortByPosition ? columns.sortedIndices() : null;
+        StringBuilder text = new StringBuilder(columns.getTextLength() + size / 4 + 16);
+        int[] lineStarts = new int[16];
+        int[] lineEnds = new int[16];
+        int lineCount = 0;
+
+        int lineStart = 0;
+        boolean lineHasDiacritic = false;
+        int previous = -1;
+        float endOfLastText = 0;
+        float averageCharWidth = -1;
+        for (int k = 0; k < size; k++)
+        {
+            int i = order != null ? order[k] : k;
+            if (previous >= 0 && (columns.getDir(i) != columns.getDir(previous) ||
+                    !columns.isSameLine(previous, i)))
+            {
+                // end of line
+                if (lineHasDiacritic)
+                {
+                    normalize(text, lineStart);
+                }
+                if (lineCount == lineStarts.length)
+                {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                    lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+                }
+                lineStarts[lineCount] = lineStart;
+                lineEnds[lineCount] = text.length();
+                lineCount++;
+                text.append(lineSeparator);
+                lineStart = text.length();
+                lineHasDiacritic = false;
+                previous = -1;
+                averageCharWidth = -1;
+            }
+
+            int unicodeLength = columns.getUnicodeLength(i);
+            if (unicodeLength == 0)
+            {
+                continue;
+            }
+            float x = columns.getXDirAdj(i);
+            float width = columns.getWidthDirAdj(i);
+            if (previous >= 0)
+            {
+                if (isDuplicate(columns, previous, i))
+                {
+                    continue;
+                }
+                if (unicodeLength == 1 && TextPosition.isDiacritic(columns.getUnicode(i)) &&
+                        columns.contains(previous, i))
+                {
+                    text.append(TextPosition.combineDiacritic(columns.getUnicode(i)));
+                    lineHasDiacritic = true;
+                    continue;
+                }
+
+                // the expected start of the next word depends on the width of a space and on
+                // the average width of the characters so far
+                float widthOfSpace = columns.getWidthOfSpace(i);
+                float deltaSpace = widthOfSpace == 0 || Float.isNaN(widthOfSpace)
+                        ? Float.MAX_VALUE : widthOfSpace * SPACING_TOLERANCE;
+                float deltaCharWidth = averageCharWidth < 0 ? Float.MAX_VALUE
+                        : averageCharWidth * AVERAGE_CHAR_TOLERANCE;
+                float delta = Math.min(deltaSpace, deltaCharWidth);
+                if (delta != Float.MAX_VALUE && x > endOfLastText + delta &&
+                        !Character.isWhitespace(text.charAt(text.length() - 1)))
+                {
+                    text.append(' ');
+                }
+            }
+
+            columns.appendUnicode(i, text);
+            float charWidth = width / unicodeLength;
+            averageCharWidth = averageCharWidth < 0 ? charWidth
+                    : (averageCharWidth + charWidth) / 2f;
+            endOfLastText = x + width;
+            previous = i;
+        }
+        if (previous >= 0)
+        {
+            if (lineHasDiacritic)
+            {
+                normalize(text, lineStart);
+            }
+            if (lineCount == lineStarts.length)
+            {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount + 1);
+                lineEnds = Arrays.copyOf(lineEnds, lineCount + 1);
+            }
+            lineStarts[lineCount] = lineStart;
+            lineEnds[lineCount] = text.length();
+            lineCount++;
+        }
+        else if (lineCount > 0)
+        {
+            // drop the separator of an empty last line
+            text.setLength(lineEnds[lineCount - 1]);
+        }
+        return new PageText(pageIndex, text.toString(), Arrays.copyOf(lineStarts, lineCount),
+                Arrays.copyOf(lineEnds, lineCount));
+    }
+
+    /**
+     * Tells whether a glyph has the same unicode and almost the same position as the previous
+     * one, which happens when text is overdrawn to simulate bold text.
+     */
+    private static boolean isDuplicate(TextPositionColumns columns, int previous, int i)
+    {
+        if (!columns.unicodeEquals(previous, i))
+        {
+            return false;
+        }
+        float tolerance = columns.getWidthDirAdj(i) / columns.getUnicodeLength(i) / 3.0f;
+        return Math.abs(columns.getXDirAdj(i) - columns.getXDirAdj(previous)) <= tolerance &&
+                Math.abs(columns.getYDirAdj(i) - columns.getYDirAdj(previous)) <= tolerance;
+    }
+
+    /**
+     * Composes the characters and the combining diacritics which were appended after them.
+     */
+    private static void normalize(StringBuilder text, int start)
+    {
+        String line = Normalizer.normalize(text.subSequence(start, text.length()),
+                Normalizer.Form.NFC);
+        text.setLength(start);
+        text.append(line);
+    }
+}
@@ -725,7 +725,7 @@ public final class TextPosition
      * @param str String to normalize
      * @return Normalized string
      */
-    private String combineDiacritic(String str)
+    static String combineDiacritic(String str)
     {
         // Unicode contains special combining forms of the diacritic characters which we want to use
         int codePoint = str.codePointAt(0);
@@ -746,7 +746,15 @@ public final class TextPosition
      */
     public boolean isDiacritic()
     {
-        String text = this.getUnicode();
+        return isDiacritic(getUnicode());
+    }
+
+    /**
+     * @param text the unicode of a text position
+     * @return True if the text is a single diacritic char.
+     */
+    static boolean isDiacritic(String text)
+    {
         if (text.length() != 1)
         {
             return false;
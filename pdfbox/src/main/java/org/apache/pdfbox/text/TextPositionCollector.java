@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.text;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.fontbox.util.BoundingBox;
+import org.apache.logging.Log;
+import org.apache.logging.LogFactory;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.DrawObject;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetGraphicsStateParameters;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.contentstream.operator.text.BeginText;
+import org.apache.pdfbox.contentstream.operator.text.EndText;
+import org.apache.pdfbox.contentstream.operator.text.MoveText;
+import org.apache.pdfbox.contentstream.operator.text.MoveTextSetLeading;
+import org.apache.pdfbox.contentstream.operator.text.NextLine;
+import org.apache.pdfbox.contentstream.operator.text.SetCharSpacing;
+import org.apache.pdfbox.contentstream.operator.text.SetFontAndSize;
+import org.apache.pdfbox.contentstream.operator.text.SetTextHorizontalScaling;
+import org.apache.pdfbox.contentstream.operator.text.SetTextLeading;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRenderingMode;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRise;
+import org.apache.pdfbox.contentstream.operator.text.SetWordSpacing;
+import org.apache.pdfbox.contentstream.operator.text.ShowText;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextAdjusted;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLine;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLineAndSpace;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+import org.apache.pdfbox.pdmodel.font.PDType3Font;
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.pdmodel.graphics.state.PDTextState;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+/**
+ * Collects the glyphs of a page into {@link TextPositionColumns}, computing the same positions
+ * and sizes as a {@link TextPosition} based text stripper but without creating any objects per
+ * glyph. An instance is meant to process the pages of a single document, one after the other.
+ */
+final class TextPositionCollector extends PDFStreamEngine
+{
+    private static final Log LOG = LogFactory.getLog(TextPositionCollector.class);
+
+    // font heights in text space, computed once per font
+    private final Map<PDFont, Float> fontHeights = new IdentityHashMap<>();
+    // space widths in text space, computed once per font
+    private final Map<PDFont, Float> spaceWidths = new IdentityHashMap<>();
+
+    private TextPositionColumns columns;
+    private float translateX;
+    private float translateY;
+
+    TextPositionCollector()
+    {
+        addOperator(new BeginText(this));
+        addOperator(new Concatenate(this));
+        addOperator(new DrawObject(this));
+        addOperator(new EndText(this));
+        addOperator(new SetGraphicsStateParameters(this));
+        addOperator(new Save(this));
+        addOperator(new Restore(this));
+        addOperator(new NextLine(this));
+        addOperator(new SetCharSpacing(this));
+        addOperator(new MoveText(this));
+        addOperator(new MoveTextSetLeading(this));
+        addOperator(new SetFontAndSize(this));
+        addOperator(new ShowText(this));
+        addOperator(new ShowTextAdjusted(this));
+        addOperator(new SetTextLeading(this));
+        addOperator(new SetMatrix(this));
+        addOperator(new SetTextRenderingMode(this));
+        addOperator(new SetTextRise(this));
+        addOperator(new SetWordSpacing(this));
+        addOperator(new SetTextHorizontalScaling(this));
+        addOperator(new ShowTextLine(this));
+        addOperator(new ShowTextLineAndSpace(this));
+    }
+
+    /**
+     * Collects the glyphs of the given page.
+     *
+     * @param page the page
+     * @return the glyphs of the page
+     * @throws IOException if the page could not be processed
+     */
+    TextPositionColumns collect(PDPage page) throws IOException
+    {
+        PDRectangle pageSize = page.getCropBox();
+        // the text positions are relative to the lower left corner of the crop box
+        translateX = -pageSize.getLowerLeftX();
+        translateY = -pageSize.getLowerLeftY();
+        columns = new TextPositionColumns(page.getRotation(), pageSize.getWidth(),
+                pageSize.getHeight());
+        try
+        {
+            processPage(page);
+            return columns;
+        }
+        finally
+        {
+            columns = null;
+        }
+    }
+
+    @Override
+    protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code,
+            Vector displacement) throws IOException
+    {
+        PDGraphicsState state = getGraphicsState();
+        Matrix ctm = state.getCurrentTransformationMatrix();
+        PDTextState textState = state.getTextState();
+        float fontSize = textState.getFontSize();
+        float horizontalScaling = textState.getHorizontalScaling() / 100f;
+        Matrix textMatrix = getTextMatrix();
+
+        String unicode = font.toUnicode(code);
+
+        // when there is no Unicode mapping available, Acrobat simply coerces the character code
+        // into Unicode, so we do the same.
+        if (unicode == null)
+        {
+            if (font instanceof PDSimpleFont)
+            {
+                unicode = String.valueOf((char) code);
+            }
+            else
+            {
+                // Acrobat doesn't seem to coerce composite font's character codes, instead it
+                // skips them.
+                return;
+            }
+        }
+
+        float displacementX = displacement.getX();
+        // the sorting algorithm is based on the width of the character. As the displacement
+        // for vertical characters doesn't provide any suitable value for it, we have to
+        // calculate our own
+        if (font.isVertical())
+        {
+            displacementX = font.getWidth(code) / 1000;
+        }
+
+        // combined displacement, this is calculated *without* taking the character spacing and
+        // word spacing into account
+        float tx = displacementX * fontSize * horizontalScaling;
+        float ty = displacement.getY() * fontSize;
+
+        // the end of the glyph: translate(tx, ty) x text matrix x ctm, without creating matrices
+        float textX = tx * textMatrix.getScaleX() + ty * textMatrix.getShearX()
+                + textMatrix.getTranslateX();
+        float textY = tx * textMatrix.getShearY() + ty * textMatrix.getScaleY()
+                + textMatrix.getTranslateY();
+        float nextX = textX * ctm.getScaleX() + textY * ctm.getShearX() + ctm.getTranslateX();
+        float nextY = textX * ctm.getShearY() + textY * ctm.getScaleY() + ctm.getTranslateY();
+
+        float dxDisplay = nextX - textRenderingMatrix.getTranslateX();
+        float dyDisplay = getFontHeight(font) * textRenderingMatrix.getScalingFactorY();
+
+        // the space width has to be transformed into display units
+        float spaceWidthDisplay = getSpaceWidth(font) * textRenderingMatrix.getScalingFactorX();
+
+        columns.add(textRenderingMatrix.getScaleX(), textRenderingMatrix.getShearY(),
+                textRenderingMatrix.getShearX(), textRenderingMatrix.getScaleY(),
+                textRenderingMatrix.getTranslateX() + translateX,
+                textRenderingMatrix.getTranslateY() + translateY,
+                nextX + translateX, nextY + translateY, Math.abs(dyDisplay), dxDisplay,
+                Math.abs(spaceWidthDisplay), unicode, code, font, fontSize,
+                (int) (fontSize * textMatrix.getScalingFactorX()));
+    }
+
+    private float getSpaceWidth(PDFont font)
+    {
+        Float cached = spaceWidths.get(font);
+        if (cached != null)
+        {
+            return cached;
+        }
+        float glyphSpaceToTextSpaceFactor = 1 / 1000f;
+        if (font instanceof PDType3Font)
+        {
+            glyphSpaceToTextSpaceFactor = font.getFontMatrix().getScaleX();
+        }
+
+        float spaceWidthText = 0;
+        try
+        {
+            // to avoid crash as described in PDFBOX-614, see what the space displacement should be
+            spaceWidthText = font.getSpaceWidth() * glyphSpaceToTextSpaceFactor;
+        }
+        catch (Exception exception)
+        {
+            LOG.warn("Can't determine the width of the space character", exception);
+        }
+
+        if (spaceWidthText == 0)
+        {
+            spaceWidthText = font.getAverageFontWidth() * glyphSpaceToTextSpaceFactor;
+            // the average space width appears to be higher than necessary so make it smaller
+            spaceWidthText *= .80f;
+        }
+        if (spaceWidthText == 0)
+        {
+            // if could not find font, use a generic value
+            spaceWidthText = 1.0f;
+        }
+        spaceWidths.put(font, spaceWidthText);
+        return spaceWidthText;
+    }
+
+    private float getFontHeight(PDFont font) throws IOException
+    {
+        Float cached = fontHeights.get(font);
+        if (cached != null)
+        {
+            return cached;
+        }
+        BoundingBox bbox = font.getBoundingBox();
+        float lowerLeftY = bbox.getLowerLeftY();
+        if (lowerLeftY < Short.MIN_VALUE)
+        {
+            // PDFBOX-2158 and PDFBOX-3130
+            // files by Salmat eSolutions / ClibPDF Library
+            lowerLeftY = -(lowerLeftY + 65536);
+        }
+        // 1/2 the bbox is used as the height todo: why?
+        float glyphHeight = (bbox.getUpperRightY() - lowerLeftY) / 2;
+
+        // sometimes the bbox has very high values, but CapHeight is OK
+        PDFontDescriptor fontDescriptor = font.getFontDescriptor();
+        if (fontDescriptor != null)
+        {
+            float capHeight = fontDescriptor.getCapHeight();
+            if (Float.compare(capHeight, 0) != 0 &&
+                    (capHeight < glyphHeight || Float.compare(glyphHeight, 0) == 0))
+            {
+                glyphHeight = capHeight;
+            }
+            // PDFBOX-3464, PDFBOX-4480, PDFBOX-4553:
+            // sometimes even CapHeight has very high value, but Ascent and Descent are ok
+            float ascent = fontDescriptor.getAscent();
+            float descent = fontDescriptor.getDescent();
+            if (capHeight > ascent && ascent > 0 && descent < 0 &&
+                    ((ascent - descent) / 2 < glyphHeight || Float.compare(glyphHeight, 0) == 0))
+            {
+                glyphHeight = (ascent - descent) / 2;
+            }
+        }
+
+        // transformPoint from glyph space -> text space
+        float height;
+        if (font instanceof PDType3Font)
+        {
+            height = font.getFontMatrix().transformPoint(0, glyphHeight).getY();
+        }
+        else
+        {
+            height = glyphHeight / 1000;
+        }
+        fontHeights.put(font, height);
+        return height;
+    }
+}
@@ -0,0 +1,677 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * The glyphs of a page in columnar form: every attribute of a {@link TextPosition} is kept in a
+ * primitive array indexed by the glyph number, in the order in which the glyphs were shown.
+ *
+ * <p>The text direction and the direction adjusted coordinates are computed once when a glyph is
+ * added, so that sorting and line grouping only read primitive arrays. A {@link TextPosition}
+ * can be created for any glyph with {@link #get(int)}.</p>
+ *
+ * <p>Instances are not thread safe, but they don't reference any COS objects except for the
+ * fonts, which are not used by the layout methods. An instance can therefore be handed over to
+ * another thread once all glyphs have been added.</p>
+ */
+public final class TextPositionColumns
+{
+    private static final int MATRIX_STRIDE = 6;
+
+    private final int rotation;
+    private final float pageWidth;
+    private final float pageHeight;
+
+    private int size;
+    // text rendering matrix a, b, c, d, e, f of every glyph
+    private float[] matrices;
+    private float[] endX;
+    private float[] endY;
+    private float[] height;
+    private float[] width;
+    private float[] widthOfSpace;
+    private float[] fontSize;
+    private int[] fontSizePt;
+    private int[] codes;
+    private int[] fontIndex;
+    // 0, 90, 180 or 270
+    private short[] dir;
+    private float[] xDirAdj;
+    private float[] yDirAdj;
+    private float[] widthDirAdj;
+    // the unicode of glyph i is text[unicodeEnd[i - 1], unicodeEnd[i])
+    private int[] unicodeEnd;
+    private final StringBuilder text;
+
+    private final List<PDFont> fonts = new ArrayList<>();
+    private PDFont lastFont;
+    private int lastFontIndex = -1;
+
+    /**
+     * Creates an empty instance.
+     *
+     * @param rotation rotation of the page that the text is located in
+     * @param pageWidth width of the page that the text is located in
+     * @param pageHeight height of the page that the text is located in
+     */
+    public TextPositionColumns(int rotation, float pageWidth, float pageHeight)
+    {
+        this.rotation = rotation;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        int capacity = 256;
+        matrices = new float[capacity * MATRIX_STRIDE];
+        endX = new float[capacity];
+        endY = new float[capacity];
+        height = new float[capacity];
+        width = new float[capacity];
+        widthOfSpace = new float[capacity];
+        fontSize = new float[capacity];
+        fontSizePt = new int[capacity];
+        codes = new int[capacity];
+        fontIndex = new int[capacity];
+        dir = new short[capacity];
+        xDirAdj = new float[capacity];
+        yDirAdj = new float[capacity];
+        widthDirAdj = new float[capacity];
+        unicodeEnd = new int[capacity];
+        text = new StringBuilder(capacity);
+    }
+
+    /**
+     * Adds a glyph, the parameters have the same meaning as the ones of the {@link TextPosition}
+     * constructor.
+     */
+    void add(float a, float b, float c, float d, float e, float f, float glyphEndX,
+            float glyphEndY, float maxHeight, float individualWidth, float spaceWidth,
+            String unicode, int code, PDFont font, float size, int sizeInPt)
+    {
+        if (this.size == endX.length)
+        {
+            grow();
+        }
+        int i = this.size;
+        int m = i * MATRIX_STRIDE;
+        matrices[m] = a;
+        matrices[m + 1] = b;
+        matrices[m + 2] = c;
+        matrices[m + 3] = d;
+        matrices[m + 4] = e;
+        matrices[m + 5] = f;
+        endX[i] = glyphEndX;
+        endY[i] = glyphEndY;
+        height[i] = maxHeight;
+        width[i] = individualWidth;
+        widthOfSpace[i] = spaceWidth;
+        fontSize[i] = size;
+        fontSizePt[i] = sizeInPt;
+        codes[i] = code;
+        fontIndex[i] = indexOf(font);
+
+        short direction = direction(d, b, c, a);
+        dir[i] = direction;
+        xDirAdj[i] = xRot(direction, e, f);
+        float yLowerLeft = yLowerLeftRot(direction, e, f);
+        yDirAdj[i] = (direction == 0 || direction == 180 ? pageHeight : pageWidth) - yLowerLeft;
+        widthDirAdj[i] = direction == 90 || direction == 270 ? Math.abs(glyphEndY - f)
+                : Math.abs(glyphEndX - e);
+
+        text.append(unicode);
+        unicodeEnd[i] = text.length();
+        this.size++;
+    }
+
+    private int indexOf(PDFont font)
+    {
+        if (font != lastFont)
+        {
+            int index = -1;
+            for (int i = 0; i < fonts.size(); i++)
+            {
+                if (fonts.get(i) == font)
+                {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0)
+            {
+                index = fonts.size();
+                fonts.add(font);
+            }
+            lastFont = font;
+            lastFontIndex = index;
+        }
+        return lastFontIndex;
+    }
+
+    private void grow()
+    {
+        int capacity = endX.length * 2;
+        matrices = Arrays.copyOf(matrices, capacity * MATRIX_STRIDE);
+        endX = Arrays.copyOf(endX, capacity);
+        endY = Arrays.copyOf(endY, capacity);
+        height = Arrays.copyOf(height, capacity);
+        width = Arrays.copyOf(width, capacity);
+        widthOfSpace = Arrays.copyOf(widthOfSpace, capacity);
+        fontSize = Arrays.copyOf(fontSize, capacity);
+        fontSizePt = Arrays.copyOf(fontSizePt, capacity);
+        codes = Arrays.copyOf(codes, capacity);
+        fontIndex = Arrays.copyOf(fontIndex, capacity);
+        dir = Arrays.copyOf(dir, capacity);
+        xDirAdj = Arrays.copyOf(xDirAdj, capacity);
+        yDirAdj = Arrays.copyOf(yDirAdj, capacity);
+        widthDirAdj = Arrays.copyOf(widthDirAdj, capacity);
+        unicodeEnd = Arrays.copyOf(unicodeEnd, capacity);
+    }
+
+    /**
+     * Same as {@link TextPosition#getDir()}.
+     */
+    private static short direction(float a, float b, float c, float d)
+    {
+        // 12 0   left to right
+        // 0 12
+        if (a > 0 && Math.abs(b) < d && Math.abs(c) < a && d > 0)
+        {
+            return 0;
+        }
+        // -12 0   right to left (upside down)
+        // 0 -12
+        else if (a < 0 && Math.abs(b) < Math.abs(d) && Math.abs(c) < Math.abs(a) && d < 0)
+        {
+            return 180;
+        }
+        // 0  12    up
+        // -12 0
+        else if (Math.abs(a) < Math.abs(c) && b > 0 && c < 0 && Math.abs(d) < b)
+        {
+            return 90;
+        }
+        // 0  -12   down
+        // 12 0
+        else if (Math.abs(a) < c && b < 0 && c > 0 && Math.abs(d) < Math.abs(b))
+        {
+            return 270;
+        }
+        return 0;
+    }
+
+    private float xRot(int rot, float tx, float ty)
+    {
+        switch (rot)
+        {
+            case 0:
+                return tx;
+            case 90:
+                return ty;
+            case 180:
+                return pageWidth - tx;
+            case 270:
+                return pageHeight - ty;
+            default:
+                return 0;
+        }
+    }
+
+    private float yLowerLeftRot(int rot, float tx, float ty)
+    {
+        switch (rot)
+        {
+            case 0:
+                return ty;
+            case 90:
+                return pageWidth - tx;
+            case 180:
+                return pageHeight - ty;
+            case 270:
+                return tx;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the number of glyphs.
+     *
+     * @return the number of glyphs
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the rotation of the page.
+     *
+     * @return 0, 90, 180 or 270
+     */
+    public int getRotation()
+    {
+        return rotation;
+    }
+
+    /**
+     * Returns the width of the page.
+     *
+     * @return the width of the page
+     */
+    public float getPageWidth()
+    {
+        return pageWidth;
+    }
+
+    /**
+     * Returns the height of the page.
+     *
+     * @return the height of the page
+     */
+    public float getPageHeight()
+    {
+        return pageHeight;
+    }
+
+    /**
+     * Same as {@link TextPosition#getUnicode()}.
+     *
+     * @param index the glyph number
+     * @return the unicode of the glyph
+     */
+    public String getUnicode(int index)
+    {
+        return text.substring(unicodeStart(index), unicodeEnd[index]);
+    }
+
+    /**
+     * Appends the unicode of a glyph to the given builder without creating a string.
+     *
+     * @param index the glyph number
+     * @param target the builder to append to
+     */
+    public void appendUnicode(int index, StringBuilder target)
+    {
+        target.append(text, unicodeStart(index), unicodeEnd[index]);
+    }
+
+    /**
+     * Returns the number of chars of the unicode of a glyph.
+     *
+     * @param index the glyph number
+     * @return the length of the unicode
+     */
+    public int getUnicodeLength(int index)
+    {
+        return unicodeEnd[index] - unicodeStart(index);
+    }
+
+    private int unicodeStart(int index)
+    {
+        checkIndex(index);
+        return index == 0 ? 0 : unicodeEnd[index - 1];
+    }
+
+    /**
+     * Returns the total number of chars of the unicode of all glyphs.
+     *
+     * @return the length of the text
+     */
+    public int getTextLength()
+    {
+        return text.length();
+    }
+
+    /**
+     * Same as {@link TextPosition#getCharacterCodes()}, a glyph always has a single code.
+     *
+     * @param index the glyph number
+     * @return the internal PDF character code of the glyph
+     */
+    public int getCharacterCode(int index)
+    {
+        checkIndex(index);
+        return codes[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getFont()}.
+     *
+     * @param index the glyph number
+     * @return the font of the glyph
+     */
+    public PDFont getFont(int index)
+    {
+        checkIndex(index);
+        return fonts.get(fontIndex[index]);
+    }
+
+    /**
+     * Same as {@link TextPosition#getDir()}.
+     *
+     * @param index the glyph number
+     * @return the direction of the glyph (0, 90, 180, or 270)
+     */
+    public int getDir(int index)
+    {
+        checkIndex(index);
+        return dir[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getX()}.
+     *
+     * @param index the glyph number
+     * @return the page rotation adjusted x coordinate
+     */
+    public float getX(int index)
+    {
+        checkIndex(index);
+        int m = index * MATRIX_STRIDE;
+        return xRot(rotation, matrices[m + 4], matrices[m + 5]);
+    }
+
+    /**
+     * Same as {@link TextPosition#getY()}.
+     *
+     * @param index the glyph number
+     * @return the page rotation adjusted y coordinate
+     */
+    public float getY(int index)
+    {
+        checkIndex(index);
+        int m = index * MATRIX_STRIDE;
+        float yLowerLeft = yLowerLeftRot(rotation, matrices[m + 4], matrices[m + 5]);
+        return (rotation == 0 || rotation == 180 ? pageHeight : pageWidth) - yLowerLeft;
+    }
+
+    /**
+     * Same as {@link TextPosition#getXDirAdj()}.
+     *
+     * @param index the glyph number
+     * @return the text direction adjusted x coordinate
+     */
+    public float getXDirAdj(int index)
+    {
+        checkIndex(index);
+        return xDirAdj[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getYDirAdj()}.
+     *
+     * @param index the glyph number
+     * @return the text direction adjusted y coordinate
+     */
+    public float getYDirAdj(int index)
+    {
+        checkIndex(index);
+        return yDirAdj[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getWidthDirAdj()}.
+     *
+     * @param index the glyph number
+     * @return the width in display units
+     */
+    public float getWidthDirAdj(int index)
+    {
+        checkIndex(index);
+        return widthDirAdj[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getHeightDir()}.
+     *
+     * @param index the glyph number
+     * @return the height in display units
+     */
+    public float getHeightDir(int index)
+    {
+        checkIndex(index);
+        return height[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getWidthOfSpace()}.
+     *
+     * @param index the glyph number
+     * @return the width of a space in display units
+     */
+    public float getWidthOfSpace(int index)
+    {
+        checkIndex(index);
+        return widthOfSpace[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getFontSize()}.
+     *
+     * @param index the glyph number
+     * @return the font size
+     */
+    public float getFontSize(int index)
+    {
+        checkIndex(index);
+        return fontSize[index];
+    }
+
+    /**
+     * Same as {@link TextPosition#getFontSizeInPt()}.
+     *
+     * @param index the glyph number
+     * @return the font size in pt
+     */
+    public float getFontSizeInPt(int index)
+    {
+        checkIndex(index);
+        return fontSizePt[index];
+    }
+
+    /**
+     * Creates the text position of a glyph.
+     *
+     * @param index the glyph number
+     * @return a new text position
+     */
+    public TextPosition get(int index)
+    {
+        checkIndex(index);
+        int m = index * MATRIX_STRIDE;
+        Matrix textMatrix = new Matrix(matrices[m], matrices[m + 1], matrices[m + 2],
+                matrices[m + 3], matrices[m + 4], matrices[m + 5]);
+        return new TextPosition(rotation, pageWidth, pageHeight, textMatrix, endX[index],
+                endY[index], height[index], width[index], widthOfSpace[index],
+                getUnicode(index), new int[] { codes[index] }, fonts.get(fontIndex[index]),
+                fontSize[index], fontSizePt[index]);
+    }
+
+    /**
+     * Compares two glyphs like {@link TextPositionComparator}.
+     *
+     * @param i the first glyph number
+     * @param j the second glyph number
+     * @return a negative integer, zero, or a positive integer as the first glyph comes before, at
+     * the same position or after the second one
+     */
+    int compare(int i, int j)
+    {
+        // only compare text that is in the same direction
+        int cmp1 = Integer.compare(dir[i], dir[j]);
+        if (cmp1 != 0)
+        {
+            return cmp1;
+        }
+
+        float pos1YBottom = yDirAdj[i];
+        float pos2YBottom = yDirAdj[j];
+        if (isSameLine(i, j))
+        {
+            return Float.compare(xDirAdj[i], xDirAdj[j]);
+        }
+        return pos1YBottom < pos2YBottom ? -1 : 1;
+    }
+
+    /**
+     * Tells whether two glyphs of the same direction overlap vertically, using the tolerance of
+     * {@link TextPositionComparator}.
+     */
+    boolean isSameLine(int i, int j)
+    {
+        // note that the coordinates have been adjusted so 0,0 is in upper left
+        float pos1YBottom = yDirAdj[i];
+        float pos2YBottom = yDirAdj[j];
+        float pos1YTop = pos1YBottom - height[i];
+        float pos2YTop = pos2YBottom - height[j];
+        return Math.abs(pos1YBottom - pos2YBottom) < .1
+                || pos2YBottom >= pos1YTop && pos2YBottom <= pos1YBottom
+                || pos1YBottom >= pos2YTop && pos1YBottom <= pos2YBottom;
+    }
+
+    /**
+     * Tells whether two glyphs have the same unicode.
+     */
+    boolean unicodeEquals(int i, int j)
+    {
+        int start1 = i == 0 ? 0 : unicodeEnd[i - 1];
+        int start2 = j == 0 ? 0 : unicodeEnd[j - 1];
+        int length = unicodeEnd[i] - start1;
+        if (length != unicodeEnd[j] - start2)
+        {
+            return false;
+        }
+        for (int k = 0; k < length; k++)
+        {
+            if (text.charAt(start1 + k) != text.charAt(start2 + k))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link TextPosition#contains(TextPosition)}.
+     */
+    boolean contains(int i, int j)
+    {
+        double thisXstart = xDirAdj[i];
+        double thisWidth = widthDirAdj[i];
+        double thisXend = thisXstart + thisWidth;
+
+        double tp2Xstart = xDirAdj[j];
+        double tp2Xend = tp2Xstart + widthDirAdj[j];
+
+        // no X overlap at all so return as soon as possible
+        if (tp2Xend <= thisXstart || tp2Xstart >= thisXend)
+        {
+            return false;
+        }
+
+        // no Y overlap at all so return as soon as possible. Note: 0.0 is in the upper left and
+        // y-coordinate is top of TextPosition
+        double thisYstart = yDirAdj[i];
+        double tp2Ystart = yDirAdj[j];
+        if (tp2Ystart + height[j] < thisYstart || tp2Ystart > thisYstart + height[i])
+        {
+            return false;
+        }
+        // we're going to calculate the percentage of overlap, if its less than a 15% x-coordinate
+        // overlap then we'll return false because its negligible
+        else if (tp2Xstart > thisXstart && tp2Xend > thisXend)
+        {
+            return (thisXend - tp2Xstart) / thisWidth > .15;
+        }
+        else if (tp2Xstart < thisXstart && tp2Xend < thisXend)
+        {
+            return (tp2Xend - thisXstart) / thisWidth > .15;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the glyph numbers sorted like a list of the text positions would be sorted with
+     * {@link TextPositionComparator}. Like {@link org.apache.pdfbox.util.IterativeMergeSort},
+     * this is a stable bottom-up merge sort, which copes with the comparator not being transitive
+     * for overlapping glyphs.
+     *
+     * @return a new array of glyph numbers
+     */
+    public int[] sortedIndices()
+    {
+        int[] from = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            from[i] = i;
+        }
+        if (size < 2)
+        {
+            return from;
+        }
+        int[] to = new int[size];
+        for (int blockSize = 1; blockSize < size; blockSize <<= 1)
+        {
+            for (int low = 0; low < size; low += blockSize << 1)
+            {
+                int middle = Math.min(low + blockSize, size);
+                int high = Math.min(low + (blockSize << 1), size);
+                merge(from, to, low, middle, high);
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        return from;
+    }
+
+    private void merge(int[] from, int[] to, int low, int middle, int high)
+    {
+        if (middle == high || compare(from[middle - 1], from[middle]) <= 0)
+        {
+            // already in order, which is the common case for text in reading order
+            System.arraycopy(from, low, to, low, high - low);
+            return;
+        }
+        int left = low;
+        int right = middle;
+        for (int k = low; k < high; k++)
+        {
+            if (left < middle && (right >= high || compare(from[right], from[left]) >= 0))
+            {
+                to[k] = from[left++];
+            }
+            else
+            {
+                to[k] = from[right++];
+            }
+        }
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
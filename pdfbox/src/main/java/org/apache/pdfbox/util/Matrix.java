@@ -292,6 +292,107 @@ public final class Matrix implements Cloneable
         return new Matrix(checkFloatValues(multiplyArrays(single, other.single)));
     }
 
+    /**
+     * This method multiplies this Matrix with the specified other Matrix, storing the product in
+     * the given result Matrix, without creating any objects. It is allowed to have
+     * (other == this), (result == this) or (result == other).
+     *
+     * @param other the second operand Matrix in the multiplication; required
+     * @param result the Matrix instance into which the product is stored; required
+     * @return the result Matrix.
+     */
+    public Matrix multiply(Matrix other, Matrix result)
+    {
+        float[] a = single;
+        float[] b = other.single;
+        float c0 = a[0] * b[0] + a[1] * b[3] + a[2] * b[6];
+        float c1 = a[0] * b[1] + a[1] * b[4] + a[2] * b[7];
+        float c2 = a[0] * b[2] + a[1] * b[5] + a[2] * b[8];
+        float c3 = a[3] * b[0] + a[4] * b[3] + a[5] * b[6];
+        float c4 = a[3] * b[1] + a[4] * b[4] + a[5] * b[7];
+        float c5 = a[3] * b[2] + a[4] * b[5] + a[5] * b[8];
+        float c6 = a[6] * b[0] + a[7] * b[3] + a[8] * b[6];
+        float c7 = a[6] * b[1] + a[7] * b[4] + a[8] * b[7];
+        float c8 = a[6] * b[2] + a[7] * b[5] + a[8] * b[8];
+        float[] c = result.single;
+        c[0] = c0;
+        c[1] = c1;
+        c[2] = c2;
+        c[3] = c3;
+        c[4] = c4;
+        c[5] = c5;
+        c[6] = c6;
+        c[7] = c7;
+        c[8] = c8;
+        checkFloatValues(c);
+        return result;
+    }
+
+    /**
+     * Concatenates (premultiplies) the matrix given by its six values to this matrix, without
+     * creating any objects.
+     *
+     * @param a the X coordinate scaling element (m00)
+     * @param b the Y coordinate shearing element (m10)
+     * @param c the X coordinate shearing element (m01)
+     * @param d the Y coordinate scaling element (m11)
+     * @param e the X coordinate translation element (m02)
+     * @param f the Y coordinate translation element (m12)
+     */
+    public void concatenate(float a, float b, float c, float d, float e, float f)
+    {
+        float[] m = single;
+        float m0 = a * m[0] + b * m[3];
+        float m1 = a * m[1] + b * m[4];
+        float m2 = a * m[2] + b * m[5];
+        float m3 = c * m[0] + d * m[3];
+        float m4 = c * m[1] + d * m[4];
+        float m5 = c * m[2] + d * m[5];
+        m[6] += e * m[0] + f * m[3];
+        m[7] += e * m[1] + f * m[4];
+        m[8] += e * m[2] + f * m[5];
+        m[0] = m0;
+        m[1] = m1;
+        m[2] = m2;
+        m[3] = m3;
+        m[4] = m4;
+        m[5] = m5;
+        checkFloatValues(m);
+    }
+
+    /**
+     * Sets this matrix to the given six values.
+     *
+     * @param a the X coordinate scaling element (m00)
+     * @param b the Y coordinate shearing element (m10)
+     * @param c the X coordinate shearing element (m01)
+     * @param d the Y coordinate scaling element (m11)
+     * @param e the X coordinate translation element (m02)
+     * @param f the Y coordinate translation element (m12)
+     */
+    public void setValues(float a, float b, float c, float d, float e, float f)
+    {
+        single[0] = a;
+        single[1] = b;
+        single[2] = 0;
+        single[3] = c;
+        single[4] = d;
+        single[5] = 0;
+        single[6] = e;
+        single[7] = f;
+        single[8] = 1;
+    }
+
+    /**
+     * Copies the values of the given matrix into this matrix.
+     *
+     * @param matrix the matrix to copy
+     */
+    public void copyFrom(Matrix matrix)
+    {
+        System.arraycopy(matrix.single, 0, single, 0, SIZE);
+    }
+
     private float[] checkFloatValues(float[] values)
     {
         if (!Float.isFinite(values[0]) || !Float.isFinite(values[1]) || !Float.isFinite(values[2])
@@ -15,8 +15,10 @@
  */
 package org.apache.pdfbox.util;
 
+import java.math.BigInteger;
+
 /**
- * This class contains methods to format numbers.
+ * This class contains methods to format and parse numbers.
  *
  * @author Michael Doswald
  */
@@ -33,6 +35,58 @@ public class NumberFormatUtil
     private static final long[] POWER_OF_TENS;
     private static final int[] POWER_OF_TENS_INT;
 
+    /**
+     * Maximum number of significant digits supported by the parse methods, more may overflow a long
+     */
+    private static final int MAX_PARSE_DIGITS = 18;
+
+    /**
+     * Powers of ten which are exact as float, used by {@link #parseFloatFast(byte[], int, int)}
+     */
+    private static final float[] FLOAT_POWER_OF_TENS = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f,
+            1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+    /**
+     * Powers of ten which are exact as double, used by {@link #parseFloatFast(byte[], int, int)}
+     */
+    private static final double[] DOUBLE_POWER_OF_TENS = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+            1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21,
+            1e22 };
+
+    /**
+     * Maximum number of bytes written by {@link #formatFloatShortest(float, byte[], int)}, the
+     * smallest subnormal values have 45 zeros after the decimal point
+     */
+    public static final int MAX_FLOAT_LENGTH = 50;
+
+    /**
+     * Tables of the powers of five for {@link #formatFloatShortest(float, byte[], int)}, which
+     * finds the shortest decimal using the Ryu algorithm by Ulf Adams: the 61 most significant
+     * bits of 5^i, and 2^(59 + bitlength(5^q) - 1) / 5^q rounded up
+     */
+    private static final int FLOAT_POW5_BITCOUNT = 61;
+    private static final int FLOAT_POW5_INV_BITCOUNT = 59;
+    private static final long[] FLOAT_POW5_SPLIT = new long[47];
+    private static final long[] FLOAT_POW5_INV_SPLIT = new long[31];
+
+    static
+    {
+        for (int i = 0; i < FLOAT_POW5_SPLIT.length; i++)
+        {
+            BigInteger pow5 = BigInteger.valueOf(5).pow(i);
+            int pow5Length = pow5.bitLength();
+            FLOAT_POW5_SPLIT[i] = pow5Length > FLOAT_POW5_BITCOUNT
+                    ? pow5.shiftRight(pow5Length - FLOAT_POW5_BITCOUNT).longValue()
+                    : pow5.shiftLeft(FLOAT_POW5_BITCOUNT - pow5Length).longValue();
+            if (i < FLOAT_POW5_INV_SPLIT.length)
+            {
+                FLOAT_POW5_INV_SPLIT[i] = BigInteger.ONE
+                        .shiftLeft(pow5Length - 1 + FLOAT_POW5_INV_BITCOUNT).divide(pow5)
+                        .longValue() + 1;
+            }
+        }
+    }
+
     static
     {
         POWER_OF_TENS = new long[19];
@@ -114,6 +168,484 @@ public class NumberFormatUtil
         return offset;
     }
 
+    /**
+     * Formats a float value to ASCII with the least number of digits needed to parse it back to
+     * the same value. Of several such decimals, the one closest to the value is used. The notation
+     * is never scientific: values from 10^-3 up to, but excluding, 10^7 have at least one fraction
+     * digit like in {@link Float#toString(float)}, e.g. "1.0" or "0.25", other values are written
+     * without trailing zeros, e.g. "10000000" or "0.00001". The format will fail if the value is
+     * {@link Float#NaN} or infinite.
+     *
+     * @param value The float value to format
+     * @param asciiBuffer The output buffer to write the formatted value to, at least
+     * {@link #MAX_FLOAT_LENGTH} bytes must be available from the offset
+     * @param offset The offset of the first byte to write
+     *
+     * @return The number of bytes written to the buffer or {@code -1} if formatting failed
+     */
+    public static int formatFloatShortest(float value, byte[] asciiBuffer, int offset)
+    {
+        if (Float.isNaN(value) || Float.isInfinite(value))
+        {
+            return -1;
+        }
+        int bits = Float.floatToRawIntBits(value);
+        int position = offset;
+        if (bits < 0)
+        {
+            asciiBuffer[position++] = '-';
+        }
+        int ieeeMantissa = bits & 0x7FFFFF;
+        int ieeeExponent = (bits >>> 23) & 0xFF;
+        if (ieeeExponent == 0 && ieeeMantissa == 0)
+        {
+            asciiBuffer[position++] = '0';
+            asciiBuffer[position++] = '.';
+            asciiBuffer[position++] = '0';
+            return position - offset;
+        }
+
+        // the value is m2 * 2^e2, the bounds of the interval which parses to the value are
+        // mm * 2^e2 and mp * 2^e2, after multiplying everything by 4
+        int e2;
+        long m2;
+        if (ieeeExponent == 0)
+        {
+            e2 = 1 - 127 - 23 - 2;
+            m2 = ieeeMantissa;
+        }
+        else
+        {
+            e2 = ieeeExponent - 127 - 23 - 2;
+            m2 = ieeeMantissa | (1 << 23);
+        }
+        boolean acceptBounds = (m2 & 1) == 0;
+        long mv = 4 * m2;
+        long mp = 4 * m2 + 2;
+        int mmShift = ieeeMantissa != 0 || ieeeExponent <= 1 ? 1 : 0;
+        long mm = 4 * m2 - 1 - mmShift;
+
+        // convert the interval to decimal, vm * 10^e10 to vp * 10^e10
+        long vr;
+        long vp;
+        long vm;
+        int e10;
+        boolean vmIsTrailingZeros = false;
+        boolean vrIsTrailingZeros = false;
+        int lastRemovedDigit = 0;
+        if (e2 >= 0)
+        {
+            int q = (int) ((e2 * 78913L) >>> 18); // floor(e2 * log10(2))
+            e10 = q;
+            int k = FLOAT_POW5_INV_BITCOUNT + pow5Bits(q) - 1;
+            int i = -e2 + q + k;
+            vr = mulShift(mv, FLOAT_POW5_INV_SPLIT[q], i);
+            vp = mulShift(mp, FLOAT_POW5_INV_SPLIT[q], i);
+            vm = mulShift(mm, FLOAT_POW5_INV_SPLIT[q], i);
+            if (q != 0 && (vp - 1) / 10 <= vm / 10)
+            {
+                // one removed digit is needed even if no digits are removed below
+                int l = FLOAT_POW5_INV_BITCOUNT + pow5Bits(q - 1) - 1;
+                lastRemovedDigit = (int) (mulShift(mv, FLOAT_POW5_INV_SPLIT[q - 1],
+                        -e2 + q - 1 + l) % 10);
+            }
+            if (q <= 9)
+            {
+                // only one of mp, mv and mm can be a multiple of 5, if any
+                if (mv % 5 == 0)
+                {
+                    vrIsTrailingZeros = pow5Factor(mv) >= q;
+                }
+                else if (acceptBounds)
+                {
+                    vmIsTrailingZeros = pow5Factor(mm) >= q;
+                }
+                else if (pow5Factor(mp) >= q)
+                {
+                    vp--;
+                }
+            }
+        }
+        else
+        {
+            int q = (int) ((-e2 * 732923L) >>> 20); // floor(-e2 * log10(5))
+            e10 = q + e2;
+            int i = -e2 - q;
+            int k = pow5Bits(i) - FLOAT_POW5_BITCOUNT;
+            int j = q - k;
+            vr = mulShift(mv, FLOAT_POW5_SPLIT[i], j);
+            vp = mulShift(mp, FLOAT_POW5_SPLIT[i], j);
+            vm = mulShift(mm, FLOAT_POW5_SPLIT[i], j);
+            if (q != 0 && (vp - 1) / 10 <= vm / 10)
+            {
+                j = q - 1 - (pow5Bits(i + 1) - FLOAT_POW5_BITCOUNT);
+                lastRemovedDigit = (int) (mulShift(mv, FLOAT_POW5_SPLIT[i + 1], j) % 10);
+            }
+            if (q <= 1)
+            {
+                // mv has at least two trailing zero bits, mm has one if mmShift is 1
+                vrIsTrailingZeros = true;
+                if (acceptBounds)
+                {
+                    vmIsTrailingZeros = mmShift == 1;
+                }
+                else
+                {
+                    vp--;
+                }
+            }
+            else if (q < 31)
+            {
+                vrIsTrailingZeros = (mv & ((1L << (q - 1)) - 1)) == 0;
+            }
+        }
+
+        // remove digits as long as the interval still contains a decimal with less digits
+        int removed = 0;
+        long output;
+        if (vmIsTrailingZeros || vrIsTrailingZeros)
+        {
+            while (vp / 10 > vm / 10)
+            {
+                vmIsTrailingZeros &= vm % 10 == 0;
+                vrIsTrailingZeros &= lastRemovedDigit == 0;
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            if (vmIsTrailingZeros)
+            {
+                while (vm % 10 == 0)
+                {
+                    vrIsTrailingZeros &= lastRemovedDigit == 0;
+                    lastRemovedDigit = (int) (vr % 10);
+                    vr /= 10;
+                    vp /= 10;
+                    vm /= 10;
+                    removed++;
+                }
+            }
+            if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0)
+            {
+                // round half to even
+                lastRemovedDigit = 4;
+            }
+            output = vr + ((vr == vm && (!acceptBounds || !vmIsTrailingZeros))
+                    || lastRemovedDigit >= 5 ? 1 : 0);
+        }
+        else
+        {
+            while (vp / 10 > vm / 10)
+            {
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            output = vr + (vr == vm || lastRemovedDigit >= 5 ? 1 : 0);
+        }
+        int exp = e10 + removed;
+        while (output % 10 == 0)
+        {
+            output /= 10;
+            exp++;
+        }
+        return formatDecimal(output, exp, asciiBuffer, position) - offset;
+    }
+
+    /**
+     * Tells whether the given ASCII decimal is exactly what
+     * {@link #formatFloatShortest(float, byte[], int)} writes for the value it was parsed to. Only
+     * decimals with up to 6 significant digits are recognized, as these are the shortest form of
+     * their value by definition, false is returned for all others. Nothing is formatted, so the
+     * check is cheap enough to be done for every parsed number.
+     *
+     * @param value The value of the decimal
+     * @param asciiBuffer The buffer holding the ASCII characters
+     * @param offset The offset of the first character
+     * @param length The number of characters
+     *
+     * @return true if the decimal is known to be the shortest form of the value
+     */
+    public static boolean isFormattedShortest(float value, byte[] asciiBuffer, int offset,
+            int length)
+    {
+        if (value == 0)
+        {
+            return Float.floatToRawIntBits(value) == 0 && length == 3
+                    && asciiBuffer[offset] == '0' && asciiBuffer[offset + 1] == '.'
+                    && asciiBuffer[offset + 2] == '0';
+        }
+        // decimals with up to 6 significant digits are only unique for normal values
+        if (Float.isNaN(value) || Float.isInfinite(value) || Math.abs(value) < Float.MIN_NORMAL)
+        {
+            return false;
+        }
+        int end = offset + length;
+        int i = offset;
+        boolean negative = i < end && asciiBuffer[i] == '-';
+        if (negative != value < 0)
+        {
+            return false;
+        }
+        if (negative)
+        {
+            i++;
+        }
+        int integerStart = i;
+        while (i < end && asciiBuffer[i] >= '0' && asciiBuffer[i] <= '9')
+        {
+            i++;
+        }
+        int integerDigits = i - integerStart;
+        // digits on both sides of the decimal point, no superfluous leading zeros
+        if (integerDigits == 0 || integerDigits > 1 && asciiBuffer[integerStart] == '0'
+                || i == end || asciiBuffer[i] != '.')
+        {
+            return false;
+        }
+        int fractionStart = ++i;
+        while (i < end && asciiBuffer[i] >= '0' && asciiBuffer[i] <= '9')
+        {
+            i++;
+        }
+        if (i != end || i == fractionStart)
+        {
+            return false;
+        }
+        boolean zeroInteger = asciiBuffer[integerStart] == '0';
+        int significantDigits;
+        if (asciiBuffer[end - 1] == '0')
+        {
+            // no trailing zeros, except for the ".0" of an integral value below 10^7
+            if (end - fractionStart != 1 || zeroInteger || integerDigits > 7)
+            {
+                return false;
+            }
+            significantDigits = integerDigits;
+        }
+        else if (zeroInteger)
+        {
+            int first = fractionStart;
+            while (asciiBuffer[first] == '0')
+            {
+                first++;
+            }
+            significantDigits = end - first;
+        }
+        else
+        {
+            significantDigits = integerDigits + end - fractionStart;
+        }
+        return significantDigits <= 6;
+    }
+
+    /**
+     * Writes {@code digits * 10^exp} without exponent, see
+     * {@link #formatFloatShortest(float, byte[], int)}.
+     *
+     * @return The offset into the buffer which contains the first byte that was not filled
+     */
+    private static int formatDecimal(long digits, int exp, byte[] asciiBuffer, int startOffset)
+    {
+        int length = getExponent(digits) + 1;
+        int decimalExponent = exp + length - 1;
+        int offset = startOffset;
+        if (exp >= 0)
+        {
+            offset = formatPositiveNumber(digits, length - 1, false, asciiBuffer, offset);
+            for (int i = 0; i < exp; i++)
+            {
+                asciiBuffer[offset++] = '0';
+            }
+            if (decimalExponent < 7)
+            {
+                asciiBuffer[offset++] = '.';
+                asciiBuffer[offset++] = '0';
+            }
+        }
+        else if (decimalExponent >= 0)
+        {
+            long integerPart = digits / POWER_OF_TENS[-exp];
+            offset = formatPositiveNumber(integerPart, decimalExponent, false, asciiBuffer, offset);
+            asciiBuffer[offset++] = '.';
+            offset = formatPositiveNumber(digits - integerPart * POWER_OF_TENS[-exp], -exp - 1,
+                    false, asciiBuffer, offset);
+        }
+        else
+        {
+            asciiBuffer[offset++] = '0';
+            asciiBuffer[offset++] = '.';
+            for (int i = -1; i > decimalExponent; i--)
+            {
+                asciiBuffer[offset++] = '0';
+            }
+            offset = formatPositiveNumber(digits, length - 1, false, asciiBuffer, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the bit length of 5^e, 1 for e = 0.
+     */
+    private static int pow5Bits(int e)
+    {
+        return (int) (((e * 1217359L) >>> 19) + 1);
+    }
+
+    /**
+     * Returns how often the value can be divided by 5.
+     */
+    private static int pow5Factor(long value)
+    {
+        int count = 0;
+        while (value > 0 && value % 5 == 0)
+        {
+            value /= 5;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns {@code (m * factor) >> shift} for a m of at most 32 bits and a shift of more than 32.
+     */
+    private static long mulShift(long m, long factor, int shift)
+    {
+        long bits0 = m * (factor & 0xFFFFFFFFL);
+        long bits1 = m * (factor >>> 32);
+        return ((bits0 >>> 32) + bits1) >>> (shift - 32);
+    }
+
+    /**
+     * Fast variant to parse an ASCII integer with an optional sign, e.g. "-12" or "+7". The parse
+     * will fail if there are other characters than digits after the sign, no digits at all or
+     * more than 18 significant digits.
+     *
+     * @param asciiBuffer The buffer holding the ASCII characters
+     * @param offset The offset of the first character
+     * @param length The number of characters
+     *
+     * @return The parsed value or {@link Long#MIN_VALUE} if parsing failed
+     */
+    public static long parseLongFast(byte[] asciiBuffer, int offset, int length)
+    {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        if (i < end && (asciiBuffer[i] == '-' || asciiBuffer[i] == '+'))
+        {
+            negative = asciiBuffer[i] == '-';
+            i++;
+        }
+        if (i == end)
+        {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        int digits = 0;
+        for (; i < end; i++)
+        {
+            int digit = asciiBuffer[i] - '0';
+            if (digit < 0 || digit > 9)
+            {
+                return Long.MIN_VALUE;
+            }
+            // leading zeros are not significant
+            if ((value != 0 || digit != 0) && ++digits > MAX_PARSE_DIGITS)
+            {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Fast variant to parse an ASCII decimal number with an optional sign and an optional decimal
+     * point, e.g. "-12", "+.5" or "3.25". The parse will fail if the number has an exponent,
+     * other characters than digits, no digits at all, more than 18 significant digits or more
+     * than 22 fraction digits. The result is the same as the one of
+     * {@link Float#parseFloat(String)}, as the value is only computed where the arithmetic is
+     * guaranteed to be correctly rounded.
+     *
+     * @param asciiBuffer The buffer holding the ASCII characters
+     * @param offset The offset of the first character
+     * @param length The number of characters
+     *
+     * @return The parsed value or {@link Float#NaN} if parsing failed
+     */
+    public static float parseFloatFast(byte[] asciiBuffer, int offset, int length)
+    {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        if (i < end && (asciiBuffer[i] == '-' || asciiBuffer[i] == '+'))
+        {
+            negative = asciiBuffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int mantissaDigits = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        for (; i < end; i++)
+        {
+            int b = asciiBuffer[i];
+            if (b >= '0' && b <= '9')
+            {
+                digits++;
+                if (dot)
+                {
+                    scale++;
+                }
+                // leading zeros are not significant
+                if ((mantissa != 0 || b != '0') && ++mantissaDigits > MAX_PARSE_DIGITS)
+                {
+                    return Float.NaN;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+            }
+            else if (b == '.' && !dot)
+            {
+                dot = true;
+            }
+            else
+            {
+                return Float.NaN;
+            }
+        }
+        if (digits == 0)
+        {
+            return Float.NaN;
+        }
+        float value;
+        if (mantissa <= 1 << 24 && scale < FLOAT_POWER_OF_TENS.length)
+        {
+            // both operands are exact, so the division is correctly rounded
+            value = mantissa / FLOAT_POWER_OF_TENS[scale];
+        }
+        else if (mantissa < 1L << 53 && scale < DOUBLE_POWER_OF_TENS.length)
+        {
+            double doubleValue = mantissa / DOUBLE_POWER_OF_TENS[scale];
+            if ((Double.doubleToRawLongBits(doubleValue) & 0x1FFFFFFFL) == 0x10000000L)
+            {
+                // exactly halfway between two floats, rounding again could be wrong
+                return Float.NaN;
+            }
+            value = (float) doubleValue;
+        }
+        else
+        {
+            return Float.NaN;
+        }
+        return negative ? -value : value;
+    }
+
     /**
      * Formats a positive integer number starting with the digit at {@code 10^exp}.
      *
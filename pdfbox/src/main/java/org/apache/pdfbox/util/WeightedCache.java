@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache which is bounded by the total weight of its values, e.g. their size in bytes or simply
+ * their number. When a value is added and the total weight exceeds the maximum, the least
+ * recently used values are evicted until it fits again. Values are strongly referenced until they
+ * are evicted or removed, so that the memory use of the cache doesn't depend on the garbage
+ * collector.
+ *
+ * <p>The cache counts hits, misses and evictions. It is safe for use by multiple threads.</p>
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public final class WeightedCache<K, V>
+{
+    private final long maxWeight;
+
+    // access order, the least recently used entry comes first
+    private final Map<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private static final class Entry<V>
+    {
+        private final V value;
+        private final long weight;
+
+        private Entry(V value, long weight)
+        {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxWeight the maximum total weight of the values
+     * @throws IllegalArgumentException if the maximum weight is negative
+     */
+    public WeightedCache(long maxWeight)
+    {
+        if (maxWeight < 0)
+        {
+            throw new IllegalArgumentException("maxWeight must not be negative: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the value for the given key and marks it as the most recently used one.
+     *
+     * @param key the key
+     * @return the cached value or null if there is none
+     */
+    public synchronized V get(K key)
+    {
+        Entry<V> entry = entries.get(key);
+        if (entry == null)
+        {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Adds a value with a weight of 1, replacing any value for the same key.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value)
+    {
+        put(key, value, 1);
+    }
+
+    /**
+     * Adds a value, replacing any value for the same key. The least recently used values are
+     * evicted if the total weight exceeds the maximum. A value which is heavier than the maximum
+     * weight on its own isn't cached.
+     *
+     * @param key the key
+     * @param value the value
+     * @param weight the weight of the value
+     * @throws IllegalArgumentException if the weight is negative
+     */
+    public synchronized void put(K key, V value, long weight)
+    {
+        if (weight < 0)
+        {
+            throw new IllegalArgumentException("weight must not be negative: " + weight);
+        }
+        remove(key);
+        if (weight > maxWeight)
+        {
+            return;
+        }
+        entries.put(key, new Entry<>(value, weight));
+        this.weight += weight;
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (this.weight > maxWeight)
+        {
+            Entry<V> eldest = iterator.next();
+            iterator.remove();
+            this.weight -= eldest.weight;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes the value for the given key.
+     *
+     * @param key the key
+     * @return the removed value or null if there was none
+     */
+    public synchronized V remove(K key)
+    {
+        Entry<V> entry = entries.remove(key);
+        if (entry == null)
+        {
+            return null;
+        }
+        weight -= entry.weight;
+        return entry.value;
+    }
+
+    /**
+     * Removes all values. The statistics are kept.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Returns the number of cached values.
+     *
+     * @return the number of values
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of the cached values.
+     *
+     * @return the total weight
+     */
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Returns the maximum total weight of the cached values.
+     *
+     * @return the maximum weight
+     */
+    public long getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the number of lookups which found a value.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups which didn't find a value.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of values which were evicted to stay within the maximum weight.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "WeightedCache{size=" + entries.size() + ", weight=" + weight + "/" + maxWeight +
+                ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount +
+                "}";
+    }
+}